@@ -0,0 +1,263 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The documents that WDL descriptors import over http(s), shared by everything that parses WDL so that an import used by
+ * many workflows is downloaded once rather than every time one of them is parsed.
+ * <p>
+ * A download is used as is for {@link #FRESH_MILLIS}, then the host is asked whether it changed, with its ETag or Last-Modified.
+ * A failed download is remembered for {@link #FAILURE_MILLIS}, as is a host that could not be connected to,
+ * so that a missing import or an unreachable host fails fast rather than stalling every parse that needs it.
+ * Redirects are followed, including from http to https.
+ * A document over {@link #MAX_DOCUMENT_BYTES} is not read past the limit and is remembered as a failure, and a download,
+ * redirects included, must finish within {@link #DOWNLOAD_DEADLINE_MILLIS} however slowly the host sends it.
+ * @since 1.9.0
+ */
+public final class HttpImportCache {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpImportCache.class);
+    private static final long MAX_CACHED_CHARS = 64L * 1024 * 1024;
+    private static final long MAX_ENTRY_AGE_HOURS = 24;
+    private static final long FRESH_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long FAILURE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final int CONNECT_TIMEOUT_MILLIS = (int)TimeUnit.SECONDS.toMillis(5);
+    private static final int READ_TIMEOUT_MILLIS = (int)TimeUnit.SECONDS.toMillis(15);
+    private static final long DOWNLOAD_DEADLINE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_DOCUMENT_BYTES = 4 * 1024 * 1024;
+    private static final int LOCK_STRIPES = 1024;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int HTTP_TEMPORARY_REDIRECT = 307;
+    private static final int HTTP_PERMANENT_REDIRECT = 308;
+    private static final Set<Integer> REDIRECTS = Set.of(HttpURLConnection.HTTP_MOVED_PERM, HttpURLConnection.HTTP_MOVED_TEMP,
+        HttpURLConnection.HTTP_SEE_OTHER, HTTP_TEMPORARY_REDIRECT, HTTP_PERMANENT_REDIRECT);
+    private static final int MAX_REDIRECTS = 5;
+
+    private static final Cache<String, CachedImport> IMPORTS = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_CHARS)
+        .weigher((String url, CachedImport cachedImport) -> url.length() + cachedImport.getWeight())
+        .expireAfterWrite(MAX_ENTRY_AGE_HOURS, TimeUnit.HOURS)
+        .build();
+    /**
+     * Hosts that could not be reached recently, with why
+     */
+    private static final Cache<String, String> UNREACHABLE_HOSTS = CacheBuilder.newBuilder()
+        .expireAfterWrite(FAILURE_MILLIS, TimeUnit.MILLISECONDS)
+        .build();
+    /**
+     * A document is downloaded by one thread at a time, the others wait for its download rather than starting their own
+     */
+    private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(LOCK_STRIPES);
+
+    private HttpImportCache() {
+        // hide the default constructor for a utility class
+    }
+
+    /**
+     * Reads a document imported over http(s)
+     *
+     * @param url the url of the document
+     * @return the content of the document
+     * @throws IOException if the document could not be downloaded, now or recently
+     */
+    public static String read(String url) throws IOException {
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            throw new IOException("Only http and https imports can be downloaded: " + url);
+        }
+        Lock lock = LOCKS.get(url);
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            CachedImport cachedImport = IMPORTS.getIfPresent(url);
+            if (cachedImport == null || now >= cachedImport.revalidateAt) {
+                cachedImport = download(url, cachedImport, now);
+                IMPORTS.put(url, cachedImport);
+            }
+            if (cachedImport.content == null) {
+                throw new IOException(cachedImport.failure);
+            }
+            return cachedImport.content;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static CachedImport download(String url, CachedImport previous, long now) {
+        boolean hasPrevious = previous != null && previous.content != null;
+        String location = url;
+        long deadline = now + DOWNLOAD_DEADLINE_MILLIS;
+        try {
+            for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+                long remainingMillis = deadline - System.currentTimeMillis();
+                if (remainingMillis <= 0) {
+                    throw new IOException("took more than " + DOWNLOAD_DEADLINE_MILLIS + " ms");
+                }
+                URL parsedUrl = new URL(location);
+                if (!"http".equals(parsedUrl.getProtocol()) && !"https".equals(parsedUrl.getProtocol())) {
+                    return CachedImport.failed("Could not download " + url + ", redirected to " + location, now);
+                }
+                String hostFailure = UNREACHABLE_HOSTS.getIfPresent(parsedUrl.getHost());
+                if (hostFailure != null) {
+                    return hasPrevious ? previous.revalidated(now + FAILURE_MILLIS) : CachedImport.failed(hostFailure, now);
+                }
+                HttpURLConnection connection = (HttpURLConnection)parsedUrl.openConnection();
+                try {
+                    connection.setConnectTimeout((int)Math.min(CONNECT_TIMEOUT_MILLIS, remainingMillis));
+                    connection.setReadTimeout((int)Math.min(READ_TIMEOUT_MILLIS, remainingMillis));
+                    // HttpURLConnection does not follow a redirect from http to https, which is the most common one
+                    connection.setInstanceFollowRedirects(false);
+                    if (hasPrevious && previous.etag != null) {
+                        connection.setRequestProperty("If-None-Match", previous.etag);
+                    }
+                    if (hasPrevious && previous.lastModified != null) {
+                        connection.setRequestProperty("If-Modified-Since", previous.lastModified);
+                    }
+                    connect(connection, location);
+                    int status = connection.getResponseCode();
+                    if (REDIRECTS.contains(status)) {
+                        String target = connection.getHeaderField("Location");
+                        if (target == null) {
+                            return CachedImport.failed("Could not download " + url + ", status " + status + " without a location", now);
+                        }
+                        location = new URL(parsedUrl, target).toString();
+                        continue;
+                    }
+                    if (status == HTTP_NOT_MODIFIED && hasPrevious) {
+                        return previous.revalidated(now + FRESH_MILLIS);
+                    }
+                    if (status >= HTTP_SERVER_ERROR && hasPrevious) {
+                        LOG.warn("Could not revalidate " + url + ", status " + status + ", the previous download is used");
+                        return previous.revalidated(now + FAILURE_MILLIS);
+                    }
+                    if (status != HttpURLConnection.HTTP_OK) {
+                        return CachedImport.failed("Could not download " + url + ", status " + status, now);
+                    }
+                    String tooLarge = "Could not download " + url + ", it is larger than " + MAX_DOCUMENT_BYTES + " bytes";
+                    if (connection.getContentLengthLong() > MAX_DOCUMENT_BYTES) {
+                        return CachedImport.failed(tooLarge, now);
+                    }
+                    // one byte past the limit tells a document over it
+                    try (InputStream is = new BoundedInputStream(new DeadlineInputStream(connection.getInputStream(), deadline),
+                        MAX_DOCUMENT_BYTES + 1)) {
+                        byte[] document = IOUtils.toByteArray(is);
+                        if (document.length > MAX_DOCUMENT_BYTES) {
+                            return CachedImport.failed(tooLarge, now);
+                        }
+                        return new CachedImport(new String(document, StandardCharsets.UTF_8), connection.getHeaderField("ETag"),
+                            connection.getHeaderField("Last-Modified"), null, now + FRESH_MILLIS);
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+            }
+            return CachedImport.failed("Could not download " + url + ", more than " + MAX_REDIRECTS + " redirects", now);
+        } catch (IOException e) {
+            String failure = "Could not download " + url + ": " + e.getMessage();
+            if (hasPrevious) {
+                LOG.warn(failure + ", the previous download is used");
+                return previous.revalidated(now + FAILURE_MILLIS);
+            }
+            return CachedImport.failed(failure, now);
+        }
+    }
+
+    /**
+     * Connects to the host of a url, a host that cannot be reached at all is remembered. A host that is slow to answer is not,
+     * since that may be specific to one of its documents.
+     */
+    private static void connect(HttpURLConnection connection, String url) throws IOException {
+        try {
+            connection.connect();
+        } catch (ConnectException | NoRouteToHostException | UnknownHostException | SocketTimeoutException e) {
+            UNREACHABLE_HOSTS.put(connection.getURL().getHost(), "Could not download " + url + ": " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Fails the first read after the deadline, so a host that sends a document a few bytes at a time, each within the read timeout,
+     * cannot hold a download for longer than the deadline and one read timeout
+     */
+    private static final class DeadlineInputStream extends ProxyInputStream {
+        private final long deadline;
+
+        private DeadlineInputStream(InputStream in, long deadline) {
+            super(in);
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void beforeRead(int n) throws IOException {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IOException("took more than " + DOWNLOAD_DEADLINE_MILLIS + " ms");
+            }
+        }
+    }
+
+    /**
+     * A download of a document, or why it could not be downloaded
+     */
+    private static final class CachedImport {
+        private final String content;
+        private final String etag;
+        private final String lastModified;
+        private final String failure;
+        private final long revalidateAt;
+
+        private CachedImport(String content, String etag, String lastModified, String failure, long revalidateAt) {
+            this.content = content;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.failure = failure;
+            this.revalidateAt = revalidateAt;
+        }
+
+        private static CachedImport failed(String failure, long now) {
+            LOG.info(failure);
+            return new CachedImport(null, null, null, failure, now + FAILURE_MILLIS);
+        }
+
+        private CachedImport revalidated(long nextRevalidateAt) {
+            return new CachedImport(content, etag, lastModified, null, nextRevalidateAt);
+        }
+
+        private int getWeight() {
+            return content == null ? failure.length() : content.length();
+        }
+    }
+}
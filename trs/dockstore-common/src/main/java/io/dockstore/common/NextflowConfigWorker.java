@@ -0,0 +1,173 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads Nextflow configs in a long-lived JVM, so that reading a config does not start a new JVM.
+ * Runs {@code nextflow config -properties} on each config it is sent, in its working directory.
+ * <p>
+ * Configs come from different workflows, so each is read with the Nextflow jar loaded in a class loader of its own,
+ * which is dropped afterwards along with the classes the config compiled into. System properties are restored and the working
+ * directory is emptied after each config. A config that fails, or that leaves threads running, makes the worker unfit for reuse.
+ * <p>
+ * Configs are read from stdin as an int length followed by the UTF-8 content. For each one an int exit status is written to stdout,
+ * then a boolean telling if the worker may read another config, then an int length and what Nextflow printed,
+ * or the stack trace of the failure. The worker exits when stdin is closed.
+ * <p>
+ * Started by {@link NextflowConfigWorkerPool} with only this class on its classpath and the Nextflow jar as its argument,
+ * so it must only use the JDK and Nextflow, through reflection.
+ * @since 1.9.0
+ */
+public final class NextflowConfigWorker {
+    /**
+     * Written once the Nextflow launcher is found
+     */
+    static final int READY = 0x4e46;
+    /**
+     * The exit status written when Nextflow could not be run at all
+     */
+    static final int FAILED = -1;
+    private static final String LAUNCHER_CLASS = "nextflow.cli.Launcher";
+    private static final String[] CONFIG_COMMAND = {"-q", "config", "-properties"};
+    private static final String CONFIG_FILE = "nextflow.config";
+
+    private NextflowConfigWorker() {
+        // hide the default constructor for a utility class
+    }
+
+    public static void main(String[] args) throws IOException, ReflectiveOperationException {
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(System.in));
+        // Nextflow prints to System.out, so the responses go to the original stdout
+        DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        URL nextflowJar = Paths.get(args[0]).toUri().toURL();
+        try (URLClassLoader loader = newClassLoader(nextflowJar)) {
+            Class.forName(LAUNCHER_CLASS, false, loader);
+        }
+        PrintStream stdout = System.out;
+        Properties systemProperties = (Properties)System.getProperties().clone();
+        Set<Thread> threads = new HashSet<>(Thread.getAllStackTraces().keySet());
+        responses.writeInt(READY);
+        responses.flush();
+
+        while (true) {
+            byte[] config;
+            try {
+                config = new byte[requests.readInt()];
+            } catch (EOFException e) {
+                return;
+            }
+            requests.readFully(config);
+            Files.write(Paths.get(CONFIG_FILE), config);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PrintStream printStream = new PrintStream(output, true, StandardCharsets.UTF_8);
+            int status;
+            System.setOut(printStream);
+            try (URLClassLoader loader = newClassLoader(nextflowJar)) {
+                Thread.currentThread().setContextClassLoader(loader);
+                status = readConfig(loader);
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace(printStream);
+                status = FAILED;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                e.printStackTrace(printStream);
+                status = FAILED;
+            } finally {
+                printStream.flush();
+                System.setOut(stdout);
+                Thread.currentThread().setContextClassLoader(NextflowConfigWorker.class.getClassLoader());
+                System.setProperties((Properties)systemProperties.clone());
+            }
+            boolean reusable = clearWorkingDirectory() && status == 0 && leftoverThreads(threads).isEmpty();
+            byte[] properties = output.toByteArray();
+            responses.writeInt(status);
+            responses.writeBoolean(reusable);
+            responses.writeInt(properties.length);
+            responses.write(properties);
+            responses.flush();
+        }
+    }
+
+    private static URLClassLoader newClassLoader(URL nextflowJar) {
+        // not a child of the application class loader, so Nextflow does not see this class or what a previous config loaded
+        return new URLClassLoader(new URL[] {nextflowJar}, ClassLoader.getPlatformClassLoader());
+    }
+
+    private static int readConfig(ClassLoader loader) throws ReflectiveOperationException {
+        Class<?> launcherClass = Class.forName(LAUNCHER_CLASS, true, loader);
+        Method command = launcherClass.getDeclaredMethod("command", String[].class);
+        Method run = launcherClass.getDeclaredMethod("run");
+        command.setAccessible(true);
+        run.setAccessible(true);
+        Object launcher = launcherClass.getConstructor().newInstance();
+        command.invoke(launcher, (Object)CONFIG_COMMAND.clone());
+        Object result = run.invoke(launcher);
+        return result instanceof Number ? ((Number)result).intValue() : 0;
+    }
+
+    /**
+     * @return the threads started while reading configs that are still running
+     */
+    private static List<Thread> leftoverThreads(Set<Thread> threads) {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.isAlive() && !threads.contains(thread))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Deletes what the config and Nextflow wrote, e.g. the .nextflow directory
+     *
+     * @return false if something could not be deleted
+     */
+    private static boolean clearWorkingDirectory() {
+        Path workingDir = Paths.get("").toAbsolutePath();
+        try (Stream<Path> paths = Files.walk(workingDir)) {
+            List<Path> written = paths.filter(path -> !path.equals(workingDir)).sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+            for (Path path : written) {
+                Files.delete(path);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A few {@link NextflowConfigWorker} JVMs that read Nextflow configs one after the other, started as they are needed.
+ * A worker that takes too long on a config is killed. A worker is retired after any config that fails or that it reports
+ * as having left state behind, so a config never runs after a broken one, and after it has read many configs.
+ * Workers that sit idle are stopped.
+ * @since 1.9.0
+ */
+final class NextflowConfigWorkerPool {
+    /**
+     * Bounds what configs may leave behind that a worker cannot see, like shutdown hooks
+     */
+    static final int MAX_CONFIGS_PER_WORKER = 200;
+    private static final Logger LOG = LoggerFactory.getLogger(NextflowConfigWorkerPool.class);
+    /**
+     * A memory limit, the worker only holds one config at a time
+     */
+    private static final String WORKER_HEAP = "-Xmx256m";
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final Class<?> workerClass;
+    private final Supplier<File> nextflowJar;
+    private final long configTimeoutMillis;
+    private final Semaphore permits;
+    private final BlockingDeque<Worker> idleWorkers = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService watchdog;
+    private Path workerClassPath;
+
+    /**
+     * @param nextflowJar         the Nextflow launcher jar, downloaded when the first worker starts
+     * @param maxWorkers          how many configs are read at once
+     * @param configTimeoutMillis how long a worker may take to read a config
+     */
+    NextflowConfigWorkerPool(Supplier<File> nextflowJar, int maxWorkers, long configTimeoutMillis) {
+        this(NextflowConfigWorker.class, nextflowJar, maxWorkers, configTimeoutMillis);
+    }
+
+    /**
+     * @param workerClass         the main class of the workers, it speaks the protocol of {@link NextflowConfigWorker}
+     *                            and must be a single class file that only uses the JDK
+     * @param nextflowJar         the Nextflow launcher jar, downloaded when the first worker starts
+     * @param maxWorkers          how many configs are read at once
+     * @param configTimeoutMillis how long a worker may take to read a config
+     */
+    NextflowConfigWorkerPool(Class<?> workerClass, Supplier<File> nextflowJar, int maxWorkers, long configTimeoutMillis) {
+        this.workerClass = workerClass;
+        this.nextflowJar = nextflowJar;
+        this.configTimeoutMillis = configTimeoutMillis;
+        this.permits = new Semaphore(maxWorkers, true);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "nextflow-config-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.scheduleWithFixedDelay(this::stopIdleWorkers, IDLE_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        this.watchdog = executor;
+    }
+
+    /**
+     * @param content a nextflow.config, without includeConfig lines
+     * @return the properties printed by Nextflow
+     */
+    String readConfigProperties(String content) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NextflowUtilities.NextflowParsingException("Interrupted while waiting to run Nextflow", e);
+        }
+        Worker worker = idleWorkers.pollFirst();
+        boolean reusable = false;
+        try {
+            if (worker == null || !worker.process.isAlive()) {
+                if (worker != null) {
+                    worker.stop();
+                    worker = null;
+                }
+                worker = startWorker();
+            }
+            byte[] config = content.getBytes(StandardCharsets.UTF_8);
+            worker.requests.writeInt(config.length);
+            worker.requests.write(config);
+            worker.requests.flush();
+            int status = readWithTimeout(worker, configTimeoutMillis);
+            boolean workerReusable = worker.responses.readBoolean();
+            byte[] properties = new byte[worker.responses.readInt()];
+            worker.responses.readFully(properties);
+            worker.configsRead++;
+            reusable = status == 0 && workerReusable && worker.configsRead < MAX_CONFIGS_PER_WORKER;
+            String output = new String(properties, StandardCharsets.UTF_8);
+            if (status != 0) {
+                // what Nextflow printed, or the stack trace of the failure
+                LOG.info("Nextflow could not read a config, exit status " + status + ": " + output);
+                throw new NextflowUtilities.NextflowParsingException("Nextflow could not read the config, exit status " + status);
+            }
+            return output;
+        } catch (IOException e) {
+            LOG.error("Problem running Nextflow: ", e);
+            throw new NextflowUtilities.NextflowParsingException("Could not run Nextflow", e);
+        } finally {
+            if (worker != null) {
+                if (reusable) {
+                    worker.lastUsedMillis = System.currentTimeMillis();
+                    // most recently used first, so the workers that are not needed go idle
+                    idleWorkers.addFirst(worker);
+                } else {
+                    worker.stop();
+                }
+            }
+            permits.release();
+        }
+    }
+
+    private Worker startWorker() throws IOException {
+        Path workingDir = Files.createTempDirectory("nextflow-worker");
+        List<String> command = Arrays.asList("java", WORKER_HEAP, "-XX:+UseSerialGC", "-cp", getWorkerClassPath(), workerClass.getName(),
+            nextflowJar.get().getAbsolutePath());
+        LOG.info("starting Nextflow config worker: " + String.join(" ", command));
+        Process process;
+        try {
+            process = new ProcessBuilder(command).directory(workingDir.toFile()).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(workingDir.toFile());
+            throw e;
+        }
+        Worker worker = new Worker(process, workingDir);
+        try {
+            if (readWithTimeout(worker, START_TIMEOUT_MILLIS) != NextflowConfigWorker.READY) {
+                throw new IOException("Nextflow config worker did not start");
+            }
+        } catch (IOException e) {
+            worker.stop();
+            throw e;
+        }
+        return worker;
+    }
+
+    /**
+     * Reads the next int from a worker, the worker is killed if none comes in time
+     */
+    private int readWithTimeout(Worker worker, long timeoutMillis) throws IOException {
+        AtomicBoolean killed = new AtomicBoolean(false);
+        ScheduledFuture<?> kill = watchdog.schedule(() -> {
+            killed.set(true);
+            worker.process.destroyForcibly();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            return worker.responses.readInt();
+        } catch (IOException e) {
+            if (killed.get()) {
+                throw new IOException("Nextflow took more than " + timeoutMillis + " ms to read the config", e);
+            }
+            throw e;
+        } finally {
+            kill.cancel(false);
+        }
+    }
+
+    /**
+     * The worker class is copied to a directory of its own, so the worker JVM does not see the libraries of the webservice.
+     * The Nextflow jar is not on the classpath either, the worker loads it anew for each config
+     */
+    private synchronized String getWorkerClassPath() throws IOException {
+        if (workerClassPath == null) {
+            Path classPath = Files.createTempDirectory("nextflow-worker-classes");
+            String resource = workerClass.getName().replace('.', '/') + ".class";
+            Path classFile = classPath.resolve(resource);
+            Files.createDirectories(classFile.getParent());
+            try (InputStream classContent = workerClass.getClassLoader().getResourceAsStream(resource)) {
+                if (classContent == null) {
+                    throw new IOException("Could not find " + resource);
+                }
+                Files.copy(classContent, classFile);
+            }
+            workerClassPath = classPath;
+        }
+        return workerClassPath.toString();
+    }
+
+    private void stopIdleWorkers() {
+        long idleSince = System.currentTimeMillis() - IDLE_TIMEOUT_MILLIS;
+        for (Worker worker : idleWorkers) {
+            // removing the worker first makes sure no one took it in the meantime
+            if (worker.lastUsedMillis < idleSince && idleWorkers.remove(worker)) {
+                worker.stop();
+            }
+        }
+    }
+
+    /**
+     * A worker JVM, used by one thread at a time
+     */
+    private static final class Worker {
+        private final Process process;
+        private final Path workingDir;
+        private final DataOutputStream requests;
+        private final DataInputStream responses;
+        private int configsRead;
+        private volatile long lastUsedMillis;
+
+        private Worker(Process process, Path workingDir) {
+            this.process = process;
+            this.workingDir = workingDir;
+            this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        private void stop() {
+            // killed rather than left to exit once stdin is closed, it may be stuck in a config
+            try {
+                requests.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close Nextflow config worker stdin", e);
+            }
+            process.destroyForcibly();
+            FileUtils.deleteQuietly(workingDir.toFile());
+        }
+    }
+}
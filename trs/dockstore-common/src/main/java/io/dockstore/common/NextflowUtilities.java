@@ -23,14 +23,21 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ConfigurationConverter;
 import org.apache.commons.configuration2.INIConfiguration;
@@ -42,6 +49,31 @@ import org.slf4j.LoggerFactory;
 public final class NextflowUtilities {
     private static final Logger LOG = LoggerFactory.getLogger(NextflowUtilities.class);
     private static final String DEFAULT_NEXTFLOW_VERSION = "19.01.0";
+    /**
+     * Each config read at once takes a JVM, so only a couple run at once
+     */
+    private static final int MAX_CONCURRENT_CONFIGS = 2;
+    private static final long CONFIG_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    /**
+     * Options of the JVM that reads a config file: a memory limit, and a JIT and GC that start quickly for a short run
+     */
+    private static final String CONFIG_JVM_OPTIONS = "-Xmx256m -XX:TieredStopAtLevel=1 -XX:+UseSerialGC";
+    private static final long MAXIMUM_CACHED_CONFIGS = 1000;
+    private static final long CONFIG_EXPIRY_HOURS = 1;
+    private static final Semaphore CONFIG_PERMITS = new Semaphore(MAX_CONCURRENT_CONFIGS, true);
+    /**
+     * Read config contents, the JVMs stay up between configs
+     */
+    private static final NextflowConfigWorkerPool CONFIG_WORKERS =
+        new NextflowConfigWorkerPool(NextflowUtilities::getNextflowTargetFile, MAX_CONCURRENT_CONFIGS, CONFIG_TIMEOUT_MILLIS);
+    /**
+     * The properties printed by Nextflow for recently read configs, by a hash of their content.
+     * The versions of a workflow mostly share the same config, so most are read without starting Nextflow.
+     */
+    private static final Cache<String, String> CONFIG_PROPERTIES = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_CACHED_CONFIGS)
+        .expireAfterWrite(CONFIG_EXPIRY_HOURS, TimeUnit.HOURS)
+        .build();
 
     private NextflowUtilities() {
         // hide the default constructor for a utility class
@@ -77,10 +109,17 @@ public final class NextflowUtilities {
         String nextflowTarget = libraryLocation + nextflowFilename;
         File nextflowTargetFile = new File(nextflowTarget);
         if (!nextflowTargetFile.exists()) {
+            // download next to the target and move it in place, so a config read at the same time never sees part of the jar
+            File partialFile = new File(nextflowTarget + "." + UUID.randomUUID() + ".part");
             try {
-                FileUtils.copyURLToFile(nextflowURL, nextflowTargetFile);
+                FileUtils.copyURLToFile(nextflowURL, partialFile);
+                Files.move(partialFile.toPath(), nextflowTargetFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
             } catch (IOException e) {
-                throw new NextflowParsingException("Could not download Nextflow location", e);
+                if (!nextflowTargetFile.exists()) {
+                    throw new NextflowParsingException("Could not download Nextflow location", e);
+                }
+            } finally {
+                FileUtils.deleteQuietly(partialFile);
             }
         }
         return nextflowTargetFile;
@@ -89,63 +128,76 @@ public final class NextflowUtilities {
     /**
      * Use nextflow to read nextflow configs
      * Nextflow binary assumes workflow is in the working directory (with no other workflows)
-     * TODO: nextflow normally uses DRIP, investigate to see if this helps us https://github.com/ninjudd/drip
+     * Starts a JVM in the directory of the config, so that the configs it includes are read too
      * @param content a file object with the content of nextflow
      * @return a commons configuration file with the keys from the nextflow config file
      */
     public static Configuration grabConfig(File content) {
         try {
-            final List<String> strings =
-                Arrays.asList("java", "-jar", getNextflowTargetFile().getAbsolutePath(), "config", "-properties");
-            final String join = Joiner.on(" ").join(strings);
-            LOG.info("running: " + join);
-            final ImmutablePair<String, String> execute = executeNextflowConfig(content, join);
-            String stdout = execute.getLeft();
-            Properties properties = new Properties();
-            properties.load(new StringReader(stdout));
-            return ConfigurationConverter.getConfiguration(properties);
-        } catch (RuntimeException | IOException e) {
+            return toConfiguration(readConfigProperties(content));
+        } catch (IOException e) {
             LOG.error("Problem running Nextflow: ", e);
             throw new NextflowParsingException("Could not run Nextflow", e);
         }
     }
 
     /**
+     * Reads a config in one of the long-lived Nextflow JVMs, configs that were read recently are not read again
      * @param content the content of the config file
      * @return a commons configuration file with the keys from the nextflow config file
      */
     public static Configuration grabConfig(String content) {
-        Path nextflowDir = null;
+        // FIXME: this sucks, but we need to ignore includeConfig lines. We basically have a chicken and the egg problem
+        // FIXME: the nextflow config command only works when all included files are present, however we're trying to
+        // FIXME: use the nextflow config command to figure out what the list of included files is to
+        // FIXME: determine what files we want to get from the GitHub API in the first place
+        // FIXME: secondary case: when looking for description and author, we don't actually need includes either
+        String newContent = content.replaceAll("(?i)(?m)^[ \t]*includeConfig.*", "");
+        String key = Hashing.sha256().hashString(newContent, StandardCharsets.UTF_8).toString();
         try {
-            // FIXME: this sucks, but we need to ignore includeConfig lines. We basically have a chicken and the egg problem
-            // FIXME: the nextflow config command only works when all included files are present, however we're trying to
-            // FIXME: use the nextflow config command to figure out what the list of included files is to
-            // FIXME: determine what files we want to get from the GitHub API in the first place
-            // FIXME: secondary case: when looking for description and author, we don't actually need includes either
-            String newContent = content.replaceAll("(?i)(?m)^[ \t]*includeConfig.*", "");
-            // needed since Nextflow binary assumes content is in working directory
-            nextflowDir = Files.createTempDirectory("nextflow");
-            final Path tempFile = Paths.get(nextflowDir.toString(), "nextflow.config");
-            Files.write(tempFile, newContent.getBytes(StandardCharsets.UTF_8));
-            return grabConfig(tempFile.toFile());
+            return toConfiguration(CONFIG_PROPERTIES.get(key, () -> CONFIG_WORKERS.readConfigProperties(newContent)));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof NextflowParsingException) {
+                throw (NextflowParsingException)e.getCause();
+            }
+            throw new NextflowParsingException("unable to parse nexflow config", e.getCause());
         } catch (IOException e) {
             throw new NextflowParsingException("unable to parse nexflow config");
-        } finally {
-            if (nextflowDir != null) {
-                FileUtils.deleteQuietly(nextflowDir.toFile());
-            }
         }
     }
 
     /**
-     * This is an expensive operation; a new Java VM is spun up for this, so only allow one at a time by
-     * synchronizing the method.
-     * @param content
-     * @param join
-     * @return
+     * This is an expensive operation; a new Java VM is spun up for this, so only allow a few at a time.
+     * The VM is killed if it runs for too long.
+     * @param content a nextflow.config file, alone in its directory
+     * @return the properties printed by Nextflow
      */
-    private static synchronized ImmutablePair<String, String> executeNextflowConfig(File content, String join) {
-        return Utilities.executeCommand(join, content.getParentFile());
+    private static String readConfigProperties(File content) {
+        final List<String> strings =
+            Arrays.asList("java", CONFIG_JVM_OPTIONS, "-jar", getNextflowTargetFile().getAbsolutePath(), "config", "-properties");
+        final String join = Joiner.on(" ").join(strings);
+        LOG.info("running: " + join);
+        try {
+            CONFIG_PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NextflowParsingException("Interrupted while waiting to run Nextflow", e);
+        }
+        try {
+            final ImmutablePair<String, String> execute = Utilities.executeCommand(join, content.getParentFile(), CONFIG_TIMEOUT_MILLIS);
+            return execute.getLeft();
+        } catch (RuntimeException e) {
+            LOG.error("Problem running Nextflow: ", e);
+            throw new NextflowParsingException("Could not run Nextflow", e);
+        } finally {
+            CONFIG_PERMITS.release();
+        }
+    }
+
+    private static Configuration toConfiguration(String configProperties) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new StringReader(configProperties));
+        return ConfigurationConverter.getConfiguration(properties);
     }
 
     /**
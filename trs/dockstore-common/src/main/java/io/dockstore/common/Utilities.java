@@ -38,6 +38,7 @@ import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecuteResultHandler;
 import org.apache.commons.exec.DefaultExecutor;
 import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.exec.Executor;
 import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.exec.environment.EnvironmentUtils;
@@ -89,6 +90,19 @@ public final class Utilities {
         return executeCommand(command, true, Optional.of(ByteStreams.nullOutputStream()), Optional.of(ByteStreams.nullOutputStream()), workingDir);
     }
 
+    /**
+     * Execute a command, killing it if it runs for too long
+     *
+     * @param command       the command to execute
+     * @param workingDir    the working directory of the command
+     * @param timeoutMillis how long the command may run for
+     * @return the stdout and stderr
+     */
+    public static ImmutablePair<String, String> executeCommand(String command, File workingDir, long timeoutMillis) {
+        return executeCommand(command, true, Optional.of(ByteStreams.nullOutputStream()), Optional.of(ByteStreams.nullOutputStream()), workingDir,
+            null, timeoutMillis);
+    }
+
 
     public static ImmutablePair<String, String> executeCommand(String command, OutputStream stdoutStream, OutputStream stderrStream) {
         return executeCommand(command, true, Optional.of(stdoutStream), Optional.of(stderrStream), null);
@@ -123,6 +137,21 @@ public final class Utilities {
      */
     private static ImmutablePair<String, String> executeCommand(String command, final boolean dumpOutput,
             Optional<OutputStream> stdoutStream, Optional<OutputStream> stderrStream, File workingDir, Map<String, String> additionalEnvironment) {
+        return executeCommand(command, dumpOutput, stdoutStream, stderrStream, workingDir, additionalEnvironment, ExecuteWatchdog.INFINITE_TIMEOUT);
+    }
+
+    /**
+     * Execute a command and return stdout and stderr
+     *
+     * @param command the command to execute
+     * @param additionalEnvironment additional environment variables that are added to the system environment; can be null
+     * @param timeoutMillis how long the command may run for before it is killed, or ExecuteWatchdog.INFINITE_TIMEOUT
+     * @return the stdout and stderr
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private static ImmutablePair<String, String> executeCommand(String command, final boolean dumpOutput,
+            Optional<OutputStream> stdoutStream, Optional<OutputStream> stderrStream, File workingDir, Map<String, String> additionalEnvironment,
+            long timeoutMillis) {
         // TODO: limit our output in case the called program goes crazy
 
         // these are for returning the output for use by this
@@ -149,6 +178,8 @@ public final class Utilities {
                     executor.setWorkingDirectory(workingDir);
                 }
                 executor.setExitValue(0);
+                ExecuteWatchdog watchdog = new ExecuteWatchdog(timeoutMillis);
+                executor.setWatchdog(watchdog);
                 if (dumpOutput) {
                     LOG.info("CMD: " + command);
                 }
@@ -160,6 +191,9 @@ public final class Utilities {
                 executor.setStreamHandler(new PumpStreamHandler(stdout, stderr));
                 executor.execute(parse, procEnvironment, resultHandler);
                 resultHandler.waitFor();
+                if (watchdog.killedProcess()) {
+                    throw new ExecuteException("command timed out after " + timeoutMillis + " ms: " + command, resultHandler.getExitValue());
+                }
                 // not sure why commons-exec does not throw an exception
                 if (resultHandler.getExitValue() != 0) {
                     resultHandler.getException().printStackTrace();
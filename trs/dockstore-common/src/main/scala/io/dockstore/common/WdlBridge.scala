@@ -1,6 +1,7 @@
 package io.dockstore.common
 
 
+import java.net.URI
 import java.nio.file.{Files, Paths}
 import java.util
 
@@ -29,7 +30,7 @@ import wom.types.{WomCompositeType, WomOptionalType, WomType}
 
 import scala.collection.JavaConverters
 import scala.collection.JavaConverters._
-import scala.util.Try
+import scala.util.{Failure, Success, Try}
 
 
 /**
@@ -58,11 +59,7 @@ class WdlBridge {
     */
   @throws(classOf[WdlParser.SyntaxError])
   def validateWorkflow(filePath: String, sourceFilePath: String) = {
-    val bundle = getBundle(filePath, sourceFilePath)
-
-    if (!bundle.primaryCallable.isDefined) {
-      throw new WdlParser.SyntaxError("Workflow is missing a workflow declaration.")
-    }
+    parseFile(filePath, sourceFilePath).validateWorkflow()
   }
 
   /**
@@ -71,20 +68,7 @@ class WdlBridge {
     */
   @throws(classOf[WdlParser.SyntaxError])
   def validateTool(filePath: String, sourceFilePath: String) = {
-    validateWorkflow(filePath, sourceFilePath)
-    val executableCallable = convertFilePathToExecutableCallable(filePath, sourceFilePath)
-
-    if (executableCallable.taskCallNodes.seq.size > 1) {
-      throw new WdlParser.SyntaxError("A WDL tool can only have one task.")
-    }
-
-    executableCallable.taskCallNodes
-      .foreach(call => {
-        val dockerAttribute = call.callable.runtimeAttributes.attributes.get("docker")
-        if (!dockerAttribute.isDefined) {
-          throw new WdlParser.SyntaxError(call.identifier.localName + " requires an associated docker container to make this a valid Dockstore tool.")
-        }
-      })
+    parseFile(filePath, sourceFilePath).validateTool()
   }
 
   /**
@@ -95,25 +79,7 @@ class WdlBridge {
     */
   @throws(classOf[WdlParser.SyntaxError])
   def getMetadata(filePath: String, sourceFilePath: String) = {
-    val bundle = getBundle(filePath, sourceFilePath)
-    val metadataList = new util.ArrayList[util.Map[String, String]]()
-    bundle.allCallables.foreach(callable => {
-      callable._2 match {
-        case w: WorkflowDefinition => {
-          val metadata = JavaConverters.mapAsJavaMap(callable._2.asInstanceOf[WorkflowDefinition].meta)
-          if (!metadata.isEmpty) {
-            metadataList.add(metadata)
-          }
-        }
-        case c: CallableTaskDefinition => {
-          val metadata = JavaConverters.mapAsJavaMap(callable._2.asInstanceOf[CallableTaskDefinition].meta)
-          if (!metadata.isEmpty) {
-            metadataList.add(metadata)
-          }
-        }
-      }
-    })
-    metadataList
+    parseFile(filePath, sourceFilePath).getMetadata()
   }
 
   /**
@@ -178,15 +144,7 @@ class WdlBridge {
     * @return map of call names to import path
     */
   def getImportMap(filePath: String, sourceFilePath: String): util.LinkedHashMap[String, String] = {
-    val importMap = new util.LinkedHashMap[String, String]()
-    val executableCallable = convertFilePathToExecutableCallable(filePath, sourceFilePath)
-    executableCallable.taskCallNodes
-      .foreach(call => {
-        val callName = call.identifier.localName.value
-        val path = null
-        importMap.put(callName, path)
-      })
-    importMap
+    parseFile(filePath, sourceFilePath).getImportMap()
   }
 
   /**
@@ -195,43 +153,9 @@ class WdlBridge {
     * @return mapping of call to a list of dependencies
     */
   def getCallsToDependencies(filePath: String, sourceFilePath: String): util.LinkedHashMap[String, util.List[String]] = {
-    val dependencyMap = new util.LinkedHashMap[String, util.List[String]]()
-    val executableCallable = convertFilePathToExecutableCallable(filePath, sourceFilePath)
-
-    executableCallable.taskCallNodes
-      .foreach(call => {
-        val callName = call.identifier.localName.value
-        dependencyMap.put("dockstore_" + callName, new util.ArrayList[String]())
-      })
-
-    executableCallable.taskCallNodes
-        .foreach(call => {
-          val dependencies = new util.ArrayList[String]()
-          call.inputDefinitionMappings
-            .foreach(inputMap => {
-              val maybePorts = inputMap._2 match {
-                case Inl(head) => Some(head.graphNode.inputPorts)
-                case a => None
-              }
-              maybePorts.foreach((inputPorts: Set[GraphNodePort.InputPort]) => {
-                inputPorts
-                  .foreach(inputPort => {
-                    val inputName = inputPort.name
-                    val lastPeriodIndex = inputName.lastIndexOf(".")
-                    if (lastPeriodIndex != -1) {
-                      dependencies.add("dockstore_" + inputName.substring(0, lastPeriodIndex))
-                    }
-                  })
-              })
-            })
-          dependencyMap.replace("dockstore_" + call.identifier.localName.value, dependencies)
-
-        })
-
-    dependencyMap
+    parseFile(filePath, sourceFilePath).getCallsToDependencies()
   }
 
-
   /**
     * Create a mapping of calls to docker images
     * @param filePath absolute path to file
@@ -239,19 +163,7 @@ class WdlBridge {
     */
   @throws(classOf[WdlParser.SyntaxError])
   def getCallsToDockerMap(filePath: String, sourceFilePath: String): util.LinkedHashMap[String, String] = {
-    val callsToDockerMap = new util.LinkedHashMap[String, String]()
-    val executableCallable = convertFilePathToExecutableCallable(filePath, sourceFilePath)
-    executableCallable.taskCallNodes
-      .foreach(call => {
-        val dockerAttribute = call.callable.runtimeAttributes.attributes.get("docker")
-        val callName = "dockstore_" + call.identifier.localName.value
-        var dockerString = ""
-        if (dockerAttribute.isDefined) {
-          dockerString = dockerAttribute.get.sourceString.replaceAll("\"", "")
-        }
-        callsToDockerMap.put(callName, dockerString)
-      })
-    callsToDockerMap
+    parseFile(filePath, sourceFilePath).getCallsToDockerMap()
   }
 
   /**
@@ -321,13 +233,34 @@ class WdlBridge {
     * @return WomBundle
     */
   def getBundleFromContent(content: String, filePath: String, sourceFilePath: String): WomBundle = {
-    val factory = getLanguageFactory(content)
     val filePathObj = DefaultPathBuilder.build(filePath).get
     // Resolve from mapping, local filesystem, or http import
+    buildBundle(content, sourceFilePath, DirectoryResolver.localFilesystemResolvers(Some(filePathObj)))
+  }
+
+  /**
+    * Parse a workflow given its content, imports are resolved from the secondary files or over http
+    * and nothing is read from the local filesystem
+    * @param content content of the primary descriptor
+    * @param sourceFilePath the path of the primary descriptor, relative imports are resolved from it
+    * @throws wdl.draft3.parser.WdlParser.SyntaxError
+    * @return the parsed workflow
+    */
+  @throws(classOf[WdlParser.SyntaxError])
+  def parse(content: String, sourceFilePath: String): ParsedWdl = {
+    new ParsedWdl(buildBundle(content, sourceFilePath, List()))
+  }
+
+  @throws(classOf[WdlParser.SyntaxError])
+  private def parseFile(filePath: String, sourceFilePath: String): ParsedWdl = {
+    new ParsedWdl(getBundle(filePath, sourceFilePath))
+  }
+
+  private def buildBundle(content: String, sourceFilePath: String, localResolvers: List[ImportResolver]): WomBundle = {
+    val factory = getLanguageFactory(content)
     val mapResolver = MapResolver(sourceFilePath)
     mapResolver.setSecondaryFiles(secondaryWdlFiles)
-    lazy val importResolvers: List[ImportResolver] =
-      DirectoryResolver.localFilesystemResolvers(Some(filePathObj)) :+ HttpResolver(relativeTo = None) :+ mapResolver
+    lazy val importResolvers: List[ImportResolver] = localResolvers :+ CachedHttpResolver(relativeTo = None) :+ mapResolver
     try {
       val bundle = factory.getWomBundle(content, "{}", importResolvers, List(factory))
       if (bundle.isRight) {
@@ -368,6 +301,155 @@ class WdlBridge {
   def readFile(filePath: String): String = Try(Files.readAllLines(Paths.get(filePath)).asScala.mkString(System.lineSeparator())).get
 }
 
+/**
+  * A WDL document parsed once, with its imports, so that validating it, extracting its metadata
+  * and building its DAG do not each parse it again. Immutable once built, so it can be shared between threads.
+  * @param bundle the WomBundle of the document
+  */
+class ParsedWdl(val bundle: WomBundle) {
+  private lazy val executableCallable: Option[ExecutableCallable] = bundle.toExecutableCallable.toOption
+
+  /**
+    * Validates the document as a workflow
+    */
+  @throws(classOf[WdlParser.SyntaxError])
+  def validateWorkflow(): Unit = {
+    if (!bundle.primaryCallable.isDefined) {
+      throw new WdlParser.SyntaxError("Workflow is missing a workflow declaration.")
+    }
+  }
+
+  /**
+    * Validates the document as a tool
+    */
+  @throws(classOf[WdlParser.SyntaxError])
+  def validateTool(): Unit = {
+    validateWorkflow()
+    val callable = getExecutableCallable
+
+    if (callable.taskCallNodes.seq.size > 1) {
+      throw new WdlParser.SyntaxError("A WDL tool can only have one task.")
+    }
+
+    callable.taskCallNodes
+      .foreach(call => {
+        val dockerAttribute = call.callable.runtimeAttributes.attributes.get("docker")
+        if (!dockerAttribute.isDefined) {
+          throw new WdlParser.SyntaxError(call.identifier.localName + " requires an associated docker container to make this a valid Dockstore tool.")
+        }
+      })
+  }
+
+  /**
+    * Retrieves the metadata objects of the workflow and tasks
+    * @return list of metadata mappings
+    */
+  def getMetadata(): util.ArrayList[util.Map[String, String]] = {
+    val metadataList = new util.ArrayList[util.Map[String, String]]()
+    bundle.allCallables.foreach(callable => {
+      callable._2 match {
+        case w: WorkflowDefinition => {
+          val metadata = JavaConverters.mapAsJavaMap(w.meta)
+          if (!metadata.isEmpty) {
+            metadataList.add(metadata)
+          }
+        }
+        case c: CallableTaskDefinition => {
+          val metadata = JavaConverters.mapAsJavaMap(c.meta)
+          if (!metadata.isEmpty) {
+            metadataList.add(metadata)
+          }
+        }
+      }
+    })
+    metadataList
+  }
+
+  /**
+    * Create a mapping of import namespace to uri
+    * Does not work with new parsing code, may be phased out
+    * @return map of call names to import path
+    */
+  @throws(classOf[WdlParser.SyntaxError])
+  def getImportMap(): util.LinkedHashMap[String, String] = {
+    val importMap = new util.LinkedHashMap[String, String]()
+    getExecutableCallable.taskCallNodes
+      .foreach(call => {
+        val callName = call.identifier.localName.value
+        val path = null
+        importMap.put(callName, path)
+      })
+    importMap
+  }
+
+  /**
+    * Create a mapping of calls to dependencies
+    * @return mapping of call to a list of dependencies
+    */
+  @throws(classOf[WdlParser.SyntaxError])
+  def getCallsToDependencies(): util.LinkedHashMap[String, util.List[String]] = {
+    val dependencyMap = new util.LinkedHashMap[String, util.List[String]]()
+    val callable = getExecutableCallable
+
+    callable.taskCallNodes
+      .foreach(call => {
+        val callName = call.identifier.localName.value
+        dependencyMap.put("dockstore_" + callName, new util.ArrayList[String]())
+      })
+
+    callable.taskCallNodes
+        .foreach(call => {
+          val dependencies = new util.ArrayList[String]()
+          call.inputDefinitionMappings
+            .foreach(inputMap => {
+              val maybePorts = inputMap._2 match {
+                case Inl(head) => Some(head.graphNode.inputPorts)
+                case a => None
+              }
+              maybePorts.foreach((inputPorts: Set[GraphNodePort.InputPort]) => {
+                inputPorts
+                  .foreach(inputPort => {
+                    val inputName = inputPort.name
+                    val lastPeriodIndex = inputName.lastIndexOf(".")
+                    if (lastPeriodIndex != -1) {
+                      dependencies.add("dockstore_" + inputName.substring(0, lastPeriodIndex))
+                    }
+                  })
+              })
+            })
+          dependencyMap.replace("dockstore_" + call.identifier.localName.value, dependencies)
+
+        })
+
+    dependencyMap
+  }
+
+  /**
+    * Create a mapping of calls to docker images
+    * @return mapping of call names to docker
+    */
+  @throws(classOf[WdlParser.SyntaxError])
+  def getCallsToDockerMap(): util.LinkedHashMap[String, String] = {
+    val callsToDockerMap = new util.LinkedHashMap[String, String]()
+    getExecutableCallable.taskCallNodes
+      .foreach(call => {
+        val dockerAttribute = call.callable.runtimeAttributes.attributes.get("docker")
+        val callName = "dockstore_" + call.identifier.localName.value
+        var dockerString = ""
+        if (dockerAttribute.isDefined) {
+          dockerString = dockerAttribute.get.sourceString.replaceAll("\"", "")
+        }
+        callsToDockerMap.put(callName, dockerString)
+      })
+    callsToDockerMap
+  }
+
+  @throws(classOf[WdlParser.SyntaxError])
+  private def getExecutableCallable: ExecutableCallable = {
+    executableCallable.getOrElse(throw new WdlParser.SyntaxError("Error parsing WDL file"))
+  }
+}
+
 object WdlBridge {
   val logger = LoggerFactory.getLogger(WdlBridge.getClass)
 }
@@ -396,6 +478,36 @@ case class MapResolver(filePath: String) extends ImportResolver {
   override def cleanupIfNecessary(): ErrorOr[Unit] = ().validNel
 }
 
+/**
+  * Class for resolving imports over http(s), downloads are shared by all parses through HttpImportCache.
+  * Like HttpResolver, imports of a document downloaded over http(s) may be relative to its url.
+  * @param relativeTo the url of the directory of the importing document, None if only absolute urls are resolved
+  */
+case class CachedHttpResolver(relativeTo: Option[String] = None) extends ImportResolver {
+  override def name: String = relativeTo match {
+    case Some(root) => s"Cached http importer (relative to $root)"
+    case None => "Cached http importer (no 'relative-to' origin)"
+  }
+
+  override protected def innerResolver(path: String, currentResolvers: List[ImportResolver]): Checked[ImportResolver.ResolvedImportBundle] = {
+    val isUrl = path.startsWith("http://") || path.startsWith("https://")
+    val toLookup = relativeTo match {
+      case Some(root) if !isUrl => Try(new URI(root).resolve(path).toString).toOption
+      case _ if isUrl => Some(path)
+      case _ => None
+    }
+    toLookup match {
+      case None => InvalidCheck(s"Cannot resolve relative path $path with resolver $name").invalidNelCheck
+      case Some(url) => Try(HttpImportCache.read(url)) match {
+        case Success(content) => ResolvedImportBundle(content, List(CachedHttpResolver(Some(url.substring(0, url.lastIndexOf('/') + 1))))).validNelCheck
+        case Failure(ex) => InvalidCheck(s"Failed to download $url (reason: ${ex.getMessage})").invalidNelCheck
+      }
+    }
+  }
+
+  override def cleanupIfNecessary(): ErrorOr[Unit] = ().validNel
+}
+
 object WdlBridgeShutDown {
   def shutdownSTTP(): Unit = {
     HttpResolver.closeBackendIfNecessary();
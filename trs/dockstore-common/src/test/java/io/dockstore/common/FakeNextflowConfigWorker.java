@@ -0,0 +1,67 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stands in for {@link NextflowConfigWorker} in tests, speaking its protocol without Nextflow. Reading a config prints the pid
+ * of the worker, so tests can tell when a worker is reused. A config of {@link #HANG} never returns, {@link #FAIL} fails
+ * while the worker still offers to be reused, and {@link #DIRTY} succeeds but leaves the worker unfit for reuse.
+ * <p>
+ * Copied on its own to the classpath of the worker, so it must not have nested classes and must only use the JDK.
+ */
+public final class FakeNextflowConfigWorker {
+    static final String HANG = "hang";
+    static final String FAIL = "fail";
+    static final String DIRTY = "dirty";
+
+    private FakeNextflowConfigWorker() {
+        // hide the default constructor for a utility class
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(System.out));
+        responses.writeInt(NextflowConfigWorker.READY);
+        responses.flush();
+        while (true) {
+            byte[] config;
+            try {
+                config = new byte[requests.readInt()];
+            } catch (EOFException e) {
+                return;
+            }
+            requests.readFully(config);
+            String content = new String(config, StandardCharsets.UTF_8);
+            if (HANG.equals(content)) {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            byte[] output = String.valueOf(ProcessHandle.current().pid()).getBytes(StandardCharsets.UTF_8);
+            responses.writeInt(FAIL.equals(content) ? NextflowConfigWorker.FAILED : 0);
+            responses.writeBoolean(!DIRTY.equals(content));
+            responses.writeInt(output.length);
+            responses.write(output);
+            responses.flush();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpImportCacheTest {
+    private HttpServer server;
+    private String root;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+        root = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void onlyHttpIsDownloaded() {
+        try {
+            HttpImportCache.read("file:///etc/passwd");
+            Assert.fail("Should not read local files");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Only http and https imports"));
+        }
+    }
+
+    @Test
+    public void failureIsRemembered() {
+        // nothing listens on port 1
+        final String url = "http://localhost:1/missing.wdl";
+        String firstFailure = null;
+        try {
+            HttpImportCache.read(url);
+            Assert.fail("Should not download from a closed port");
+        } catch (IOException e) {
+            firstFailure = e.getMessage();
+        }
+        try {
+            HttpImportCache.read(url);
+            Assert.fail("Should not download from a closed port");
+        } catch (IOException e) {
+            Assert.assertEquals(firstFailure, e.getMessage());
+        }
+    }
+
+    @Test
+    public void redirectsAreFollowed() throws IOException {
+        serve("/moved.wdl", 301, "/tasks/task.wdl", "");
+        serve("/tasks/task.wdl", 200, null, "task hello {}");
+
+        Assert.assertEquals("task hello {}", HttpImportCache.read(root + "/moved.wdl"));
+    }
+
+    @Test
+    public void redirectLoopFails() {
+        serve("/loop.wdl", 302, "/loop.wdl", "");
+        try {
+            HttpImportCache.read(root + "/loop.wdl");
+            Assert.fail("Should not follow redirects forever");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("redirects"));
+        }
+    }
+
+    @Test
+    public void largeDocumentIsRead() throws IOException {
+        String document = StringUtils.repeat("# comment\n", (int)FileUtils.ONE_MB / 5);
+        serve("/large.wdl", 200, null, document);
+
+        Assert.assertEquals(document, HttpImportCache.read(root + "/large.wdl"));
+    }
+
+    /**
+     * Tests that a document over the limit is not read through, and that it is remembered as a failure
+     */
+    @Test
+    public void tooLargeDocumentFails() {
+        String document = StringUtils.repeat("# comment\n", (int)FileUtils.ONE_MB);
+        serve("/huge.wdl", 200, null, document);
+        for (int i = 0; i < 2; i++) {
+            try {
+                HttpImportCache.read(root + "/huge.wdl");
+                Assert.fail("Should not read a document over the limit");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().contains("larger than"));
+            }
+        }
+    }
+
+    private void serve(String path, int status, String location, String body) {
+        server.createContext(path, exchange -> {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            if (location != null) {
+                exchange.getResponseHeaders().add("Location", location);
+            }
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(bytes);
+            }
+        });
+    }
+}
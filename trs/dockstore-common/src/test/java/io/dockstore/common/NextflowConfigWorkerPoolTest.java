@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the reuse and retirement of workers, with a worker that does not run Nextflow
+ */
+public class NextflowConfigWorkerPoolTest {
+    private static final long CONFIG_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+    private NextflowConfigWorkerPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new NextflowConfigWorkerPool(FakeNextflowConfigWorker.class, () -> new File("nextflow.jar"), 1, CONFIG_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void workerIsReused() {
+        String worker = pool.readConfigProperties("params.a = 1");
+        Assert.assertEquals(worker, pool.readConfigProperties("params.b = 2"));
+    }
+
+    @Test
+    public void workerIsRetiredAfterReadingManyConfigs() {
+        String worker = pool.readConfigProperties("params.a = 1");
+        for (int i = 1; i < NextflowConfigWorkerPool.MAX_CONFIGS_PER_WORKER; i++) {
+            Assert.assertEquals(worker, pool.readConfigProperties("params.a = 1"));
+        }
+        Assert.assertNotEquals(worker, pool.readConfigProperties("params.a = 1"));
+    }
+
+    @Test
+    public void workerThatTakesTooLongIsKilled() {
+        String worker = pool.readConfigProperties("params.a = 1");
+        long start = System.currentTimeMillis();
+        try {
+            pool.readConfigProperties(FakeNextflowConfigWorker.HANG);
+            Assert.fail("Should not wait for a config that never returns");
+        } catch (NextflowUtilities.NextflowParsingException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start < CONFIG_TIMEOUT_MILLIS * 2);
+        }
+        Assert.assertNotEquals(worker, pool.readConfigProperties("params.a = 1"));
+    }
+
+    /**
+     * Tests that a worker is retired after a failure, even if it offers to be reused
+     */
+    @Test
+    public void workerIsRetiredAfterAFailure() {
+        String worker = pool.readConfigProperties("params.a = 1");
+        try {
+            pool.readConfigProperties(FakeNextflowConfigWorker.FAIL);
+            Assert.fail("Should not read a config that fails");
+        } catch (NextflowUtilities.NextflowParsingException e) {
+            Assert.assertTrue(e.getMessage().contains("exit status " + NextflowConfigWorker.FAILED));
+        }
+        Assert.assertNotEquals(worker, pool.readConfigProperties("params.a = 1"));
+    }
+
+    @Test
+    public void workerThatIsNotReusableIsRetired() {
+        String worker = pool.readConfigProperties(FakeNextflowConfigWorker.DIRTY);
+        Assert.assertNotEquals(worker, pool.readConfigProperties("params.a = 1"));
+    }
+}
@@ -41,6 +41,7 @@ import io.dockstore.webservice.core.BioWorkflow;
 import io.dockstore.webservice.core.Checksum;
 import io.dockstore.webservice.core.Collection;
 import io.dockstore.webservice.core.CollectionOrganization;
+import io.dockstore.webservice.core.EntryStateChange;
 import io.dockstore.webservice.core.Event;
 import io.dockstore.webservice.core.FileFormat;
 import io.dockstore.webservice.core.Image;
@@ -48,6 +49,7 @@ import io.dockstore.webservice.core.Label;
 import io.dockstore.webservice.core.Notification;
 import io.dockstore.webservice.core.Organization;
 import io.dockstore.webservice.core.OrganizationUser;
+import io.dockstore.webservice.core.RefreshJob;
 import io.dockstore.webservice.core.Service;
 import io.dockstore.webservice.core.SourceFile;
 import io.dockstore.webservice.core.Tag;
@@ -55,19 +57,26 @@ import io.dockstore.webservice.core.Token;
 import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.User;
 import io.dockstore.webservice.core.Validation;
+import io.dockstore.webservice.core.VersionContent;
 import io.dockstore.webservice.core.VersionMetadata;
 import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowVersion;
 import io.dockstore.webservice.doi.DOIGeneratorFactory;
 import io.dockstore.webservice.helpers.CacheConfigManager;
+import io.dockstore.webservice.helpers.DescriptorContentCache;
+import io.dockstore.webservice.helpers.ElasticSearchHelper;
+import io.dockstore.webservice.helpers.EntryStateChangeDispatcher;
 import io.dockstore.webservice.helpers.GoogleHelper;
 import io.dockstore.webservice.helpers.MetadataResourceHelper;
 import io.dockstore.webservice.helpers.ObsoleteUrlFactory;
 import io.dockstore.webservice.helpers.PersistenceExceptionMapper;
 import io.dockstore.webservice.helpers.PublicStateManager;
+import io.dockstore.webservice.helpers.RefreshJobService;
 import io.dockstore.webservice.helpers.TransactionExceptionMapper;
 import io.dockstore.webservice.helpers.statelisteners.TRSListener;
+import io.dockstore.webservice.jdbi.EntryStateChangeDAO;
 import io.dockstore.webservice.jdbi.EventDAO;
+import io.dockstore.webservice.jdbi.RefreshJobDAO;
 import io.dockstore.webservice.jdbi.TagDAO;
 import io.dockstore.webservice.jdbi.TokenDAO;
 import io.dockstore.webservice.jdbi.ToolDAO;
@@ -88,6 +97,7 @@ import io.dockstore.webservice.resources.HostedWorkflowResource;
 import io.dockstore.webservice.resources.MetadataResource;
 import io.dockstore.webservice.resources.NotificationResource;
 import io.dockstore.webservice.resources.OrganizationResource;
+import io.dockstore.webservice.resources.RefreshJobResource;
 import io.dockstore.webservice.resources.ServiceResource;
 import io.dockstore.webservice.resources.TemplateHealthCheck;
 import io.dockstore.webservice.resources.TokenResource;
@@ -108,6 +118,7 @@ import io.dropwizard.forms.MultiPartBundle;
 import io.dropwizard.hibernate.HibernateBundle;
 import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
 import io.dropwizard.jersey.jackson.JsonProcessingExceptionMapper;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.migrations.MigrationsBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
@@ -130,6 +141,7 @@ import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlets.CrossOriginFilter;
 import org.glassfish.jersey.CommonProperties;
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
+import org.hibernate.SessionFactory;
 import org.pf4j.DefaultPluginManager;
 import org.pf4j.PluginWrapper;
 import org.slf4j.Logger;
@@ -158,7 +170,8 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
     private final HibernateBundle<DockstoreWebserviceConfiguration> hibernate = new HibernateBundle<DockstoreWebserviceConfiguration>(
             Token.class, Tool.class, User.class, Tag.class, Label.class, SourceFile.class, Workflow.class, CollectionOrganization.class,
             WorkflowVersion.class, FileFormat.class, Organization.class, Notification.class, OrganizationUser.class, Event.class, Collection.class,
-            Validation.class, BioWorkflow.class, Service.class, VersionMetadata.class, Image.class, Checksum.class) {
+            Validation.class, BioWorkflow.class, Service.class, VersionMetadata.class, Image.class, Checksum.class,
+            EntryStateChange.class, RefreshJob.class, VersionContent.class) {
         @Override
         public DataSourceFactory getDataSourceFactory(DockstoreWebserviceConfiguration configuration) {
             return configuration.getDataSourceFactory();
@@ -265,6 +278,23 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         publicStateManager.setConfig(configuration);
         final TRSListener trsListener = new TRSListener();
         publicStateManager.addListener(trsListener);
+        // the stored DAGs and tools tables link to published tools
+        final DescriptorContentCache descriptorContentCache = new DescriptorContentCache(hibernate.getSessionFactory());
+        publicStateManager.addListener(descriptorContentCache);
+        // managed objects are stopped in the reverse order they were added, so the shared client is closed after the bulk indexer
+        // has sent the index updates that are still queued when shutting down
+        environment.lifecycle().manage(new Managed() {
+            @Override
+            public void start() {
+                // the client is created when it is first used
+            }
+
+            @Override
+            public void stop() {
+                ElasticSearchHelper.closeRestClient();
+            }
+        });
+        environment.lifecycle().manage(publicStateManager.getElasticListener().getBulkIndexer());
 
         environment.jersey().property(CommonProperties.FEATURE_AUTO_DISCOVERY_DISABLE, true);
         environment.jersey().register(new JsonProcessingExceptionMapper(true));
@@ -281,6 +311,14 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         final WorkflowDAO workflowDAO = new WorkflowDAO(hibernate.getSessionFactory());
         final TagDAO tagDAO = new TagDAO(hibernate.getSessionFactory());
         final EventDAO eventDAO = new EventDAO(hibernate.getSessionFactory());
+        final EntryStateChangeDAO entryStateChangeDAO = new EntryStateChangeDAO(hibernate.getSessionFactory());
+
+        // applies the changes to public entries after the transactions that made them commit
+        EntryStateChangeDispatcher entryStateChangeDispatcher = new UnitOfWorkAwareProxyFactory(getHibernate())
+                .create(EntryStateChangeDispatcher.class, new Class[] { EntryStateChangeDAO.class, SessionFactory.class },
+                        new Object[] { entryStateChangeDAO, hibernate.getSessionFactory() });
+        publicStateManager.setDispatcher(hibernate.getSessionFactory(), entryStateChangeDAO, entryStateChangeDispatcher);
+        environment.lifecycle().manage(entryStateChangeDispatcher);
 
         LOG.info("Cache directory for OkHttp is: " + cache.directory().getAbsolutePath());
         LOG.info("This is our custom logger saying that we're about to load authenticators");
@@ -302,9 +340,11 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         final EntryResource entryResource = new EntryResource(toolDAO, configuration);
         environment.jersey().register(entryResource);
 
-        final WorkflowResource workflowResource = new WorkflowResource(httpClient, hibernate.getSessionFactory(), authorizer, entryResource, configuration);
+        final WorkflowResource workflowResource = new WorkflowResource(httpClient, hibernate.getSessionFactory(), authorizer, entryResource, configuration,
+            descriptorContentCache);
         environment.jersey().register(workflowResource);
-        final ServiceResource serviceResource = new ServiceResource(httpClient, hibernate.getSessionFactory(), configuration);
+        final ServiceResource serviceResource = new ServiceResource(httpClient, hibernate.getSessionFactory(), configuration,
+            descriptorContentCache);
         environment.jersey().register(serviceResource);
 
         // Note workflow resource must be passed to the docker repo resource, as the workflow resource refresh must be called for checker workflows
@@ -313,13 +353,27 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         environment.jersey().register(new DockerRepoTagResource(toolDAO, tagDAO, eventDAO));
         environment.jersey().register(new TokenResource(tokenDAO, userDAO, httpClient, cachingAuthenticator, configuration));
 
-        environment.jersey().register(new UserResource(httpClient, getHibernate().getSessionFactory(), workflowResource, serviceResource, dockerRepoResource, cachingAuthenticator, authorizer));
+        final UserResource userResource = new UserResource(httpClient, getHibernate().getSessionFactory(), workflowResource, serviceResource, dockerRepoResource, cachingAuthenticator, authorizer);
+        environment.jersey().register(userResource);
+
+        // runs the refreshes submitted to the refresh job resource on a bounded pool of threads, committing as each job goes
+        final RefreshJobDAO refreshJobDAO = new RefreshJobDAO(hibernate.getSessionFactory());
+        RefreshJobService refreshJobService = new UnitOfWorkAwareProxyFactory(getHibernate())
+                .create(RefreshJobService.class, new Class[] { RefreshJobDAO.class, UserDAO.class, SessionFactory.class },
+                        new Object[] { refreshJobDAO, userDAO, hibernate.getSessionFactory() });
+        refreshJobService.setHandler(RefreshJob.Type.WORKFLOW, workflowResource::refreshWorkflow);
+        refreshJobService.setHandler(RefreshJob.Type.TOOL, dockerRepoResource::refreshTool);
+        refreshJobService.setHandler(RefreshJob.Type.USER_WORKFLOWS, userResource::refreshUserWorkflows);
+        refreshJobService.setHandler(RefreshJob.Type.USER_TOOLS, userResource::refreshUserTools);
+        environment.lifecycle().manage(refreshJobService);
+        environment.jersey().register(new RefreshJobResource(hibernate.getSessionFactory(), refreshJobService));
 
         MetadataResourceHelper.init(configuration);
 
         environment.jersey().register(new MetadataResource(getHibernate().getSessionFactory(), configuration));
         environment.jersey().register(new HostedToolResource(getHibernate().getSessionFactory(), authorizer, configuration.getLimitConfig()));
-        environment.jersey().register(new HostedWorkflowResource(getHibernate().getSessionFactory(), authorizer, configuration.getLimitConfig()));
+        environment.jersey().register(new HostedWorkflowResource(getHibernate().getSessionFactory(), authorizer, configuration.getLimitConfig(),
+            descriptorContentCache));
         environment.jersey().register(new OrganizationResource(getHibernate().getSessionFactory()));
         environment.jersey().register(new NotificationResource(getHibernate().getSessionFactory()));
         environment.jersey().register(new CollectionResource(getHibernate().getSessionFactory()));
@@ -348,7 +402,11 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         ToolsApi toolsApi = new ToolsApi(null);
         environment.jersey().register(toolsApi);
 
-        // TODO: attach V2 final properly
+        io.openapi.api.impl.ToolsApiServiceImpl.setToolDAO(toolDAO);
+        io.openapi.api.impl.ToolsApiServiceImpl.setWorkflowDAO(workflowDAO);
+        io.openapi.api.impl.ToolsApiServiceImpl.setConfig(configuration);
+        io.openapi.api.impl.ToolsApiServiceImpl.setTrsListener(trsListener);
+        io.openapi.api.impl.ToolsApiServiceImpl.setObjectMapper(environment.getObjectMapper());
         environment.jersey().register(new io.openapi.api.ToolsApi(null));
 
         environment.jersey().register(new ToolsExtendedApi());
@@ -37,7 +37,9 @@ import io.swagger.annotations.ApiModelProperty;
 @Table(name = "workflow")
 @NamedQueries({
         @NamedQuery(name = "io.dockstore.webservice.core.BioWorkflow.findAllPublishedPaths", query = "SELECT new io.dockstore.webservice.core.database.WorkflowPath(c.sourceControl, c.organization, c.repository, c.workflowName) from BioWorkflow c where c.isPublished = true"),
-        @NamedQuery(name = "io.dockstore.webservice.core.BioWorkflow.findAllPublishedPathsOrderByDbupdatedate", query = "SELECT new io.dockstore.webservice.core.database.RSSWorkflowPath(c.sourceControl, c.organization, c.repository, c.workflowName, c.lastUpdated, c.description) from BioWorkflow c where c.isPublished = true and c.dbUpdateDate is not null ORDER BY c.dbUpdateDate desc")
+        @NamedQuery(name = "io.dockstore.webservice.core.BioWorkflow.findAllPublishedPathsOrderByDbupdatedate", query = "SELECT new io.dockstore.webservice.core.database.RSSWorkflowPath(c.sourceControl, c.organization, c.repository, c.workflowName, c.lastUpdated, c.description) from BioWorkflow c where c.isPublished = true and c.dbUpdateDate is not null ORDER BY c.dbUpdateDate desc"),
+        @NamedQuery(name = "io.dockstore.webservice.core.BioWorkflow.findPublishedVersionByWorkflowPath", query = "SELECT new io.dockstore.webservice.core.database.PublishedEntryVersion(c.id, c.gitUrl, v) FROM BioWorkflow c JOIN c.workflowVersions v WHERE c.sourceControl = :sourcecontrol AND c.organization = :organization AND c.repository = :repository AND c.workflowName = :workflowname AND c.isPublished = true AND lower(v.name) = lower(:versionname)"),
+        @NamedQuery(name = "io.dockstore.webservice.core.BioWorkflow.findPublishedVersionByWorkflowPathNullWorkflowName", query = "SELECT new io.dockstore.webservice.core.database.PublishedEntryVersion(c.id, c.gitUrl, v) FROM BioWorkflow c JOIN c.workflowVersions v WHERE c.sourceControl = :sourcecontrol AND c.organization = :organization AND c.repository = :repository AND c.workflowName IS NULL AND c.isPublished = true AND lower(v.name) = lower(:versionname)")
 })
 @SuppressWarnings("checkstyle:magicnumber")
 public class BioWorkflow extends Workflow {
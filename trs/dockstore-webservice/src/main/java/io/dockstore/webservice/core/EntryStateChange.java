@@ -0,0 +1,130 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.core;
+
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+import io.dockstore.webservice.helpers.StateManagerMode;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * A change to a public entry that the state listeners (search index, sitemap, RSS and TRS caches) have not seen yet.
+ * Changes are written in the transaction that made them, so they only become visible if it commits,
+ * and are applied to the listeners in the background by the state change dispatcher.
+ * A change that a listener fails on stays, and is tried again after a delay that grows with its number of attempts.
+ *
+ * @since 1.9.0
+ */
+@Entity
+@Table(name = "entry_state_change")
+// SKIP LOCKED is written out, Hibernate's PostgreSQLDialect turns LockMode.UPGRADE_SKIPLOCKED into a plain FOR UPDATE
+@NamedNativeQueries({
+        @NamedNativeQuery(name = "io.dockstore.webservice.core.EntryStateChange.findOldest",
+                query = "SELECT * FROM entry_state_change WHERE nextattemptat IS NULL OR nextattemptat <= :now ORDER BY id LIMIT :limit "
+                        + "FOR UPDATE SKIP LOCKED",
+                resultClass = EntryStateChange.class)
+})
+@NamedQueries({
+        @NamedQuery(name = "io.dockstore.webservice.core.EntryStateChange.deleteByIds",
+                query = "DELETE EntryStateChange c WHERE c.id IN (:ids)")
+})
+public class EntryStateChange {
+
+    @Id
+    @Column
+    @GeneratedValue(strategy = GenerationType.IDENTITY)  // id is auto incremented by the database, changes are applied in id order
+    private long id;
+
+    @Column(nullable = false)
+    private String entryType;  // the Hibernate entity name of the entry, e.g. io.dockstore.webservice.core.Tool
+
+    @Column(nullable = false)
+    private long entryId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private StateManagerMode mode;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column
+    private Timestamp nextAttemptAt;  // null until a listener fails on the change
+
+    // database timestamps
+    @Column(updatable = false)
+    @CreationTimestamp
+    private Timestamp dbCreateDate;
+
+    public EntryStateChange() { }
+
+    public EntryStateChange(String entryType, long entryId, StateManagerMode mode) {
+        this.entryType = entryType;
+        this.entryId = entryId;
+        this.mode = mode;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEntryType() {
+        return entryType;
+    }
+
+    public long getEntryId() {
+        return entryId;
+    }
+
+    public StateManagerMode getMode() {
+        return mode;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Timestamp getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    /**
+     * Records that a listener failed on the change
+     *
+     * @param nextAttempt when to try the change again
+     */
+    public void failedAttempt(Timestamp nextAttempt) {
+        this.attempts++;
+        this.nextAttemptAt = nextAttempt;
+    }
+
+    public Timestamp getDbCreateDate() {
+        return dbCreateDate;
+    }
+}
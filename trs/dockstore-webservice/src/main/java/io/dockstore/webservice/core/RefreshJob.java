@@ -0,0 +1,196 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.core;
+
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+/**
+ * A refresh of an entry, or of all the entries of a user, that runs in the background.
+ * Jobs are queued in the database and run in the order they were submitted by the refresh job service.
+ *
+ * @since 1.9.0
+ */
+@ApiModel(value = "RefreshJob", description = "A refresh that runs in the background")
+@Entity
+@Table(name = "refresh_job")
+// SKIP LOCKED is written out, Hibernate's PostgreSQLDialect turns LockMode.UPGRADE_SKIPLOCKED into a plain FOR UPDATE
+@NamedNativeQueries({
+        @NamedNativeQuery(name = "io.dockstore.webservice.core.RefreshJob.findQueued",
+                query = "SELECT * FROM refresh_job WHERE status = 'QUEUED' ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+                resultClass = RefreshJob.class)
+})
+@NamedQueries({
+        @NamedQuery(name = "io.dockstore.webservice.core.RefreshJob.findRunning",
+                query = "SELECT j FROM RefreshJob j WHERE j.status = 'RUNNING'"),
+        @NamedQuery(name = "io.dockstore.webservice.core.RefreshJob.findQueuedByTarget",
+                query = "SELECT j FROM RefreshJob j WHERE j.status = 'QUEUED' AND j.type = :type AND j.targetId = :targetId"),
+        @NamedQuery(name = "io.dockstore.webservice.core.RefreshJob.countQueuedByUser",
+                query = "SELECT COUNT(j) FROM RefreshJob j WHERE j.status = 'QUEUED' AND j.userId = :userId"),
+        @NamedQuery(name = "io.dockstore.webservice.core.RefreshJob.countQueuedBefore",
+                query = "SELECT COUNT(j) FROM RefreshJob j WHERE j.status = 'QUEUED' AND j.id < :id")
+})
+public class RefreshJob {
+
+    @Id
+    @Column
+    @GeneratedValue(strategy = GenerationType.IDENTITY)  // id is auto incremented by the database, jobs are run in id order
+    @ApiModelProperty(value = "ID for the refresh job", position = 0)
+    private long id;
+
+    @Column(nullable = false)
+    @ApiModelProperty(value = "ID of the user that submitted the job, the refresh is done with their tokens", position = 1)
+    private long userId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    @ApiModelProperty(value = "What is refreshed", position = 2)
+    private Type type;
+
+    @Column(nullable = false)
+    @ApiModelProperty(value = "ID of the workflow, tool or user that is refreshed", position = 3)
+    private long targetId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    @ApiModelProperty(value = "Status of the job", position = 4)
+    private Status status = Status.QUEUED;
+
+    @Column(columnDefinition = "TEXT")
+    @ApiModelProperty(value = "Why the job failed", position = 5)
+    private String message;
+
+    @Column
+    @ApiModelProperty(value = "Timestamp at which the job started running", position = 6)
+    private Timestamp startedAt;
+
+    @Column
+    @ApiModelProperty(value = "Timestamp at which the job finished", position = 7)
+    private Timestamp finishedAt;
+
+    @Transient
+    @ApiModelProperty(value = "Number of queued jobs that will start before this one, only set while the job is queued", position = 8)
+    private Long queuePosition;
+
+    // database timestamps
+    @Column(updatable = false)
+    @CreationTimestamp
+    @ApiModelProperty(value = "Timestamp at which the job was submitted", position = 9)
+    private Timestamp dbCreateDate;
+
+    @Column()
+    @UpdateTimestamp
+    @ApiModelProperty(value = "Timestamp at which the job was last updated", position = 10)
+    private Timestamp dbUpdateDate;
+
+    public RefreshJob() { }
+
+    public RefreshJob(long userId, Type type, long targetId) {
+        this.userId = userId;
+        this.type = type;
+        this.targetId = targetId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTargetId() {
+        return targetId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Timestamp getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Timestamp startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Timestamp getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Timestamp finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public Long getQueuePosition() {
+        return queuePosition;
+    }
+
+    public void setQueuePosition(Long queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+
+    public Timestamp getDbCreateDate() {
+        return dbCreateDate;
+    }
+
+    public Timestamp getDbUpdateDate() {
+        return dbUpdateDate;
+    }
+
+    public enum Type {
+        WORKFLOW, TOOL, USER_WORKFLOWS, USER_TOOLS
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+}
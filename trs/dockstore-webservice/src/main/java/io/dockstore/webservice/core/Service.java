@@ -16,6 +16,7 @@
 package io.dockstore.webservice.core;
 
 import javax.persistence.Entity;
+import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
@@ -25,7 +26,11 @@ import io.swagger.annotations.ApiModel;
 @ApiModel(value = "Service", description = "This describes one service in the dockstore as a special degenerate case of a workflow", parent = Workflow.class)
 @Entity
 @Table(name = "service")
-@NamedQuery(name = "io.dockstore.webservice.core.Service.findAllPublishedPaths", query = "SELECT new io.dockstore.webservice.core.database.WorkflowPath(c.sourceControl, c.organization, c.repository, c.workflowName) from Service c where c.isPublished = true")
+@NamedQueries({
+        @NamedQuery(name = "io.dockstore.webservice.core.Service.findAllPublishedPaths", query = "SELECT new io.dockstore.webservice.core.database.WorkflowPath(c.sourceControl, c.organization, c.repository, c.workflowName) from Service c where c.isPublished = true"),
+        @NamedQuery(name = "io.dockstore.webservice.core.Service.findPublishedVersionByWorkflowPath", query = "SELECT new io.dockstore.webservice.core.database.PublishedEntryVersion(c.id, c.gitUrl, v) FROM Service c JOIN c.workflowVersions v WHERE c.sourceControl = :sourcecontrol AND c.organization = :organization AND c.repository = :repository AND c.workflowName = :workflowname AND c.isPublished = true AND lower(v.name) = lower(:versionname)"),
+        @NamedQuery(name = "io.dockstore.webservice.core.Service.findPublishedVersionByWorkflowPathNullWorkflowName", query = "SELECT new io.dockstore.webservice.core.database.PublishedEntryVersion(c.id, c.gitUrl, v) FROM Service c JOIN c.workflowVersions v WHERE c.sourceControl = :sourcecontrol AND c.organization = :organization AND c.repository = :repository AND c.workflowName IS NULL AND c.isPublished = true AND lower(v.name) = lower(:versionname)")
+})
 public class Service extends Workflow {
 
     public enum SubClass { DOCKER_COMPOSE, SWARM, KUBERNETES, HELM }
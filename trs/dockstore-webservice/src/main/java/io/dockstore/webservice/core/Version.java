@@ -44,6 +44,7 @@ import javax.persistence.OneToOne;
 import javax.persistence.OrderBy;
 import javax.persistence.PrimaryKeyJoinColumn;
 import javax.persistence.SequenceGenerator;
+import javax.persistence.Transient;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -161,6 +162,13 @@ public abstract class Version<T extends Version> implements Comparable<T> {
     @ApiModelProperty(value = "The images that belong to this version", position = 15)
     private Set<Image> images = new HashSet<>();
 
+    /**
+     * Set by a refresh on a version whose ref has not moved since it was last refreshed, the stored version is then kept as is
+     */
+    @Transient
+    @JsonIgnore
+    private boolean unchanged = false;
+
     public Version() {
         sourceFiles = new TreeSet<>();
         validations = new TreeSet<>();
@@ -192,6 +200,15 @@ public abstract class Version<T extends Version> implements Comparable<T> {
         return dirtyBit;
     }
 
+    @JsonIgnore
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    public void setUnchanged(boolean unchanged) {
+        this.unchanged = unchanged;
+    }
+
     public void setDirtyBit(boolean dirtyBit) {
         if (!this.isFrozen()) {
             this.dirtyBit = dirtyBit;
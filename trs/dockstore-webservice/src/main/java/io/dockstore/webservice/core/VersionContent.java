@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.core;
+
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * The DAG or tools table JSON of a workflow version, with a hash of the descriptors it was built from.
+ * Kept out of the version so that listing versions does not load it, and so that it can be rebuilt for frozen versions.
+ * Rows are written with an upsert by the DAO rather than through the session.
+ *
+ * @since 1.9.0
+ */
+@Entity
+@Table(name = "version_content", uniqueConstraints = @UniqueConstraint(columnNames = { "versionid", "type" }))
+@NamedQueries({
+        @NamedQuery(name = "io.dockstore.webservice.core.VersionContent.findByVersionAndType",
+                query = "SELECT c FROM VersionContent c WHERE c.versionId = :versionId AND c.type = :type")
+})
+public class VersionContent {
+
+    @Id
+    @Column
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(nullable = false)
+    private long versionId;
+
+    /**
+     * DAG or TOOLS
+     */
+    @Column(nullable = false)
+    private String type;
+
+    @Column(nullable = false)
+    private String contentHash;
+
+    /**
+     * Null if the language handler produced none
+     */
+    @Column(columnDefinition = "TEXT")
+    private String content;
+
+    @Column(nullable = false)
+    private Timestamp dbUpdateDate;
+
+    public long getId() {
+        return id;
+    }
+
+    public long getVersionId() {
+        return versionId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public Timestamp getDbUpdateDate() {
+        return dbUpdateDate;
+    }
+}
@@ -32,6 +32,7 @@ import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ComparisonChain;
@@ -81,6 +82,13 @@ public class WorkflowVersion extends Version<WorkflowVersion> implements Compara
     @ApiModelProperty(value = "The subclass of this for services.", position = 103)
     private Service.SubClass subClass = null;
 
+    /**
+     * The SourceCodeRepoInterface.PARSER_VERSION that the files of the version were read with, null if unknown
+     */
+    @Column
+    @JsonIgnore
+    private Integer parserVersion;
+
     public WorkflowVersion() {
         super();
     }
@@ -108,6 +116,11 @@ public class WorkflowVersion extends Version<WorkflowVersion> implements Compara
         super.setReference(workflowVersion.getReference());
         workflowPath = workflowVersion.getWorkflowPath();
         lastModified = workflowVersion.getLastModified();
+        // only GitHub reports commits, keep the last one known otherwise
+        if (workflowVersion.getCommitID() != null) {
+            setCommitID(workflowVersion.getCommitID());
+        }
+        parserVersion = workflowVersion.getParserVersion();
     }
 
     public void clone(WorkflowVersion tag) {
@@ -125,6 +138,14 @@ public class WorkflowVersion extends Version<WorkflowVersion> implements Compara
         this.workflowPath = workflowPath;
     }
 
+    public Integer getParserVersion() {
+        return parserVersion;
+    }
+
+    public void setParserVersion(Integer parserVersion) {
+        this.parserVersion = parserVersion;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -0,0 +1,47 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.core.database;
+
+import io.dockstore.webservice.core.Version;
+
+/**
+ * One version of a published entry, along with the few entry fields needed to serve its files.
+ * Loading this does not load the entry and therefore not its other versions.
+ * @since 1.9.0
+ */
+public class PublishedEntryVersion {
+    private final long entryId;
+    private final String gitUrl;
+    private final Version<?> version;
+
+    public PublishedEntryVersion(Long entryId, String gitUrl, Version<?> version) {
+        this.entryId = entryId;
+        this.gitUrl = gitUrl;
+        this.version = version;
+    }
+
+    public long getEntryId() {
+        return entryId;
+    }
+
+    public String getGitUrl() {
+        return gitUrl == null ? "" : gitUrl;
+    }
+
+    public Version<?> getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.core.database;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+import io.dockstore.webservice.core.Entry;
+
+/**
+ * Position in the GA4GH TRS /tools listing, which is ordered by (gitUrl, id). A page starting at a cursor holds the entries
+ * that sort after it, so a page is found with an index range scan rather than by skipping every entry before it.
+ * Clients see the cursor as an opaque token in the offset parameter.
+ * @since 1.9.0
+ */
+public class TRSCursor {
+    private static final char SEPARATOR = ':';
+
+    private final String gitUrl;
+    private final long id;
+
+    public TRSCursor(String gitUrl, long id) {
+        this.gitUrl = gitUrl;
+        this.id = id;
+    }
+
+    /**
+     * @param entry the last entry of a page
+     * @return the cursor for the page following that entry
+     */
+    public static TRSCursor after(Entry<?, ?> entry) {
+        // a null gitUrl is sorted as an empty one, which is also what Entry.getGitUrl() returns for it
+        return new TRSCursor(entry.getGitUrl(), entry.getId());
+    }
+
+    /**
+     * @param token a token created by {@link #encode()}
+     * @return the cursor, empty if the token is not one of ours (e.g. a numeric offset)
+     */
+    public static Optional<TRSCursor> decode(String token) {
+        final String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        int separator = decoded.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new TRSCursor(decoded.substring(separator + 1), Long.parseLong(decoded.substring(0, separator))));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public String encode() {
+        String value = id + String.valueOf(SEPARATOR) + gitUrl;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getGitUrl() {
+        return gitUrl;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.core.database;
+
+import java.util.Objects;
+
+/**
+ * The filters of the GA4GH TRS /tools endpoint, passed down to the database so that only one page of entries is loaded.
+ * A null field means the filter is not applied.
+ * @since 1.9.0
+ */
+public class TRSToolFilter {
+    private String registry;
+    private String organization;
+    private String name;
+    private String toolname;
+    private String description;
+    private String author;
+    private Boolean checker;
+    private String toolClass;
+
+    public String getRegistry() {
+        return registry;
+    }
+
+    public TRSToolFilter setRegistry(String registry) {
+        this.registry = registry;
+        return this;
+    }
+
+    public String getOrganization() {
+        return organization;
+    }
+
+    public TRSToolFilter setOrganization(String organization) {
+        this.organization = organization;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TRSToolFilter setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public String getToolname() {
+        return toolname;
+    }
+
+    public TRSToolFilter setToolname(String toolname) {
+        this.toolname = toolname;
+        return this;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public TRSToolFilter setDescription(String description) {
+        this.description = description;
+        return this;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public TRSToolFilter setAuthor(String author) {
+        this.author = author;
+        return this;
+    }
+
+    public Boolean getChecker() {
+        return checker;
+    }
+
+    public TRSToolFilter setChecker(Boolean checker) {
+        this.checker = checker;
+        return this;
+    }
+
+    public String getToolClass() {
+        return toolClass;
+    }
+
+    /**
+     * @param toolClass the name of a GA4GH tool class, one of CommandLineTool, Workflow or Service
+     */
+    public TRSToolFilter setToolClass(String toolClass) {
+        this.toolClass = toolClass;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final TRSToolFilter other = (TRSToolFilter)obj;
+        return Objects.equals(registry, other.registry) && Objects.equals(organization, other.organization)
+            && Objects.equals(name, other.name) && Objects.equals(toolname, other.toolname)
+            && Objects.equals(description, other.description) && Objects.equals(author, other.author)
+            && Objects.equals(checker, other.checker) && Objects.equals(toolClass, other.toolClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(registry, organization, name, toolname, description, author, checker, toolClass);
+    }
+}
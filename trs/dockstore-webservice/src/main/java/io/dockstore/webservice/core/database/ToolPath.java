@@ -32,6 +32,11 @@ public class ToolPath {
         this.tool.setToolname(toolname);
     }
 
+    public ToolPath(long id, String registry, String namespace, String name, String toolname) {
+        this(registry, namespace, name, toolname);
+        this.tool.setId(id);
+    }
+
     public Tool getTool() {
         return tool;
     }
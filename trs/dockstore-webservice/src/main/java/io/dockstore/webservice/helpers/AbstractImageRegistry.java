@@ -20,10 +20,13 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,10 +37,20 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
 
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import io.dockstore.common.DescriptorLanguage;
@@ -82,6 +95,26 @@ public abstract class AbstractImageRegistry {
     public static final String DOCKERHUB_URL = "https://hub.docker.com/v2/";
     private static final Logger LOG = LoggerFactory.getLogger(AbstractImageRegistry.class);
     private static final String GITLAB_URL = "https://gitlab.com/api/v4/";
+    private static final int FETCH_THREADS = 16;
+    private static final int MAX_FETCHES_PER_HOST = 4;
+    /**
+     * How many tools of a refresh are fetched ahead of the one being updated, each holds the refs it read ahead until it is updated
+     */
+    private static final int READ_AHEAD_TOOLS = 3;
+    /**
+     * Shared by all refreshes, so the number of threads talking to registries and source control is bounded for the whole webservice
+     */
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newFixedThreadPool(FETCH_THREADS, new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "registry-fetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final Map<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
 
 
     /**
@@ -140,12 +173,13 @@ public abstract class AbstractImageRegistry {
      * @param bitbucketToken The user's Bitbucket token
      * @param gitlabToken    The user's GitLab token
      * @param organization   If not null, only refresh tools belonging to the specific organization. Otherwise, refresh all.
+     * @param checkpoint     Commits what has been written so far, called once the tools are updated and after the tags of each tool
      * @return The list of tools that have been updated
      */
     @SuppressWarnings("checkstyle:parameternumber")
     public List<Tool> refreshTools(final long userId, final UserDAO userDAO, final ToolDAO toolDAO, final TagDAO tagDAO,
             final FileDAO fileDAO, final FileFormatDAO fileFormatDAO, final HttpClient client, final Token githubToken, final Token bitbucketToken, final Token gitlabToken,
-            String organization, final EventDAO eventDAO) {
+            String organization, final EventDAO eventDAO, final Runnable checkpoint) {
         // Get all the namespaces for the given registry
         List<String> namespaces;
         if (organization != null) {
@@ -179,14 +213,34 @@ public abstract class AbstractImageRegistry {
 
         // Update db tools by copying over from api tools
         List<Tool> newDBTools = updateTools(apiTools, dbTools, user, toolDAO);
+        checkpoint.run();
 
-        // Get tags and update for each tool
-        for (Tool tool : newDBTools) {
-            List<Tag> toolTags = getTags(tool);
-            final SourceCodeRepoInterface sourceCodeRepo = SourceCodeRepoFactory
-                .createSourceCodeRepo(tool.getGitUrl(), client, bitbucketToken == null ? null : bitbucketToken.getContent(),
-                    gitlabToken == null ? null : gitlabToken.getContent(), githubToken.getContent());
-            updateTags(toolTags, tool, sourceCodeRepo, tagDAO, fileDAO, toolDAO, fileFormatDAO, eventDAO, user);
+        // Get tags and read ahead the source files of the next few tools concurrently, then update each tool in order on this thread
+        Deque<ToolFetch> fetches = new ArrayDeque<>();
+        Iterator<Tool> toolsToFetch = newDBTools.iterator();
+        try {
+            while (toolsToFetch.hasNext() || !fetches.isEmpty()) {
+                while (fetches.size() < READ_AHEAD_TOOLS && toolsToFetch.hasNext()) {
+                    Tool tool = toolsToFetch.next();
+                    final SourceCodeRepoInterface sourceCodeRepo = SourceCodeRepoFactory
+                        .createSourceCodeRepo(tool.getGitUrl(), client, bitbucketToken == null ? null : bitbucketToken.getContent(),
+                            gitlabToken == null ? null : gitlabToken.getContent(), githubToken.getContent());
+                    Set<String> existingReferences = getReferences(tool.getWorkflowVersions());
+                    CompletableFuture<List<Tag>> tagFetch = CompletableFuture
+                        .supplyAsync(() -> withHostPermit(getRegistry().name(), () -> getTags(tool)), FETCH_EXECUTOR);
+                    fetches.add(new ToolFetch(tool, sourceCodeRepo, tagFetch, tagFetch.thenCompose(
+                        tags -> prefetchReferences(tool, sourceCodeRepo, Sets.union(existingReferences, getReferences(tags))))));
+                }
+                // the source code repo of a tool, and the snapshots it read ahead, are dropped once the tool is updated
+                ToolFetch fetch = fetches.remove();
+                List<Tag> toolTags = await(fetch.tags);
+                // files that could not be read ahead are read again while updating
+                fetch.prefetch.exceptionally(e -> null).join();
+                updateTags(toolTags, fetch.tool, fetch.sourceCodeRepo, tagDAO, fileDAO, toolDAO, fileFormatDAO, eventDAO, user);
+                checkpoint.run();
+            }
+        } finally {
+            fetches.forEach(ToolFetch::cancel);
         }
 
         return newDBTools;
@@ -266,6 +320,11 @@ public abstract class AbstractImageRegistry {
             toolTags = getTags(tool);
         }
 
+        // read the refs of the tags ahead concurrently, files that could not be read ahead are read again while updating
+        if (sourceCodeRepoInterface != null) {
+            Set<String> references = Sets.union(getReferences(tool.getWorkflowVersions()), getReferences(toolTags));
+            prefetchReferences(tool, sourceCodeRepoInterface, references).exceptionally(e -> null).join();
+        }
         updateTags(toolTags, tool, sourceCodeRepoInterface, tagDAO, fileDAO, toolDAO, fileFormatDAO, eventDAO, user);
         Tool updatedTool = newDBTools.get(0);
 
@@ -276,6 +335,61 @@ public abstract class AbstractImageRegistry {
         return updatedTool;
     }
 
+    /**
+     * Reads ahead the refs of a tool on the fetch executor, one task per ref
+     *
+     * @return completes once every ref has been read ahead, or could not be
+     */
+    private CompletableFuture<Void> prefetchReferences(Tool tool, SourceCodeRepoInterface sourceCodeRepo, Set<String> references) {
+        Map<String, String> gitUrl = SourceCodeRepoFactory.parseGitUrl(tool.getGitUrl());
+        String repositoryId = sourceCodeRepo == null ? null : sourceCodeRepo.getRepositoryId(tool);
+        if (gitUrl == null || repositoryId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String host = gitUrl.get("Source");
+        CompletableFuture<?>[] prefetches = references.stream()
+            .map(reference -> CompletableFuture.runAsync(() -> withHostPermit(host, () -> {
+                sourceCodeRepo.prefetch(repositoryId, reference);
+                return null;
+            }), FETCH_EXECUTOR))
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(prefetches);
+    }
+
+    private static Set<String> getReferences(Collection<Tag> tags) {
+        if (tags == null) {
+            return Collections.emptySet();
+        }
+        return tags.stream().map(Tag::getReference).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    /**
+     * Runs a fetch once fewer than {@link #MAX_FETCHES_PER_HOST} fetches are talking to the same host
+     */
+    private static <T> T withHostPermit(String host, Supplier<T> fetch) {
+        Semaphore permits = HOST_PERMITS.computeIfAbsent(host, key -> new Semaphore(MAX_FETCHES_PER_HOST));
+        permits.acquireUninterruptibly();
+        try {
+            return fetch.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the result of a fetch, its exception is rethrown as is if it is unchecked
+     */
+    private static <T> T await(CompletableFuture<T> fetch) {
+        try {
+            return fetch.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
     public List<Tag> getTagsDockerHub(Tool tool) {
         final String repo = tool.getNamespace() + '/' + tool.getName();
         LOG.info(" ======================= Getting tags for: {}================================", tool.getPath());
@@ -369,54 +483,43 @@ public abstract class AbstractImageRegistry {
                 return;
             }
 
+            Set<String> newTagNames = newTags.stream().map(Tag::getName).collect(Collectors.toSet());
             List<Tag> toDelete = new ArrayList<>(0);
             for (Iterator<Tag> iterator = existingTags.iterator(); iterator.hasNext(); ) {
                 Tag oldTag = iterator.next();
-                boolean exists = false;
-                for (Tag newTag : newTags) {
-                    if (newTag.getName().equals(oldTag.getName())) {
-                        exists = true;
-                        break;
-                    }
-                }
-                if (!exists) {
+                if (!newTagNames.contains(oldTag.getName())) {
                     toDelete.add(oldTag);
                     iterator.remove();
                 }
             }
 
+            // the first tag of each name
+            Map<String, Tag> existingTagsByName = new HashMap<>();
+            existingTags.forEach(oldTag -> existingTagsByName.putIfAbsent(oldTag.getName(), oldTag));
             for (Tag newTag : newTags) {
-                boolean exists = false;
-
                 // Find if user already has the tag
-                for (Tag oldTag : existingTags) {
-                    if (newTag.getName().equals(oldTag.getName())) {
-                        exists = true;
-                        updateImageInformation(tool, newTag, oldTag);
-                        oldTag.update(newTag);
-                        // Update tag with default paths if dirty bit not set
-                        if (!oldTag.isDirtyBit()) {
-                            // Has not been modified => set paths
-                            oldTag.setCwlPath(tool.getDefaultCwlPath());
-                            oldTag.setWdlPath(tool.getDefaultWdlPath());
-                            oldTag.setDockerfilePath(tool.getDefaultDockerfilePath());
-                            //TODO: keep an eye on this, this used to always create new test params no matter what
-                            if (tool.getDefaultTestCwlParameterFile() != null && oldTag.getSourceFiles().stream()
-                                .noneMatch(file -> file.getPath().equals(tool.getDefaultTestCwlParameterFile()))) {
-                                oldTag.getSourceFiles().add(createSourceFile(tool.getDefaultTestCwlParameterFile(), DescriptorLanguage.FileType.CWL_TEST_JSON));
-                            }
-                            if (tool.getDefaultTestWdlParameterFile() != null && oldTag.getSourceFiles().stream()
-                                .noneMatch(file -> file.getPath().equals(tool.getDefaultTestWdlParameterFile()))) {
-                                oldTag.getSourceFiles().add(createSourceFile(tool.getDefaultTestWdlParameterFile(), DescriptorLanguage.FileType.WDL_TEST_JSON));
-                            }
+                Tag oldTag = existingTagsByName.get(newTag.getName());
+                if (oldTag != null) {
+                    updateImageInformation(tool, newTag, oldTag);
+                    oldTag.update(newTag);
+                    // Update tag with default paths if dirty bit not set
+                    if (!oldTag.isDirtyBit()) {
+                        // Has not been modified => set paths
+                        oldTag.setCwlPath(tool.getDefaultCwlPath());
+                        oldTag.setWdlPath(tool.getDefaultWdlPath());
+                        oldTag.setDockerfilePath(tool.getDefaultDockerfilePath());
+                        //TODO: keep an eye on this, this used to always create new test params no matter what
+                        if (tool.getDefaultTestCwlParameterFile() != null && oldTag.getSourceFiles().stream()
+                            .noneMatch(file -> file.getPath().equals(tool.getDefaultTestCwlParameterFile()))) {
+                            oldTag.getSourceFiles().add(createSourceFile(tool.getDefaultTestCwlParameterFile(), DescriptorLanguage.FileType.CWL_TEST_JSON));
+                        }
+                        if (tool.getDefaultTestWdlParameterFile() != null && oldTag.getSourceFiles().stream()
+                            .noneMatch(file -> file.getPath().equals(tool.getDefaultTestWdlParameterFile()))) {
+                            oldTag.getSourceFiles().add(createSourceFile(tool.getDefaultTestWdlParameterFile(), DescriptorLanguage.FileType.WDL_TEST_JSON));
                         }
-
-                        break;
                     }
-                }
-
-                // Tag does not already exist
-                if (!exists) {
+                } else {
+                    // Tag does not already exist
                     // this could result in the same tag being added to multiple containers with the same path, need to clone
                     Tag clonedTag = new Tag();
                     clonedTag.clone(newTag);
@@ -428,6 +531,7 @@ public abstract class AbstractImageRegistry {
                         clonedTag.getSourceFiles().add(createSourceFile(tool.getDefaultTestWdlParameterFile(), DescriptorLanguage.FileType.WDL_TEST_JSON));
                     }
                     existingTags.add(clonedTag);
+                    existingTagsByName.putIfAbsent(clonedTag.getName(), clonedTag);
                 }
             }
 
@@ -514,11 +618,10 @@ public abstract class AbstractImageRegistry {
 
     private void updateNonQuayImageInformation(List<Tag> newTags, @NotNull Tool tool, List<Tag> existingTags) {
         if (newTags != null) {
+            Map<String, List<Tag>> existingTagsByName = existingTags.stream().collect(Collectors.groupingBy(Tag::getName));
             for (Tag newTag : newTags) {
-                for (Tag oldTag : existingTags) {
-                    if (oldTag.getName().equals(newTag.getName())) {
-                        updateImageInformation(tool, newTag, oldTag);
-                    }
+                for (Tag oldTag : existingTagsByName.getOrDefault(newTag.getName(), Collections.emptyList())) {
+                    updateImageInformation(tool, newTag, oldTag);
                 }
             }
         }
@@ -820,19 +923,18 @@ public abstract class AbstractImageRegistry {
      * @return list of newly updated containers
      */
     private List<Tool> updateTools(final Iterable<Tool> apiToolList, final List<Tool> dbToolList, final User user, final ToolDAO toolDAO) {
+        // A tool from the registry matches a tool of the user with the same tool path, or with the same path and git url
+        Set<String> apiToolKeys = new HashSet<>();
+        for (Tool newTool : apiToolList) {
+            apiToolKeys.add(newTool.getToolPath());
+            apiToolKeys.add(getPathAndGitUrl(newTool));
+        }
 
         final List<Tool> toDelete = new ArrayList<>();
         // Find containers that the user no longer has
         for (final Iterator<Tool> iterator = dbToolList.iterator(); iterator.hasNext(); ) {
             final Tool oldTool = iterator.next();
-            boolean exists = false;
-            for (final Tool newTool : apiToolList) {
-                if ((newTool.getToolPath().equals(oldTool.getToolPath())) || (newTool.getPath().equals(oldTool.getPath()) && newTool
-                        .getGitUrl().equals(oldTool.getGitUrl()))) {
-                    exists = true;
-                    break;
-                }
-            }
+            boolean exists = apiToolKeys.contains(oldTool.getToolPath()) || apiToolKeys.contains(getPathAndGitUrl(oldTool));
             if (!exists && oldTool.getMode() != ToolMode.MANUAL_IMAGE_PATH) {
                 oldTool.removeUser(user);
                 toDelete.add(oldTool);
@@ -840,36 +942,40 @@ public abstract class AbstractImageRegistry {
             }
         }
 
+        // the first tool of the user for each key, like the first match of a scan of the list
+        Map<String, Integer> indexByToolPath = new HashMap<>();
+        Map<String, Integer> indexByPathAndGitUrl = new HashMap<>();
+        for (int i = 0; i < dbToolList.size(); i++) {
+            indexByToolPath.putIfAbsent(dbToolList.get(i).getToolPath(), i);
+            indexByPathAndGitUrl.putIfAbsent(getPathAndGitUrl(dbToolList.get(i)), i);
+        }
+        Map<String, Tool> otherToolsByToolPath = findOtherTools(apiToolList, indexByToolPath, toolDAO);
+
         // when a container from the registry (ex: quay.io) has newer content, update it from
         for (Tool newTool : apiToolList) {
-            String path = newTool.getToolPath();
-            boolean exists = false;
-
-            // Find if user already has the container
-            for (Tool oldTool : dbToolList) {
-                if ((newTool.getToolPath().equals(oldTool.getToolPath())) || (newTool.getPath().equals(oldTool.getPath()) && newTool
-                        .getGitUrl().equals(oldTool.getGitUrl()))) {
-                    exists = true;
-                    oldTool.update(newTool);
-                    break;
-                }
+            Integer toolIndex = indexByToolPath.get(newTool.getToolPath());
+            Integer pathAndGitUrlIndex = indexByPathAndGitUrl.get(getPathAndGitUrl(newTool));
+            if (toolIndex == null || (pathAndGitUrlIndex != null && pathAndGitUrlIndex < toolIndex)) {
+                toolIndex = pathAndGitUrlIndex;
             }
 
-            // Find if container already exists, but does not belong to user
-            if (!exists) {
-                Tool oldTool = toolDAO.findByPath(path, false);
+            Tool oldTool;
+            if (toolIndex != null) {
+                // Update the container the user already has
+                oldTool = dbToolList.get(toolIndex);
+                oldTool.update(newTool);
+            } else {
+                // Find if container already exists, but does not belong to user
+                oldTool = otherToolsByToolPath.remove(newTool.getToolPath());
                 if (oldTool != null) {
-                    exists = true;
                     oldTool.update(newTool);
-                    dbToolList.add(oldTool);
+                } else {
+                    // Tool does not already exist
+                    oldTool = newTool;
                 }
-            }
-
-            // Tool does not already exist
-            if (!exists) {
-                // newTool.setUserId(userId);
-
-                dbToolList.add(newTool);
+                dbToolList.add(oldTool);
+                indexByToolPath.putIfAbsent(oldTool.getToolPath(), dbToolList.size() - 1);
+                indexByPathAndGitUrl.putIfAbsent(getPathAndGitUrl(oldTool), dbToolList.size() - 1);
             }
         }
 
@@ -889,16 +995,73 @@ public abstract class AbstractImageRegistry {
         }
 
         // delete container if it has no users
+        List<Tool> toolsWithNoUsers = new ArrayList<>();
         for (Tool c : toDelete) {
             LOG.info(user.getUsername() + ": {} {}", c.getPath(), c.getUsers().size());
 
             if (c.getUsers().isEmpty()) {
                 LOG.info(user.getUsername() + ": DELETING: {}", c.getPath());
                 c.getWorkflowVersions().clear();
-                toolDAO.delete(c);
+                toolsWithNoUsers.add(c);
             }
         }
+        toolDAO.delete(toolsWithNoUsers);
 
         return dbToolList;
     }
+
+    private static String getPathAndGitUrl(Tool tool) {
+        return tool.getPath() + ' ' + tool.getGitUrl();
+    }
+
+    /**
+     * Looks up, in one query, the tools from the registry that exist but do not belong to the user.
+     * A tool matches by registry, namespace, name and tool name, a tool with no tool name only matching a path with none.
+     *
+     * @param apiToolList     tools retrieved from the registry
+     * @param indexByToolPath the tools of the user
+     * @return the existing tools that the user does not have, by tool path
+     */
+    private Map<String, Tool> findOtherTools(Iterable<Tool> apiToolList, Map<String, Integer> indexByToolPath, ToolDAO toolDAO) {
+        Set<String> registries = new HashSet<>();
+        Set<String> namespaces = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        for (Tool newTool : apiToolList) {
+            if (!indexByToolPath.containsKey(newTool.getToolPath()) && newTool.getRegistry() != null && newTool.getNamespace() != null
+                && newTool.getName() != null) {
+                registries.add(newTool.getRegistry());
+                namespaces.add(newTool.getNamespace());
+                names.add(newTool.getName());
+            }
+        }
+        Map<String, Tool> toolsByToolPath = new HashMap<>();
+        for (Tool tool : toolDAO.findByRegistriesAndNamespacesAndNames(registries, namespaces, names)) {
+            String toolPath = tool.getToolname() == null ? tool.getPath() : tool.getPath() + '/' + tool.getToolname();
+            toolsByToolPath.putIfAbsent(toolPath, tool);
+        }
+        return toolsByToolPath;
+    }
+
+    /**
+     * The fetches of one tool of a refresh
+     */
+    private static final class ToolFetch {
+        private final Tool tool;
+        private final SourceCodeRepoInterface sourceCodeRepo;
+        private final CompletableFuture<List<Tag>> tags;
+        private final CompletableFuture<Void> prefetch;
+
+        private ToolFetch(Tool tool, SourceCodeRepoInterface sourceCodeRepo, CompletableFuture<List<Tag>> tags,
+                CompletableFuture<Void> prefetch) {
+            this.tool = tool;
+            this.sourceCodeRepo = sourceCodeRepo;
+            this.tags = tags;
+            this.prefetch = prefetch;
+        }
+
+        private void cancel() {
+            tags.cancel(false);
+            prefetch.cancel(false);
+        }
+    }
 }
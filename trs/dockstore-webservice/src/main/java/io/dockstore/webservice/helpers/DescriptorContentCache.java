@@ -0,0 +1,400 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.VersionContent;
+import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.helpers.statelisteners.StateListenerInterface;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import io.dockstore.webservice.jdbi.VersionContentDAO;
+import io.dockstore.webservice.languages.LanguageHandlerFactory;
+import io.dockstore.webservice.languages.LanguageHandlerInterface;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the DAG and tools table JSON of workflow versions.
+ * Results are keyed by a hash of the language and the paths, types and contents of the descriptors they were built from,
+ * so versions (and workflows) with identical descriptors share an entry and a refresh that changes a descriptor simply
+ * stops using the old entry, which then ages out.
+ * <p>
+ * The content of each version is also stored in the database when the version is refreshed or saved, with the hash of the
+ * descriptors it was built from, so that a view of a version is a single row fetch. A refresh only rebuilds the content of a
+ * version whose descriptors changed. The DAG and tools table link to the published tools among their docker images,
+ * so the tool paths each content looked up, and the published tools it found, are kept with it both here and in the database.
+ * The contents that looked a tool up are found by index and dropped when it is published, unpublished or deleted,
+ * and built again when next viewed.
+ * @since 1.9.0
+ */
+public class DescriptorContentCache implements StateListenerInterface {
+    private static final Logger LOG = LoggerFactory.getLogger(DescriptorContentCache.class);
+
+    /**
+     * Entries are weighted by the length of their JSON
+     */
+    private static final long MAXIMUM_WEIGHT = 50_000_000;
+    private static final long EXPIRY_MINUTES = 60;
+
+    /**
+     * tool path to the keys of the cached contents that looked it up
+     */
+    private final Map<String, Set<String>> keysByToolPath = new ConcurrentHashMap<>();
+    /**
+     * tool id to the keys of the cached contents that link to it
+     */
+    private final Map<Long, Set<String>> keysByToolId = new ConcurrentHashMap<>();
+    private final Cache<String, BuiltContent> contents = CacheBuilder.newBuilder()
+        .maximumWeight(MAXIMUM_WEIGHT)
+        .weigher((String key, BuiltContent value) -> key.length() + value.getWeight())
+        .expireAfterWrite(EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .removalListener(this::unregister)
+        .recordStats()
+        .build();
+
+    private final SessionFactory sessionFactory;
+    private final ToolDAO toolDAO;
+    private final VersionContentDAO versionContentDAO;
+
+    public DescriptorContentCache(SessionFactory sessionFactory) {
+        this(sessionFactory, new ToolDAO(sessionFactory), new VersionContentDAO(sessionFactory));
+    }
+
+    DescriptorContentCache(SessionFactory sessionFactory, ToolDAO toolDAO, VersionContentDAO versionContentDAO) {
+        this.sessionFactory = sessionFactory;
+        this.toolDAO = toolDAO;
+        this.versionContentDAO = versionContentDAO;
+    }
+
+    /**
+     * Gets the DAG or tools table of a workflow version as it was stored when the version was refreshed or saved.
+     * A content that is not stored, e.g. because it was dropped since, is built without storing it,
+     * so this can be called from a read-only unit of work.
+     *
+     * @param fileType        the descriptor language of the workflow
+     * @param workflowVersion a persisted version
+     * @param type            DAG or TOOLS
+     * @return the clean DAG or the tools table JSON, null if the version has no primary descriptor or the language handler produced none
+     */
+    public String getVersionContent(DescriptorLanguage.FileType fileType, WorkflowVersion workflowVersion,
+        LanguageHandlerInterface.Type type) {
+        Optional<VersionContent> stored = versionContentDAO.findByVersionAndType(workflowVersion.getId(), type.name());
+        if (stored.isPresent()) {
+            return stored.get().getContent();
+        }
+        SourceFile mainDescriptor = getMainDescriptorFile(workflowVersion);
+        if (mainDescriptor == null) {
+            return null;
+        }
+        return getContent(fileType, workflowVersion.getWorkflowPath(), mainDescriptor.getContent(), getSecondaryFiles(workflowVersion),
+            type, toolDAO);
+    }
+
+    /**
+     * Builds and stores the DAG and tools table of a workflow version whose source files were just refreshed or saved,
+     * unless they are stored from the same descriptors already.
+     * A version that cannot be parsed is logged rather than failing the refresh, and what was stored for it is dropped.
+     *
+     * @param fileType        the descriptor language of the workflow
+     * @param workflowVersion a persisted version
+     */
+    public void storeVersionContents(DescriptorLanguage.FileType fileType, WorkflowVersion workflowVersion) {
+        SourceFile mainDescriptor = getMainDescriptorFile(workflowVersion);
+        if (mainDescriptor == null) {
+            versionContentDAO.delete(workflowVersion.getId());
+            return;
+        }
+        Set<SourceFile> secondarySourceFiles = getSecondaryFiles(workflowVersion);
+        for (LanguageHandlerInterface.Type type : LanguageHandlerInterface.Type.values()) {
+            String key = hashKey(fileType, workflowVersion.getWorkflowPath(), mainDescriptor.getContent(), secondarySourceFiles, type);
+            Optional<VersionContent> stored = versionContentDAO.findByVersionAndType(workflowVersion.getId(), type.name());
+            if (stored.isPresent() && stored.get().getContentHash().equals(key)) {
+                continue;
+            }
+            try {
+                BuiltContent content = getContent(key, fileType, workflowVersion.getWorkflowPath(), mainDescriptor.getContent(),
+                    secondarySourceFiles, type, toolDAO);
+                versionContentDAO.save(workflowVersion.getId(), type.name(), key, content.getContent(), content.getLinkedTools());
+            } catch (RuntimeException e) {
+                LOG.info("Could not build the " + type + " of version " + workflowVersion.getName() + ": " + e.getMessage());
+                stored.ifPresent(staleContent -> versionContentDAO.delete(workflowVersion.getId(), type.name()));
+            }
+        }
+    }
+
+    /**
+     * Drops what is stored for a version whose descriptors changed other than by a refresh or a save, e.g. its primary descriptor path
+     *
+     * @param workflowVersion a persisted version
+     */
+    public void invalidate(WorkflowVersion workflowVersion) {
+        versionContentDAO.delete(workflowVersion.getId());
+    }
+
+    @Override
+    public void handleIndexUpdate(Entry entry, StateManagerMode command) {
+        if (entry instanceof Tool && command != StateManagerMode.UPDATE) {
+            invalidate(List.of((Tool)entry));
+        }
+    }
+
+    @Override
+    public void bulkUpsert(List<Entry> entries) {
+        List<Tool> tools = entries.stream().filter(entry -> entry instanceof Tool).map(entry -> (Tool)entry).collect(Collectors.toList());
+        if (!tools.isEmpty()) {
+            invalidate(tools);
+        }
+    }
+
+    /**
+     * Drops the contents that looked up the paths of tools that were published or unpublished, since they link to a tool
+     * only while it is published, and the contents that link to tools that were deleted. A deleted tool is only known by its id.
+     */
+    private void invalidate(List<Tool> tools) {
+        Set<String> toolPaths = new HashSet<>();
+        Set<Long> toolIds = new HashSet<>();
+        for (Tool tool : tools) {
+            toolIds.add(tool.getId());
+            if (tool.getNamespace() != null && tool.getName() != null) {
+                toolPaths.add(tool.getRegistry() + "/" + tool.getNamespace() + "/" + tool.getName());
+            }
+        }
+        Set<String> keys = new HashSet<>();
+        toolPaths.forEach(toolPath -> keys.addAll(keysByToolPath.getOrDefault(toolPath, Set.of())));
+        toolIds.forEach(toolId -> keys.addAll(keysByToolId.getOrDefault(toolId, Set.of())));
+        contents.invalidateAll(keys);
+        inTransaction(() -> versionContentDAO.deleteLinkedTo(toolPaths, toolIds));
+    }
+
+    private void register(String key, BuiltContent content) {
+        content.getLinkedTools().forEach((toolPath, toolIds) -> {
+            keysByToolPath.computeIfAbsent(toolPath, k -> ConcurrentHashMap.newKeySet()).add(key);
+            toolIds.forEach(toolId -> keysByToolId.computeIfAbsent(toolId, k -> ConcurrentHashMap.newKeySet()).add(key));
+        });
+    }
+
+    private void unregister(RemovalNotification<String, BuiltContent> notification) {
+        // a replaced content shares its key with the new one, leave the key registered
+        if (notification.getCause() == RemovalCause.REPLACED || notification.getValue() == null) {
+            return;
+        }
+        String key = notification.getKey();
+        notification.getValue().getLinkedTools().forEach((toolPath, toolIds) -> {
+            keysByToolPath.computeIfPresent(toolPath, (k, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+            toolIds.forEach(toolId -> keysByToolId.computeIfPresent(toolId, (k, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            }));
+        });
+    }
+
+    /**
+     * Runs in the current unit of work, as when the changes are applied by the {@link EntryStateChangeDispatcher},
+     * or in a transaction of its own when there is none
+     */
+    private void inTransaction(Runnable work) {
+        if (ManagedSessionContext.hasBind(sessionFactory)) {
+            work.run();
+            return;
+        }
+        Session session = sessionFactory.openSession();
+        try {
+            ManagedSessionContext.bind(session);
+            Transaction transaction = session.beginTransaction();
+            try {
+                work.run();
+                transaction.commit();
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        } finally {
+            ManagedSessionContext.unbind(sessionFactory);
+            session.close();
+        }
+    }
+
+    /**
+     * Gets the DAG or tools table of a workflow version, only parsing its descriptors if no version with the same descriptors
+     * has been parsed recently. Concurrent requests for the same content wait for a single parse.
+     *
+     * @param fileType             the descriptor language of the workflow
+     * @param mainDescriptorPath   path of the primary descriptor
+     * @param mainDescriptor       content of the primary descriptor
+     * @param secondarySourceFiles the other source files of the version
+     * @param type                 DAG or TOOLS
+     * @param dao                  used to link docker images to published tools
+     * @return the clean DAG or the tools table JSON, null if the language handler produced none
+     */
+    public String getContent(DescriptorLanguage.FileType fileType, String mainDescriptorPath, String mainDescriptor,
+        Set<SourceFile> secondarySourceFiles, LanguageHandlerInterface.Type type, ToolDAO dao) {
+        String key = hashKey(fileType, mainDescriptorPath, mainDescriptor, secondarySourceFiles, type);
+        return getContent(key, fileType, mainDescriptorPath, mainDescriptor, secondarySourceFiles, type, dao).getContent();
+    }
+
+    private BuiltContent getContent(String key, DescriptorLanguage.FileType fileType, String mainDescriptorPath, String mainDescriptor,
+        Set<SourceFile> secondarySourceFiles, LanguageHandlerInterface.Type type, ToolDAO dao) {
+        try {
+            return contents.get(key, () -> {
+                LanguageHandlerInterface lInterface = LanguageHandlerFactory.getInterface(fileType);
+                LinkRecordingToolDAO recordingDAO = new LinkRecordingToolDAO(sessionFactory, dao);
+                String content = type == LanguageHandlerInterface.Type.DAG
+                    ? lInterface.getCleanDAG(mainDescriptorPath, mainDescriptor, secondarySourceFiles, type, recordingDAO)
+                    : lInterface.getContent(mainDescriptorPath, mainDescriptor, secondarySourceFiles, type, recordingDAO);
+                BuiltContent builtContent = new BuiltContent(content, recordingDAO.getLinkedTools());
+                register(key, builtContent);
+                return builtContent;
+            });
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            // rethrow what the language handler threw, e.g. a CustomWebApplicationException for an invalid descriptor
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static SourceFile getMainDescriptorFile(WorkflowVersion workflowVersion) {
+        return workflowVersion.getSourceFiles().stream()
+            .filter(sourceFile -> sourceFile.getPath().equals(workflowVersion.getWorkflowPath()))
+            .findFirst().orElse(null);
+    }
+
+    private static Set<SourceFile> getSecondaryFiles(WorkflowVersion workflowVersion) {
+        return workflowVersion.getSourceFiles().stream()
+            .filter(sourceFile -> !sourceFile.getPath().equals(workflowVersion.getWorkflowPath()))
+            .collect(Collectors.toSet());
+    }
+
+    private static String hashKey(DescriptorLanguage.FileType fileType, String mainDescriptorPath, String mainDescriptor,
+        Set<SourceFile> secondarySourceFiles, LanguageHandlerInterface.Type type) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putField(hasher, fileType.name());
+        putField(hasher, type.name());
+        putFile(hasher, mainDescriptorPath, null, mainDescriptor);
+        secondarySourceFiles.stream().sorted(Comparator.comparing(SourceFile::getPath, Comparator.nullsFirst(Comparator.naturalOrder())))
+            .forEach(file -> putFile(hasher, file.getPath(), file.getType(), file.getContent()));
+        return hasher.hash().toString();
+    }
+
+    private static void putFile(Hasher hasher, String path, DescriptorLanguage.FileType fileType, String content) {
+        putField(hasher, path);
+        putField(hasher, fileType == null ? null : fileType.name());
+        putField(hasher, content);
+    }
+
+    /**
+     * Prefixes each field with its length so the boundaries between fields are unambiguous
+     */
+    private static void putField(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A DAG or tools table along with the tools it may link to
+     */
+    private static final class BuiltContent {
+        private final String content;
+        private final Map<String, Set<Long>> linkedTools;
+
+        BuiltContent(String content, Map<String, Set<Long>> linkedTools) {
+            this.content = content;
+            this.linkedTools = linkedTools;
+        }
+
+        /**
+         * @return the JSON, null if the language handler produced none
+         */
+        String getContent() {
+            return content;
+        }
+
+        /**
+         * @return the ids of the published tools at each tool path that was looked up, empty for a path without any
+         */
+        Map<String, Set<Long>> getLinkedTools() {
+            return linkedTools;
+        }
+
+        int getWeight() {
+            return (content == null ? 0 : content.length()) + linkedTools.keySet().stream().mapToInt(String::length).sum();
+        }
+    }
+
+    /**
+     * Looks up the published tools among the docker images of a content for a language handler, recording the paths it looked up
+     * and the tools it found
+     */
+    private static final class LinkRecordingToolDAO extends ToolDAO {
+        private final ToolDAO toolDAO;
+        private final Map<String, Set<Long>> linkedTools = new HashMap<>();
+
+        LinkRecordingToolDAO(SessionFactory sessionFactory, ToolDAO toolDAO) {
+            super(sessionFactory);
+            this.toolDAO = toolDAO;
+        }
+
+        @Override
+        public Set<String> findPublishedPaths(Collection<String> paths) {
+            Map<String, Set<Long>> published = toolDAO.findPublishedIdsByPath(paths);
+            paths.stream().map(Tool::splitPath).filter(Objects::nonNull)
+                .map(splitPath -> splitPath[0] + "/" + splitPath[1] + "/" + splitPath[2])
+                .forEach(toolPath -> linkedTools.computeIfAbsent(toolPath, k -> new HashSet<>())
+                    .addAll(published.getOrDefault(toolPath, Set.of())));
+            return published.keySet();
+        }
+
+        Map<String, Set<Long>> getLinkedTools() {
+            return linkedTools;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.Resources;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dropwizard.jackson.Jackson;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the one Elasticsearch client shared by indexing, searching and the health check.
+ * A RestClient is thread-safe and pools its connections, so it is meant to be long-lived rather than built per request.
+ * <p>
+ * Entries are searched and updated through the {@link #ENTRY_ALIAS} alias, which points at one timestamped index.
+ * A reindex builds a new index while the current one keeps serving, then moves the alias to it in one step.
+ * @since 1.9.0
+ */
+public final class ElasticSearchHelper {
+    public static final String ENTRY_ALIAS = "entry";
+    private static final Logger LOG = LoggerFactory.getLogger(ElasticSearchHelper.class);
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+    private static final int MAX_CONNECTIONS = 20;
+
+    private static RestClient sharedClient;
+    private static HttpHost sharedClientHost;
+
+    private ElasticSearchHelper() {
+        // hide the default constructor for a utility class
+    }
+
+    /**
+     * @param esConfiguration where Elasticsearch is, the hostname must not be empty
+     * @return the shared client, rebuilt if the configured host changed since it was created
+     */
+    public static synchronized RestClient getRestClient(DockstoreWebserviceConfiguration.ElasticSearchConfig esConfiguration) {
+        HttpHost host = new HttpHost(esConfiguration.getHostname(), esConfiguration.getPort(), "http");
+        if (sharedClient == null || !host.equals(sharedClientHost)) {
+            closeRestClient();
+            sharedClient = RestClient.builder(host)
+                .setHttpClientConfigCallback(builder -> builder.setMaxConnTotal(MAX_CONNECTIONS).setMaxConnPerRoute(MAX_CONNECTIONS))
+                .build();
+            sharedClientHost = host;
+        }
+        return sharedClient;
+    }
+
+    public static synchronized void closeRestClient() {
+        if (sharedClient != null) {
+            try {
+                sharedClient.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close the elastic search client", e);
+            }
+            sharedClient = null;
+            sharedClientHost = null;
+        }
+    }
+
+    /**
+     * Creates an empty entry index with the current mapping, named after the time it was created
+     *
+     * @param restClient the Elasticsearch client
+     * @return the name of the new index
+     * @throws IOException if the index could not be created
+     */
+    public static String createEntryIndex(RestClient restClient) throws IOException {
+        String index = ENTRY_ALIAS + "_" + System.currentTimeMillis();
+        URL url = Resources.getResource("queries/mapping.json");
+        String mapping = Resources.toString(url, StandardCharsets.UTF_8);
+        restClient.performRequest("PUT", "/" + index, Collections.emptyMap(), new NStringEntity(mapping, ContentType.APPLICATION_JSON));
+        return index;
+    }
+
+    /**
+     * Points the entry alias at an index, then deletes the indices it pointed at before.
+     * Moving the alias is atomic, searches see either the old index or the new one.
+     * <p>
+     * An entry index from before entries were aliased has to be deleted before the alias can take its name. Until the alias exists,
+     * an index update from any webservice would create a new, dynamically mapped entry index in its place, so Elasticsearch is
+     * told not to create it while the alias is moved. Updates sent in the meantime fail and are retried by the bulk indexer.
+     *
+     * @param restClient the Elasticsearch client
+     * @param index      the index that the alias should point at
+     * @throws IOException if the alias could not be moved
+     */
+    public static void moveEntryAlias(RestClient restClient, String index) throws IOException {
+        List<String> previousIndices = getEntryAliasIndices(restClient);
+        ArrayNode actions = MAPPER.createArrayNode();
+        for (String previousIndex : previousIndices) {
+            if (!ENTRY_ALIAS.equals(previousIndex)) {
+                actions.addObject().putObject("remove").put("index", previousIndex).put("alias", ENTRY_ALIAS);
+            }
+        }
+        actions.addObject().putObject("add").put("index", index).put("alias", ENTRY_ALIAS);
+        ObjectNode body = MAPPER.createObjectNode();
+        body.set("actions", actions);
+        NStringEntity entity = new NStringEntity(MAPPER.writeValueAsString(body), ContentType.APPLICATION_JSON);
+        if (previousIndices.contains(ENTRY_ALIAS)) {
+            setAutoCreateIndex(restClient, "-" + ENTRY_ALIAS + ",+*");
+            try {
+                restClient.performRequest("DELETE", "/" + ENTRY_ALIAS);
+                restClient.performRequest("POST", "/_aliases", Collections.emptyMap(), entity);
+            } finally {
+                setAutoCreateIndex(restClient, null);
+            }
+        } else {
+            restClient.performRequest("POST", "/_aliases", Collections.emptyMap(), entity);
+        }
+        for (String previousIndex : previousIndices) {
+            if (!ENTRY_ALIAS.equals(previousIndex) && !index.equals(previousIndex)) {
+                deleteIndex(restClient, previousIndex);
+            }
+        }
+    }
+
+    /**
+     * Sets which indices Elasticsearch creates when a document is written to an index that does not exist
+     *
+     * @param restClient the Elasticsearch client
+     * @param value      an action.auto_create_index pattern, null to go back to the cluster's own setting
+     */
+    private static void setAutoCreateIndex(RestClient restClient, String value) throws IOException {
+        ObjectNode body = MAPPER.createObjectNode();
+        body.putObject("transient").put("action.auto_create_index", value);
+        restClient.performRequest("PUT", "/_cluster/settings", Collections.emptyMap(),
+            new NStringEntity(MAPPER.writeValueAsString(body), ContentType.APPLICATION_JSON));
+    }
+
+    /**
+     * Deletes an index, logging rather than failing if it cannot be deleted
+     *
+     * @param restClient the Elasticsearch client
+     * @param index      the index to delete
+     */
+    public static void deleteIndex(RestClient restClient, String index) {
+        try {
+            restClient.performRequest("DELETE", "/" + index);
+        } catch (IOException e) {
+            LOG.warn("Could not delete elastic search index " + index, e);
+        }
+    }
+
+    /**
+     * @return the indices the entry alias points at, or the entry index itself if it is not an alias, empty if neither exists
+     */
+    private static List<String> getEntryAliasIndices(RestClient restClient) throws IOException {
+        List<String> indices = new ArrayList<>();
+        try {
+            org.elasticsearch.client.Response response = restClient.performRequest("GET", "/" + ENTRY_ALIAS + "/_alias");
+            try (InputStream content = response.getEntity().getContent()) {
+                JsonNode aliases = MAPPER.readTree(content);
+                aliases.fieldNames().forEachRemaining(indices::add);
+            }
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+                throw e;
+            }
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.EntryStateChange;
+import io.dockstore.webservice.helpers.statelisteners.StateListenerInterface;
+import io.dockstore.webservice.jdbi.EntryStateChangeDAO;
+import io.dropwizard.hibernate.UnitOfWork;
+import io.dropwizard.lifecycle.Managed;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the changes in the entry_state_change outbox to the state listeners, in the background.
+ * Changes are read in batches in the order they were made. Each entry is looked up once per batch and the listeners
+ * are told about its current state, so an entry changed many times in a row (e.g. while its versions are refreshed)
+ * is indexed once. Published entries are sent to the listeners as one bulk upsert.
+ * The changes of an entry that a listener fails on stay in the outbox, and are tried again after a delay that doubles
+ * with each attempt, so that they neither hold up the changes after them nor are lost.
+ * <p>
+ * Must be created through a UnitOfWorkAwareProxyFactory so that each batch runs in its own transaction.
+ * The outbox is polled, and also read as soon as a transaction that wrote to it commits.
+ * @since 1.9.0
+ */
+public class EntryStateChangeDispatcher implements Managed {
+    private static final Logger LOG = LoggerFactory.getLogger(EntryStateChangeDispatcher.class);
+    private static final int BATCH_SIZE = 500;
+    private static final long POLL_INTERVAL_SECONDS = 5;
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+    private static final long FIRST_RETRY_DELAY_SECONDS = 60;
+    private static final long MAX_RETRY_DELAY_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    private final EntryStateChangeDAO stateChangeDAO;
+    private final SessionFactory sessionFactory;
+    private final StateListenerInterface listeners;
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean(false);
+    private volatile ScheduledExecutorService executor;
+
+    public EntryStateChangeDispatcher(EntryStateChangeDAO stateChangeDAO, SessionFactory sessionFactory) {
+        this(stateChangeDAO, sessionFactory, new PublicStateListeners());
+    }
+
+    /**
+     * @param listeners the listeners to apply the changes to, rather than those of the PublicStateManager
+     */
+    EntryStateChangeDispatcher(EntryStateChangeDAO stateChangeDAO, SessionFactory sessionFactory, StateListenerInterface listeners) {
+        this.stateChangeDAO = stateChangeDAO;
+        this.sessionFactory = sessionFactory;
+        this.listeners = listeners;
+    }
+
+    @Override
+    public synchronized void start() {
+        ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "entry-state-change-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        threadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        threadPool.scheduleWithFixedDelay(this::dispatchAll, 0, POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        executor = threadPool;
+    }
+
+    /**
+     * Lets the changes already read finish, changes that are left are applied by the next webservice to start
+     */
+    @Override
+    public synchronized void stop() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.error("Entry state change dispatcher did not finish in time.");
+                executor.shutdownNow();
+            }
+            executor = null;
+        }
+    }
+
+    /**
+     * Reads the outbox now rather than at the next poll, wake ups that come in before the outbox is read are merged
+     */
+    public void wakeUp() {
+        // not synchronized, committing transactions wake the dispatcher up while stop() waits for it
+        ScheduledExecutorService currentExecutor = executor;
+        if (currentExecutor != null && !currentExecutor.isShutdown() && wakeUpPending.compareAndSet(false, true)) {
+            try {
+                currentExecutor.execute(this::dispatchAll);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Entry state change dispatcher is stopping.");
+            }
+        }
+    }
+
+    private void dispatchAll() {
+        wakeUpPending.set(false);
+        try {
+            int dispatched;
+            do {
+                dispatched = dispatchBatch();
+            } while (dispatched == BATCH_SIZE);
+        } catch (RuntimeException e) {
+            // the changes stay in the outbox and are tried again at the next poll
+            LOG.error("Could not dispatch entry state changes.", e);
+        }
+    }
+
+    /**
+     * Applies the oldest changes in the outbox and removes them from it.
+     * The changes of an entry that a listener fails on are kept and tried again later.
+     *
+     * @return the number of changes read
+     */
+    @UnitOfWork
+    public int dispatchBatch() {
+        List<EntryStateChange> changes = stateChangeDAO.findOldest(BATCH_SIZE);
+        Map<String, List<EntryStateChange>> changesByEntry = changes.stream().collect(
+            Collectors.groupingBy(change -> change.getEntryType() + ":" + change.getEntryId(), LinkedHashMap::new, Collectors.toList()));
+        List<Entry> published = new ArrayList<>();
+        List<EntryStateChange> publishedChanges = new ArrayList<>();
+        List<EntryStateChange> failed = new ArrayList<>();
+        for (List<EntryStateChange> entryChanges : changesByEntry.values()) {
+            EntryStateChange lastChange = entryChanges.get(entryChanges.size() - 1);
+            try {
+                Entry entry = (Entry)sessionFactory.getCurrentSession().get(lastChange.getEntryType(), lastChange.getEntryId());
+                if (entry == null) {
+                    listeners.handleIndexUpdate(getDeletedEntry(lastChange), StateManagerMode.DELETE);
+                    continue;
+                }
+                StateManagerMode mode = getMode(entry, entryChanges);
+                if (mode == StateManagerMode.PUBLISH) {
+                    published.add(entry);
+                    publishedChanges.addAll(entryChanges);
+                } else {
+                    listeners.handleIndexUpdate(entry, mode);
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Could not dispatch state changes of " + lastChange.getEntryType() + " " + lastChange.getEntryId(), e);
+                failed.addAll(entryChanges);
+            }
+        }
+        if (!published.isEmpty()) {
+            try {
+                listeners.bulkUpsert(published);
+            } catch (RuntimeException e) {
+                LOG.error("Could not dispatch state changes of " + published.size() + " published entries", e);
+                failed.addAll(publishedChanges);
+            }
+        }
+        // failed changes are managed entities, their new attempt is written when the unit of work commits
+        failed.forEach(change -> change.failedAttempt(getNextAttempt(change.getAttempts())));
+        stateChangeDAO.delete(changes.stream().filter(change -> !failed.contains(change)).map(EntryStateChange::getId)
+            .collect(Collectors.toList()));
+        return changes.size();
+    }
+
+    /**
+     * @param attempts the number of times the change failed before
+     * @return when to try the change again
+     */
+    static Timestamp getNextAttempt(int attempts) {
+        long delaySeconds = FIRST_RETRY_DELAY_SECONDS;
+        for (int i = 0; i < attempts && delaySeconds < MAX_RETRY_DELAY_SECONDS; i++) {
+            delaySeconds *= 2;
+        }
+        return new Timestamp(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.min(delaySeconds, MAX_RETRY_DELAY_SECONDS)));
+    }
+
+    /**
+     * @param entry   the current state of an entry
+     * @param changes the changes to the entry, oldest first
+     * @return one mode that brings the listeners to the current state of the entry
+     */
+    private static StateManagerMode getMode(Entry entry, List<EntryStateChange> changes) {
+        if (changes.get(changes.size() - 1).getMode() == StateManagerMode.DELETE) {
+            return StateManagerMode.DELETE;
+        }
+        boolean visibilityChanged = changes.stream().anyMatch(change -> change.getMode() != StateManagerMode.UPDATE);
+        if (visibilityChanged) {
+            return entry.getIsPublished() ? StateManagerMode.PUBLISH : StateManagerMode.DELETE;
+        }
+        return StateManagerMode.UPDATE;
+    }
+
+    /**
+     * @return an entry with only the type and id of an entry that is no longer in the database, enough to remove it from the listeners
+     */
+    private static Entry getDeletedEntry(EntryStateChange change) {
+        try {
+            Entry entry = (Entry)Class.forName(change.getEntryType()).getDeclaredConstructor().newInstance();
+            entry.setId(change.getEntryId());
+            return entry;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Unknown entry type " + change.getEntryType(), e);
+        }
+    }
+
+    /**
+     * Applies changes to the listeners of the PublicStateManager
+     */
+    private static class PublicStateListeners implements StateListenerInterface {
+        @Override
+        public void handleIndexUpdate(Entry entry, StateManagerMode command) {
+            PublicStateManager.getInstance().dispatch(entry, command);
+        }
+
+        @Override
+        public void bulkUpsert(List<Entry> entries) {
+            PublicStateManager.getInstance().dispatchBulkUpsert(entries);
+        }
+    }
+}
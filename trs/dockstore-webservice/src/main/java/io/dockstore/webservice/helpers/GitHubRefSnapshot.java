@@ -0,0 +1,252 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The files of one ref of a GitHub repository, read from the tarball of the ref in a single request
+ * rather than with a request per directory level and per file. Symbolic links are resolved in memory.
+ * The tarball is streamed and bounded: files over {@link #MAX_FILE_BYTES} are listed but not kept, and a ref whose tarball
+ * is over {@link #MAX_ARCHIVE_BYTES} has no snapshot, callers then read from the contents API as before. The archive limit
+ * is enforced on the stream, so a single large entry stops the download as soon as the limit is passed.
+ * @since 1.9.0
+ */
+public final class GitHubRefSnapshot {
+    /**
+     * The most file content a snapshot holds
+     */
+    static final int MAX_CONTENT_BYTES = 32 * 1024 * 1024;
+    private static final Logger LOG = LoggerFactory.getLogger(GitHubRefSnapshot.class);
+    private static final HttpUrl GITHUB_API = HttpUrl.get("https://api.github.com/repos/");
+    private static final long MAX_ARCHIVE_BYTES = 100L * 1024 * 1024;
+    private static final int MAX_FILE_BYTES = 1024 * 1024;
+    private static final int MAX_LINKS = 40;
+    /**
+     * Not the shared client, its disk cache is meant for API responses rather than archives
+     */
+    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient();
+
+    private final Map<String, String> files = new HashMap<>();
+    private final Map<String, String> symlinks = new HashMap<>();
+    private final Set<String> omittedFiles = new HashSet<>();
+    private final Map<String, Set<String>> directories = new HashMap<>();
+    private int contentBytes = 0;
+
+    private GitHubRefSnapshot() {
+        directories.put("", new TreeSet<>());
+    }
+
+    /**
+     * Downloads the tarball of a ref
+     *
+     * @param repositoryId       of the form organization/repository (Ex. dockstore/dockstore-ui2)
+     * @param reference          a branch or tag name
+     * @param githubTokenContent the token to download with
+     * @return the files of the ref, empty if the tarball could not be downloaded or is too large
+     */
+    public static Optional<GitHubRefSnapshot> fetch(String repositoryId, String reference, String githubTokenContent) {
+        HttpUrl url = GITHUB_API.newBuilder().addPathSegments(repositoryId).addPathSegment("tarball").addPathSegments(reference).build();
+        Request request = new Request.Builder().url(url).header("Authorization", "token " + githubTokenContent).build();
+        try (Response response = HTTP_CLIENT.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                LOG.info("Could not download the tarball of " + repositoryId + " at " + reference + ", status " + response.code());
+                return Optional.empty();
+            }
+            if (response.body().contentLength() > MAX_ARCHIVE_BYTES) {
+                LOG.info("The tarball of " + repositoryId + " at " + reference + " is too large to snapshot");
+                return Optional.empty();
+            }
+            Optional<GitHubRefSnapshot> snapshot = read(response.body().byteStream(), MAX_ARCHIVE_BYTES);
+            if (snapshot.isEmpty()) {
+                LOG.info("The tarball of " + repositoryId + " at " + reference + " is too large to snapshot");
+            }
+            return snapshot;
+        } catch (IOException e) {
+            LOG.warn("Could not read the tarball of " + repositoryId + " at " + reference + ". " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param tarball         a gzipped tarball of a ref, it is closed
+     * @param maxArchiveBytes the most compressed bytes to read
+     * @return the files of the ref, empty if the tarball is over the limit
+     * @throws IOException if the tarball could not be read
+     */
+    static Optional<GitHubRefSnapshot> read(InputStream tarball, long maxArchiveBytes) throws IOException {
+        GitHubRefSnapshot snapshot = new GitHubRefSnapshot();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+            new GzipCompressorInputStream(new LimitedInputStream(tarball, maxArchiveBytes)))) {
+            for (TarArchiveEntry entry = tar.getNextTarEntry(); entry != null; entry = tar.getNextTarEntry()) {
+                snapshot.add(entry, tar);
+            }
+        } catch (ArchiveTooLargeException e) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot);
+    }
+
+    private void add(TarArchiveEntry entry, TarArchiveInputStream tar) throws IOException {
+        // entries are under a directory named after the repository and commit
+        String path = StringUtils.removeEnd(StringUtils.substringAfter(entry.getName(), "/"), "/");
+        if (entry.isGlobalPaxHeader() || path.isEmpty()) {
+            return;
+        }
+        String parent = path.contains("/") ? StringUtils.substringBeforeLast(path, "/") : "";
+        directories.computeIfAbsent(parent, key -> new TreeSet<>()).add(StringUtils.substringAfterLast("/" + path, "/"));
+        if (entry.isDirectory()) {
+            directories.computeIfAbsent(path, key -> new TreeSet<>());
+        } else if (entry.isSymbolicLink()) {
+            symlinks.put(path, entry.getLinkName());
+        } else if (entry.isFile()) {
+            if (entry.getSize() > MAX_FILE_BYTES || contentBytes + entry.getSize() > MAX_CONTENT_BYTES) {
+                omittedFiles.add(path);
+            } else {
+                files.put(path, new String(IOUtils.toByteArray(tar, entry.getSize()), StandardCharsets.UTF_8));
+                contentBytes += (int)entry.getSize();
+            }
+        }
+    }
+
+    /**
+     * @param path path of a file from the root of the repository, symbolic links along it are followed
+     * @return true if the file is too large to be in the snapshot and has to be read some other way
+     */
+    public boolean isOmitted(String path) {
+        String resolvedPath = resolve(path);
+        return resolvedPath != null && omittedFiles.contains(resolvedPath);
+    }
+
+    /**
+     * @param path path of a file from the root of the repository, symbolic links along it are followed
+     * @return the content of the file, null if there is no such file
+     */
+    public String readFile(String path) {
+        String resolvedPath = resolve(path);
+        return resolvedPath == null ? null : files.get(resolvedPath);
+    }
+
+    /**
+     * @param pathToDirectory path of a directory from the root of the repository
+     * @return the names of the files and directories in the directory, null if there is no such directory
+     */
+    public List<String> listFiles(String pathToDirectory) {
+        String resolvedPath = resolve(pathToDirectory);
+        Set<String> names = resolvedPath == null ? null : directories.get(resolvedPath);
+        return names == null ? null : new ArrayList<>(names);
+    }
+
+    /**
+     * @return the size of the file contents kept in the snapshot
+     */
+    public int getContentBytes() {
+        return contentBytes;
+    }
+
+    /**
+     * @return the path with the symbolic links along it replaced by their targets, null if it leaves the repository
+     * or has too many links, like one that points at itself
+     */
+    private String resolve(String path) {
+        Deque<String> remaining = new ArrayDeque<>(Arrays.asList(StringUtils.defaultString(path).split("/")));
+        List<String> resolved = new ArrayList<>();
+        int links = 0;
+        while (!remaining.isEmpty()) {
+            String segment = remaining.removeFirst();
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                if (resolved.isEmpty()) {
+                    return null;
+                }
+                resolved.remove(resolved.size() - 1);
+                continue;
+            }
+            resolved.add(segment);
+            String target = symlinks.get(String.join("/", resolved));
+            if (target != null) {
+                links++;
+                if (links > MAX_LINKS || target.startsWith("/")) {
+                    return null;
+                }
+                // a link target is relative to the directory of the link
+                resolved.remove(resolved.size() - 1);
+                List<String> targetSegments = Arrays.asList(target.split("/"));
+                for (int i = targetSegments.size() - 1; i >= 0; i--) {
+                    remaining.addFirst(targetSegments.get(i));
+                }
+            }
+        }
+        return String.join("/", resolved);
+    }
+
+    /**
+     * Fails the read that goes over the limit, rather than letting a large entry be read through to the end
+     */
+    private static final class LimitedInputStream extends ProxyInputStream {
+        private final long maxBytes;
+        private long byteCount = 0;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        protected void afterRead(int n) throws IOException {
+            if (n > 0) {
+                byteCount += n;
+            }
+            if (byteCount > maxBytes) {
+                throw new ArchiveTooLargeException();
+            }
+        }
+    }
+
+    private static final class ArchiveTooLargeException extends IOException {
+        ArchiveTooLargeException() {
+            super("archive is too large");
+        }
+    }
+}
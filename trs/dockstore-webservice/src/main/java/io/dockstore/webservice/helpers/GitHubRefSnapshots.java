@@ -0,0 +1,146 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * The snapshots of the refs read by one GitHubSourceCodeRepo. A ref is snapshotted once several of its files are read,
+ * or as soon as it is read ahead, so that reading one or two files of a ref does not download its whole tarball.
+ * Reading ahead is bounded by what the cache holds: snapshots read ahead and not read yet, and the downloads in flight,
+ * never take more than the cache's weight, so read ahead snapshots are not evicted by other read aheads before they are used.
+ * A ref that does not fit is not read ahead, it is snapshotted once its files are read.
+ * @since 1.9.0
+ */
+final class GitHubRefSnapshots {
+    /**
+     * Reads of a ref that go to the contents API before the ref is snapshotted
+     */
+    static final int SNAPSHOT_AFTER_READS = 3;
+    /**
+     * Snapshots are weighted by the size of their files, a refresh goes through refs one at a time so only the last few are kept.
+     * The cache has a single segment, Guava splits the weight between segments and a snapshot may hold up to 32MB.
+     */
+    private static final long MAX_SNAPSHOT_BYTES = 64L * 1024 * 1024;
+
+    private final Cache<String, Optional<GitHubRefSnapshot>> snapshots = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(MAX_SNAPSHOT_BYTES)
+            .weigher((String key, Optional<GitHubRefSnapshot> snapshot) -> snapshot.map(GitHubRefSnapshot::getContentBytes).orElse(0))
+            .removalListener(this::onRemoval)
+            .build();
+    private final Map<String, AtomicInteger> readsByRef = new ConcurrentHashMap<>();
+    /**
+     * The size of the snapshots read ahead that were not read yet, by ref
+     */
+    private final Map<String, Integer> unreadBytesByRef = new ConcurrentHashMap<>();
+    /**
+     * The size of the snapshots read ahead that were not read yet, and of the downloads of read aheads in flight
+     */
+    private final AtomicLong readAheadBytes = new AtomicLong();
+    private final BiFunction<String, String, Optional<GitHubRefSnapshot>> fetcher;
+    private final long maxReadAheadBytes;
+
+    /**
+     * @param fetcher downloads the snapshot of a repository at a ref, empty if the ref cannot be snapshotted
+     */
+    GitHubRefSnapshots(BiFunction<String, String, Optional<GitHubRefSnapshot>> fetcher) {
+        this(fetcher, MAX_SNAPSHOT_BYTES);
+    }
+
+    /**
+     * @param fetcher           downloads the snapshot of a repository at a ref, empty if the ref cannot be snapshotted
+     * @param maxReadAheadBytes the most bytes of snapshots read ahead and not read yet, including downloads in flight
+     */
+    GitHubRefSnapshots(BiFunction<String, String, Optional<GitHubRefSnapshot>> fetcher, long maxReadAheadBytes) {
+        this.fetcher = fetcher;
+        this.maxReadAheadBytes = maxReadAheadBytes;
+    }
+
+    /**
+     * @param repositoryId of the form organization/repository (Ex. dockstore/dockstore-ui2)
+     * @param reference    a branch or tag name
+     * @param readAhead    true if most of the files of the ref are about to be read
+     * @return the snapshot of the ref, null if the ref is not snapshotted yet or cannot be, its files are then read another way
+     * @throws ExecutionException if the snapshot could not be fetched
+     */
+    GitHubRefSnapshot get(String repositoryId, String reference, boolean readAhead) throws ExecutionException {
+        String key = repositoryId + "@" + reference;
+        Optional<GitHubRefSnapshot> snapshot = snapshots.getIfPresent(key);
+        if (snapshot != null) {
+            if (!readAhead) {
+                release(key);
+            }
+            return snapshot.orElse(null);
+        }
+        if (readAhead) {
+            return readAhead(key, repositoryId, reference);
+        }
+        if (readsByRef.computeIfAbsent(key, ref -> new AtomicInteger()).incrementAndGet() < SNAPSHOT_AFTER_READS) {
+            return null;
+        }
+        GitHubRefSnapshot fetched = snapshots.get(key, () -> fetcher.apply(repositoryId, reference)).orElse(null);
+        release(key);
+        return fetched;
+    }
+
+    /**
+     * Snapshots a ref if the read ahead fits, its size is not known before it is downloaded so the most a snapshot
+     * can hold is set aside meanwhile
+     */
+    private GitHubRefSnapshot readAhead(String key, String repositoryId, String reference) throws ExecutionException {
+        if (readAheadBytes.addAndGet(GitHubRefSnapshot.MAX_CONTENT_BYTES) > maxReadAheadBytes) {
+            readAheadBytes.addAndGet(-GitHubRefSnapshot.MAX_CONTENT_BYTES);
+            return null;
+        }
+        try {
+            return snapshots.get(key, () -> {
+                Optional<GitHubRefSnapshot> fetched = fetcher.apply(repositoryId, reference);
+                fetched.ifPresent(snapshot -> {
+                    readAheadBytes.addAndGet(snapshot.getContentBytes());
+                    unreadBytesByRef.put(key, snapshot.getContentBytes());
+                });
+                return fetched;
+            }).orElse(null);
+        } finally {
+            readAheadBytes.addAndGet(-GitHubRefSnapshot.MAX_CONTENT_BYTES);
+        }
+    }
+
+    private void onRemoval(RemovalNotification<String, Optional<GitHubRefSnapshot>> notification) {
+        release(notification.getKey());
+    }
+
+    /**
+     * Stops counting a snapshot as read ahead, once it is read or evicted
+     */
+    private void release(String key) {
+        Integer unreadBytes = unreadBytesByRef.remove(key);
+        if (unreadBytes != null) {
+            readAheadBytes.addAndGet(-unreadBytes);
+        }
+    }
+}
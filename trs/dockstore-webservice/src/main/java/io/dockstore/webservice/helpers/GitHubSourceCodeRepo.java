@@ -29,12 +29,15 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.dockstore.common.DescriptorLanguage;
 import io.dockstore.common.SourceControl;
 import io.dockstore.webservice.CustomWebApplicationException;
@@ -85,9 +88,20 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
 
     private static final Logger LOG = LoggerFactory.getLogger(GitHubSourceCodeRepo.class);
     private final GitHub github;
+    private final String githubTokenContent;
+    /**
+     * An instance lives for one request, e.g. one refresh, so repositories and their refs are fetched once per refresh
+     * rather than once per file read. Resolved refs are keyed by the object they point at, so they are never stale.
+     */
+    private final Map<String, GHRepository> repositories = new ConcurrentHashMap<>();
+    private final Map<String, List<GHRef>> refsByRepository = new ConcurrentHashMap<>();
+    private final Map<String, Triple<String, Date, String>> resolvedRefs = new ConcurrentHashMap<>();
+    private final GitHubRefSnapshots snapshots;
 
     GitHubSourceCodeRepo(String gitUsername, String githubTokenContent) {
         this.gitUsername = gitUsername;
+        this.githubTokenContent = githubTokenContent;
+        this.snapshots = new GitHubRefSnapshots((repositoryId, reference) -> GitHubRefSnapshot.fetch(repositoryId, reference, githubTokenContent));
         ObsoleteUrlFactory obsoleteUrlFactory = new ObsoleteUrlFactory(
                 new OkHttpClient.Builder().cache(DockstoreWebserviceApplication.getCache()).build());
         HttpConnector okHttp3Connector =  new ImpatientHttpConnector(obsoleteUrlFactory::open);
@@ -104,7 +118,7 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
 
         GHRepository repo;
         try {
-            repo = github.getRepository(repositoryId);
+            repo = getCachedRepository(repositoryId);
         } catch (IOException e) {
             LOG.error(gitUsername + ": IOException on readFile " + e.getMessage());
             return null;
@@ -116,7 +130,11 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
     public List<String> listFiles(String repositoryId, String pathToDirectory, String reference) {
         GHRepository repo;
         try {
-            repo = github.getRepository(repositoryId);
+            repo = getCachedRepository(repositoryId);
+            GitHubRefSnapshot snapshot = getSnapshot(repo, reference, false);
+            if (snapshot != null) {
+                return snapshot.listFiles(pathToDirectory);
+            }
             List<GHContent> directoryContent = repo.getDirectoryContent(pathToDirectory, reference);
             return directoryContent.stream().map(GHContent::getName).collect(Collectors.toList());
         } catch (IOException e) {
@@ -125,11 +143,26 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         }
     }
 
+    @Override
+    public void prefetch(String repositoryId, String reference) {
+        try {
+            getSnapshot(getCachedRepository(repositoryId), reference, true);
+        } catch (IOException e) {
+            LOG.warn(gitUsername + ": could not prefetch " + repositoryId + " at " + reference + ". " + e.getMessage());
+        }
+    }
+
     private String readFileFromRepo(String fileName, String reference, GHRepository repo) {
         GHRateLimit startRateLimit = null;
         try {
             startRateLimit = getGhRateLimitQuietly();
 
+            // once several files of a ref are read, read the whole ref in one request when it is small enough
+            GitHubRefSnapshot snapshot = getSnapshot(repo, reference, false);
+            if (snapshot != null && !snapshot.isOmitted(fileName)) {
+                return snapshot.readFile(fileName);
+            }
+
             // may need to pass owner from git url, as this may differ from the git username
             List<String> folders = Arrays.asList(fileName.split("/"));
             List<String> start = new ArrayList<>();
@@ -176,6 +209,25 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         }
     }
 
+    /**
+     * Gets the files of a ref, downloading its tarball once the ref is read enough
+     * @param repo GitHub repository object
+     * @param reference a branch or tag name
+     * @param readAhead true to download the tarball now, because most files of the ref are about to be read
+     * @return the files of the ref, null if the ref does not exist, is not snapshotted yet or is too large to snapshot
+     */
+    private GitHubRefSnapshot getSnapshot(GHRepository repo, String reference, boolean readAhead) {
+        try {
+            if (reference == null || getRefs(repo).stream().noneMatch(ref -> ref.getRef().contains(reference))) {
+                return null;
+            }
+            return snapshots.get(repo.getFullName(), reference, readAhead);
+        } catch (IOException | ExecutionException | UncheckedExecutionException e) {
+            LOG.warn(gitUsername + ": could not snapshot " + repo.getFullName() + " at " + reference + ". " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * For a given file, in a github repo, with a particular cleaned reference name.
      * @param fileName
@@ -189,8 +241,8 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         // retrieval of directory content is cached as opposed to retrieving individual files
         String fullPathNoEndSeparator = FilenameUtils.getFullPathNoEndSeparator(fileName);
         // but tags on quay.io that do not match github are costly, avoid by checking cached references
-        GHRef[] refs = repo.getRefs();
-        if (Lists.newArrayList(refs).stream().noneMatch(ref -> ref.getRef().contains(reference))) {
+        List<GHRef> refs = getRefs(repo);
+        if (refs.stream().noneMatch(ref -> ref.getRef().contains(reference))) {
             return null;
         }
         // only look at github if the reference exists
@@ -279,7 +331,7 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
     public Workflow initializeWorkflow(String repositoryId, Workflow workflow) {
         // Get repository from API and setup workflow
         try {
-            GHRepository repository = github.getRepository(repositoryId);
+            GHRepository repository = getCachedRepository(repositoryId);
             workflow.setOrganization(repository.getOwner().getLogin());
             workflow.setRepository(repository.getName());
             workflow.setSourceControl(SourceControl.GITHUB);
@@ -319,7 +371,7 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         // when getting a full workflow, look for versions and check each version for valid workflows
         List<Triple<String, Date, String>> references = new ArrayList<>();
         try {
-            GHRef[] refs = repository.getRefs();
+            List<GHRef> refs = getRefs(repository);
             for (GHRef ref : refs) {
                 if (workflow.getMode() != WorkflowMode.SERVICE || ref.getRef().startsWith("refs/tags")) {
                     references.add(getRef(ref, repository));
@@ -358,7 +410,7 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
     public GHRepository getRepository(String repositoryId) {
         GHRepository repository;
         try {
-            repository = github.getRepository(repositoryId);
+            repository = getCachedRepository(repositoryId);
         } catch (IOException e) {
             LOG.error(gitUsername + ": Cannot retrieve the workflow from GitHub", e);
             throw new CustomWebApplicationException("Could not reach GitHub, please try again later", HttpStatus.SC_SERVICE_UNAVAILABLE);
@@ -367,6 +419,35 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         return repository;
     }
 
+    private GHRepository getCachedRepository(String repositoryId) throws IOException {
+        GHRepository repository = repositories.get(repositoryId);
+        if (repository == null) {
+            repository = github.getRepository(repositoryId);
+            repositories.put(repositoryId, repository);
+        }
+        return repository;
+    }
+
+    /**
+     * Lists the branches and tags of a repository once per instance
+     * @param repository GitHub repository object
+     * @return the refs of the repository, empty if it has none
+     * @throws IOException if GitHub could not be reached
+     */
+    private List<GHRef> getRefs(GHRepository repository) throws IOException {
+        List<GHRef> refs = refsByRepository.get(repository.getFullName());
+        if (refs == null) {
+            try {
+                refs = Arrays.asList(repository.getRefs());
+            } catch (GHFileNotFoundException e) {
+                // seems to legitimately do this when the repo has no tags or releases
+                refs = List.of();
+            }
+            refsByRepository.put(repository.getFullName(), refs);
+        }
+        return refs;
+    }
+
     /**
      * Retrieve important information related to a reference
      * @param ref GitHub reference object
@@ -389,6 +470,11 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         }
 
         if (!toIgnore) {
+            String refKey = repository.getFullName() + "/" + ref.getRef() + "@" + ref.getObject().getSha();
+            Triple<String, Date, String> resolvedRef = resolvedRefs.get(refKey);
+            if (resolvedRef != null) {
+                return resolvedRef;
+            }
             try {
                 sha = ref.getObject().getSha();
                 if (ref.getObject().getType().equals("tag")) {
@@ -404,6 +490,9 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
                 if (branchDate.before(epochStart)) {
                     branchDate = epochStart;
                 }
+                resolvedRef = Triple.of(refName, branchDate, sha);
+                resolvedRefs.put(refKey, resolvedRef);
+                return resolvedRef;
             } catch (IOException e) {
                 LOG.error("unable to retrieve commit date for branch " + refName);
             }
@@ -432,6 +521,12 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         version.setLastModified(ref.getMiddle());
         version.setCommitID(ref.getRight());
         String calculatedPath = version.getWorkflowPath();
+        if (isUnchanged(existingDefaults.get(ref.getLeft()), version, workflow)) {
+            LOG.info(gitUsername + ": Reference " + ref.getLeft() + " has not moved since the last refresh, keeping its version");
+            version.setUnchanged(true);
+            return version;
+        }
+        version.setParserVersion(PARSER_VERSION);
 
         DescriptorLanguage.FileType identifiedType = workflow.getFileType();
 
@@ -607,7 +702,7 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         // Get repository based on username and repo id
         if (repositoryId != null) {
             try {
-                GHRepository repository = github.getRepository(repositoryId);
+                GHRepository repository = getCachedRepository(repositoryId);
                 // Determine the default branch on Github
                 mainBranch = repository.getDefaultBranch();
             } catch (IOException e) {
@@ -635,8 +730,8 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
         }
         GHRepository repo;
         try {
-            repo = github.getRepository(repositoryId);
-            GHRef[] refs = repo.getRefs();
+            repo = getCachedRepository(repositoryId);
+            List<GHRef> refs = getRefs(repo);
 
             for (GHRef ref : refs) {
                 String reference = StringUtils.removePattern(ref.getRef(), "refs/.+?/");
@@ -661,8 +756,8 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
     protected String getCommitID(String repositoryId, Version version) {
         GHRepository repo;
         try {
-            repo = github.getRepository(repositoryId);
-            GHRef[] refs = repo.getRefs();
+            repo = getCachedRepository(repositoryId);
+            List<GHRef> refs = getRefs(repo);
 
             for (GHRef ref : refs) {
                 String reference = StringUtils.removePattern(ref.getRef(), "refs/.+?/");
@@ -719,6 +814,9 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
             WorkflowVersion version;
             try {
                 version = getTagVersion(ghRepository, gitReference, workflow);
+                if (version != null && version.isUnchanged()) {
+                    continue;
+                }
                 if (version == null && workflowMode == WorkflowMode.SERVICE) {
                     String msg = "Could not create a version. Please ensure that the dockstore.yml is present.";
                     LOG.error(msg);
@@ -21,12 +21,23 @@ import java.util.List;
 
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.EntryStateChange;
 import io.dockstore.webservice.helpers.statelisteners.ElasticListener;
 import io.dockstore.webservice.helpers.statelisteners.RSSListener;
 import io.dockstore.webservice.helpers.statelisteners.SitemapListener;
 import io.dockstore.webservice.helpers.statelisteners.StateListenerInterface;
+import io.dockstore.webservice.jdbi.EntryStateChangeDAO;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.context.internal.ManagedSessionContext;
 
 /**
+ * Tells the state listeners about changes to public entries.
+ * Once a dispatcher is set, changes made inside a unit of work are written to the entry_state_change outbox in its
+ * transaction and the dispatcher applies them after it commits, so a rolled back change is never applied and listeners
+ * do not slow down or fail the request. Changes made outside of a unit of work are applied right away.
+ *
  * @author dyuen
  * @version 1.8.0
  */
@@ -38,6 +49,9 @@ public final class PublicStateManager {
     private final ElasticListener elasticListener = new ElasticListener();
     private final List<StateListenerInterface> listeners = new ArrayList<>(Arrays.asList(sitemapListener, rssListener, elasticListener));
     private DockstoreWebserviceConfiguration config;
+    private SessionFactory sessionFactory;
+    private EntryStateChangeDAO stateChangeDAO;
+    private EntryStateChangeDispatcher dispatcher;
 
     private PublicStateManager() {
         // inaccessible on purpose
@@ -51,6 +65,10 @@ public final class PublicStateManager {
         return rssListener;
     }
 
+    public ElasticListener getElasticListener() {
+        return elasticListener;
+    }
+
     public static PublicStateManager getInstance() {
         return SINGLETON;
     }
@@ -60,18 +78,77 @@ public final class PublicStateManager {
         listener.setConfig(config);
     }
 
+    /**
+     * Sends changes made inside a unit of work through the outbox
+     *
+     * @param factory    the session factory of the units of work
+     * @param dao        writes the outbox
+     * @param dispatcher applies the outbox to the listeners
+     */
+    public void setDispatcher(SessionFactory factory, EntryStateChangeDAO dao, EntryStateChangeDispatcher dispatcher) {
+        this.sessionFactory = factory;
+        this.stateChangeDAO = dao;
+        this.dispatcher = dispatcher;
+    }
+
     public void handleIndexUpdate(Entry entry, StateManagerMode command) {
+        if (canDefer(List.of(entry))) {
+            defer(entry, command);
+            notifyOnCommit();
+        } else {
+            dispatch(entry, command);
+        }
+    }
+
+    public void bulkUpsert(List<Entry> entries) {
+        if (canDefer(entries)) {
+            entries.forEach(entry -> defer(entry, StateManagerMode.PUBLISH));
+            notifyOnCommit();
+        } else {
+            dispatchBulkUpsert(entries);
+        }
+    }
+
+    void dispatch(Entry entry, StateManagerMode command) {
         for (StateListenerInterface listener : getListeners()) {
             listener.handleIndexUpdate(entry, command);
         }
     }
 
-    public void bulkUpsert(List<Entry> entries) {
+    void dispatchBulkUpsert(List<Entry> entries) {
         for (StateListenerInterface listenerInterface : getListeners()) {
             listenerInterface.bulkUpsert(entries);
         }
     }
 
+    /**
+     * @return true if there is a transaction to write the changes in, and the entries have ids to find them by later
+     */
+    private boolean canDefer(List<Entry> entries) {
+        if (dispatcher == null || entries.isEmpty() || !ManagedSessionContext.hasBind(sessionFactory)) {
+            return false;
+        }
+        return sessionFactory.getCurrentSession().getTransaction().isActive() && entries.stream().allMatch(entry -> entry.getId() != 0);
+    }
+
+    private void defer(Entry entry, StateManagerMode command) {
+        stateChangeDAO.create(new EntryStateChange(Hibernate.getClass(entry).getName(), entry.getId(), command));
+    }
+
+    /**
+     * Wakes the dispatcher up as soon as the changes are committed rather than at its next poll
+     */
+    private void notifyOnCommit() {
+        sessionFactory.getCurrentSession().addEventListeners(new BaseSessionEventListener() {
+            @Override
+            public void transactionCompletion(boolean successful) {
+                if (successful) {
+                    dispatcher.wakeUp();
+                }
+            }
+        });
+    }
+
     public void setConfig(DockstoreWebserviceConfiguration config) {
         this.config = config;
         for (StateListenerInterface listener : listeners) {
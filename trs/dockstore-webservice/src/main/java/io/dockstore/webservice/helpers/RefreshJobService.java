@@ -0,0 +1,308 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.core.RefreshJob;
+import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.jdbi.RefreshJobDAO;
+import io.dockstore.webservice.jdbi.UserDAO;
+import io.dropwizard.hibernate.UnitOfWork;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.http.HttpStatus;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the refresh jobs in the refresh_job table on a bounded pool of worker threads, so that a refresh holds
+ * neither a Jetty thread nor more than one of a few database connections while it talks to source control and image registries.
+ * Queued jobs are started in the order they were submitted, except that a user has at most {@link #MAX_RUNNING_JOBS_PER_USER}
+ * jobs running at once and an entry is never refreshed by two jobs at once. The queue is in the database, so jobs
+ * survive a restart and are shared by all the webservices.
+ * <p>
+ * Must be created through a UnitOfWorkAwareProxyFactory so that starting, running and failing a job each run in their own transaction.
+ * A running job commits what it has written after each tool or version it refreshes, so that a long refresh does not keep
+ * one transaction open for its whole run.
+ * @since 1.9.0
+ */
+public class RefreshJobService implements Managed {
+    public static final int MAX_QUEUED_JOBS_PER_USER = 20;
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshJobService.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int WORKER_THREADS = 4;
+    private static final int MAX_RUNNING_JOBS_PER_USER = 2;
+    /**
+     * How many queued jobs are looked at to fill the free workers, jobs of users that are at their limit are passed over
+     */
+    private static final int QUEUE_SCAN_SIZE = 100;
+    private static final long POLL_INTERVAL_SECONDS = 10;
+    private static final long STOP_TIMEOUT_SECONDS = 60;
+    /**
+     * A job that is still running after this long was left behind by a webservice that stopped
+     */
+    private static final Duration STALE_JOB_TIMEOUT = Duration.ofHours(2);
+
+    private final RefreshJobDAO refreshJobDAO;
+    private final UserDAO userDAO;
+    private final SessionFactory sessionFactory;
+    private final Map<RefreshJob.Type, Handler> handlers = new EnumMap<>(RefreshJob.Type.class);
+    private final AtomicInteger runningJobs = new AtomicInteger(0);
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean(false);
+    private volatile ScheduledExecutorService scheduler;
+    private volatile ExecutorService workers;
+
+    public RefreshJobService(RefreshJobDAO refreshJobDAO, UserDAO userDAO, SessionFactory sessionFactory) {
+        this.refreshJobDAO = refreshJobDAO;
+        this.userDAO = userDAO;
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * @param type    a type of job
+     * @param handler does the refresh of a job of that type
+     */
+    public void setHandler(RefreshJob.Type type, Handler handler) {
+        handlers.put(type, handler);
+    }
+
+    @Override
+    public synchronized void start() {
+        workers = Executors.newFixedThreadPool(WORKER_THREADS, daemonThreads("refresh-job-worker"));
+        ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(1, daemonThreads("refresh-job-scheduler"));
+        threadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        threadPool.scheduleWithFixedDelay(this::startJobs, 0, POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        scheduler = threadPool;
+    }
+
+    /**
+     * Stops starting jobs and lets the running ones finish, jobs that are still queued are run by the next webservice to start
+     */
+    @Override
+    public synchronized void stop() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            workers.shutdown();
+            if (!workers.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.error("Refresh jobs did not finish in time.");
+                workers.shutdownNow();
+            }
+            scheduler = null;
+            workers = null;
+        }
+    }
+
+    /**
+     * Queues a refresh, or finds the queued refresh of the same thing. Must be called in a unit of work, the job is
+     * started once it commits.
+     *
+     * @param user     the user that submits the job
+     * @param type     what is refreshed
+     * @param targetId the id of the workflow, tool or user that is refreshed
+     * @return the queued job
+     */
+    public RefreshJob submit(User user, RefreshJob.Type type, long targetId) {
+        RefreshJob queuedJob = refreshJobDAO.findQueuedByTarget(type, targetId).orElse(null);
+        if (queuedJob != null) {
+            return queuedJob;
+        }
+        if (refreshJobDAO.countQueuedByUser(user.getId()) >= MAX_QUEUED_JOBS_PER_USER) {
+            throw new CustomWebApplicationException("You have too many refreshes waiting to run, please try again once some have finished.",
+                TOO_MANY_REQUESTS);
+        }
+        long id = refreshJobDAO.create(new RefreshJob(user.getId(), type, targetId));
+        sessionFactory.getCurrentSession().addEventListeners(new BaseSessionEventListener() {
+            @Override
+            public void transactionCompletion(boolean successful) {
+                if (successful) {
+                    wakeUp();
+                }
+            }
+        });
+        return refreshJobDAO.findById(id);
+    }
+
+    /**
+     * Looks for jobs to start now rather than at the next poll, wake ups that come in before the queue is read are merged
+     */
+    public void wakeUp() {
+        // not synchronized, workers wake the scheduler up while stop() waits for them
+        ScheduledExecutorService currentScheduler = scheduler;
+        if (currentScheduler != null && !currentScheduler.isShutdown() && wakeUpPending.compareAndSet(false, true)) {
+            try {
+                currentScheduler.execute(this::startJobs);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Refresh job scheduler is stopping.");
+            }
+        }
+    }
+
+    private void startJobs() {
+        wakeUpPending.set(false);
+        ExecutorService currentWorkers = workers;
+        int freeWorkers = WORKER_THREADS - runningJobs.get();
+        if (currentWorkers == null || freeWorkers <= 0) {
+            return;
+        }
+        try {
+            for (long jobId : claimJobs(freeWorkers)) {
+                runningJobs.incrementAndGet();
+                currentWorkers.execute(() -> run(jobId));
+            }
+        } catch (RuntimeException e) {
+            // the jobs stay queued and are looked at again at the next poll
+            LOG.error("Could not start refresh jobs.", e);
+        }
+    }
+
+    private void run(long jobId) {
+        try {
+            runJob(jobId);
+        } catch (RuntimeException e) {
+            String message = e instanceof CustomWebApplicationException
+                ? ((CustomWebApplicationException)e).getErrorMessage() : e.getMessage();
+            LOG.error("Refresh job " + jobId + " failed.", e);
+            try {
+                failJob(jobId, message);
+            } catch (RuntimeException failure) {
+                LOG.error("Could not record the failure of refresh job " + jobId, failure);
+            }
+        } finally {
+            runningJobs.decrementAndGet();
+            wakeUp();
+        }
+    }
+
+    /**
+     * Marks the oldest queued jobs that may start now as running, jobs left running by a webservice that stopped are failed
+     *
+     * @param limit the maximum number of jobs to start
+     * @return the ids of the jobs to run
+     */
+    @UnitOfWork
+    public List<Long> claimJobs(int limit) {
+        Timestamp now = Timestamp.from(Instant.now());
+        Timestamp staleBefore = Timestamp.from(Instant.now().minus(STALE_JOB_TIMEOUT));
+        Map<Long, Integer> runningByUser = new HashMap<>();
+        Set<String> runningTargets = new HashSet<>();
+        for (RefreshJob job : refreshJobDAO.findRunning()) {
+            if (job.getStartedAt() == null || job.getStartedAt().before(staleBefore)) {
+                job.setStatus(RefreshJob.Status.FAILED);
+                job.setMessage("The refresh did not finish");
+                job.setFinishedAt(now);
+            } else {
+                runningByUser.merge(job.getUserId(), 1, Integer::sum);
+                runningTargets.add(job.getType() + ":" + job.getTargetId());
+            }
+        }
+        List<Long> claimedJobs = new ArrayList<>();
+        for (RefreshJob job : refreshJobDAO.findQueued(QUEUE_SCAN_SIZE)) {
+            if (claimedJobs.size() == limit) {
+                break;
+            }
+            if (runningByUser.getOrDefault(job.getUserId(), 0) >= MAX_RUNNING_JOBS_PER_USER
+                || !runningTargets.add(job.getType() + ":" + job.getTargetId())) {
+                continue;
+            }
+            runningByUser.merge(job.getUserId(), 1, Integer::sum);
+            job.setStatus(RefreshJob.Status.RUNNING);
+            job.setStartedAt(now);
+            claimedJobs.add(job.getId());
+        }
+        return claimedJobs;
+    }
+
+    /**
+     * Does the refresh of a job and marks it as succeeded. The refresh commits as it goes, the job is marked as succeeded
+     * in the last transaction.
+     *
+     * @param jobId a job claimed by this webservice
+     */
+    @UnitOfWork
+    public void runJob(long jobId) {
+        RefreshJob job = refreshJobDAO.findById(jobId);
+        User user = userDAO.findById(job.getUserId());
+        if (user == null) {
+            throw new CustomWebApplicationException("User not found", HttpStatus.SC_BAD_REQUEST);
+        }
+        handlers.get(job.getType()).refresh(user, job.getTargetId(), this::checkpoint);
+        // some refreshes clear the session, so look the job up again
+        job = refreshJobDAO.findById(jobId);
+        job.setStatus(RefreshJob.Status.SUCCEEDED);
+        job.setFinishedAt(Timestamp.from(Instant.now()));
+    }
+
+    @UnitOfWork
+    public void failJob(long jobId, String message) {
+        RefreshJob job = refreshJobDAO.findById(jobId);
+        job.setStatus(RefreshJob.Status.FAILED);
+        job.setMessage(message);
+        job.setFinishedAt(Timestamp.from(Instant.now()));
+    }
+
+    /**
+     * Commits what the running job has written so far and starts a new transaction for the rest of it
+     */
+    private void checkpoint() {
+        Session session = sessionFactory.getCurrentSession();
+        session.getTransaction().commit();
+        session.beginTransaction();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Does the refresh of a type of job
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param user       the user that submitted the job
+         * @param targetId   the id of what is refreshed
+         * @param checkpoint commits what the refresh has written so far, called after each tool or version it refreshes
+         */
+        void refresh(User user, long targetId, Runnable checkpoint);
+    }
+}
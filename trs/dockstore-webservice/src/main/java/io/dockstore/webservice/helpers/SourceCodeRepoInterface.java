@@ -22,11 +22,20 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
@@ -49,6 +58,7 @@ import io.dockstore.webservice.core.WorkflowMode;
 import io.dockstore.webservice.core.WorkflowVersion;
 import io.dockstore.webservice.languages.LanguageHandlerFactory;
 import io.dockstore.webservice.languages.LanguageHandlerInterface;
+import io.dockstore.webservice.languages.LanguagePluginTimeoutException;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,7 +72,31 @@ import org.slf4j.LoggerFactory;
 public abstract class SourceCodeRepoInterface {
     public static final Logger LOG = LoggerFactory.getLogger(SourceCodeRepoInterface.class);
     public static final int BYTES_IN_KB = 1024;
+    /**
+     * Bump when how the files of a version are read or parsed changes, so that the next refresh reads every version again
+     * rather than keeping those whose ref has not moved
+     */
+    public static final int PARSER_VERSION = 1;
+    private static final int IMPORT_READ_THREADS = 32;
+    /**
+     * An instance lives for one request, e.g. one refresh, so this bounds how many files a refresh reads at once
+     */
+    private static final int MAX_IMPORT_READS_PER_INSTANCE = 8;
+    /**
+     * Not the registry fetch pool, reads of imports are started by work that may itself run on that pool
+     */
+    private static final ExecutorService IMPORT_READ_EXECUTOR = Executors.newFixedThreadPool(IMPORT_READ_THREADS, new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "import-read-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     String gitUsername;
+    private final Semaphore importReadPermits = new Semaphore(MAX_IMPORT_READS_PER_INSTANCE);
 
     /**
      * Tries to get the README contents
@@ -257,7 +291,7 @@ public abstract class SourceCodeRepoInterface {
 
         // update each workflow with reference types
         Set<WorkflowVersion> versions = workflow.getWorkflowVersions();
-        versions.forEach(version -> updateReferenceType(repositoryId, version));
+        versions.stream().filter(version -> !version.isUnchanged()).forEach(version -> updateReferenceType(repositoryId, version));
 
         // Get metadata for workflow and update workflow with it
         //TODO to parse metadata in WDL, there is a hidden dependency on validation now (validation does checks for things like recursive imports)
@@ -304,7 +338,8 @@ public abstract class SourceCodeRepoInterface {
         }
         if (entry instanceof Workflow) {
             Workflow workflow = (Workflow)entry;
-            workflow.getWorkflowVersions().forEach(workflowVersion -> {
+            // versions that were not refreshed keep their metadata
+            workflow.getWorkflowVersions().stream().filter(workflowVersion -> !workflowVersion.isUnchanged()).forEach(workflowVersion -> {
                 String filePath = workflowVersion.getWorkflowPath();
                 updateVersionMetadata(filePath, workflowVersion, type, repositoryId);
             });
@@ -449,6 +484,33 @@ public abstract class SourceCodeRepoInterface {
         return version;
     }
 
+    /**
+     * A ref that still points at the commit that a version was last refreshed from has the same files,
+     * so the stored version can be kept as is rather than read, parsed and validated again,
+     * unless it was read by an older {@link #PARSER_VERSION}.
+     *
+     * @param existingVersion the version as last refreshed, null if the version is new
+     * @param version         the version being refreshed, with the commit its ref points at now
+     * @param workflow        the workflow of the version
+     * @return true if the stored version can be kept as is
+     */
+    boolean isUnchanged(WorkflowVersion existingVersion, WorkflowVersion version, Workflow workflow) {
+        if (existingVersion == null || version.getCommitID() == null || !version.getCommitID().equals(existingVersion.getCommitID())) {
+            return false;
+        }
+        // read again what was read by an older parser, it may have missed imports or failed on files that now parse
+        if (!Objects.equals(existingVersion.getParserVersion(), PARSER_VERSION)) {
+            return false;
+        }
+        // the files to read may have changed even if the commit has not, retry invalid versions in case they failed for another reason
+        if (!Objects.equals(existingVersion.getWorkflowPath(), version.getWorkflowPath()) || !existingVersion.isValid()) {
+            return false;
+        }
+        String testParameterFilePath = workflow.getDefaultTestParameterFilePath();
+        return existingVersion.isDirtyBit() || testParameterFilePath == null
+            || existingVersion.getSourceFiles().stream().anyMatch(file -> testParameterFilePath.equals(file.getPath()));
+    }
+
     /**
      * Resolves imports for a sourcefile, associates with version
      * @param repositoryId identifies the git repository that we wish to use, normally something like 'organization/repo_name`
@@ -555,6 +617,61 @@ public abstract class SourceCodeRepoInterface {
         }
     }
 
+    /**
+     * Looks in a source code repo for several files of a version at once, see {@link #readGitRepositoryFile}. The files are read
+     * concurrently, at most {@link #MAX_IMPORT_READS_PER_INSTANCE} at a time by this instance, the caller waits to start the others.
+     * @param repositoryId identifies the git repository that we wish to use, normally something like 'organization/repo_name`
+     * @param fileType
+     * @param version
+     * @param specificPaths the paths of the files
+     * @return the content of the files that could be read, by path
+     */
+    public Map<String, String> readGitRepositoryFiles(String repositoryId, DescriptorLanguage.FileType fileType, Version version,
+        Collection<String> specificPaths) {
+        Map<String, CompletableFuture<String>> reads = new LinkedHashMap<>();
+        for (String specificPath : specificPaths) {
+            // the permit is taken here rather than in the read, so that a refresh with many files to read waits on its own thread
+            // instead of holding threads of the shared pool
+            importReadPermits.acquireUninterruptibly();
+            CompletableFuture<String> read;
+            try {
+                read = CompletableFuture
+                    .supplyAsync(() -> readGitRepositoryFile(repositoryId, fileType, version, specificPath), IMPORT_READ_EXECUTOR);
+            } catch (RejectedExecutionException e) {
+                importReadPermits.release();
+                throw e;
+            }
+            read.whenComplete((content, e) -> importReadPermits.release());
+            reads.put(specificPath, read);
+        }
+        Map<String, String> contents = new HashMap<>();
+        try {
+            for (Map.Entry<String, CompletableFuture<String>> read : reads.entrySet()) {
+                String content = read.getValue().join();
+                if (content != null) {
+                    contents.put(read.getKey(), content);
+                }
+            }
+        } catch (CompletionException e) {
+            reads.values().forEach(read -> read.cancel(false));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+        return contents;
+    }
+
+    /**
+     * Reads ahead what reading files from a ref will need, so that it can be done concurrently with other work.
+     * Must be safe to call from any thread. By default nothing is read ahead.
+     *
+     * @param repositoryId the repository
+     * @param reference    a branch or tag name
+     */
+    public void prefetch(String repositoryId, String reference) {
+    }
+
     public Map<String, SourceFile> resolveImports(String repositoryId, String content, DescriptorLanguage.FileType fileType, Version version, String filepath) {
         LanguageHandlerInterface languageInterface = LanguageHandlerFactory.getInterface(fileType);
         return languageInterface.processImports(repositoryId, content, version, this, filepath);
@@ -617,10 +734,18 @@ public abstract class SourceCodeRepoInterface {
                 .equals(sourceFile.getPath(), mainDescriptorPath))).findFirst();
 
         // Validate descriptor set
+        boolean descriptorSetValidated = true;
         if (mainDescriptor.isPresent()) {
-            VersionTypeValidation validDescriptorSet = LanguageHandlerFactory.getInterface(identifiedType).validateWorkflowSet(sourceFiles, mainDescriptorPath);
-            Validation descriptorValidation = new Validation(identifiedType, validDescriptorSet);
-            version.addOrUpdateValidation(descriptorValidation);
+            try {
+                VersionTypeValidation validDescriptorSet = LanguageHandlerFactory.getInterface(identifiedType)
+                    .validateWorkflowSet(sourceFiles, mainDescriptorPath);
+                Validation descriptorValidation = new Validation(identifiedType, validDescriptorSet);
+                version.addOrUpdateValidation(descriptorValidation);
+            } catch (LanguagePluginTimeoutException ex) {
+                // a plugin that did not finish says nothing about the descriptors, so keep the validation the version had
+                LOG.warn("Could not validate " + mainDescriptorPath + " of " + version.getName() + ": " + ex.getErrorMessage());
+                descriptorSetValidated = false;
+            }
         } else {
             Map<String, String> validationMessage = new HashMap<>();
             validationMessage.put(mainDescriptorPath, "Missing the primary descriptor.");
@@ -635,7 +760,8 @@ public abstract class SourceCodeRepoInterface {
         Validation testParameterValidation = new Validation(entry.getTestParameterType(), validTestParameterSet);
         version.addOrUpdateValidation(testParameterValidation);
 
-        version.setValid(isValidVersion(version));
+        // a version is not valid until its descriptors are, an invalid version is read again at the next refresh
+        version.setValid(descriptorSetValidated && isValidVersion(version));
 
         return version;
     }
@@ -0,0 +1,293 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers.statelisteners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends index updates to Elasticsearch in the background.
+ * Callers queue bulk API actions, a single worker groups them into bulk requests bounded by number of actions, size and time,
+ * and retries requests that fail because Elasticsearch is unavailable or overloaded. The queue is bounded, so callers block
+ * rather than exhaust the heap when updates come in faster than Elasticsearch takes them, e.g. during a bulk reindex.
+ * Actions are sent in the order they were queued, so the last update to an entry wins.
+ * @since 1.9.0
+ */
+public class ElasticBulkIndexer implements Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticBulkIndexer.class);
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BULK_ACTIONS = 500;
+    private static final int MAX_BULK_BYTES = 5 * 1024 * 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final String INDEX_NOT_FOUND = "index_not_found_exception";
+
+    private final BlockingQueue<byte[]> actions = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong queuedActions = new AtomicLong();
+    /**
+     * Actions that were sent, or given up on, guarded by this
+     */
+    private long handledActions = 0;
+    private final String bulkEndpoint;
+    private final Supplier<RestClient> restClient;
+    private Thread worker;
+    private volatile boolean stopping = false;
+
+    /**
+     * @param bulkEndpoint the bulk API endpoint, e.g. /entry/_bulk
+     * @param restClient   supplies the shared client, called for every request so that configuration changes are picked up
+     */
+    public ElasticBulkIndexer(String bulkEndpoint, Supplier<RestClient> restClient) {
+        this.bulkEndpoint = bulkEndpoint;
+        this.restClient = restClient;
+    }
+
+    /**
+     * Queues one bulk API action, waiting for space in the queue if it is full
+     *
+     * @param action the newline terminated action line, followed by its newline terminated source line if it has one
+     */
+    public void submit(byte[] action) {
+        if (stopping) {
+            LOGGER.error("Elastic search indexer is stopped, dropping an index update.");
+            return;
+        }
+        startWorker();
+        try {
+            actions.put(action);
+            queuedActions.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while queueing an index update for elastic search.");
+        }
+    }
+
+    @Override
+    public void start() {
+        // the worker is started by the first update so that the indexer also works outside of the application lifecycle
+    }
+
+    /**
+     * Sends what is still queued before returning, for up to {@link #STOP_TIMEOUT_SECONDS}
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        stopping = true;
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+        }
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SECONDS));
+            if (thread.isAlive()) {
+                LOGGER.error("Elastic search indexer did not finish in time, " + actions.size() + " index updates were not sent.");
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for the actions queued so far to be sent, or given up on after their retries
+     *
+     * @param timeout how long to wait
+     * @param unit    the unit of the timeout
+     * @return false if some actions were still queued or being sent when the timeout passed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = queuedActions.get();
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (handledActions < target) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    private synchronized void markHandled(int count) {
+        handledActions += count;
+        notifyAll();
+    }
+
+    private synchronized void startWorker() {
+        if (worker == null) {
+            worker = new Thread(this::run, "elastic-bulk-indexer");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void run() {
+        List<byte[]> batch = new ArrayList<>();
+        try {
+            while (!stopping || !actions.isEmpty()) {
+                byte[] first = actions.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int size = first.length;
+                long deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MILLIS;
+                while (batch.size() < MAX_BULK_ACTIONS && size < MAX_BULK_BYTES) {
+                    byte[] next = actions.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    size += next.length;
+                }
+                try {
+                    send(batch, size);
+                } catch (RuntimeException e) {
+                    // keep indexing later updates, losing only this batch
+                    LOGGER.error("Could not submit " + batch.size() + " index updates to elastic search.", e);
+                }
+                markHandled(batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Elastic search indexer was interrupted, " + (batch.size() + actions.size()) + " index updates were not sent.");
+        }
+    }
+
+    /**
+     * Sends actions right away from the calling thread rather than queueing them, retrying like queued actions are retried
+     *
+     * @param batch bulk API actions, each newline terminated
+     * @throws IOException if Elasticsearch did not accept the request
+     */
+    public void sendNow(List<byte[]> batch) throws IOException {
+        try {
+            post(batch, batch.stream().mapToInt(action -> action.length).sum());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending index updates to elastic search");
+        }
+    }
+
+    private void send(List<byte[]> batch, int size) throws InterruptedException {
+        try {
+            post(batch, size);
+        } catch (IOException e) {
+            LOGGER.error("Could not submit " + batch.size() + " index updates to elastic search. " + e.getMessage());
+        }
+    }
+
+    private void post(List<byte[]> batch, int size) throws IOException, InterruptedException {
+        List<byte[]> pending = batch;
+        int pendingSize = size;
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1;; attempt++) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(pendingSize);
+            pending.forEach(action -> body.write(action, 0, action.length));
+            NByteArrayEntity entity = new NByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_JSON);
+            boolean retryable;
+            IOException failure;
+            try {
+                org.elasticsearch.client.Response response = restClient.get()
+                    .performRequest("POST", bulkEndpoint, Collections.emptyMap(), entity);
+                pending = getMissingIndexActions(response, pending);
+                if (pending.isEmpty()) {
+                    LOGGER.info("Successfully sent " + batch.size() + " index updates to elastic search.");
+                    return;
+                }
+                pendingSize = pending.stream().mapToInt(action -> action.length).sum();
+                retryable = true;
+                failure = new IOException(pending.size() + " index updates were sent to an index that does not exist");
+            } catch (ResponseException e) {
+                int statusCode = e.getResponse().getStatusLine().getStatusCode();
+                retryable = statusCode == TOO_MANY_REQUESTS || statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+                failure = e;
+            } catch (IOException e) {
+                retryable = true;
+                failure = e;
+            }
+            if (!retryable || attempt == MAX_ATTEMPTS) {
+                throw failure;
+            }
+            LOGGER.warn("Could not submit index updates to elastic search, retrying in " + backoff + " ms. " + failure.getMessage());
+            Thread.sleep(backoff);
+            backoff *= 2;
+        }
+    }
+
+    /**
+     * A bulk request succeeds even if some of its actions fail, e.g. because of a mapping conflict. Failed actions are logged,
+     * except for those that failed because their index does not exist, which are returned to be sent again: the entry index is
+     * briefly missing while its alias replaces an index from before entries were aliased.
+     *
+     * @param response the response to a bulk request
+     * @param batch    the actions of the request, in the order they were sent
+     * @return the actions that failed because their index does not exist
+     */
+    private List<byte[]> getMissingIndexActions(org.elasticsearch.client.Response response, List<byte[]> batch) {
+        List<byte[]> missingIndexActions = new ArrayList<>();
+        try (InputStream content = response.getEntity().getContent()) {
+            JsonNode result = MAPPER.readTree(content);
+            if (!result.path("errors").asBoolean(false)) {
+                return missingIndexActions;
+            }
+            int position = 0;
+            for (JsonNode item : result.path("items")) {
+                String actionName = item.fieldNames().next();
+                JsonNode action = item.path(actionName);
+                int status = action.path("status").asInt();
+                if (INDEX_NOT_FOUND.equals(action.path("error").path("type").asText()) && position < batch.size()) {
+                    missingIndexActions.add(batch.get(position));
+                } else if (status >= HttpStatus.SC_MULTIPLE_CHOICES && status != HttpStatus.SC_NOT_FOUND
+                    && !("create".equals(actionName) && status == HttpStatus.SC_CONFLICT)) {
+                    // deleting a document that is not in the index is not a problem, and neither is creating one that already is
+                    LOGGER.error("Elastic search could not index document " + action.path("_id").asText() + ": " + action.path("error"));
+                }
+                position++;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read the elastic search bulk response. " + e.getMessage());
+        }
+        return missingIndexActions;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers.statelisteners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.util.NameTransformer;
+import com.google.common.io.Resources;
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.Version;
+import io.dropwizard.jackson.Jackson;
+import org.apache.http.HttpStatus;
+
+/**
+ * Writes the Elasticsearch document of an entry straight from the entry, in one pass.
+ * Only the fields in queries/mapping.json are written, the getters of other properties are never called,
+ * so fields that are not searched are neither loaded nor copied. The document also has the verified and
+ * verified_platforms fields, which are computed from the versions of the entry.
+ * @since 1.9.0
+ */
+public final class ElasticDocumentWriter {
+    private static final String MAPPING_FILTER = "elasticMapping";
+    private static final JsonNode MAPPINGS = readMappings();
+    private static final ObjectMapper DOCUMENT_MAPPER = Jackson.newObjectMapper()
+        .addMixIn(Object.class, MappingFilterMixin.class)
+        .setFilterProvider(new SimpleFilterProvider().addFilter(MAPPING_FILTER, new MappingFilter()))
+        .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    /**
+     * The object context of the entry being written by this thread and the mapped properties of its type
+     */
+    private static final ThreadLocal<DocumentRoot> DOCUMENT_ROOT = new ThreadLocal<>();
+
+    private ElasticDocumentWriter() {
+        // hide the default constructor for a utility class
+    }
+
+    /**
+     * @param entry  the entry to index
+     * @param update true to wrap the document as the source of a bulk update that inserts the document if it is missing
+     * @return the document of the entry
+     */
+    public static byte[] getDocument(Entry<?, ?> entry, boolean update) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeDocument(entry, update, out);
+        } catch (IOException e) {
+            throw new CustomWebApplicationException("Could not convert Dockstore entry to Elasticsearch object",
+                HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param entry  the entry to index
+     * @param update true to wrap the document as the source of a bulk update that inserts the document if it is missing
+     * @param out    where to write the document, it is left open
+     * @throws IOException if the document could not be written
+     */
+    public static void writeDocument(Entry<?, ?> entry, boolean update, OutputStream out) throws IOException {
+        SerializerProvider provider = DOCUMENT_MAPPER.getSerializerProviderInstance();
+        try (JsonGenerator gen = DOCUMENT_MAPPER.getFactory().createGenerator(out)) {
+            if (update) {
+                gen.writeStartObject();
+                gen.writeFieldName("doc");
+            }
+            gen.writeStartObject();
+            String type = entry instanceof Tool ? "tool" : "workflow";
+            DOCUMENT_ROOT.set(new DocumentRoot(gen.getOutputContext(), MAPPINGS.path(type).path("properties")));
+            gen.writeBooleanField("verified", entry.getWorkflowVersions().stream().anyMatch(Version::isVerified));
+            gen.writeArrayFieldStart("verified_platforms");
+            for (String platform : getVerifiedPlatforms(entry.getWorkflowVersions())) {
+                gen.writeString(platform);
+            }
+            gen.writeEndArray();
+            // the fields of the entry go in the same object as the computed ones
+            provider.findValueSerializer(entry.getClass()).unwrappingSerializer(NameTransformer.NOP).serialize(entry, gen, provider);
+            gen.writeEndObject();
+            if (update) {
+                gen.writeBooleanField("doc_as_upsert", true);
+                gen.writeEndObject();
+            }
+        } finally {
+            DOCUMENT_ROOT.remove();
+        }
+    }
+
+    private static Set<String> getVerifiedPlatforms(Set<? extends Version> workflowVersions) {
+        Set<String> platforms = new TreeSet<>();
+        workflowVersions.forEach(workflowVersion -> {
+            Set<SourceFile> sourceFiles = workflowVersion.getSourceFiles();
+            sourceFiles.forEach(sourceFile -> {
+                Map<String, SourceFile.VerificationInformation> verifiedBySource = sourceFile.getVerifiedBySource();
+                platforms.addAll(verifiedBySource.keySet());
+            });
+        });
+        return platforms;
+    }
+
+    private static JsonNode readMappings() {
+        try {
+            URL url = Resources.getResource("queries/mapping.json");
+            return Jackson.newObjectMapper().readTree(Resources.toString(url, StandardCharsets.UTF_8)).path("mappings");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param properties the mapped properties of a document type
+     * @param path       the fields leading to the object being written
+     * @param name       the field of that object
+     * @return true if the field is mapped, or is part of a field that is mapped as a whole
+     */
+    private static boolean isMapped(JsonNode properties, List<String> path, String name) {
+        JsonNode node = properties;
+        for (String field : path) {
+            JsonNode mapping = node.get(field);
+            if (mapping == null) {
+                return false;
+            }
+            if (!mapping.has("properties")) {
+                return true;
+            }
+            node = mapping.get("properties");
+        }
+        return node.has(name);
+    }
+
+    @JsonFilter(MAPPING_FILTER)
+    private abstract static class MappingFilterMixin {
+    }
+
+    private static final class DocumentRoot {
+        private final JsonStreamContext context;
+        private final JsonNode properties;
+
+        DocumentRoot(JsonStreamContext context, JsonNode properties) {
+            this.context = context;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Decides whether to write a property from where the generator is in the document. The path is found by walking
+     * up the output contexts to the object of the entry, array contexts are skipped since the mapping does not have them.
+     */
+    private static class MappingFilter extends SimpleBeanPropertyFilter {
+        @Override
+        public void serializeAsField(Object pojo, JsonGenerator gen, SerializerProvider provider, PropertyWriter writer) throws Exception {
+            DocumentRoot root = DOCUMENT_ROOT.get();
+            List<String> path = new ArrayList<>();
+            JsonStreamContext context = gen.getOutputContext();
+            while (root != null && context != null && context != root.context) {
+                JsonStreamContext parent = context.getParent();
+                if (parent != null && parent.inObject()) {
+                    path.add(0, parent.getCurrentName());
+                }
+                context = parent;
+            }
+            // outside of an entry document everything is written
+            if (context == null || root == null || isMapped(root.properties, path, writer.getName())) {
+                writer.serializeAsField(pojo, gen, provider);
+            } else if (!gen.canOmitFields()) {
+                writer.serializeAsOmittedField(pojo, gen, provider);
+            }
+        }
+    }
+}
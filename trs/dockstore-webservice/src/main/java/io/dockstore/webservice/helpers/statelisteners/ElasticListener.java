@@ -15,38 +15,25 @@
  */
 package io.dockstore.webservice.helpers.statelisteners;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 import io.dockstore.webservice.core.Entry;
 import io.dockstore.webservice.core.Service;
-import io.dockstore.webservice.core.SourceFile;
 import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.helpers.ElasticSearchHelper;
 import io.dockstore.webservice.helpers.StateManagerMode;
 import io.dropwizard.jackson.Jackson;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
-import org.apache.http.entity.ContentType;
-import org.apache.http.nio.entity.NStringEntity;
-import org.elasticsearch.client.RestClient;
-import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,26 +45,37 @@ public class ElasticListener implements StateListenerInterface {
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticListener.class);
     private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
     private static final String MAPPER_ERROR = "Could not convert Dockstore entry to Elasticsearch object";
+    private DockstoreWebserviceConfiguration.ElasticSearchConfig esConfiguration;
     private String hostname;
-    private int port;
+    private final ElasticBulkIndexer bulkIndexer = new ElasticBulkIndexer("/" + ElasticSearchHelper.ENTRY_ALIAS + "/_bulk",
+        () -> ElasticSearchHelper.getRestClient(esConfiguration));
+    /**
+     * The index being built by a reindex, if one is running
+     */
+    private volatile String reindexTarget;
 
     @Override
     public void setConfig(DockstoreWebserviceConfiguration config) {
-        hostname = config.getEsConfiguration().getHostname();
-        port = config.getEsConfiguration().getPort();
+        esConfiguration = config.getEsConfiguration();
+        hostname = esConfiguration.getHostname();
+    }
+
+    public ElasticBulkIndexer getBulkIndexer() {
+        return bulkIndexer;
     }
 
     /**
-     * Manually eager load certain fields
-     * @param entry
+     * While a reindex builds a new index, updates are applied to both the current index and the new one,
+     * so that the new index does not miss changes made to entries it has already indexed
+     *
+     * @param index the index being built, null once the reindex is over
      */
-    private void eagerLoadEntry(Entry entry) {
-        Hibernate.initialize(entry.getAliases());
+    public void setReindexTarget(String index) {
+        reindexTarget = index;
     }
 
     @Override
     public void handleIndexUpdate(Entry entry, StateManagerMode command) {
-        eagerLoadEntry(entry);
         entry = filterCheckerWorkflows(entry);
         // #2771 will need to disable this and properly create objects to get services into the index
         entry = entry instanceof Service ? null : entry;
@@ -93,32 +91,16 @@ public class ElasticListener implements StateListenerInterface {
             LOGGER.info("Could not perform the elastic search index update.");
             return;
         }
-        String json;
-        json = getDocumentValueFromEntry(entry);
-        try (RestClient restClient = RestClient.builder(new HttpHost(hostname, port, "http")).build()) {
-            String entryType = entry instanceof Tool ? "tool" : "workflow";
-            HttpEntity entity = new NStringEntity(json, ContentType.APPLICATION_JSON);
-            org.elasticsearch.client.Response post;
-            switch (command) {
-            case PUBLISH:
-            case UPDATE:
-                post = restClient
-                    .performRequest("POST", "/entry/" + entryType + "/" + entry.getId() + "/_update", Collections.emptyMap(), entity);
-                break;
-            case DELETE:
-                post = restClient.performRequest("DELETE", "/entry/" + entryType + "/" + entry.getId(), Collections.emptyMap(), entity);
-                break;
-            default:
-                throw new RuntimeException("Unknown index command: " + command);
-            }
-            int statusCode = post.getStatusLine().getStatusCode();
-            if (statusCode == HttpStatus.SC_OK || statusCode == HttpStatus.SC_CREATED) {
-                LOGGER.info("Successful " + command + ".");
-            } else {
-                LOGGER.error("Could not submit index to elastic search. " + post.getStatusLine().getReasonPhrase());
-            }
-        } catch (Exception e) {
-            LOGGER.error("Could not submit index to elastic search. " + e.getMessage());
+        switch (command) {
+        case PUBLISH:
+        case UPDATE:
+            submit("update", entry, ElasticDocumentWriter.getDocument(entry, true));
+            break;
+        case DELETE:
+            submit("delete", entry, null);
+            break;
+        default:
+            throw new RuntimeException("Unknown index command: " + command);
         }
     }
 
@@ -150,104 +132,102 @@ public class ElasticListener implements StateListenerInterface {
 
     @Override
     public void bulkUpsert(List<Entry> entries) {
-        entries.forEach(this::eagerLoadEntry);
         entries = filterCheckerWorkflows(entries);
         // #2771 will need to disable this and properly create objects to get services into the index
         entries = entries.stream().filter(entry -> !(entry instanceof Service)).collect(Collectors.toList());
         if (entries.isEmpty()) {
             return;
         }
-        try (RestClient restClient = RestClient.builder(new HttpHost(hostname, port, "http")).build()) {
-            String newlineDJSON = getNDJSON(entries);
-            HttpEntity bulkEntity = new NStringEntity(newlineDJSON, ContentType.APPLICATION_JSON);
-            org.elasticsearch.client.Response post = restClient.performRequest("POST", "/entry/_bulk", Collections.emptyMap(), bulkEntity);
-            if (post.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-                throw new CustomWebApplicationException("Could not submit index to elastic search", HttpStatus.SC_INTERNAL_SERVER_ERROR);
-            }
-        } catch (IOException e) {
-            LOGGER.error("Could not submit index to elastic search. " + e.getMessage());
+        if (hostname == null || hostname.isEmpty()) {
+            LOGGER.error("No elastic search host found.");
+            return;
         }
+        // each entry is queued on its own, the indexer groups them into bulk requests of a bounded size
+        entries.forEach(entry -> submit("index", entry, getBulkIndexSource(entry)));
     }
 
     /**
-     * This converts the entry into a document for elastic search to use
+     * Indexes published entries into an index right away, rather than in the background, used to fill a new index during a reindex.
+     * The entries are only created, never overwritten: an entry already in the index was put there by a live update
+     * made while the reindex runs, which is newer than the entries read for the reindex.
      *
-     * @param entry The entry that needs updating
-     * @return The entry converted into a json string
+     * @param index   the index to add the entries to
+     * @param entries published entries
+     * @return the number of entries indexed, checker workflows and services are not
+     * @throws IOException if Elasticsearch did not accept the entries
      */
-    private String getDocumentValueFromEntry(Entry entry) {
-        ObjectMapper mapper = Jackson.newObjectMapper();
-        StringBuilder builder = new StringBuilder();
-        Map<String, Object> doc = new HashMap<>();
-        try {
-            JsonNode jsonNode = dockstoreEntryToElasticSearchObject(entry);
-            doc.put("doc", jsonNode);
-            doc.put("doc_as_upsert", true);
-            builder.append(mapper.writeValueAsString(doc));
-        } catch (IOException e) {
-            throw new CustomWebApplicationException(MAPPER_ERROR,
-                HttpStatus.SC_INTERNAL_SERVER_ERROR);
+    public int indexNow(String index, List<Entry> entries) throws IOException {
+        // #2771 will need to disable this and properly create objects to get services into the index
+        List<byte[]> actions = filterCheckerWorkflows(entries).stream().filter(entry -> !(entry instanceof Service))
+            .map(entry -> getAction("create", entry, index, getBulkIndexSource(entry))).collect(Collectors.toList());
+        if (!actions.isEmpty()) {
+            bulkIndexer.sendNow(actions);
         }
-        return builder.toString();
+        return actions.size();
     }
 
     /**
-     * Gets the json used for bulk insert
+     * Queues a bulk API action for the entry index, and for the index being built if a reindex is running.
+     * Actions are sent in the background, so a slow or unavailable Elasticsearch does not hold up the request.
+     */
+    private void submit(String action, Entry entry, byte[] source) {
+        bulkIndexer.submit(getAction(action, entry, null, source));
+        String target = reindexTarget;
+        if (target != null) {
+            bulkIndexer.submit(getAction(action, entry, target, source));
+        }
+    }
+
+    /**
+     * Gets the document used to bulk insert one published entry
      *
-     * @param publishedEntries A list of published entries
-     * @return The json used for bulk insert
+     * @param entry A published entry
+     * @return The document line used for bulk insert
+     */
+    private byte[] getBulkIndexSource(Entry<?, ?> entry) {
+        entry.getWorkflowVersions().forEach(Version::updateVerified);
+        return ElasticDocumentWriter.getDocument(entry, false);
+    }
+
+    /**
+     * @param action the bulk API action, e.g. index, update or delete
+     * @param entry  the entry the action is for
+     * @param index  the index the action is for, null for the index of the bulk request
+     * @param source the source line of the action, null if it has none
+     * @return the lines of the action in a bulk API request
      */
-    private String getNDJSON(List<Entry> publishedEntries) {
-        Gson gson = new GsonBuilder().create();
-        StringBuilder builder = new StringBuilder();
-        publishedEntries.forEach(entry -> {
-            entry.getWorkflowVersions().forEach(entryVersion -> {
-                ((Version)entryVersion).updateVerified();
-            });
-            Map<String, Map<String, String>> index = new HashMap<>();
-            Map<String, String> internal = new HashMap<>();
-            internal.put("_id", String.valueOf(entry.getId()));
-            internal.put("_type", entry instanceof Tool ? "tool" : "workflow");
-            index.put("index", internal);
-            builder.append(gson.toJson(index));
-            builder.append('\n');
-            try {
-                builder.append(MAPPER.writeValueAsString(dockstoreEntryToElasticSearchObject(entry)));
-            } catch (IOException e) {
-                throw new CustomWebApplicationException(MAPPER_ERROR, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+    private static byte[] getAction(String action, Entry<?, ?> entry, String index, byte[] source) {
+        ObjectNode metadata = MAPPER.createObjectNode();
+        if (index != null) {
+            metadata.put("_index", index);
+        }
+        metadata.put("_id", String.valueOf(entry.getId()));
+        metadata.put("_type", entry instanceof Tool ? "tool" : "workflow");
+        ObjectNode actionLine = MAPPER.createObjectNode();
+        actionLine.set(action, metadata);
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try {
+            lines.write(MAPPER.writeValueAsBytes(actionLine));
+            lines.write('\n');
+            if (source != null) {
+                lines.write(source);
+                lines.write('\n');
             }
-            builder.append('\n');
-        });
-        return builder.toString();
+        } catch (IOException e) {
+            throw new CustomWebApplicationException(MAPPER_ERROR, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        }
+        return lines.toByteArray();
     }
 
     /**
-     * This should be using an actual Elasticsearch object class instead of jsonNode
+     * Gets the document of an entry as it is indexed, see {@link ElasticDocumentWriter}
      *
      * @param entry The Dockstore entry
-     * @return The Elasticsearch object string to be placed into the index
+     * @return The Elasticsearch object to be placed into the index
      * @throws IOException  Mapper problems
      */
     public static JsonNode dockstoreEntryToElasticSearchObject(Entry entry) throws IOException {
-        Set<Version> workflowVersions = entry.getWorkflowVersions();
-        boolean verified = workflowVersions.stream().anyMatch(Version::isVerified);
-        Set<String> verifiedPlatforms = getVerifiedPlatforms(workflowVersions);
-        JsonNode jsonNode = MAPPER.readTree(MAPPER.writeValueAsString(entry));
-        ((ObjectNode)jsonNode).put("verified", verified);
-        ((ObjectNode)jsonNode).put("verified_platforms", MAPPER.valueToTree(verifiedPlatforms));
-        return jsonNode;
-    }
-
-    private static Set<String> getVerifiedPlatforms(Set<? extends Version> workflowVersions) {
-        Set<String> platforms = new TreeSet<>();
-        workflowVersions.forEach(workflowVersion -> {
-            SortedSet<SourceFile> sourceFiles = workflowVersion.getSourceFiles();
-            sourceFiles.forEach(sourceFile -> {
-                Map<String, SourceFile.VerificationInformation> verifiedBySource = sourceFile.getVerifiedBySource();
-                platforms.addAll(verifiedBySource.keySet());
-            });
-        });
-        return platforms;
+        return MAPPER.readTree(ElasticDocumentWriter.getDocument(entry, false));
     }
 
     /**
@@ -15,47 +15,195 @@
  */
 package io.dockstore.webservice.helpers.statelisteners;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.ws.rs.core.Response;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
 import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.database.TRSToolFilter;
 import io.dockstore.webservice.helpers.StateManagerMode;
 
+import static io.swagger.api.impl.ToolsApiServiceImpl.getToolClassName;
+import static io.swagger.api.impl.ToolsApiServiceImpl.matchesFilter;
+
 /**
- * Future home of code for managing cached TRS entries
+ * Manages cached TRS responses.
+ * Each cached response records the entries it was built from and which other entries could change it,
+ * so that a change to one entry only evicts the responses it affects.
  */
 public class TRSListener implements StateListenerInterface {
 
-    // TODO: implementor should tune this https://github.com/google/guava/wiki/CachesExplained
-    // arbitrarily picked 20
-    private static final int MAXIMUM_SIZE = 20;
-    private Cache<Integer, Response.ResponseBuilder> trsResponses = CacheBuilder.newBuilder()
-        // TODO: implementor should try to weight larger responses (like getting all tools without limits)
-        .maximumSize(MAXIMUM_SIZE)
-        // TODO: should refactor to use CacheLoader properly with a LoadingCache
+    /**
+     * Responses are weighted by their size, roughly the number of tools and tool versions they contain
+     */
+    private static final long MAXIMUM_WEIGHT = 100_000;
+    /**
+     * Stands for filters that are not limited to a tool class
+     */
+    private static final String ANY_TOOL_CLASS = "";
+
+    /**
+     * entry id to the keys of the cached responses that include that entry
+     */
+    private final Map<Long, Set<Integer>> responsesByEntry = new ConcurrentHashMap<>();
+    /**
+     * query hashcode to the keys of the cached responses for each page of that query
+     */
+    private final Map<Integer, Set<Integer>> responsesByQuery = new ConcurrentHashMap<>();
+    /**
+     * tool class of the filters, or ANY_TOOL_CLASS, to the filters of the cached queries and the query hashcodes with each filter.
+     * A changed entry is tested once against each filter that can match its tool class, rather than once per cached page.
+     */
+    private final Map<String, Map<TRSToolFilter, Set<Integer>>> queriesByFilter = new ConcurrentHashMap<>();
+    private final Cache<Integer, CachedTRSResponse> trsResponses = CacheBuilder.newBuilder()
+        .maximumWeight(MAXIMUM_WEIGHT)
+        .weigher((Integer key, CachedTRSResponse value) -> value.getWeight())
+        .removalListener(this::unregister)
         .build();
 
     @Override
     public void handleIndexUpdate(Entry entry, StateManagerMode command) {
-        //TODO: this should update TRS for the one new entry rather than wipe everything out
-        trsResponses.invalidateAll();
+        invalidate(entry);
     }
 
     @Override
     public void bulkUpsert(List<Entry> entries) {
-        trsResponses.invalidateAll();
+        entries.forEach(this::invalidate);
     }
 
     public Optional<Response.ResponseBuilder> getTrsResponse(Integer hashcode) {
-        final Response.ResponseBuilder cachedResponse = trsResponses.getIfPresent(hashcode);
-        return Optional.ofNullable(cachedResponse);
+        final CachedTRSResponse cachedResponse = trsResponses.getIfPresent(hashcode);
+        return Optional.ofNullable(cachedResponse).map(CachedTRSResponse::getResponseBuilder);
+    }
+
+    public void loadTRSResponse(Integer hashcode, CachedTRSResponse response) {
+        response.getEntryIds().forEach(id -> responsesByEntry.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(hashcode));
+        responsesByQuery.computeIfAbsent(response.getQueryHashcode(), k -> ConcurrentHashMap.newKeySet()).add(hashcode);
+        final TRSToolFilter filter = response.getMayInclude();
+        if (filter != null) {
+            queriesByFilter.computeIfAbsent(toolClassKey(filter), k -> new ConcurrentHashMap<>()).compute(filter, (k, queries) -> {
+                Set<Integer> registered = queries == null ? ConcurrentHashMap.newKeySet() : queries;
+                registered.add(response.getQueryHashcode());
+                return registered;
+            });
+        }
+        trsResponses.put(hashcode, response);
+    }
+
+    /**
+     * Evicts every page of each query whose response includes the entry or could include it after the change.
+     * Evicting whole queries rather than single pages keeps the following pages and page links consistent when an entry
+     * is added to, removed from or moved within the results.
+     *
+     * @param entry the entry that changed
+     */
+    private void invalidate(Entry entry) {
+        Set<Integer> affectedQueries = new HashSet<>();
+        Set<Integer> including = Set.copyOf(responsesByEntry.getOrDefault(entry.getId(), Set.of()));
+        including.forEach(key -> {
+            CachedTRSResponse response = trsResponses.getIfPresent(key);
+            if (response != null) {
+                affectedQueries.add(response.getQueryHashcode());
+            }
+        });
+        for (String toolClass : List.of(ANY_TOOL_CLASS, getToolClassName(entry))) {
+            queriesByFilter.getOrDefault(toolClass, Map.of()).forEach((filter, queries) -> {
+                if (matchesFilter(entry, filter)) {
+                    affectedQueries.addAll(queries);
+                }
+            });
+        }
+        trsResponses.invalidateAll(including);
+        affectedQueries.forEach(query -> trsResponses.invalidateAll(Set.copyOf(responsesByQuery.getOrDefault(query, Set.of()))));
+    }
+
+    private void unregister(RemovalNotification<Integer, CachedTRSResponse> notification) {
+        // a replaced response shares its key with the new one, leave the key registered
+        if (notification.getCause() == RemovalCause.REPLACED || notification.getValue() == null) {
+            return;
+        }
+        Integer key = notification.getKey();
+        notification.getValue().getEntryIds().forEach(id -> responsesByEntry.computeIfPresent(id, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        }));
+        final Integer query = notification.getValue().getQueryHashcode();
+        responsesByQuery.computeIfPresent(query, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+        final TRSToolFilter filter = notification.getValue().getMayInclude();
+        final Map<TRSToolFilter, Set<Integer>> filters = filter == null ? null : queriesByFilter.get(toolClassKey(filter));
+        if (filters != null) {
+            // checked while holding the filter, so that a page of the query loaded meanwhile keeps it registered
+            filters.computeIfPresent(filter, (k, queries) -> {
+                if (!responsesByQuery.containsKey(query)) {
+                    queries.remove(query);
+                }
+                return queries.isEmpty() ? null : queries;
+            });
+        }
     }
 
-    public void loadTRSResponse(Integer hashcode, Response.ResponseBuilder r) {
-        trsResponses.put(hashcode, r);
+    private static String toolClassKey(TRSToolFilter filter) {
+        return filter.getToolClass() == null ? ANY_TOOL_CLASS : filter.getToolClass();
+    }
+
+    /**
+     * A cached response along with what it depends on
+     */
+    public static class CachedTRSResponse {
+        private final Response.ResponseBuilder responseBuilder;
+        private final Integer queryHashcode;
+        private final Collection<Long> entryIds;
+        private final TRSToolFilter mayInclude;
+        private final int weight;
+
+        /**
+         * @param responseBuilder the response to cache
+         * @param queryHashcode   identifies the query independently of the page, all pages of a query are evicted together
+         * @param entryIds        ids of the entries included in the response
+         * @param mayInclude      the filters a changed entry, not already included, must pass to now be part of the results of the
+         *                        query, null if no other entry can be
+         * @param weight          approximate size of the response
+         */
+        public CachedTRSResponse(Response.ResponseBuilder responseBuilder, Integer queryHashcode, Collection<Long> entryIds,
+            TRSToolFilter mayInclude, int weight) {
+            this.responseBuilder = responseBuilder;
+            this.queryHashcode = queryHashcode;
+            this.entryIds = entryIds;
+            this.mayInclude = mayInclude;
+            this.weight = Math.max(1, weight);
+        }
+
+        public Response.ResponseBuilder getResponseBuilder() {
+            return responseBuilder;
+        }
+
+        public Integer getQueryHashcode() {
+            return queryHashcode;
+        }
+
+        public Collection<Long> getEntryIds() {
+            return entryIds;
+        }
+
+        public TRSToolFilter getMayInclude() {
+            return mayInclude;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
     }
 }
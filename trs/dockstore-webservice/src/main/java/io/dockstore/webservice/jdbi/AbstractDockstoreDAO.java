@@ -32,4 +32,12 @@ public abstract class AbstractDockstoreDAO<T> extends AbstractDAO<T> {
         Session session = currentSession();
         session.evict(entry);
     }
+
+    /**
+     * Flushes pending changes and then detaches everything loaded by the current session
+     */
+    public void clearCache() {
+        currentSession().flush();
+        currentSession().clear();
+    }
 }
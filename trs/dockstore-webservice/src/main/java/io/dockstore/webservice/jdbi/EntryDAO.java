@@ -20,9 +20,12 @@ import java.lang.reflect.ParameterizedType;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -33,11 +36,15 @@ import javax.persistence.criteria.Root;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
+import io.dockstore.webservice.core.BioWorkflow;
 import io.dockstore.webservice.core.CollectionOrganization;
 import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.Service;
 import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.database.TRSCursor;
+import io.dockstore.webservice.core.database.TRSToolFilter;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
@@ -52,6 +59,23 @@ public abstract class EntryDAO<T extends Entry> extends AbstractDockstoreDAO<T>
 
     private static final Logger LOG = LoggerFactory.getLogger(EntryDAO.class);
 
+    /**
+     * Tables searched by the TRS /tools queries, the table name doubles as the type returned for each row
+     */
+    private static final Map<String, Class<? extends Entry>> TRS_ENTRY_TABLES = Map
+        .of("tool", Tool.class, "workflow", BioWorkflow.class, "service", Service.class);
+    /**
+     * GA4GH tool class names to the table holding that class of entry
+     */
+    private static final Map<String, String> TRS_TOOL_CLASS_TABLES = Map
+        .of("CommandLineTool", "tool", "Workflow", "workflow", "Service", "service");
+    /**
+     * The gitUrl part of the sort key of TRS listings, matching the published_*_giturl indices
+     */
+    private static final String TRS_SORT_KEY = "COALESCE(giturl, '')";
+    private static final String[] TOOL_PATH_COLUMNS = { "registry", "namespace", "name", "toolname" };
+    private static final String[] WORKFLOW_PATH_COLUMNS = { "sourcecontrol", "organization", "repository", "workflowname" };
+
     final int registryIndex = 0;
     final int orgIndex = 1;
     final int repoIndex = 2;
@@ -132,6 +156,20 @@ public abstract class EntryDAO<T extends Entry> extends AbstractDockstoreDAO<T>
         session.flush();
     }
 
+    /**
+     * Deletes entries with a single flush rather than one per entry
+     *
+     * @param entries the entries to delete
+     */
+    public void delete(Collection<T> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Session session = currentSession();
+        entries.forEach(session::delete);
+        session.flush();
+    }
+
     public Entry<? extends Entry, ? extends Version> getGenericEntryById(long id) {
         return uniqueResult(namedQuery("Entry.getGenericEntryById").setParameter("id", id));
     }
@@ -169,6 +207,184 @@ public abstract class EntryDAO<T extends Entry> extends AbstractDockstoreDAO<T>
         return list(namedQuery("io.dockstore.webservice.core." + typeOfT.getSimpleName() + ".findAllPublished"));
     }
 
+    /**
+     * Finds one page of published tools, workflows and services matching the GA4GH TRS /tools filters, ordered by gitUrl.
+     * Filtering, ordering and paging all happen in the database so only the requested page of entries is loaded.
+     *
+     * @param filter the TRS filters, an entry with a null value for a field is not excluded by a filter on that field
+     * @param offset the number of matching entries to skip
+     * @param limit the maximum number of entries to return
+     * @return the page of entries, in gitUrl order
+     */
+    public List<Entry<?, ?>> findAllTRSPublished(TRSToolFilter filter, int offset, int limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        String entries = trsPublishedQuery(filter, null, parameters);
+        Query query = currentSession().createNativeQuery("SELECT type, id FROM (" + entries + ") entries ORDER BY giturl, id");
+        parameters.forEach(query::setParameter);
+        query.setFirstResult(offset).setMaxResults(limit);
+        return loadTRSEntries(list(query));
+    }
+
+    /**
+     * Finds the page of published tools, workflows and services that follows a cursor. Unlike an offset, the cost does not grow
+     * with the depth of the page since the (gitUrl, id) indices are range scanned from the cursor.
+     *
+     * @param filter the TRS filters
+     * @param after  the entries returned sort after this cursor
+     * @param limit  the maximum number of entries to return
+     * @return the page of entries, in gitUrl order
+     */
+    public List<Entry<?, ?>> findAllTRSPublished(TRSToolFilter filter, TRSCursor after, int limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        String entries = trsPublishedQuery(filter, after, parameters);
+        Query query = currentSession().createNativeQuery("SELECT type, id FROM (" + entries + ") entries ORDER BY giturl, id");
+        parameters.forEach(query::setParameter);
+        query.setMaxResults(limit);
+        return loadTRSEntries(list(query));
+    }
+
+    /**
+     * Finds the cursor of the page that follows a page of the listing, reading only the sort keys of the page rather than its entries.
+     *
+     * @param filter the TRS filters
+     * @param after  the cursor the page starts from, null for a page found by offset
+     * @param offset the number of matching entries skipped before the page
+     * @param limit  the page size
+     * @return the cursor of the following page, empty if the page is the last one
+     */
+    public Optional<TRSCursor> findTRSPublishedNextPageCursor(TRSToolFilter filter, TRSCursor after, int offset, int limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        String entries = trsPublishedQuery(filter, after, parameters);
+        Query query = currentSession().createNativeQuery("SELECT giturl, id FROM (" + entries + ") entries ORDER BY giturl, id");
+        parameters.forEach(query::setParameter);
+        // the last entry of the page, and the first of the next one if there is one
+        query.setFirstResult(offset + limit - 1).setMaxResults(2);
+        List<Object[]> rows = list(query);
+        if (rows.size() < 2) {
+            return Optional.empty();
+        }
+        return Optional.of(new TRSCursor((String)rows.get(0)[0], ((BigInteger)rows.get(0)[1]).longValue()));
+    }
+
+    /**
+     * Finds the cursor that the last page of a listing starts from, reading backwards from the end of the listing.
+     *
+     * @param filter the TRS filters
+     * @param count  the number of entries matching the filters
+     * @param limit  the page size
+     * @return the cursor of the last page, empty if the last page is also the first one
+     */
+    public Optional<TRSCursor> findTRSPublishedLastPageCursor(TRSToolFilter filter, long count, int limit) {
+        if (count <= limit) {
+            return Optional.empty();
+        }
+        final long lastPageSize = count % limit == 0 ? limit : count % limit;
+        Map<String, Object> parameters = new HashMap<>();
+        String entries = trsPublishedQuery(filter, null, parameters);
+        Query query = currentSession().createNativeQuery("SELECT giturl, id FROM (" + entries + ") entries ORDER BY giturl DESC, id DESC");
+        parameters.forEach(query::setParameter);
+        query.setFirstResult((int)lastPageSize).setMaxResults(1);
+        List<Object[]> rows = list(query);
+        return rows.stream().findFirst().map(row -> new TRSCursor((String)row[0], ((BigInteger)row[1]).longValue()));
+    }
+
+    /**
+     * @param filter the TRS filters
+     * @return the number of published tools, workflows and services matching the GA4GH TRS /tools filters
+     */
+    public long countAllTRSPublished(TRSToolFilter filter) {
+        Map<String, Object> parameters = new HashMap<>();
+        String entries = trsPublishedQuery(filter, null, parameters);
+        Query query = currentSession().createNativeQuery("SELECT COUNT(*) FROM (" + entries + ") entries");
+        parameters.forEach(query::setParameter);
+        return ((BigInteger)query.getSingleResult()).longValueExact();
+    }
+
+    /**
+     * Load the entries for rows of (type, id) in one query per table, preserving the order of the rows
+     */
+    private List<Entry<?, ?>> loadTRSEntries(List<Object[]> rows) {
+        Map<String, List<Long>> idsByTable = new HashMap<>();
+        rows.forEach(row -> idsByTable.computeIfAbsent((String)row[0], table -> new ArrayList<>()).add(((BigInteger)row[1]).longValue()));
+        Map<Long, Entry<?, ?>> entriesById = new HashMap<>();
+        idsByTable.forEach((table, ids) -> {
+            List<? extends Entry> entries = currentSession().byMultipleIds(TRS_ENTRY_TABLES.get(table)).multiLoad(ids);
+            entries.stream().filter(Objects::nonNull).forEach(entry -> entriesById.put(entry.getId(), entry));
+        });
+        return rows.stream().map(row -> entriesById.get(((BigInteger)row[1]).longValue())).filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Builds a union over the tool, workflow and service tables selecting the type, id and gitUrl of every published entry
+     * matching the filters, and following the cursor if there is one. A null gitUrl is selected as an empty one so that the
+     * sort key is never null.
+     */
+    private String trsPublishedQuery(TRSToolFilter filter, TRSCursor after, Map<String, Object> parameters) {
+        List<String> selects = new ArrayList<>();
+        // tools and services are never checker workflows
+        if (!Boolean.TRUE.equals(filter.getChecker())) {
+            if (isTRSTableIncluded("tool", filter)) {
+                selects.add(trsPublishedSelect("tool", TOOL_PATH_COLUMNS, filter, after, parameters));
+            }
+            if (isTRSTableIncluded("service", filter)) {
+                selects.add(trsPublishedSelect("service", WORKFLOW_PATH_COLUMNS, filter, after, parameters));
+            }
+        }
+        if (isTRSTableIncluded("workflow", filter)) {
+            String workflowSelect = trsPublishedSelect("workflow", WORKFLOW_PATH_COLUMNS, filter, after, parameters);
+            if (filter.getChecker() != null) {
+                workflowSelect += " AND ischecker = :checker";
+                parameters.put("checker", filter.getChecker());
+            }
+            selects.add(workflowSelect);
+        }
+        if (selects.isEmpty()) {
+            // nothing can match, keep the shape of the query
+            return "SELECT 'tool' AS type, id, " + TRS_SORT_KEY + " AS giturl FROM tool WHERE FALSE";
+        }
+        return String.join(" UNION ALL ", selects);
+    }
+
+    private static boolean isTRSTableIncluded(String table, TRSToolFilter filter) {
+        return filter.getToolClass() == null || table.equals(TRS_TOOL_CLASS_TABLES.get(filter.getToolClass()));
+    }
+
+    private String trsPublishedSelect(String table, String[] pathColumns, TRSToolFilter filter, TRSCursor after,
+        Map<String, Object> parameters) {
+        StringBuilder select = new StringBuilder(
+            "SELECT '" + table + "' AS type, id, " + TRS_SORT_KEY + " AS giturl FROM " + table + " WHERE ispublished = TRUE");
+        if (after != null) {
+            // a row comparison, so that it is a single range on the (gitUrl, id) indices
+            select.append(" AND (").append(TRS_SORT_KEY).append(", id) > (:afterGitUrl, :afterId)");
+            parameters.put("afterGitUrl", after.getGitUrl());
+            parameters.put("afterId", after.getId());
+        }
+        addContainsCondition(select, pathColumns[registryIndex], "registry", filter.getRegistry(), parameters);
+        addContainsCondition(select, pathColumns[orgIndex], "organization", filter.getOrganization(), parameters);
+        addContainsCondition(select, pathColumns[repoIndex], "name", filter.getName(), parameters);
+        addContainsCondition(select, pathColumns[entryNameIndex], "toolname", filter.getToolname(), parameters);
+        addContainsCondition(select, "description", "description", filter.getDescription(), parameters);
+        addContainsCondition(select, "author", "author", filter.getAuthor(), parameters);
+        return select.toString();
+    }
+
+    /**
+     * Case-sensitive substring match that lets null columns through, matching the semantics of the TRS filters
+     */
+    private void addContainsCondition(StringBuilder select, String column, String parameterName, String value,
+        Map<String, Object> parameters) {
+        if (value != null) {
+            select.append(" AND (").append(column).append(" IS NULL OR ").append(column).append(" LIKE :").append(parameterName)
+                .append(')');
+            parameters.put(parameterName, "%" + escapeLikePattern(value) + "%");
+        }
+    }
+
+    private static String escapeLikePattern(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     public long countAllHosted(long userid) {
         return ((BigInteger)namedQuery("Entry.hostedWorkflowCount").setParameter("userid", userid).getSingleResult()).longValueExact();
     }
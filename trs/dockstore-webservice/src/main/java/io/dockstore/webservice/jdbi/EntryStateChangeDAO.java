@@ -0,0 +1,41 @@
+package io.dockstore.webservice.jdbi;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import io.dockstore.webservice.core.EntryStateChange;
+import io.dropwizard.hibernate.AbstractDAO;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+
+public class EntryStateChangeDAO extends AbstractDAO<EntryStateChange> {
+    public EntryStateChangeDAO(SessionFactory factory) {
+        super(factory);
+    }
+
+    public long create(EntryStateChange change) {
+        return persist(change).getId();
+    }
+
+    /**
+     * Locks the oldest changes until the end of the transaction, changes locked by another webservice are skipped,
+     * and so are failed changes that are not due to be tried again yet
+     *
+     * @param limit the maximum number of changes
+     * @return the oldest changes that no one else is applying
+     */
+    public List<EntryStateChange> findOldest(int limit) {
+        Query<EntryStateChange> query = namedQuery("io.dockstore.webservice.core.EntryStateChange.findOldest");
+        query.setParameter("now", new Timestamp(System.currentTimeMillis())).setParameter("limit", limit);
+        return list(query);
+    }
+
+    public void delete(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Query<EntryStateChange> query = namedQuery("io.dockstore.webservice.core.EntryStateChange.deleteByIds");
+        query.setParameterList("ids", ids);
+        query.executeUpdate();
+    }
+}
@@ -0,0 +1,55 @@
+package io.dockstore.webservice.jdbi;
+
+import java.util.List;
+import java.util.Optional;
+
+import io.dockstore.webservice.core.RefreshJob;
+import io.dropwizard.hibernate.AbstractDAO;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+
+public class RefreshJobDAO extends AbstractDAO<RefreshJob> {
+    public RefreshJobDAO(SessionFactory factory) {
+        super(factory);
+    }
+
+    public long create(RefreshJob job) {
+        return persist(job).getId();
+    }
+
+    public RefreshJob findById(long id) {
+        return get(id);
+    }
+
+    /**
+     * Locks the oldest queued jobs until the end of the transaction, jobs locked by another webservice are skipped
+     *
+     * @param limit the maximum number of jobs
+     * @return the oldest queued jobs that no one else is starting
+     */
+    public List<RefreshJob> findQueued(int limit) {
+        Query<RefreshJob> query = namedQuery("io.dockstore.webservice.core.RefreshJob.findQueued");
+        query.setParameter("limit", limit);
+        return list(query);
+    }
+
+    public List<RefreshJob> findRunning() {
+        return list(namedQuery("io.dockstore.webservice.core.RefreshJob.findRunning"));
+    }
+
+    public Optional<RefreshJob> findQueuedByTarget(RefreshJob.Type type, long targetId) {
+        Query<RefreshJob> query = namedQuery("io.dockstore.webservice.core.RefreshJob.findQueuedByTarget");
+        query.setParameter("type", type).setParameter("targetId", targetId).setMaxResults(1);
+        return list(query).stream().findFirst();
+    }
+
+    public long countQueuedByUser(long userId) {
+        final Query query = namedQuery("io.dockstore.webservice.core.RefreshJob.countQueuedByUser").setParameter("userId", userId);
+        return (Long)query.getSingleResult();
+    }
+
+    public long countQueuedBefore(long id) {
+        final Query query = namedQuery("io.dockstore.webservice.core.RefreshJob.countQueuedBefore").setParameter("id", id);
+        return (Long)query.getSingleResult();
+    }
+}
@@ -16,10 +16,19 @@
 
 package io.dockstore.webservice.jdbi;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import com.google.common.collect.Iterables;
 import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.ToolMode;
+import io.dockstore.webservice.core.database.PublishedEntryVersion;
 import io.dockstore.webservice.core.database.RSSToolPath;
 import io.dockstore.webservice.core.database.ToolPath;
 import io.dockstore.webservice.helpers.JsonLdRetriever;
@@ -32,6 +41,8 @@ import static io.dockstore.webservice.resources.MetadataResource.RSS_ENTRY_LIMIT
  * @author xliu
  */
 public class ToolDAO extends EntryDAO<Tool> {
+    private static final int MAX_NAMES_PER_QUERY = 1000;
+
     public ToolDAO(SessionFactory factory) {
         super(factory);
     }
@@ -48,6 +59,65 @@ public class ToolDAO extends EntryDAO<Tool> {
         return list(namedQuery("io.dockstore.webservice.core.Tool.findAllPublishedPathsOrderByDbupdatedate").setMaxResults(RSS_ENTRY_LIMIT));
     }
 
+    /**
+     * Finds which of the given paths have a published tool, for many paths at once and without loading the tools.
+     * Like {@link #findAllByPath(String, boolean)}, a path matches a tool by its registry, namespace and name.
+     *
+     * @param paths paths of the form registry/namespace/name, optionally followed by /toolname
+     * @return the paths, of the form registry/namespace/name, that have at least one published tool
+     */
+    public Set<String> findPublishedPaths(Collection<String> paths) {
+        return findPublishedIdsByPath(paths).keySet();
+    }
+
+    /**
+     * Finds the published tools at the given paths, like {@link #findPublishedPaths(Collection)} but with the ids of the tools.
+     * Looks the tools up in one query per {@link #MAX_NAMES_PER_QUERY} names.
+     *
+     * @param paths paths of the form registry/namespace/name, optionally followed by /toolname
+     * @return the ids of the published tools by path, of the form registry/namespace/name, for the paths that have at least one
+     */
+    public Map<String, Set<Long>> findPublishedIdsByPath(Collection<String> paths) {
+        Set<String> names = paths.stream().map(Tool::splitPath).filter(Objects::nonNull).map(splitPath -> splitPath[repoIndex])
+            .collect(Collectors.toSet());
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<ToolPath> toolPaths = new ArrayList<>();
+        for (List<String> someNames : Iterables.partition(names, MAX_NAMES_PER_QUERY)) {
+            toolPaths.addAll(list(
+                namedQuery("io.dockstore.webservice.core.Tool.findPublishedPathsByNames").setParameterList("names", someNames)));
+        }
+        return toolPaths.stream().map(ToolPath::getTool).collect(Collectors.groupingBy(
+            tool -> tool.getRegistry() + "/" + tool.getNamespace() + "/" + tool.getName(),
+            Collectors.mapping(Tool::getId, Collectors.toSet())));
+    }
+
+    /**
+     * Finds the tools with any of the given registries, namespaces and names, in one query per {@link #MAX_NAMES_PER_QUERY} names.
+     * Callers match the tools they need by path, since a tool matching each criterion on its own is also returned.
+     *
+     * @param registries the registries of the tools
+     * @param namespaces the namespaces of the tools
+     * @param names      the names of the tools, without tool names
+     * @return the tools
+     */
+    public List<Tool> findByRegistriesAndNamespacesAndNames(Collection<String> registries, Collection<String> namespaces,
+        Collection<String> names) {
+        if (registries.isEmpty() || namespaces.isEmpty() || names.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Tool> tools = new ArrayList<>();
+        for (List<String> someNames : Iterables.partition(names, MAX_NAMES_PER_QUERY)) {
+            Query<Tool> query = namedQuery("io.dockstore.webservice.core.Tool.findByRegistriesAndNamespacesAndNames")
+                .setParameterList("registries", registries)
+                .setParameterList("namespaces", namespaces)
+                .setParameterList("names", someNames);
+            tools.addAll(list(query));
+        }
+        return tools;
+    }
+
     /**
      * Finds all tools with the given path (ignores tool name)
      * When findPublished is true, will only look at published tools
@@ -141,6 +211,34 @@ public class ToolDAO extends EntryDAO<Tool> {
         return uniqueResult(query);
     }
 
+    /**
+     * Finds a version of a published tool without loading the tool and its other versions.
+     * Version names are matched case-insensitively so more than one version may be returned.
+     *
+     * @param path        the path of the tool
+     * @param versionName the name of the version
+     * @return the matching versions of the tool
+     */
+    public List<PublishedEntryVersion> findPublishedVersionByPath(String path, String versionName) {
+        String[] splitPath = Tool.splitPath(path);
+        if (splitPath == null) {
+            return Collections.emptyList();
+        }
+        String fullQueryName = "io.dockstore.webservice.core.Tool.findPublishedVersionByToolPath";
+        if (splitPath[entryNameIndex] == null) {
+            fullQueryName += "NullToolName";
+        }
+        Query query = namedQuery(fullQueryName)
+            .setParameter("registry", splitPath[registryIndex])
+            .setParameter("namespace", splitPath[orgIndex])
+            .setParameter("name", splitPath[repoIndex])
+            .setParameter("versionname", versionName);
+        if (splitPath[entryNameIndex] != null) {
+            query.setParameter("toolname", splitPath[entryNameIndex]);
+        }
+        return list(query);
+    }
+
     public List<Tool> findPublishedByNamespace(String namespace) {
         return list(namedQuery("io.dockstore.webservice.core.Tool.findPublishedByNamespace").setParameter("namespace", namespace));
     }
@@ -42,11 +42,6 @@ public class UserDAO extends AbstractDockstoreDAO<User> {
         return persist(user).getId();
     }
 
-    public void clearCache() {
-        currentSession().flush();
-        currentSession().clear();
-    }
-
     public List<User> findAll() {
         return list(namedQuery("io.dockstore.webservice.core.User.findAll"));
     }
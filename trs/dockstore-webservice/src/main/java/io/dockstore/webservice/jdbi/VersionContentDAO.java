@@ -0,0 +1,118 @@
+package io.dockstore.webservice.jdbi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import io.dockstore.webservice.core.VersionContent;
+import io.dropwizard.hibernate.AbstractDAO;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+
+public class VersionContentDAO extends AbstractDAO<VersionContent> {
+    public VersionContentDAO(SessionFactory factory) {
+        super(factory);
+    }
+
+    public Optional<VersionContent> findByVersionAndType(long versionId, String type) {
+        Query<VersionContent> query = namedQuery("io.dockstore.webservice.core.VersionContent.findByVersionAndType");
+        query.setParameter("versionId", versionId).setParameter("type", type);
+        return Optional.ofNullable(uniqueResult(query));
+    }
+
+    /**
+     * Stores the content of a version, replacing what was stored before. An upsert, so that two requests that build
+     * the same content at once do not fail on the unique constraint.
+     * The tools the content may link to are stored with it, so that it can be found by index when one of them changes.
+     *
+     * @param versionId   the version
+     * @param type        DAG or TOOLS
+     * @param contentHash hash of the descriptors the content was built from
+     * @param content     the content, may be null
+     * @param linkedTools the ids of the published tools at each tool path the content looked up, empty for a path without any
+     */
+    public void save(long versionId, String type, String contentHash, String content, Map<String, Set<Long>> linkedTools) {
+        NativeQuery query = currentSession().createNativeQuery(
+            "INSERT INTO version_content (versionid, type, contenthash, content, dbupdatedate) "
+                + "VALUES (:versionId, :type, :contentHash, :content, now()) "
+                + "ON CONFLICT (versionid, type) DO UPDATE SET contenthash = EXCLUDED.contenthash, content = EXCLUDED.content, "
+                + "dbupdatedate = EXCLUDED.dbupdatedate");
+        query.setParameter("versionId", versionId).setParameter("type", type).setParameter("contentHash", contentHash);
+        // typed, a null content would otherwise be sent as bytea
+        query.setParameter("content", content, StringType.INSTANCE);
+        query.executeUpdate();
+
+        currentSession().createNativeQuery("DELETE FROM version_content_tool WHERE versionid = :versionId AND type = :type")
+            .setParameter("versionId", versionId).setParameter("type", type).executeUpdate();
+        List<String> rows = new ArrayList<>();
+        List<String> toolPaths = new ArrayList<>();
+        List<Long> toolIds = new ArrayList<>();
+        linkedTools.forEach((toolPath, ids) -> {
+            // a path without a published tool is kept with a null id, so that publishing a tool there finds the content
+            for (Long toolId : ids.isEmpty() ? Collections.<Long>singleton(null) : ids) {
+                rows.add("(:versionId, :type, :toolPath" + toolPaths.size() + ", :toolId" + toolIds.size() + ")");
+                toolPaths.add(toolPath);
+                toolIds.add(toolId);
+            }
+        });
+        if (rows.isEmpty()) {
+            return;
+        }
+        NativeQuery linkQuery = currentSession().createNativeQuery(
+            "INSERT INTO version_content_tool (versionid, type, toolpath, toolid) VALUES " + String.join(", ", rows));
+        linkQuery.setParameter("versionId", versionId).setParameter("type", type);
+        for (int i = 0; i < rows.size(); i++) {
+            linkQuery.setParameter("toolPath" + i, toolPaths.get(i));
+            linkQuery.setParameter("toolId" + i, toolIds.get(i), LongType.INSTANCE);
+        }
+        linkQuery.executeUpdate();
+    }
+
+    /**
+     * Drops what is stored for a version, e.g. because its descriptors can no longer be parsed
+     *
+     * @param versionId the version
+     */
+    public void delete(long versionId) {
+        currentSession().createNativeQuery("DELETE FROM version_content WHERE versionid = :versionId")
+            .setParameter("versionId", versionId).executeUpdate();
+    }
+
+    /**
+     * Drops what is stored for a version of one type
+     *
+     * @param versionId the version
+     * @param type      DAG or TOOLS
+     */
+    public void delete(long versionId, String type) {
+        currentSession().createNativeQuery("DELETE FROM version_content WHERE versionid = :versionId AND type = :type")
+            .setParameter("versionId", versionId).setParameter("type", type).executeUpdate();
+    }
+
+    /**
+     * Drops the contents that may link to any of the given tools, found through the tool index rather than by reading the contents.
+     * Their links are dropped with them.
+     *
+     * @param toolPaths paths of the form registry/namespace/name of tools that were published or unpublished
+     * @param toolIds   ids of tools that were unpublished or deleted
+     */
+    public void deleteLinkedTo(Collection<String> toolPaths, Collection<Long> toolIds) {
+        if (!toolPaths.isEmpty()) {
+            currentSession().createNativeQuery("DELETE FROM version_content c USING version_content_tool link "
+                + "WHERE link.versionid = c.versionid AND link.type = c.type AND link.toolpath IN (:toolPaths)")
+                .setParameterList("toolPaths", toolPaths).executeUpdate();
+        }
+        if (!toolIds.isEmpty()) {
+            currentSession().createNativeQuery("DELETE FROM version_content c USING version_content_tool link "
+                + "WHERE link.versionid = c.versionid AND link.type = c.type AND link.toolid IN (:toolIds)")
+                .setParameterList("toolIds", toolIds).executeUpdate();
+        }
+    }
+}
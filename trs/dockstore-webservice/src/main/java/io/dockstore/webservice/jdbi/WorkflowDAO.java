@@ -31,6 +31,7 @@ import javax.persistence.criteria.Root;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.core.SourceControlConverter;
 import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.database.PublishedEntryVersion;
 import org.apache.http.HttpStatus;
 import org.hibernate.SessionFactory;
 import org.hibernate.query.Query;
@@ -173,6 +174,36 @@ public class WorkflowDAO extends EntryDAO<Workflow> {
         return filteredWorkflows.size() == 1 ? Optional.of(filteredWorkflows.get(0)) : Optional.empty();
     }
 
+    /**
+     * Finds a version of a published BioWorkflow or Service without loading the workflow and its other versions.
+     * Version names are matched case-insensitively so more than one version may be returned.
+     *
+     * @param path        the path of the workflow
+     * @param versionName the name of the version
+     * @param clazz       BioWorkflow or Service
+     * @return the matching versions of the workflow
+     */
+    public List<PublishedEntryVersion> findPublishedVersionByPath(String path, String versionName, Class<? extends Workflow> clazz) {
+        String[] splitPath = Workflow.splitPath(path);
+        if (splitPath == null) {
+            return Collections.emptyList();
+        }
+        String fullQueryName = "io.dockstore.webservice.core." + clazz.getSimpleName() + ".findPublishedVersionByWorkflowPath";
+        if (splitPath[entryNameIndex] == null) {
+            fullQueryName += "NullWorkflowName";
+        }
+        SourceControlConverter converter = new SourceControlConverter();
+        Query query = namedQuery(fullQueryName)
+            .setParameter("sourcecontrol", converter.convertToEntityAttribute(splitPath[registryIndex]))
+            .setParameter("organization", splitPath[orgIndex])
+            .setParameter("repository", splitPath[repoIndex])
+            .setParameter("versionname", versionName);
+        if (splitPath[entryNameIndex] != null) {
+            query.setParameter("workflowname", splitPath[entryNameIndex]);
+        }
+        return list(query);
+    }
+
     public List<Workflow> findByPaths(List<String> paths, boolean findPublished) {
         List<Predicate> predicates = new ArrayList<>();
         SourceControlConverter converter = new SourceControlConverter();
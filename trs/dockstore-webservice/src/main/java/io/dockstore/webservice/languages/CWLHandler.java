@@ -15,20 +15,31 @@
  */
 package io.dockstore.webservice.languages;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
 import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.reflect.TypeToken;
@@ -62,14 +73,102 @@ import org.yaml.snakeyaml.error.YAMLException;
  */
 public class CWLHandler implements LanguageHandlerInterface {
     public static final Logger LOG = LoggerFactory.getLogger(CWLHandler.class);
+    private static final String WORKFLOW = "Workflow";
+    private static final String COMMAND_LINE_TOOL = "CommandLineTool";
+    private static final String EXPRESSION_TOOL = "ExpressionTool";
+    /**
+     * Parsed descriptors are weighted by an estimate of the bytes their tree takes
+     */
+    private static final long MAXIMUM_PARSED_BYTES = 64L * 1024 * 1024;
+    /**
+     * Estimated bytes of a map and of each of its entries, of a list and of each of its elements, of a string without its characters,
+     * and of a boxed number or boolean
+     */
+    private static final int MAP_BYTES = 64;
+    private static final int MAP_ENTRY_BYTES = 48;
+    private static final int LIST_BYTES = 40;
+    private static final int LIST_ELEMENT_BYTES = 8;
+    private static final int STRING_BYTES = 48;
+    private static final int SCALAR_BYTES = 16;
+    private static final long PARSED_EXPIRY_MINUTES = 10;
+    /**
+     * A Yaml is not thread safe, so each thread reuses its own
+     */
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(Yaml::new);
+    /**
+     * Descriptors parsed recently, by a hash of their content, so that the metadata, validation, file formats, DAG and tools table
+     * of a version are read from one parse of each file. The parsed maps are shared and must not be modified.
+     */
+    private static final Cache<String, Map<String, Object>> PARSED_DESCRIPTORS = CacheBuilder.newBuilder()
+        .maximumWeight(MAXIMUM_PARSED_BYTES)
+        .weigher((String contentHash, Map<String, Object> mapping) -> estimateBytes(mapping))
+        .expireAfterAccess(PARSED_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * Parses a CWL descriptor, or gets the parse of the same content if it was parsed recently
+     *
+     * @param content the content of a descriptor
+     * @return the descriptor as a map, null if the content is empty. Must not be modified.
+     * @throws YAMLException if the content is not valid YAML
+     * @throws ClassCastException if the content is not a YAML map
+     */
+    static Map<String, Object> parseCwl(String content) {
+        String contentHash = Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+        Map<String, Object> mapping = PARSED_DESCRIPTORS.getIfPresent(contentHash);
+        if (mapping == null) {
+            mapping = YAML.get().loadAs(content, Map.class);
+            if (mapping != null) {
+                PARSED_DESCRIPTORS.put(contentHash, mapping);
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Estimates the bytes a parsed descriptor takes. Nodes that YAML aliases share are counted once.
+     *
+     * @param mapping a parsed descriptor
+     * @return the estimated size, at most Integer.MAX_VALUE
+     */
+    static int estimateBytes(Map<String, Object> mapping) {
+        long bytes = 0;
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> nodes = new ArrayDeque<>();
+        nodes.push(mapping);
+        while (!nodes.isEmpty() && bytes < Integer.MAX_VALUE) {
+            Object node = nodes.pop();
+            if (node == null || !seen.add(node)) {
+                continue;
+            }
+            if (node instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>)node;
+                bytes += MAP_BYTES + (long)MAP_ENTRY_BYTES * map.size();
+                map.forEach((key, value) -> {
+                    nodes.push(key);
+                    nodes.push(value);
+                });
+            } else if (node instanceof Collection) {
+                Collection<?> collection = (Collection<?>)node;
+                bytes += LIST_BYTES + (long)LIST_ELEMENT_BYTES * collection.size();
+                collection.forEach(nodes::push);
+            } else if (node instanceof String) {
+                bytes += STRING_BYTES + ((String)node).length();
+            } else if (node instanceof byte[]) {
+                bytes += SCALAR_BYTES + ((byte[])node).length;
+            } else {
+                bytes += SCALAR_BYTES;
+            }
+        }
+        return (int)Math.min(bytes, Integer.MAX_VALUE);
+    }
 
     @Override
     public Version parseWorkflowContent(String filepath, String content, Set<SourceFile> sourceFiles, Version version) {
         // parse the collab.cwl file to get important metadata
         if (content != null && !content.isEmpty()) {
             try {
-                Yaml yaml = new Yaml();
-                Map map = yaml.loadAs(content, Map.class);
+                Map map = parseCwl(content);
                 String description = null;
                 try {
                     // draft-3 construct
@@ -174,22 +273,40 @@ public class CWLHandler implements LanguageHandlerInterface {
         SourceCodeRepoInterface sourceCodeRepoInterface, String workingDirectoryForFile) {
 
         Map<String, SourceFile> imports = new HashMap<>();
-        Yaml yaml = new Yaml();
-        try {
-            Map<String, ?> fileContentMap = yaml.loadAs(content, Map.class);
-            handleMap(repositoryId, workingDirectoryForFile, version, imports, fileContentMap, sourceCodeRepoInterface);
-        } catch (YAMLException e) {
-            SourceCodeRepoInterface.LOG.error("Could not process content from workflow as yaml");
-        }
-
-        Map<String, SourceFile> recursiveImports = new HashMap<>();
-        for (Map.Entry<String, SourceFile> importFile : imports.entrySet()) {
-            final Map<String, SourceFile> sourceFiles = processImports(repositoryId, importFile.getValue().getContent(), version, sourceCodeRepoInterface, importFile.getKey());
-            recursiveImports.putAll(sourceFiles);
+        // the file itself is never read again as an import of its imports
+        Set<String> importPaths = new HashSet<>(Collections.singleton(workingDirectoryForFile));
+        // the imports of all the files of a level are read together, so that reading a tree of imports takes a round trip
+        // per level of the tree rather than per file
+        Map<String, String> level = Collections.singletonMap(workingDirectoryForFile, content);
+        while (!level.isEmpty()) {
+            Map<String, String> levelImports = new LinkedHashMap<>();
+            level.forEach((parentFilePath, parentContent) -> {
+                try {
+                    Map<String, ?> fileContentMap = parseCwl(parentContent);
+                    handleMap(parentFilePath, levelImports, fileContentMap);
+                } catch (YAMLException e) {
+                    SourceCodeRepoInterface.LOG.error("Could not process content from workflow as yaml");
+                }
+            });
+            levelImports.keySet().removeAll(importPaths);
+            if (levelImports.isEmpty()) {
+                break;
+            }
+            importPaths.addAll(levelImports.keySet());
+
+            final Map<String, String> fileResponses = sourceCodeRepoInterface
+                .readGitRepositoryFiles(repositoryId, DescriptorLanguage.FileType.DOCKSTORE_CWL, version, levelImports.keySet());
+            level = new LinkedHashMap<>();
+            for (Map.Entry<String, String> levelImport : levelImports.entrySet()) {
+                String absoluteImportPath = levelImport.getKey();
+                SourceFile sourceFile = createImport(levelImport.getValue(), absoluteImportPath, fileResponses.get(absoluteImportPath));
+                if (sourceFile != null) {
+                    imports.put(absoluteImportPath, sourceFile);
+                    level.put(absoluteImportPath, sourceFile.getContent());
+                }
+            }
         }
-
-        recursiveImports.putAll(imports);
-        return recursiveImports;
+        return imports;
     }
 
     /**
@@ -200,9 +317,8 @@ public class CWLHandler implements LanguageHandlerInterface {
      */
     public Set<FileFormat> getFileFormats(String content, String type) {
         Set<FileFormat> fileFormats = new HashSet<>();
-        Yaml yaml = new Yaml();
         try {
-            Map<String, ?> map = yaml.loadAs(content, Map.class);
+            Map<String, ?> map = parseCwl(content);
             Object targetType = map.get(type);
             if (targetType instanceof Map) {
                 Map<String, ?> outputsMap = (Map<String, ?>)targetType;
@@ -238,8 +354,7 @@ public class CWLHandler implements LanguageHandlerInterface {
     @SuppressWarnings("checkstyle:methodlength")
     public String getContent(String mainDescriptorPath, String mainDescriptor, Set<SourceFile> secondarySourceFiles, LanguageHandlerInterface.Type type,
         ToolDAO dao) {
-        Yaml yaml = new Yaml();
-        if (isValidCwl(mainDescriptor, yaml)) {
+        if (isValidCwl(mainDescriptor)) {
             // Initialize data structures for DAG
             Map<String, ToolInfo> toolInfoMap = new HashMap<>(); // Mapping of stepId -> array of dependencies for the step
             List<Pair<String, String>> nodePairs = new ArrayList<>();       // List of pairings of step id and dockerPull url
@@ -248,9 +363,10 @@ public class CWLHandler implements LanguageHandlerInterface {
 
             // Initialize data structures for Tool table
             Map<String, Triple<String, String, String>> nodeDockerInfo = new HashMap<>(); // map of stepId -> (run path, docker image, docker url)
+            Map<String, String> stepToDockerRequirement = new HashMap<>(); // Map of stepId -> docker image to link to
 
             // Convert YAML to JSON
-            Map<String, Object> mapping = yaml.loadAs(mainDescriptor, Map.class);
+            Map<String, Object> mapping = parseCwl(mainDescriptor);
             JSONObject cwlJson = new JSONObject(mapping);
 
             // Other useful variables
@@ -329,21 +445,23 @@ public class CWLHandler implements LanguageHandlerInterface {
                     // Check for docker requirement within workflow step file
                     String secondaryFile = null;
                     Object run = workflowStep.getRun();
-                    String runAsJson = gson.toJson(gson.toJsonTree(run));
+                    JsonElement runTree = gson.toJsonTree(run);
+                    String runAsJson = gson.toJson(runTree);
+                    String runClass = getCwlClass(runTree);
 
                     if (run instanceof String) {
                         secondaryFile = (String)run;
-                    } else if (isTool(runAsJson, yaml)) {
+                    } else if (COMMAND_LINE_TOOL.equals(runClass)) {
                         CommandLineTool clTool = gson.fromJson(runAsJson, CommandLineTool.class);
                         stepDockerRequirement = getRequirementOrHint(clTool.getRequirements(), clTool.getHints(),
                             stepDockerRequirement);
                         stepToType.put(workflowStepId, toolType);
-                    } else if (isWorkflow(runAsJson, yaml)) {
+                    } else if (WORKFLOW.equals(runClass)) {
                         io.cwl.avro.Workflow stepWorkflow = gson.fromJson(runAsJson, io.cwl.avro.Workflow.class);
                         stepDockerRequirement = getRequirementOrHint(stepWorkflow.getRequirements(), stepWorkflow.getHints(),
                             stepDockerRequirement);
                         stepToType.put(workflowStepId, workflowType);
-                    } else if (isExpressionTool(runAsJson, yaml)) {
+                    } else if (EXPRESSION_TOOL.equals(runClass)) {
                         ExpressionTool expressionTool = gson.fromJson(runAsJson, ExpressionTool.class);
                         stepDockerRequirement = getRequirementOrHint(expressionTool.getRequirements(), expressionTool.getHints(),
                             stepDockerRequirement);
@@ -367,35 +485,47 @@ public class CWLHandler implements LanguageHandlerInterface {
                         final Optional<SourceFile> sourceFileOptional = secondarySourceFiles.stream()
                                 .filter(sf -> sf.getPath().equals(finalSecondaryFile)).findFirst();
                         final String content = sourceFileOptional.map(SourceFile::getContent).orElse(null);
-                        stepDockerRequirement = parseSecondaryFile(stepDockerRequirement, content, gson, yaml);
-                        if (isExpressionTool(content, yaml)) {
+                        stepDockerRequirement = parseSecondaryFile(stepDockerRequirement, content, gson);
+                        String secondaryFileClass = Strings.isNullOrEmpty(content) ? null : getCwlClass(parseCwl(content));
+                        if (EXPRESSION_TOOL.equals(secondaryFileClass)) {
                             stepToType.put(workflowStepId, expressionToolType);
-                        } else if (isTool(content, yaml)) {
+                        } else if (COMMAND_LINE_TOOL.equals(secondaryFileClass)) {
                             stepToType.put(workflowStepId, toolType);
-                        } else if (isWorkflow(content, yaml)) {
+                        } else if (WORKFLOW.equals(secondaryFileClass)) {
                             stepToType.put(workflowStepId, workflowType);
                         } else {
                             stepToType.put(workflowStepId, "n/a");
                         }
                     }
 
-                    String dockerUrl = null;
+                    // the docker url is filled in once all the steps are known
                     if (!stepToType.get(workflowStepId).equals(workflowType) && !Strings.isNullOrEmpty(stepDockerRequirement)) {
-                        dockerUrl = getURLFromEntry(stepDockerRequirement, dao);
+                        stepToDockerRequirement.put(workflowStepId, stepDockerRequirement);
                     }
 
                     if (type == LanguageHandlerInterface.Type.DAG) {
-                        nodePairs.add(new MutablePair<>(workflowStepId, dockerUrl));
+                        nodePairs.add(new MutablePair<>(workflowStepId, null));
                     }
 
                     if (secondaryFile != null) {
-                        nodeDockerInfo.put(workflowStepId, new MutableTriple<>(secondaryFile, stepDockerRequirement, dockerUrl));
+                        nodeDockerInfo.put(workflowStepId, new MutableTriple<>(secondaryFile, stepDockerRequirement, null));
                     } else {
-                        nodeDockerInfo.put(workflowStepId, new MutableTriple<>(mainDescriptorPath, stepDockerRequirement, dockerUrl));
+                        nodeDockerInfo.put(workflowStepId, new MutableTriple<>(mainDescriptorPath, stepDockerRequirement, null));
                     }
 
                 }
 
+                // Look up the docker images of all steps at once
+                if (!stepToDockerRequirement.isEmpty()) {
+                    Map<String, String> dockerUrls = getURLsFromEntries(new HashSet<>(stepToDockerRequirement.values()), dao);
+                    stepToDockerRequirement.forEach((stepId, dockerRequirement) -> {
+                        String dockerUrl = dockerUrls.get(dockerRequirement);
+                        nodeDockerInfo.put(stepId, new MutableTriple<>(nodeDockerInfo.get(stepId).getLeft(), dockerRequirement, dockerUrl));
+                    });
+                    nodePairs.replaceAll(
+                        node -> new MutablePair<>(node.getLeft(), dockerUrls.get(stepToDockerRequirement.get(node.getLeft()))));
+                }
+
                 if (type == LanguageHandlerInterface.Type.DAG) {
                     // Determine steps that point to end
                     List<String> endDependencies = new ArrayList<>();
@@ -444,27 +574,21 @@ public class CWLHandler implements LanguageHandlerInterface {
     }
 
     /**
-     * Iterates over a map of CWL file content looking for imports. When import is found. will grab the imported file from Git
-     * and prepare it for import finding.
-     * @param repositoryId              identifies the git repository that we wish to use, normally something like 'organization/repo_name`
+     * Iterates over a map of CWL file content looking for imports. When import is found, it is added to the imports
+     * to grab from Git.
      * @param parentFilePath            absolute path to the parent file which references the imported file
-     * @param version                   version of the files to get
-     * @param imports                   mapping of filenames to imports
+     * @param imports                   mapping of absolute paths of imports to their paths in the CWL file
      * @param fileContentMap            CWL file mapping
-     * @param sourceCodeRepoInterface   used too retrieve imports
      */
-    private void handleMap(String repositoryId, String parentFilePath, Version version, Map<String, SourceFile> imports, Map<String, ?> fileContentMap,
-        SourceCodeRepoInterface sourceCodeRepoInterface) {
+    private void handleMap(String parentFilePath, Map<String, String> imports, Map<String, ?> fileContentMap) {
         Set<String> importKeywords = Sets.newHashSet("$import", "$include", "$mixin", "import", "include", "mixin");
         for (Map.Entry<String, ?> e : fileContentMap.entrySet()) {
             final Object mapValue = e.getValue();
-            String absoluteImportPath;
 
             if (importKeywords.contains(e.getKey().toLowerCase())) {
                 // handle imports and includes
                 if (mapValue instanceof String) {
-                    absoluteImportPath = convertRelativePathToAbsolutePath(parentFilePath, (String)mapValue);
-                    handleImport(repositoryId, version, imports, (String)mapValue, sourceCodeRepoInterface, absoluteImportPath);
+                    imports.putIfAbsent(convertRelativePathToAbsolutePath(parentFilePath, (String)mapValue), (String)mapValue);
                 }
             } else if (e.getKey().equalsIgnoreCase("run")) {
                 // for workflows, bare files may be referenced. See https://github.com/dockstore/dockstore/issues/208
@@ -472,61 +596,51 @@ public class CWLHandler implements LanguageHandlerInterface {
                 //  run: {import: revtool.cwl}
                 //  run: revtool.cwl
                 if (mapValue instanceof String) {
-                    absoluteImportPath = convertRelativePathToAbsolutePath(parentFilePath, (String)mapValue);
-                    handleImport(repositoryId, version, imports, (String)mapValue, sourceCodeRepoInterface, absoluteImportPath);
+                    imports.putIfAbsent(convertRelativePathToAbsolutePath(parentFilePath, (String)mapValue), (String)mapValue);
                 } else if (mapValue instanceof Map) {
                     // this handles the case where an import is used
-                    handleMap(repositoryId, parentFilePath, version, imports, (Map)mapValue, sourceCodeRepoInterface);
+                    handleMap(parentFilePath, imports, (Map)mapValue);
                 }
             } else {
-                handleMapValue(repositoryId, parentFilePath, version, imports, mapValue, sourceCodeRepoInterface);
+                handleMapValue(parentFilePath, imports, mapValue);
             }
         }
     }
 
     /**
      * Iterate over object and pass any mappings to check for imports.
-     * @param repositoryId              identifies the git repository that we wish to use, normally something like 'organization/repo_name`
      * @param parentFilePath            absolute path to the parent file which references the imported file
-     * @param version                   version of the files to get
-     * @param imports                   mapping of filenames to imports
+     * @param imports                   mapping of absolute paths of imports to their paths in the CWL file
      * @param mapValue                  CWL file object
-     * @param sourceCodeRepoInterface   used too retrieve imports
      */
-    private void handleMapValue(String repositoryId, String parentFilePath, Version version, Map<String, SourceFile> imports,
-        Object mapValue, SourceCodeRepoInterface sourceCodeRepoInterface) {
+    private void handleMapValue(String parentFilePath, Map<String, String> imports, Object mapValue) {
         if (mapValue instanceof Map) {
-            handleMap(repositoryId, parentFilePath, version, imports, (Map)mapValue, sourceCodeRepoInterface);
+            handleMap(parentFilePath, imports, (Map)mapValue);
         } else if (mapValue instanceof List) {
             for (Object listMember : (List)mapValue) {
-                handleMapValue(repositoryId, parentFilePath, version, imports, listMember, sourceCodeRepoInterface);
+                handleMapValue(parentFilePath, imports, listMember);
             }
         }
     }
 
     /**
-     * Grabs a import file from Git based on its absolute path and add to imports mapping
-     * @param repositoryId              identifies the git repository that we wish to use, normally something like 'organization/repo_name`
-     * @param version                   version of the files to get
-     * @param imports                   mapping of filenames to imports
+     * Creates the source file of an import grabbed from Git
      * @param givenImportPath           import path from CWL file
-     * @param sourceCodeRepoInterface   used too retrieve imports
      * @param absoluteImportPath        absolute path of import in git repository
+     * @param fileResponse              content of the import, null if it could not be read
+     * @return the source file, null if the import could not be read
      */
-    private void handleImport(String repositoryId, Version version, Map<String, SourceFile> imports, String givenImportPath, SourceCodeRepoInterface sourceCodeRepoInterface, String absoluteImportPath) {
-        DescriptorLanguage.FileType fileType = DescriptorLanguage.FileType.DOCKSTORE_CWL;
-        // create a new source file
-        final String fileResponse = sourceCodeRepoInterface.readGitRepositoryFile(repositoryId, fileType, version, absoluteImportPath);
+    private SourceFile createImport(String givenImportPath, String absoluteImportPath, String fileResponse) {
         if (fileResponse == null) {
             LOG.error("Could not read: " + absoluteImportPath);
-            return;
+            return null;
         }
         SourceFile sourceFile = new SourceFile();
-        sourceFile.setType(fileType);
+        sourceFile.setType(DescriptorLanguage.FileType.DOCKSTORE_CWL);
         sourceFile.setContent(fileResponse);
         sourceFile.setPath(givenImportPath);
         sourceFile.setAbsolutePath(absoluteImportPath);
-        imports.put(absoluteImportPath, sourceFile);
+        return sourceFile;
     }
 
     /**
@@ -550,26 +664,26 @@ public class CWLHandler implements LanguageHandlerInterface {
      * @param stepDockerRequirement
      * @param secondaryFileContents
      * @param gson
-     * @param yaml
      * @return
      */
-    private String parseSecondaryFile(String stepDockerRequirement, String secondaryFileContents, Gson gson, Yaml yaml) {
+    private String parseSecondaryFile(String stepDockerRequirement, String secondaryFileContents, Gson gson) {
         if (secondaryFileContents != null) {
-            Map<String, Object> entryMapping = yaml.loadAs(secondaryFileContents, Map.class);
+            Map<String, Object> entryMapping = parseCwl(secondaryFileContents);
             JSONObject entryJson = new JSONObject(entryMapping);
+            String cwlClass = Strings.isNullOrEmpty(secondaryFileContents) ? null : getCwlClass(entryMapping);
 
             List<Object> cltRequirements = null;
             List<Object> cltHints = null;
 
-            if (isExpressionTool(secondaryFileContents, yaml)) {
+            if (EXPRESSION_TOOL.equals(cwlClass)) {
                 final ExpressionTool expressionTool = gson.fromJson(entryJson.toString(), io.cwl.avro.ExpressionTool.class);
                 cltRequirements = expressionTool.getRequirements();
                 cltHints = expressionTool.getHints();
-            } else if (isTool(secondaryFileContents, yaml)) {
+            } else if (COMMAND_LINE_TOOL.equals(cwlClass)) {
                 final CommandLineTool commandLineTool = gson.fromJson(entryJson.toString(), io.cwl.avro.CommandLineTool.class);
                 cltRequirements = commandLineTool.getRequirements();
                 cltHints = commandLineTool.getHints();
-            } else if (isWorkflow(secondaryFileContents, yaml)) {
+            } else if (WORKFLOW.equals(cwlClass)) {
                 final io.cwl.avro.Workflow workflow = gson.fromJson(entryJson.toString(), io.cwl.avro.Workflow.class);
                 cltRequirements = workflow.getRequirements();
                 cltHints = workflow.getHints();
@@ -625,65 +739,42 @@ public class CWLHandler implements LanguageHandlerInterface {
     }
 
     /**
-     * Checks if a file is a workflow (CWL)
+     * Gets the class of a CWL document (CWL)
      *
-     * @param content
-     * @return true if workflow, false otherwise
+     * @param mapping the parsed document
+     * @return the class, like Workflow or CommandLineTool, null if there is none
      */
-    private boolean isWorkflow(String content, Yaml yaml) {
-        if (!Strings.isNullOrEmpty(content)) {
-            Map<String, Object> mapping = yaml.loadAs(content, Map.class);
-            if (mapping.get("class") != null) {
-                String cwlClass = mapping.get("class").toString();
-                return "Workflow".equals(cwlClass);
-            }
+    private static String getCwlClass(Map<String, Object> mapping) {
+        if (mapping != null && mapping.get("class") != null) {
+            return mapping.get("class").toString();
         }
-        return false;
-    }
-
-    /**
-     * Checks if a file is an expression tool (CWL)
-     *
-     * @param content
-     * @return true if expression tool, false otherwise
-     */
-    private boolean isExpressionTool(String content, Yaml yaml) {
-        if (!Strings.isNullOrEmpty(content)) {
-            Map<String, Object> mapping = yaml.loadAs(content, Map.class);
-            if (mapping.get("class") != null) {
-                String cwlClass = mapping.get("class").toString();
-                return "ExpressionTool".equals(cwlClass);
-            }
-        }
-        return false;
+        return null;
     }
 
     /**
-     * Checks if a file is a tool (CWL)
+     * Gets the class of an inline CWL document (CWL)
      *
-     * @param content
-     * @return true if tool, false otherwise
+     * @param document the document as JSON
+     * @return the class, like Workflow or CommandLineTool, null if there is none
      */
-    private boolean isTool(String content, Yaml yaml) {
-        if (!Strings.isNullOrEmpty(content)) {
-            Map<String, Object> mapping = yaml.loadAs(content, Map.class);
-            if (mapping.get("class") != null) {
-                String cwlClass = mapping.get("class").toString();
-                return "CommandLineTool".equals(cwlClass);
+    private static String getCwlClass(JsonElement document) {
+        if (document != null && document.isJsonObject()) {
+            JsonElement cwlClass = document.getAsJsonObject().get("class");
+            if (cwlClass != null && !cwlClass.isJsonNull()) {
+                return cwlClass.isJsonPrimitive() ? cwlClass.getAsString() : cwlClass.toString();
             }
         }
-        return false;
+        return null;
     }
 
     /**
      * Checks that the CWL file is the correct version
      * @param content
-     * @param yaml
      * @return true if file is valid CWL version, false otherwise
      */
-    private boolean isValidCwl(String content, Yaml yaml) {
+    private boolean isValidCwl(String content) {
         try {
-            Map<String, Object> mapping = yaml.loadAs(content, Map.class);
+            Map<String, Object> mapping = parseCwl(content);
             final Object cwlVersion = mapping.get("cwlVersion");
 
             if (cwlVersion != null) {
@@ -729,7 +820,6 @@ public class CWLHandler implements LanguageHandlerInterface {
         Map<String, String> validationMessageObject = new HashMap<>();
 
         if (mainDescriptor.isPresent()) {
-            Yaml yaml = new Yaml();
             String content = mainDescriptor.get().getContent();
             if (content == null || content.isEmpty()) {
                 isValid = false;
@@ -737,7 +827,7 @@ public class CWLHandler implements LanguageHandlerInterface {
             } else if (!content.contains("class: Workflow")) {
                 isValid = false;
                 validationMessage = "Requires class: Workflow.";
-            } else if (!this.isValidCwl(content, yaml)) {
+            } else if (!this.isValidCwl(content)) {
                 isValid = false;
                 validationMessage = "Invalid CWL version.";
             }
@@ -761,7 +851,6 @@ public class CWLHandler implements LanguageHandlerInterface {
         Map<String, String> validationMessageObject = new HashMap<>();
 
         if (mainDescriptor.isPresent()) {
-            Yaml yaml = new Yaml();
             String content = mainDescriptor.get().getContent();
             if (content == null || content.isEmpty()) {
                 isValid = false;
@@ -769,7 +858,7 @@ public class CWLHandler implements LanguageHandlerInterface {
             } else if (!content.contains("class: CommandLineTool") && !content.contains("class: ExpressionTool")) {
                 isValid = false;
                 validationMessage = "Requires class: CommandLineTool or ExpressionTool.";
-            } else if (!this.isValidCwl(content, yaml)) {
+            } else if (!this.isValidCwl(content)) {
                 isValid = false;
                 validationMessage = "Invalid CWL version.";
             }
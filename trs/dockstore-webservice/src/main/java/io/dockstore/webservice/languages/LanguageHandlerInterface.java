@@ -16,6 +16,8 @@
 package io.dockstore.webservice.languages;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -51,6 +53,13 @@ import org.yaml.snakeyaml.error.YAMLException;
  */
 public interface LanguageHandlerInterface {
     Logger LOG = LoggerFactory.getLogger(LanguageHandlerInterface.class);
+    Pattern DOCKER_TAG_PATTERN = Pattern.compile("([^:]+):?(\\S+)?");
+    Pattern SLASH_PATTERN = Pattern.compile("/");
+    String DOCKER_HUB_REGISTRY = "registry.hub.docker.com/";
+    /**
+     * Gson is thread-safe, so one instance serializes the DAGs and tools tables of every handler
+     */
+    Gson GSON = new Gson();
 
     /**
      * Parses the content of the primary descriptor to get author, email, and description
@@ -258,8 +267,7 @@ public interface LanguageHandlerInterface {
      */
     default String convertToJSONString(Object content) {
         //create json string and return
-        Gson gson = new Gson();
-        String json = gson.toJson(content);
+        String json = GSON.toJson(content);
         LOG.debug(json);
 
         return json;
@@ -272,58 +280,95 @@ public interface LanguageHandlerInterface {
      * @return URL
      */
     default String getURLFromEntry(String dockerEntry, ToolDAO toolDAO) {
+        return getURLsFromEntries(Collections.singleton(dockerEntry), toolDAO).get(dockerEntry);
+    }
+
+    /**
+     * Given docker entries (quay or dockerhub), return URLs to the given entries.
+     * Whether an entry is a published tool on Dockstore is looked up for all entries at once.
+     *
+     * @param dockerEntries has the docker names
+     * @return map of docker name to URL, the URL is null when there is nothing to link to
+     */
+    default Map<String, String> getURLsFromEntries(Collection<String> dockerEntries, ToolDAO toolDAO) {
         // For now ignore tag, later on it may be more useful
+        Map<String, String> entryToImage = new HashMap<>();
+        for (String dockerEntry : dockerEntries) {
+            // Remove tag if exists
+            Matcher m = DOCKER_TAG_PATTERN.matcher(dockerEntry);
+            entryToImage.put(dockerEntry, m.matches() ? m.group(1) : dockerEntry);
+        }
+
+        // TODO: How to deal with multiple entries of a tool? For now just grab the first
+        // TODO: How do we check that the URL is valid? If not then the entry is likely a local docker build
+        Set<String> toolPaths = new HashSet<>();
+        for (String image : entryToImage.values()) {
+            if (image.startsWith("quay.io/")) {
+                toolPaths.add(image);
+            } else if (SLASH_PATTERN.split(image).length == 2) {
+                // if the path looks like pancancer/pcawg-oxog-tools
+                toolPaths.add(DOCKER_HUB_REGISTRY + image);
+            }
+        }
+        Set<String> publishedToolPaths = toolPaths.isEmpty() ? Collections.emptySet() : toolDAO.findPublishedPaths(toolPaths);
+
+        Map<String, String> urls = new HashMap<>();
+        entryToImage.forEach((dockerEntry, image) -> urls.put(dockerEntry, getURLFromImage(image, publishedToolPaths)));
+        return urls;
+    }
+
+    /**
+     * @param image              a docker image without its tag
+     * @param publishedToolPaths the Dockstore paths, of the form registry/namespace/name, of the published tools among the images
+     * @return URL
+     */
+    private String getURLFromImage(String image, Set<String> publishedToolPaths) {
         String quayIOPath = "https://quay.io/repository/";
         String dockerHubPathR = "https://hub.docker.com/r/"; // For type repo/subrepo:tag
         String dockerHubPathUnderscore = "https://hub.docker.com/_/"; // For type repo:tag
         String dockstorePath = "https://www.dockstore.org/containers/"; // Update to tools once UI is updated to use /tools instead of /containers
 
         String url;
-
-        // Remove tag if exists
-        Pattern p = Pattern.compile("([^:]+):?(\\S+)?");
-        Matcher m = p.matcher(dockerEntry);
-        if (m.matches()) {
-            dockerEntry = m.group(1);
-        }
-
-        // TODO: How to deal with multiple entries of a tool? For now just grab the first
-        // TODO: How do we check that the URL is valid? If not then the entry is likely a local docker build
-        if (dockerEntry.startsWith("quay.io/")) {
-            List<Tool> byPath = toolDAO.findAllByPath(dockerEntry, true);
-            if (byPath == null || byPath.isEmpty()) {
+        if (image.startsWith("quay.io/")) {
+            if (!publishedToolPaths.contains(toolPathWithoutToolname(image))) {
                 // when we cannot find a published tool on Dockstore, link to quay.io
-                url = dockerEntry.replaceFirst("quay\\.io/", quayIOPath);
+                url = quayIOPath + image.substring("quay.io/".length());
             } else {
                 // when we found a published tool, link to the tool on Dockstore
-                url = dockstorePath + dockerEntry;
+                url = dockstorePath + image;
             }
         } else {
-            String[] parts = dockerEntry.split("/");
+            String[] parts = SLASH_PATTERN.split(image);
             if (parts.length == 2) {
                 // if the path looks like pancancer/pcawg-oxog-tools
-                List<Tool> publishedByPath = toolDAO.findAllByPath("registry.hub.docker.com/" + dockerEntry, true);
-                if (publishedByPath == null || publishedByPath.isEmpty()) {
+                if (!publishedToolPaths.contains(DOCKER_HUB_REGISTRY + image)) {
                     // when we cannot find a published tool on Dockstore, link to docker hub
-                    url = dockerHubPathR + dockerEntry;
+                    url = dockerHubPathR + image;
                 } else {
                     // when we found a published tool, link to the tool on Dockstore
-                    url = dockstorePath + "registry.hub.docker.com/" + dockerEntry;
+                    url = dockstorePath + DOCKER_HUB_REGISTRY + image;
                 }
             } else {
                 // if the path looks like debian:8 or debian
-                url = dockerHubPathUnderscore + dockerEntry;
+                url = dockerHubPathUnderscore + image;
 
                 if (url.equals(dockerHubPathUnderscore)) {
                     url = null;
                 }
             }
-
         }
-
         return url;
     }
 
+    /**
+     * @param path a Dockstore tool path, optionally with a toolname
+     * @return the path without the toolname, null if it is not a tool path
+     */
+    private static String toolPathWithoutToolname(String path) {
+        String[] splitPath = Tool.splitPath(path);
+        return splitPath == null ? null : splitPath[0] + "/" + splitPath[1] + "/" + splitPath[2];
+    }
+
     /**
      * Resolves a relative path based on an absolute parent path
      * @param parentPath Absolute path to parent file
@@ -357,6 +402,11 @@ public interface LanguageHandlerInterface {
         // Initialize data structures for Tool table
         Map<String, Triple<String, String, String>> nodeDockerInfo = new HashMap<>(); // map of stepId -> (run path, docker image, docker url)
 
+        // Look up the docker images of all calls at once
+        Set<String> dockerEntries = toolInfoMap.values().stream().map(toolInfo -> toolInfo.dockerContainer)
+            .filter(docker -> !Strings.isNullOrEmpty(docker)).collect(Collectors.toSet());
+        Map<String, String> dockerUrls = dockerEntries.isEmpty() ? Collections.emptyMap() : getURLsFromEntries(dockerEntries, dao);
+
         // Create nodePairs, callToType, toolID, and toolDocker
         for (Map.Entry<String, ToolInfo> entry : toolInfoMap.entrySet()) {
             String callId = entry.getKey();
@@ -369,7 +419,7 @@ public interface LanguageHandlerInterface {
             }
             String dockerUrl = null;
             if (!Strings.isNullOrEmpty(docker)) {
-                dockerUrl = getURLFromEntry(docker, dao);
+                dockerUrl = dockerUrls.get(docker);
             }
 
             // Determine if call is imported
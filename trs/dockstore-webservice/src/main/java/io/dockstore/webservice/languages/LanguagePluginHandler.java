@@ -16,19 +16,41 @@
 package io.dockstore.webservice.languages;
 
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.google.gson.Gson;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.dockstore.common.DescriptorLanguage;
 import io.dockstore.common.VersionTypeValidation;
 import io.dockstore.language.CompleteLanguageInterface;
 import io.dockstore.language.MinimalLanguageInterface;
 import io.dockstore.language.RecommendedLanguageInterface;
+import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.core.DescriptionSource;
 import io.dockstore.webservice.core.SourceFile;
 import io.dockstore.webservice.core.Version;
@@ -36,15 +58,82 @@ import io.dockstore.webservice.helpers.SourceCodeRepoInterface;
 import io.dockstore.webservice.jdbi.ToolDAO;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class LanguagePluginHandler implements LanguageHandlerInterface {
 
     public static final Logger LOG = LoggerFactory.getLogger(LanguagePluginHandler.class);
+    private static final int PLUGIN_THREADS = 4;
+    private static final int MAX_WAITING_PLUGIN_CALLS = 100;
+    /**
+     * How long a plugin call may run, counted from when it gets a plugin thread
+     */
+    private static final long PLUGIN_TIMEOUT_SECONDS = 60;
+    /**
+     * How long a plugin call may wait for a plugin thread
+     */
+    private static final long PLUGIN_START_TIMEOUT_SECONDS = 60;
+    /**
+     * What a plugin uses grows with what it is given, so descriptors larger than this are not given to plugins
+     */
+    private static final long MAX_PLUGIN_INPUT_CHARS = 10_000_000;
+    private static final long MAXIMUM_CACHED_RESULTS = 1000;
+    private static final long RESULT_EXPIRY_MINUTES = 60;
+    private static final String BUSY_MESSAGE = "Too many descriptors are being processed, please try again later";
+    /**
+     * Plugins run on their own threads rather than the request or refresh thread, so a plugin stuck on a descriptor
+     * holds one of these threads rather than the thread that called it
+     */
+    private static final ExecutorService PLUGIN_EXECUTOR = new ThreadPoolExecutor(PLUGIN_THREADS, PLUGIN_THREADS, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(MAX_WAITING_PLUGIN_CALLS), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "language-plugin-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    /**
+     * Results of recent plugin calls, by a hash of the plugin, the call and its inputs
+     */
+    private static final Cache<String, Optional<Object>> RESULTS = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_CACHED_RESULTS)
+        .expireAfterWrite(RESULT_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
+    /**
+     * Calls that did not finish in time are not tried again for a while, so a descriptor that a plugin is stuck on
+     * does not take a plugin thread at every refresh
+     */
+    private static final Cache<String, String> FAILED_CALLS = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_CACHED_RESULTS)
+        .expireAfterWrite(RESULT_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
+    /**
+     * Calls that ran past their deadline and have not returned yet. A plugin that ignores interrupts keeps its thread
+     * until it returns, once all plugin threads are held this way no plugin call can run.
+     */
+    private static final AtomicInteger ABANDONED_CALLS = new AtomicInteger(0);
     private final MinimalLanguageInterface minimalLanguageInterface;
+    private final long pluginTimeoutMillis;
+    private final long startTimeoutMillis;
 
     LanguagePluginHandler(Class<? extends MinimalLanguageInterface> workflowLanguagePluginClass) {
+        this(workflowLanguagePluginClass, TimeUnit.SECONDS.toMillis(PLUGIN_TIMEOUT_SECONDS),
+            TimeUnit.SECONDS.toMillis(PLUGIN_START_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * @param pluginTimeoutMillis how long a plugin call may run
+     * @param startTimeoutMillis  how long a plugin call may wait for a plugin thread
+     */
+    LanguagePluginHandler(Class<? extends MinimalLanguageInterface> workflowLanguagePluginClass, long pluginTimeoutMillis,
+        long startTimeoutMillis) {
+        this.pluginTimeoutMillis = pluginTimeoutMillis;
+        this.startTimeoutMillis = startTimeoutMillis;
         try {
             this.minimalLanguageInterface = workflowLanguagePluginClass.getDeclaredConstructor().newInstance();
         } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
@@ -55,8 +144,14 @@ public class LanguagePluginHandler implements LanguageHandlerInterface {
 
     @Override
     public Version parseWorkflowContent(String filepath, String content, Set<SourceFile> sourceFiles, Version version) {
-        final MinimalLanguageInterface.WorkflowMetadata workflowMetadata = minimalLanguageInterface
-            .parseWorkflowForMetadata(filepath, content, new HashMap<>());
+        final MinimalLanguageInterface.WorkflowMetadata workflowMetadata;
+        try {
+            workflowMetadata = callPlugin("parseWorkflowForMetadata", filepath, content, new HashMap<>(),
+                () -> minimalLanguageInterface.parseWorkflowForMetadata(filepath, content, new HashMap<>()));
+        } catch (CustomWebApplicationException e) {
+            LOG.warn("Could not parse the metadata of " + filepath + ": " + e.getErrorMessage());
+            return version;
+        }
         version.setAuthor(workflowMetadata.getAuthor());
         version.setEmail(workflowMetadata.getEmail());
         version.setDescriptionAndDescriptionSource(workflowMetadata.getDescription(), DescriptionSource.DESCRIPTOR);
@@ -73,7 +168,21 @@ public class LanguagePluginHandler implements LanguageHandlerInterface {
             if (mainDescriptor.isPresent()) {
                 content = mainDescriptor.get().getContent();
             }
-            return ((RecommendedLanguageInterface)minimalLanguageInterface).validateWorkflowSet(primaryDescriptorFilePath, content, sourcefilesToIndexedFiles(sourcefiles));
+            final String mainContent = content;
+            final Map<String, Pair<String, MinimalLanguageInterface.GenericFileType>> indexedFiles = sourcefilesToIndexedFiles(sourcefiles);
+            try {
+                VersionTypeValidation validation = callPlugin("validateWorkflowSet", primaryDescriptorFilePath, mainContent, indexedFiles,
+                    () -> ((RecommendedLanguageInterface)minimalLanguageInterface).validateWorkflowSet(primaryDescriptorFilePath, mainContent,
+                        indexedFiles));
+                // results are shared with later calls, so give out a copy
+                return validation == null ? null : new VersionTypeValidation(validation.isValid(),
+                    validation.getMessage() == null ? null : new HashMap<>(validation.getMessage()));
+            } catch (LanguagePluginTimeoutException e) {
+                // says nothing about the descriptors, so it is not returned as a failed validation
+                throw e;
+            } catch (CustomWebApplicationException e) {
+                return new VersionTypeValidation(false, Collections.singletonMap(primaryDescriptorFilePath, e.getErrorMessage()));
+            }
         } else {
             return new VersionTypeValidation(true, new HashMap<>());
         }
@@ -146,8 +255,12 @@ public class LanguagePluginHandler implements LanguageHandlerInterface {
             }
         };
 
-        final Map<String, Pair<String, MinimalLanguageInterface.GenericFileType>> stringPairMap = minimalLanguageInterface
-            .indexWorkflowFiles(filepath, content, reader);
+        // the files the plugin reads are not known up front so the result is not cached,
+        // but a call that timed out is not tried again for a while
+        String key = checkCall("indexWorkflowFiles", repositoryId + "@" + version.getReference() + ":" + filepath, content,
+            Collections.emptyMap());
+        final Map<String, Pair<String, MinimalLanguageInterface.GenericFileType>> stringPairMap = runWithDeadline("indexWorkflowFiles",
+            filepath, key, () -> minimalLanguageInterface.indexWorkflowFiles(filepath, content, reader));
         Map<String, SourceFile> results = new HashMap<>();
         for (Map.Entry<String, Pair<String, MinimalLanguageInterface.GenericFileType>> entry : stringPairMap.entrySet()) {
             final SourceFile sourceFile = new SourceFile();
@@ -168,11 +281,212 @@ public class LanguagePluginHandler implements LanguageHandlerInterface {
         ToolDAO dao) {
 
         if (minimalLanguageInterface instanceof CompleteLanguageInterface) {
-            final List<Map<String, Object>> maps = ((CompleteLanguageInterface)minimalLanguageInterface)
-                .loadCytoscapeElements(mainDescriptorPath, mainDescriptor, sourcefilesToIndexedFiles(secondarySourceFiles));
-            Gson gson = new Gson();
-            return gson.toJson(maps);
+            final Map<String, Pair<String, MinimalLanguageInterface.GenericFileType>> indexedFiles = sourcefilesToIndexedFiles(secondarySourceFiles);
+            return callPlugin("loadCytoscapeElements", mainDescriptorPath, mainDescriptor, indexedFiles, () -> {
+                final List<Map<String, Object>> maps = ((CompleteLanguageInterface)minimalLanguageInterface)
+                    .loadCytoscapeElements(mainDescriptorPath, mainDescriptor, indexedFiles);
+                return GSON.toJson(maps);
+            });
         }
         return "";
     }
+
+    /**
+     * Calls the plugin on a plugin thread, or gets the result of an identical call made recently.
+     * Results are shared between callers, so they must not be changed.
+     *
+     * @param operation    the name of the call
+     * @param initialPath  path of the primary descriptor
+     * @param contents     content of the primary descriptor
+     * @param indexedFiles the other files given to the plugin
+     * @param call         calls the plugin
+     * @param <T>          type of the result
+     * @return what the plugin returned
+     * @throws CustomWebApplicationException if the descriptor is too large
+     * @throws LanguagePluginTimeoutException if the plugin did not finish in time, now or recently, or could not be started in time
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T callPlugin(String operation, String initialPath, String contents,
+        Map<String, Pair<String, MinimalLanguageInterface.GenericFileType>> indexedFiles, Callable<T> call) {
+        String key = checkCall(operation, initialPath, contents, indexedFiles);
+        try {
+            return (T)RESULTS.get(key, () -> Optional.<Object>ofNullable(runWithDeadline(operation, initialPath, key, call))).orElse(null);
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            // rethrow what the plugin threw
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the key of the call
+     * @throws CustomWebApplicationException if the descriptor is too large
+     * @throws LanguagePluginTimeoutException if the same call did not finish in time recently
+     */
+    private String checkCall(String operation, String initialPath, String contents,
+        Map<String, Pair<String, MinimalLanguageInterface.GenericFileType>> indexedFiles) {
+        long inputChars = (contents == null ? 0 : contents.length()) + indexedFiles.values().stream()
+            .mapToLong(file -> file.getLeft() == null ? 0 : file.getLeft().length()).sum();
+        if (inputChars > MAX_PLUGIN_INPUT_CHARS) {
+            throw new CustomWebApplicationException("The descriptors of " + initialPath + " are too large to be processed",
+                HttpStatus.SC_BAD_REQUEST);
+        }
+        String key = hashKey(operation, initialPath, contents, indexedFiles);
+        String failure = FAILED_CALLS.getIfPresent(key);
+        if (failure != null) {
+            throw new LanguagePluginTimeoutException(failure, HttpStatus.SC_BAD_REQUEST);
+        }
+        return key;
+    }
+
+    /**
+     * Runs a plugin call on a plugin thread. Its deadline starts once it gets a thread, a call that cannot get one in time
+     * is not remembered as failed since the threads were held by other calls.
+     *
+     * @throws LanguagePluginTimeoutException if the call could not be started in time, or did not finish in time
+     */
+    private <T> T runWithDeadline(String operation, String initialPath, String key, Callable<T> call) {
+        String callName = minimalLanguageInterface.getClass().getName() + " " + operation + " of " + initialPath;
+        if (ABANDONED_CALLS.get() >= PLUGIN_THREADS) {
+            LOG.error("All " + PLUGIN_THREADS + " language plugin threads are held by calls that ran past their deadline, " + callName
+                + " cannot run");
+            throw new LanguagePluginTimeoutException(BUSY_MESSAGE, HttpStatus.SC_SERVICE_UNAVAILABLE);
+        }
+        PluginCall<T> pluginCall = new PluginCall<>(call);
+        Future<T> future;
+        try {
+            future = PLUGIN_EXECUTOR.submit(pluginCall);
+        } catch (RejectedExecutionException e) {
+            throw new LanguagePluginTimeoutException(BUSY_MESSAGE, HttpStatus.SC_SERVICE_UNAVAILABLE);
+        }
+        try {
+            if (!pluginCall.awaitStart(startTimeoutMillis)) {
+                future.cancel(false);
+                LOG.warn(callName + " did not get a plugin thread in " + startTimeoutMillis + " ms, " + ABANDONED_CALLS.get() + " of the "
+                    + PLUGIN_THREADS + " threads are held by calls that ran past their deadline");
+                throw new LanguagePluginTimeoutException(BUSY_MESSAGE, HttpStatus.SC_SERVICE_UNAVAILABLE);
+            }
+            long remainingNanos = pluginCall.startedAt + TimeUnit.MILLISECONDS.toNanos(pluginTimeoutMillis) - System.nanoTime();
+            return future.get(remainingNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            abandon(future, pluginCall, callName);
+            String failure = "Processing " + initialPath + " took longer than " + TimeUnit.MILLISECONDS.toSeconds(pluginTimeoutMillis)
+                + " seconds";
+            LOG.warn(callName + ": " + failure);
+            FAILED_CALLS.put(key, failure);
+            throw new LanguagePluginTimeoutException(failure, HttpStatus.SC_BAD_REQUEST);
+        } catch (InterruptedException e) {
+            abandon(future, pluginCall, callName);
+            Thread.currentThread().interrupt();
+            throw new LanguagePluginTimeoutException("Interrupted while processing " + initialPath, HttpStatus.SC_SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Interrupts a call that is no longer waited for, and counts it until it returns
+     */
+    private static void abandon(Future<?> future, PluginCall<?> pluginCall, String callName) {
+        if (pluginCall.abandon()) {
+            int abandonedCalls = ABANDONED_CALLS.incrementAndGet();
+            if (abandonedCalls >= PLUGIN_THREADS) {
+                LOG.error("All " + PLUGIN_THREADS + " language plugin threads are held by calls that ran past their deadline, the last was "
+                    + callName + ". No plugin call can run until one of them returns.");
+            }
+        }
+        future.cancel(true);
+    }
+
+    /**
+     * @return how many calls ran past their deadline and have not returned yet
+     */
+    static int getAbandonedCalls() {
+        return ABANDONED_CALLS.get();
+    }
+
+    private String hashKey(String operation, String initialPath, String contents,
+        Map<String, Pair<String, MinimalLanguageInterface.GenericFileType>> indexedFiles) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putField(hasher, minimalLanguageInterface.getClass().getName());
+        putField(hasher, operation);
+        putField(hasher, initialPath);
+        putField(hasher, contents);
+        List<String> paths = new ArrayList<>(indexedFiles.keySet());
+        paths.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (String path : paths) {
+            Pair<String, MinimalLanguageInterface.GenericFileType> file = indexedFiles.get(path);
+            putField(hasher, path);
+            putField(hasher, file.getRight() == null ? null : file.getRight().name());
+            putField(hasher, file.getLeft());
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Prefixes each field with its length so the boundaries between fields are unambiguous
+     */
+    private static void putField(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A plugin call that records when it gets a plugin thread, and whether its caller stopped waiting for it
+     */
+    private static final class PluginCall<T> implements Callable<T> {
+        private final Callable<T> call;
+        private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile long startedAt;
+
+        private PluginCall(Callable<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public T call() throws Exception {
+            // set before the state, so a caller that sees the call running also sees when it started
+            startedAt = System.nanoTime();
+            if (!state.compareAndSet(State.QUEUED, State.RUNNING)) {
+                // the caller stopped waiting for a thread
+                return null;
+            }
+            started.countDown();
+            try {
+                return call.call();
+            } finally {
+                if (!state.compareAndSet(State.RUNNING, State.FINISHED)) {
+                    ABANDONED_CALLS.decrementAndGet();
+                    LOG.info("A language plugin call returned " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)
+                        + " ms after it started, past its deadline");
+                }
+            }
+        }
+
+        /**
+         * @return true if the call got a plugin thread in time, false if it will not run
+         */
+        private boolean awaitStart(long timeoutMillis) throws InterruptedException {
+            return started.await(timeoutMillis, TimeUnit.MILLISECONDS) || !state.compareAndSet(State.QUEUED, State.CANCELLED);
+        }
+
+        /**
+         * @return true if the call is still running on a plugin thread, false if it has returned or will not run
+         */
+        private boolean abandon() {
+            state.compareAndSet(State.QUEUED, State.CANCELLED);
+            return state.compareAndSet(State.RUNNING, State.ABANDONED);
+        }
+
+        private enum State { QUEUED, RUNNING, FINISHED, ABANDONED, CANCELLED }
+    }
 }
@@ -0,0 +1,30 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.languages;
+
+import io.dockstore.webservice.CustomWebApplicationException;
+
+/**
+ * A language plugin call that did not finish in time, or could not get a plugin thread in time.
+ * It says nothing about whether the descriptors are valid, so it is not recorded as a validation of the version.
+ * @since 1.9.0
+ */
+public class LanguagePluginTimeoutException extends CustomWebApplicationException {
+
+    public LanguagePluginTimeoutException(String message, int status) {
+        super(message, status);
+    }
+}
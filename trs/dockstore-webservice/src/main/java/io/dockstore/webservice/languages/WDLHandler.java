@@ -17,28 +17,35 @@ package io.dockstore.webservice.languages;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Strings;
-import com.google.common.io.Files;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.common.HttpImportCache;
 import io.dockstore.common.LanguageHandlerHelper;
+import io.dockstore.common.ParsedWdl;
 import io.dockstore.common.VersionTypeValidation;
 import io.dockstore.common.WdlBridge;
 import io.dockstore.webservice.CustomWebApplicationException;
@@ -49,8 +56,6 @@ import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.helpers.SourceCodeRepoInterface;
 import io.dockstore.webservice.jdbi.ToolDAO;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
@@ -63,6 +68,25 @@ public class WDLHandler implements LanguageHandlerInterface {
     public static final Logger LOG = LoggerFactory.getLogger(WDLHandler.class);
     public static final String ERROR_PARSING_WORKFLOW_YOU_MAY_HAVE_A_RECURSIVE_IMPORT = "Error parsing workflow. You may have a recursive import.";
     private static final Pattern IMPORT_PATTERN = Pattern.compile("^import\\s+\"(\\S+)\"");
+    /**
+     * Parsed documents are weighted by an estimate of the bytes their parse takes
+     */
+    private static final long MAXIMUM_PARSED_BYTES = 64L * 1024 * 1024;
+    /**
+     * A rough ratio of the bytes a parse takes to the characters of the document and its imports, the syntax tree and WOM graph
+     * are much larger than the text they come from
+     */
+    private static final int PARSED_BYTES_PER_CHAR = 32;
+    private static final long PARSED_DOCUMENT_EXPIRY_MINUTES = 10;
+    /**
+     * Documents parsed recently, so that a refresh validates a version, extracts its metadata and builds its DAG from one parse.
+     * Entries expire quickly since http imports can change.
+     */
+    private static final Cache<String, WeighedParse> PARSED_DOCUMENTS = CacheBuilder.newBuilder()
+        .maximumWeight(MAXIMUM_PARSED_BYTES)
+        .weigher((String key, WeighedParse parse) -> parse.bytes)
+        .expireAfterWrite(PARSED_DOCUMENT_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
 
     public static void checkForRecursiveLocalImports(String content, Set<SourceFile> sourceFiles, Set<String> absolutePaths, String parent)
             throws ParseException {
@@ -108,66 +132,55 @@ public class WDLHandler implements LanguageHandlerInterface {
             version.addOrUpdateValidation(new Validation(DescriptorLanguage.FileType.DOCKSTORE_WDL, false, validationMessageObject));
             return version;
         }
-        WdlBridge wdlBridge = new WdlBridge();
         final Map<String, String> secondaryFiles = sourceFiles.stream()
                 .collect(Collectors.toMap(SourceFile::getAbsolutePath, SourceFile::getContent));
-        wdlBridge.setSecondaryFiles((HashMap<String, String>)secondaryFiles);
-        File tempMainDescriptor = null;
         try {
-            tempMainDescriptor = File.createTempFile("main", "descriptor", Files.createTempDir());
-            Files.asCharSink(tempMainDescriptor, StandardCharsets.UTF_8).write(content);
-            try {
-                List<Map<String, String>> metadata = wdlBridge.getMetadata(tempMainDescriptor.getAbsolutePath(), filepath);
-                Set<String> authors = new HashSet<>();
-                Set<String> emails = new HashSet<>();
-                final String[] mainDescription = { null };
-
-                metadata.forEach(metaBlock -> {
-                    String author = metaBlock.get("author");
-                    String[] callAuthors = author != null ? author.split(",") : null;
-                    if (callAuthors != null) {
-                        for (String callAuthor : callAuthors) {
-                            authors.add(callAuthor.trim());
-                        }
-                    }
-
-                    String email = metaBlock.get("email");
-                    String[] callEmails = email != null ? email.split(",") : null;
-                    if (callEmails != null) {
-                        for (String callEmail : callEmails) {
-                            emails.add(callEmail.trim());
-                        }
+            List<Map<String, String>> metadata = parse(content, filepath, secondaryFiles).getMetadata();
+            Set<String> authors = new HashSet<>();
+            Set<String> emails = new HashSet<>();
+            final String[] mainDescription = { null };
+
+            metadata.forEach(metaBlock -> {
+                String author = metaBlock.get("author");
+                String[] callAuthors = author != null ? author.split(",") : null;
+                if (callAuthors != null) {
+                    for (String callAuthor : callAuthors) {
+                        authors.add(callAuthor.trim());
                     }
+                }
 
-                    String description = metaBlock.get("description");
-                    if (description != null && !description.isBlank()) {
-                        mainDescription[0] = description;
+                String email = metaBlock.get("email");
+                String[] callEmails = email != null ? email.split(",") : null;
+                if (callEmails != null) {
+                    for (String callEmail : callEmails) {
+                        emails.add(callEmail.trim());
                     }
-                });
-
-                if (!authors.isEmpty()) {
-                    version.setAuthor(String.join(", ", authors));
                 }
-                if (!emails.isEmpty()) {
-                    version.setEmail(String.join(", ", emails));
-                }
-                if (!Strings.isNullOrEmpty(mainDescription[0])) {
-                    version.setDescriptionAndDescriptionSource(mainDescription[0], DescriptionSource.DESCRIPTOR);
+
+                String description = metaBlock.get("description");
+                if (description != null && !description.isBlank()) {
+                    mainDescription[0] = description;
                 }
-            } catch (wdl.draft3.parser.WdlParser.SyntaxError ex) {
-                LOG.error("Unable to parse WDL file " + filepath, ex);
-                Map<String, String> validationMessageObject = new HashMap<>();
-                validationMessageObject.put(filepath, "WDL file is malformed or missing, cannot extract metadata");
-                version.addOrUpdateValidation(new Validation(DescriptorLanguage.FileType.DOCKSTORE_WDL, false, validationMessageObject));
-                version.setAuthor(null);
-                version.setDescriptionAndDescriptionSource(null, null);
-                version.setEmail(null);
-                return version;
+            });
+
+            if (!authors.isEmpty()) {
+                version.setAuthor(String.join(", ", authors));
+            }
+            if (!emails.isEmpty()) {
+                version.setEmail(String.join(", ", emails));
             }
-        } catch (IOException e) {
-            throw new CustomWebApplicationException(e.getMessage(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
-        } finally {
-            FileUtils.deleteQuietly(tempMainDescriptor);
+            if (!Strings.isNullOrEmpty(mainDescription[0])) {
+                version.setDescriptionAndDescriptionSource(mainDescription[0], DescriptionSource.DESCRIPTOR);
+            }
+        } catch (wdl.draft3.parser.WdlParser.SyntaxError ex) {
+            LOG.error("Unable to parse WDL file " + filepath, ex);
+            Map<String, String> validationMessageObject = new HashMap<>();
+            validationMessageObject.put(filepath, "WDL file is malformed or missing, cannot extract metadata");
+            version.addOrUpdateValidation(new Validation(DescriptorLanguage.FileType.DOCKSTORE_WDL, false, validationMessageObject));
+            version.setAuthor(null);
+            version.setDescriptionAndDescriptionSource(null, null);
+            version.setEmail(null);
+            return version;
         }
         return version;
     }
@@ -180,7 +193,6 @@ public class WDLHandler implements LanguageHandlerInterface {
      * @return
      */
     public VersionTypeValidation validateEntrySet(Set<SourceFile> sourcefiles, String primaryDescriptorFilePath, String type) {
-        File tempMainDescriptor = null;
         String mainDescriptor = null;
 
         List<DescriptorLanguage.FileType> fileTypes = new ArrayList<>(Collections.singletonList(DescriptorLanguage.FileType.DOCKSTORE_WDL));
@@ -220,18 +232,12 @@ public class WDLHandler implements LanguageHandlerInterface {
                         secondaryDescContent.put(sourceFile.getAbsolutePath(), sourceFile.getContent());
                     }
                 }
-                tempMainDescriptor = File.createTempFile("main", "descriptor", Files.createTempDir());
-                Files.asCharSink(tempMainDescriptor, StandardCharsets.UTF_8).write(mainDescriptor);
-                String content = FileUtils.readFileToString(tempMainDescriptor, StandardCharsets.UTF_8);
-                checkForRecursiveHTTPImports(content, new HashSet<>());
-
-                WdlBridge wdlBridge = new WdlBridge();
-                wdlBridge.setSecondaryFiles((HashMap<String, String>)secondaryDescContent);
+                checkForRecursiveHTTPImports(mainDescriptor, new HashSet<>());
 
                 if (Objects.equals(type, "tool")) {
-                    wdlBridge.validateTool(tempMainDescriptor.getAbsolutePath(), primaryDescriptorFilePath);
+                    parse(mainDescriptor, primaryDescriptorFilePath, secondaryDescContent).validateTool();
                 } else {
-                    wdlBridge.validateWorkflow(tempMainDescriptor.getAbsolutePath(), primaryDescriptor.get().getAbsolutePath());
+                    parse(mainDescriptor, primaryDescriptor.get().getAbsolutePath(), secondaryDescContent).validateWorkflow();
                 }
             } catch (wdl.draft3.parser.WdlParser.SyntaxError | IllegalArgumentException e) {
                 validationMessageObject.put(primaryDescriptorFilePath, e.getMessage());
@@ -241,8 +247,6 @@ public class WDLHandler implements LanguageHandlerInterface {
             } catch (Exception e) {
                 LOG.error("Unhandled exception", e);
                 throw new CustomWebApplicationException(e.getMessage(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
-            } finally {
-                FileUtils.deleteQuietly(tempMainDescriptor);
             }
         } else {
             validationMessageObject.put(primaryDescriptorFilePath, "Primary WDL descriptor is not present.");
@@ -271,16 +275,16 @@ public class WDLHandler implements LanguageHandlerInterface {
                         throw new CustomWebApplicationException(ERROR_PARSING_WORKFLOW_YOU_MAY_HAVE_A_RECURSIVE_IMPORT,
                                 HttpStatus.SC_BAD_REQUEST);
                     } else {
-                        URL url = new URL(match);
-                        try (InputStream is = url.openStream();
-                            BoundedInputStream boundedInputStream = new BoundedInputStream(is, FileUtils.ONE_MB)) {
-                            String fileContents = IOUtils.toString(boundedInputStream, StandardCharsets.UTF_8);
-                            // need a depth-first search to avoid triggering warning on workflows
-                            // where two files legitimately import the same file
-                            Set<String> importsForThisPath = new HashSet<>(currentFileImports);
-                            importsForThisPath.add(match);
-                            checkForRecursiveHTTPImports(fileContents, importsForThisPath);
-                        }
+                        // shared with the parse of the workflow, which resolves the same imports. The parse reads all of a document,
+                        // this check only looks at its first megabyte
+                        byte[] document = HttpImportCache.read(match).getBytes(StandardCharsets.UTF_8);
+                        String fileContents = new String(document, 0, (int)Math.min(document.length, FileUtils.ONE_MB),
+                            StandardCharsets.UTF_8);
+                        // need a depth-first search to avoid triggering warning on workflows
+                        // where two files legitimately import the same file
+                        Set<String> importsForThisPath = new HashSet<>(currentFileImports);
+                        importsForThisPath.add(match);
+                        checkForRecursiveHTTPImports(fileContents, importsForThisPath);
                     }
                 }
             }
@@ -305,16 +309,55 @@ public class WDLHandler implements LanguageHandlerInterface {
     @Override
     public Map<String, SourceFile> processImports(String repositoryId, String content, Version version,
             SourceCodeRepoInterface sourceCodeRepoInterface, String filepath) {
-        return processImports(repositoryId, content, version, sourceCodeRepoInterface, new HashMap<>(), filepath);
+        Map<String, SourceFile> imports = new HashMap<>();
+        // the file itself is never read again as an import of its imports
+        Set<String> importPaths = new HashSet<>(Collections.singleton(filepath));
+        // the imports of all the files of a level are read together, so that reading a chain of imports takes a round trip
+        // per level rather than per file
+        Map<String, String> level = Collections.singletonMap(filepath, content);
+        while (!level.isEmpty()) {
+            Map<String, String> levelImports = new LinkedHashMap<>();
+            level.forEach((currentFilePath, currentContent) -> {
+                for (String importPath : getLocalImports(currentContent)) {
+                    levelImports.putIfAbsent(convertRelativePathToAbsolutePath(currentFilePath, importPath), importPath);
+                }
+            });
+            levelImports.keySet().removeAll(importPaths);
+            if (levelImports.isEmpty()) {
+                break;
+            }
+            importPaths.addAll(levelImports.keySet());
+
+            final Map<String, String> fileResponses = sourceCodeRepoInterface
+                    .readGitRepositoryFiles(repositoryId, DescriptorLanguage.FileType.DOCKSTORE_WDL, version, levelImports.keySet());
+            level = new LinkedHashMap<>();
+            for (Map.Entry<String, String> levelImport : levelImports.entrySet()) {
+                String absoluteImportPath = levelImport.getKey();
+                final String fileResponse = fileResponses.get(absoluteImportPath);
+                if (fileResponse == null) {
+                    SourceCodeRepoInterface.LOG.error("Could not read: " + absoluteImportPath);
+                    continue;
+                }
+                SourceFile importFile = new SourceFile();
+                importFile.setContent(fileResponse);
+                importFile.setPath(levelImport.getValue());
+                importFile.setType(DescriptorLanguage.FileType.DOCKSTORE_WDL);
+                importFile.setAbsolutePath(absoluteImportPath);
+                imports.put(absoluteImportPath, importFile);
+                level.put(absoluteImportPath, fileResponse);
+            }
+        }
+        return imports;
     }
 
-    private Map<String, SourceFile> processImports(String repositoryId, String content, Version version,
-            SourceCodeRepoInterface sourceCodeRepoInterface, Map<String, SourceFile> imports, String currentFilePath) {
-        DescriptorLanguage.FileType fileType = DescriptorLanguage.FileType.DOCKSTORE_WDL;
-
+    /**
+     * @param content content of a WDL file
+     * @return the paths of the files imported by the file, imports over http are not included
+     */
+    private static Set<String> getLocalImports(String content) {
         // Use matcher to get imports
         String[] lines = StringUtils.split(content, '\n');
-        Set<String> currentFileImports = new HashSet<>();
+        Set<String> currentFileImports = new LinkedHashSet<>();
 
         for (String line : lines) {
             Matcher m = IMPORT_PATTERN.matcher(line);
@@ -326,27 +369,64 @@ public class WDLHandler implements LanguageHandlerInterface {
                 }
             }
         }
+        return currentFileImports;
+    }
 
-        for (String importPath : currentFileImports) {
-            String absoluteImportPath = convertRelativePathToAbsolutePath(currentFilePath, importPath);
-            if (!imports.containsKey(absoluteImportPath)) {
-                SourceFile importFile = new SourceFile();
+    /**
+     * Parses a WDL document, or gets the parse of an identical document with identical imports if one was parsed recently.
+     * Imports are resolved from the secondary files or over http, nothing is written to or read from disk.
+     *
+     * @param content        content of the primary descriptor
+     * @param sourceFilePath path of the primary descriptor, relative imports are resolved from it
+     * @param secondaryFiles the content of the imported descriptors, by absolute path
+     * @return the parsed document
+     * @throws wdl.draft3.parser.WdlParser.SyntaxError if the document or its imports are invalid
+     */
+    static ParsedWdl parse(String content, String sourceFilePath, Map<String, String> secondaryFiles)
+            throws wdl.draft3.parser.WdlParser.SyntaxError {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putField(hasher, sourceFilePath);
+        putField(hasher, content);
+        new TreeMap<>(secondaryFiles).forEach((path, fileContent) -> {
+            putField(hasher, path);
+            putField(hasher, fileContent);
+        });
+        String key = hasher.hash().toString();
+        WeighedParse parse = PARSED_DOCUMENTS.getIfPresent(key);
+        if (parse == null) {
+            WdlBridge wdlBridge = new WdlBridge();
+            wdlBridge.setSecondaryFiles(new HashMap<>(secondaryFiles));
+            parse = new WeighedParse(wdlBridge.parse(content, sourceFilePath), estimateBytes(content, secondaryFiles));
+            PARSED_DOCUMENTS.put(key, parse);
+        }
+        return parse.parsedWdl;
+    }
 
-                final String fileResponse = sourceCodeRepoInterface.readGitRepositoryFile(repositoryId, fileType, version, absoluteImportPath);
-                if (fileResponse == null) {
-                    SourceCodeRepoInterface.LOG.error("Could not read: " + absoluteImportPath);
-                    continue;
-                }
-                importFile.setContent(fileResponse);
-                importFile.setPath(importPath);
-                importFile.setType(DescriptorLanguage.FileType.DOCKSTORE_WDL);
-                importFile.setAbsolutePath(absoluteImportPath);
-                imports.put(absoluteImportPath, importFile);
-                imports.putAll(processImports(repositoryId, importFile.getContent(), version, sourceCodeRepoInterface, imports, absoluteImportPath));
-            }
+    /**
+     * Estimates the bytes the parse of a document takes from the size of the document and of the files it may import.
+     * Imports over http are not counted, they are cached on their own.
+     *
+     * @param content        content of the primary descriptor
+     * @param secondaryFiles the content of the imported descriptors, by absolute path
+     * @return the estimate, at most Integer.MAX_VALUE
+     */
+    static int estimateBytes(String content, Map<String, String> secondaryFiles) {
+        long chars = StringUtils.length(content);
+        for (Map.Entry<String, String> secondaryFile : secondaryFiles.entrySet()) {
+            chars += StringUtils.length(secondaryFile.getKey()) + StringUtils.length(secondaryFile.getValue());
+        }
+        return (int)Math.min(chars * PARSED_BYTES_PER_CHAR, Integer.MAX_VALUE);
+    }
 
+    /**
+     * Prefixes each field with its length so the boundaries between fields are unambiguous
+     */
+    private static void putField(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
         }
-        return imports;
     }
 
     /**
@@ -369,30 +449,21 @@ public class WDLHandler implements LanguageHandlerInterface {
         // Initialize data structures for DAG
         Map<String, ToolInfo> toolInfoMap;
         Map<String, String> namespaceToPath;
-        File tempMainDescriptor = null;
-        // Write main descriptor to file
-        // The use of temporary files is not needed here and might cause new problems
         try {
-            tempMainDescriptor = File.createTempFile("main", "descriptor", Files.createTempDir());
-            Files.asCharSink(tempMainDescriptor, StandardCharsets.UTF_8).write(mainDescriptor);
-
-            WdlBridge wdlBridge = new WdlBridge();
             final Map<String, String> pathToContentMap = secondarySourceFiles.stream()
                     .collect(Collectors.toMap(SourceFile::getAbsolutePath, SourceFile::getContent));
-            wdlBridge.setSecondaryFiles(new HashMap<>(pathToContentMap));
+            ParsedWdl parsedWdl = parse(mainDescriptor, mainDescName, pathToContentMap);
 
             // Iterate over each call, grab docker containers
-            Map<String, String> callsToDockerMap = wdlBridge.getCallsToDockerMap(tempMainDescriptor.getAbsolutePath(), mainDescName);
+            Map<String, String> callsToDockerMap = parsedWdl.getCallsToDockerMap();
 
             // Iterate over each call, determine dependencies
-            Map<String, List<String>> callsToDependencies = wdlBridge.getCallsToDependencies(tempMainDescriptor.getAbsolutePath(), mainDescName);
+            Map<String, List<String>> callsToDependencies = parsedWdl.getCallsToDependencies();
             toolInfoMap = mapConverterToToolInfo(callsToDockerMap, callsToDependencies);
             // Get import files
-            namespaceToPath = wdlBridge.getImportMap(tempMainDescriptor.getAbsolutePath(), mainDescName);
-        } catch (IOException | NoSuchElementException | wdl.draft3.parser.WdlParser.SyntaxError e) {
+            namespaceToPath = parsedWdl.getImportMap();
+        } catch (NoSuchElementException | wdl.draft3.parser.WdlParser.SyntaxError e) {
             throw new CustomWebApplicationException("could not process wdl into DAG: " + e.getMessage(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
-        } finally {
-            FileUtils.deleteQuietly(tempMainDescriptor);
         }
         return convertMapsToContent(mainDescName, type, dao, callType, toolType, toolInfoMap, namespaceToPath);
     }
@@ -424,4 +495,17 @@ public class WDLHandler implements LanguageHandlerInterface {
         }));
         return toolInfoMap;
     }
+
+    /**
+     * A parsed document with the estimate of the bytes it takes
+     */
+    private static final class WeighedParse {
+        private final ParsedWdl parsedWdl;
+        private final int bytes;
+
+        private WeighedParse(ParsedWdl parsedWdl, int bytes) {
+            this.parsedWdl = parsedWdl;
+            this.bytes = bytes;
+        }
+    }
 }
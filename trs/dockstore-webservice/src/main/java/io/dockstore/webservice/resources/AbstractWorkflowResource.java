@@ -12,6 +12,7 @@ import java.util.stream.Collectors;
 import com.google.common.collect.Sets;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.BioWorkflow;
 import io.dockstore.webservice.core.SourceFile;
 import io.dockstore.webservice.core.Token;
 import io.dockstore.webservice.core.TokenType;
@@ -21,6 +22,7 @@ import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowMode;
 import io.dockstore.webservice.core.WorkflowVersion;
 import io.dockstore.webservice.helpers.CacheConfigManager;
+import io.dockstore.webservice.helpers.DescriptorContentCache;
 import io.dockstore.webservice.helpers.GitHubHelper;
 import io.dockstore.webservice.helpers.GitHubSourceCodeRepo;
 import io.dockstore.webservice.helpers.SourceCodeRepoFactory;
@@ -63,12 +65,14 @@ public abstract class AbstractWorkflowResource<T extends Workflow> implements So
     protected final String gitHubPrivateKeyFile;
     protected final String gitHubAppId;
     protected final SessionFactory sessionFactory;
+    protected final DescriptorContentCache descriptorContentCache;
 
     private final String bitbucketClientSecret;
     private final String bitbucketClientID;
     private final Class<T> entityClass;
 
-    public AbstractWorkflowResource(HttpClient client, SessionFactory sessionFactory, DockstoreWebserviceConfiguration configuration, Class<T> clazz) {
+    public AbstractWorkflowResource(HttpClient client, SessionFactory sessionFactory, DockstoreWebserviceConfiguration configuration,
+        DescriptorContentCache descriptorContentCache, Class<T> clazz) {
         this.client = client;
         this.sessionFactory = sessionFactory;
 
@@ -78,6 +82,7 @@ public abstract class AbstractWorkflowResource<T extends Workflow> implements So
         this.fileDAO = new FileDAO(sessionFactory);
         this.workflowVersionDAO = new WorkflowVersionDAO(sessionFactory);
         this.eventDAO = new EventDAO(sessionFactory);
+        this.descriptorContentCache = descriptorContentCache;
         this.bitbucketClientID = configuration.getBitbucketClientID();
         this.bitbucketClientSecret = configuration.getBitbucketClientSecret();
         gitHubPrivateKeyFile = configuration.getGitHubAppPrivateKeyFile();
@@ -190,6 +195,17 @@ public abstract class AbstractWorkflowResource<T extends Workflow> implements So
      * @param newWorkflow workflow to grab new content from
      */
     protected void updateDBWorkflowWithSourceControlWorkflow(Workflow workflow, Workflow newWorkflow, final User user) {
+        updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow, user, () -> { });
+    }
+
+    /**
+     * Updates the existing workflow in the database with new information from newWorkflow, committing as it goes
+     * @param workflow    workflow to be updated
+     * @param newWorkflow workflow to grab new content from
+     * @param checkpoint  commits what has been written so far, called after each version that changed
+     */
+    protected void updateDBWorkflowWithSourceControlWorkflow(Workflow workflow, Workflow newWorkflow, final User user,
+        Runnable checkpoint) {
         // update root workflow
         workflow.update(newWorkflow);
         // update workflow versions
@@ -206,10 +222,10 @@ public abstract class AbstractWorkflowResource<T extends Workflow> implements So
 
         // Then copy over content that changed
         for (WorkflowVersion version : newWorkflow.getWorkflowVersions()) {
-            // skip frozen versions
+            // skip frozen versions, and versions whose ref has not moved since the last refresh
             WorkflowVersion workflowVersionFromDB = existingVersionMap.get(version.getName());
             if (existingVersionMap.containsKey(version.getName())) {
-                if (workflowVersionFromDB.isFrozen()) {
+                if (workflowVersionFromDB.isFrozen() || version.isUnchanged()) {
                     continue;
                 }
                 workflowVersionFromDB.update(version);
@@ -253,6 +269,12 @@ public abstract class AbstractWorkflowResource<T extends Workflow> implements So
             for (Validation versionValidation : version.getValidations()) {
                 workflowVersionFromDB.addOrUpdateValidation(versionValidation);
             }
+
+            // build the DAG and tools table now rather than on the first view of the version
+            if (workflow instanceof BioWorkflow) {
+                descriptorContentCache.storeVersionContents(workflow.getFileType(), workflowVersionFromDB);
+            }
+            checkpoint.run();
         }
     }
 
@@ -153,7 +153,15 @@ public class DockerRepoResource
         this.toolDAO = new ToolDAO(sessionFactory);
     }
 
-    List<Tool> refreshToolsForUser(Long userId, String organization) {
+    /**
+     * Refreshes the tools of a user in every image registry
+     *
+     * @param userId       the user
+     * @param organization if not null, only refresh the tools of this organization
+     * @param checkpoint   commits what has been written so far, called after each tool
+     * @return the tools that were refreshed
+     */
+    List<Tool> refreshToolsForUser(Long userId, String organization, Runnable checkpoint) {
         List<Token> tokens = tokenDAO.findBitbucketByUserId(userId);
         if (!tokens.isEmpty()) {
             Token bitbucketToken = tokens.get(0);
@@ -182,7 +190,7 @@ public class DockerRepoResource
 
             updatedTools.addAll(abstractImageRegistry
                 .refreshTools(userId, userDAO, toolDAO, tagDAO, fileDAO, fileFormatDAO, client, githubToken, bitbucketToken, gitlabToken,
-                    organization, eventDAO));
+                    organization, eventDAO, checkpoint));
         }
         return updatedTools;
     }
@@ -207,10 +215,24 @@ public class DockerRepoResource
     @Path("/{containerId}/refresh")
     @Timed
     @UnitOfWork
-    @ApiOperation(value = "Refresh one particular tool.", authorizations = {
+    @ApiOperation(value = "Refresh one particular tool.", notes = "Deprecated, refresh in the background with the refreshJobs endpoints instead.", authorizations = {
         @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = Tool.class)
+    @Deprecated(since = "1.9.0")
     public Tool refresh(@ApiParam(hidden = true) @Auth User user,
         @ApiParam(value = "Tool ID", required = true) @PathParam("containerId") Long containerId) {
+        return refreshTool(user, containerId, () -> { });
+    }
+
+    /**
+     * Refreshes a tool, and its checker workflow
+     *
+     * @param user        the user that asked for the refresh
+     * @param containerId the tool
+     * @param checkpoint  commits what has been written so far, called before reading from the registry and source control,
+     *                    and once the tool is updated
+     * @return the refreshed tool
+     */
+    public Tool refreshTool(User user, long containerId, Runnable checkpoint) {
         Tool tool = toolDAO.findById(containerId);
         checkEntry(tool);
         checkUser(user, tool);
@@ -226,11 +248,14 @@ public class DockerRepoResource
             refreshBitbucketToken(bitbucketToken, client, tokenDAO, bitbucketClientID, bitbucketClientSecret);
         }
 
+        checkpoint.run();
+
         Tool refreshedTool = refreshContainer(containerId, user.getId());
+        checkpoint.run();
 
         // Refresh checker workflow
         if (refreshedTool.getCheckerWorkflow() != null) {
-            workflowResource.refresh(user, refreshedTool.getCheckerWorkflow().getId());
+            workflowResource.refreshWorkflow(user, refreshedTool.getCheckerWorkflow().getId(), checkpoint);
         }
         refreshedTool.getWorkflowVersions().forEach(Version::updateVerified);
         PublicStateManager.getInstance().handleIndexUpdate(refreshedTool, StateManagerMode.UPDATE);
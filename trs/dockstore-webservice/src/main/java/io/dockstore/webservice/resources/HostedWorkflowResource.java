@@ -45,6 +45,7 @@ import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowMode;
 import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.helpers.DescriptorContentCache;
 import io.dockstore.webservice.helpers.ZipSourceFileHelper;
 import io.dockstore.webservice.jdbi.WorkflowDAO;
 import io.dockstore.webservice.jdbi.WorkflowVersionDAO;
@@ -78,13 +79,16 @@ public class HostedWorkflowResource extends AbstractHostedEntryResource<Workflow
     private final WorkflowDAO workflowDAO;
     private final WorkflowVersionDAO workflowVersionDAO;
     private final PermissionsInterface permissionsInterface;
+    private final DescriptorContentCache descriptorContentCache;
     private Map<String, String> descriptorTypeToDefaultDescriptorPath;
 
-    public HostedWorkflowResource(SessionFactory sessionFactory, PermissionsInterface permissionsInterface, DockstoreWebserviceConfiguration.LimitConfig limitConfig) {
+    public HostedWorkflowResource(SessionFactory sessionFactory, PermissionsInterface permissionsInterface, DockstoreWebserviceConfiguration.LimitConfig limitConfig,
+        DescriptorContentCache descriptorContentCache) {
         super(sessionFactory, permissionsInterface, limitConfig);
         this.workflowVersionDAO = new WorkflowVersionDAO(sessionFactory);
         this.workflowDAO = new WorkflowDAO(sessionFactory);
         this.permissionsInterface = permissionsInterface;
+        this.descriptorContentCache = descriptorContentCache;
         this.descriptorTypeToDefaultDescriptorPath = new HashMap<>();
         String defaultCWLPath = "/Dockstore.cwl";
         this.descriptorTypeToDefaultDescriptorPath.put("cwl", defaultCWLPath);
@@ -193,6 +197,16 @@ public class HostedWorkflowResource extends AbstractHostedEntryResource<Workflow
         return this.saveVersion(user, entryId, workflow, version, new HashSet<>(sourceFiles.getAllDescriptors()), Optional.of(sourceFiles.getPrimaryDescriptor()));
     }
 
+    @Override
+    Workflow saveVersion(User user, Long entryId, Workflow entry, WorkflowVersion version, Set<SourceFile> versionSourceFiles,
+        Optional<SourceFile> mainDescriptor) {
+        Workflow workflow = super.saveVersion(user, entryId, entry, version, versionSourceFiles, mainDescriptor);
+        // build the DAG and tools table of the new version now rather than on its first view
+        workflow.getWorkflowVersions().stream().filter(savedVersion -> Objects.equals(savedVersion.getName(), version.getName())).findFirst()
+            .ifPresent(savedVersion -> descriptorContentCache.storeVersionContents(workflow.getFileType(), savedVersion));
+        return workflow;
+    }
+
     @Override
     protected void populateMetadata(Set<SourceFile> sourceFiles, Workflow workflow, WorkflowVersion version) {
         LanguageHandlerInterface anInterface = LanguageHandlerFactory.getInterface(workflow.getFileType());
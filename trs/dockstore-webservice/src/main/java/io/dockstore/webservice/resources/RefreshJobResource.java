@@ -0,0 +1,165 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.resources;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import com.codahale.metrics.annotation.Timed;
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.RefreshJob;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.helpers.RefreshJobService;
+import io.dockstore.webservice.jdbi.RefreshJobDAO;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import io.dockstore.webservice.jdbi.WorkflowDAO;
+import io.dropwizard.auth.Auth;
+import io.dropwizard.hibernate.UnitOfWork;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.Authorization;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import org.apache.http.HttpStatus;
+import org.hibernate.SessionFactory;
+
+import static io.dockstore.webservice.Constants.JWT_SECURITY_DEFINITION_NAME;
+
+/**
+ * Refreshes that run in the background. Submitting a refresh returns a job right away, poll the job to know when the refresh is done.
+ * A refresh of something that already has a refresh waiting to run returns the job that is waiting.
+ * @since 1.9.0
+ */
+@Path("/refreshJobs")
+@Api("refreshJobs")
+@Produces(MediaType.APPLICATION_JSON)
+@io.swagger.v3.oas.annotations.tags.Tag(name = "refreshJobs", description = ResourceConstants.REFRESHJOBS)
+public class RefreshJobResource implements AuthenticatedResourceInterface {
+    private static final String SUBMIT_NOTES = "Returns right away with the job of the refresh, which runs in the background.";
+
+    private final RefreshJobDAO refreshJobDAO;
+    private final WorkflowDAO workflowDAO;
+    private final ToolDAO toolDAO;
+    private final RefreshJobService refreshJobService;
+
+    public RefreshJobResource(SessionFactory sessionFactory, RefreshJobService refreshJobService) {
+        this.refreshJobDAO = new RefreshJobDAO(sessionFactory);
+        this.workflowDAO = new WorkflowDAO(sessionFactory);
+        this.toolDAO = new ToolDAO(sessionFactory);
+        this.refreshJobService = refreshJobService;
+    }
+
+    @POST
+    @Timed
+    @UnitOfWork
+    @Path("/workflows/{workflowId}")
+    @Operation(summary = "Refresh one particular workflow in the background.", description = SUBMIT_NOTES,
+        security = @SecurityRequirement(name = "bearer"))
+    @ApiOperation(value = "Refresh one particular workflow in the background.", notes = SUBMIT_NOTES, authorizations = {
+        @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = RefreshJob.class)
+    public RefreshJob refreshWorkflow(@Parameter(hidden = true) @ApiParam(hidden = true) @Auth User user,
+        @ApiParam(value = "workflow ID", required = true) @PathParam("workflowId") Long workflowId) {
+        Workflow workflow = workflowDAO.findById(workflowId);
+        checkEntry(workflow);
+        checkUser(user, workflow);
+        return withQueuePosition(refreshJobService.submit(user, RefreshJob.Type.WORKFLOW, workflowId));
+    }
+
+    @POST
+    @Timed
+    @UnitOfWork
+    @Path("/containers/{containerId}")
+    @Operation(summary = "Refresh one particular tool in the background.", description = SUBMIT_NOTES,
+        security = @SecurityRequirement(name = "bearer"))
+    @ApiOperation(value = "Refresh one particular tool in the background.", notes = SUBMIT_NOTES, authorizations = {
+        @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = RefreshJob.class)
+    public RefreshJob refreshTool(@Parameter(hidden = true) @ApiParam(hidden = true) @Auth User user,
+        @ApiParam(value = "Tool ID", required = true) @PathParam("containerId") Long containerId) {
+        Tool tool = toolDAO.findById(containerId);
+        checkEntry(tool);
+        checkUser(user, tool);
+        return withQueuePosition(refreshJobService.submit(user, RefreshJob.Type.TOOL, containerId));
+    }
+
+    @POST
+    @Timed
+    @UnitOfWork
+    @Path("/users/{userId}/workflows")
+    @Operation(summary = "Refresh all workflows owned by the user in the background.", description = SUBMIT_NOTES,
+        security = @SecurityRequirement(name = "bearer"))
+    @ApiOperation(value = "Refresh all workflows owned by the user in the background.", notes = SUBMIT_NOTES, authorizations = {
+        @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = RefreshJob.class)
+    public RefreshJob refreshUserWorkflows(@Parameter(hidden = true) @ApiParam(hidden = true) @Auth User user,
+        @ApiParam(value = "User ID", required = true) @PathParam("userId") Long userId) {
+        checkUser(user, userId);
+        return withQueuePosition(refreshJobService.submit(user, RefreshJob.Type.USER_WORKFLOWS, userId));
+    }
+
+    @POST
+    @Timed
+    @UnitOfWork
+    @Path("/users/{userId}/containers")
+    @Operation(summary = "Refresh all tools owned by the user in the background.", description = SUBMIT_NOTES,
+        security = @SecurityRequirement(name = "bearer"))
+    @ApiOperation(value = "Refresh all tools owned by the user in the background.", notes = SUBMIT_NOTES, authorizations = {
+        @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = RefreshJob.class)
+    public RefreshJob refreshUserTools(@Parameter(hidden = true) @ApiParam(hidden = true) @Auth User user,
+        @ApiParam(value = "User ID", required = true) @PathParam("userId") Long userId) {
+        checkUser(user, userId);
+        return withQueuePosition(refreshJobService.submit(user, RefreshJob.Type.USER_TOOLS, userId));
+    }
+
+    @GET
+    @Timed
+    @UnitOfWork(readOnly = true)
+    @Path("/{jobId}")
+    @Operation(summary = "Get the status of a refresh job.", security = @SecurityRequirement(name = "bearer"))
+    @ApiOperation(value = "Get the status of a refresh job.", authorizations = {
+        @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = RefreshJob.class)
+    public RefreshJob getRefreshJob(@Parameter(hidden = true) @ApiParam(hidden = true) @Auth User user,
+        @ApiParam(value = "Refresh job ID", required = true) @PathParam("jobId") Long jobId) {
+        RefreshJob job = refreshJobDAO.findById(jobId);
+        if (job == null) {
+            throw new CustomWebApplicationException("Refresh job not found", HttpStatus.SC_NOT_FOUND);
+        }
+        // jobs are shared by everyone who refreshes the same thing, so anyone who can refresh it can see the job
+        if (job.getType() == RefreshJob.Type.WORKFLOW || job.getType() == RefreshJob.Type.TOOL) {
+            Entry<?, ?> entry = job.getType() == RefreshJob.Type.WORKFLOW ? workflowDAO.findById(job.getTargetId())
+                : toolDAO.findById(job.getTargetId());
+            checkEntry(entry);
+            checkUser(user, entry);
+        } else {
+            checkUser(user, job.getTargetId());
+        }
+        return withQueuePosition(job);
+    }
+
+    private RefreshJob withQueuePosition(RefreshJob job) {
+        if (job.getStatus() == RefreshJob.Status.QUEUED) {
+            job.setQueuePosition(refreshJobDAO.countQueuedBefore(job.getId()));
+        }
+        return job;
+    }
+}
@@ -32,6 +32,7 @@ public final class ResourceConstants {
     public static final String TOOLTESTER = "Interactions with the Dockstore-support's ToolTester application";
     public static final String ORGANIZATIONS = "Operations on Dockstore organizations";
     public static final String CURATION = "List and modify notifications for users of Dockstore";
+    public static final String REFRESHJOBS = "Refresh entries in the background and follow the progress of the refreshes";
     public static final String NIHDATACOMMONS = "Needed for SmartAPI compatibility apparantly, might be cargo cult behaviour";
 
     private ResourceConstants() {
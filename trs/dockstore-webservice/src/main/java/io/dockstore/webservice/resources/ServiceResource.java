@@ -13,6 +13,7 @@ import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 import io.dockstore.webservice.core.Service;
 import io.dockstore.webservice.core.User;
 import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.helpers.DescriptorContentCache;
 import io.dockstore.webservice.helpers.GitHubSourceCodeRepo;
 import io.dropwizard.auth.Auth;
 import io.dropwizard.hibernate.UnitOfWork;
@@ -31,8 +32,9 @@ import static io.dockstore.webservice.core.WorkflowMode.SERVICE;
 @io.swagger.v3.oas.annotations.tags.Tag(name = "workflows", description = ResourceConstants.WORKFLOWS)
 public class ServiceResource extends AbstractWorkflowResource<Service> {
 
-    public ServiceResource(HttpClient client, SessionFactory sessionFactory, DockstoreWebserviceConfiguration configuration) {
-        super(client, sessionFactory, configuration, Service.class);
+    public ServiceResource(HttpClient client, SessionFactory sessionFactory, DockstoreWebserviceConfiguration configuration,
+        DescriptorContentCache descriptorContentCache) {
+        super(client, sessionFactory, configuration, descriptorContentCache, Service.class);
     }
 
     @Override
@@ -418,7 +418,7 @@ public class UserResource implements AuthenticatedResourceInterface {
 
         // Check if the user has tokens for the organization they're refreshing
         checkToolTokens(authUser, userId, organization);
-        dockerRepoResource.refreshToolsForUser(userId, organization);
+        dockerRepoResource.refreshToolsForUser(userId, organization, () -> { });
 
         userDAO.clearCache();
         authUser = userDAO.findById(authUser.getId());
@@ -475,16 +475,29 @@ public class UserResource implements AuthenticatedResourceInterface {
     @Timed
     @UnitOfWork
     @Path("/{userId}/containers/refresh")
-    @ApiOperation(nickname =  "refresh", value = "Refresh all tools owned by the authenticated user.", authorizations = { @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = Tool.class, responseContainer = "List")
+    @ApiOperation(nickname =  "refresh", value = "Refresh all tools owned by the authenticated user.", notes = "Deprecated, refresh in the background with the refreshJobs endpoints instead.",
+        authorizations = { @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = Tool.class, responseContainer = "List")
+    @Deprecated(since = "1.9.0")
     public List<Tool> refresh(@ApiParam(hidden = true) @Auth User authUser,
             @ApiParam(value = "User ID", required = true) @PathParam("userId") Long userId) {
+        return refreshUserTools(authUser, userId, () -> { });
+    }
 
+    /**
+     * Refreshes all the tools of a user
+     *
+     * @param authUser   the user that asked for the refresh
+     * @param userId     the user whose tools are refreshed
+     * @param checkpoint commits what has been written so far, called after each tool
+     * @return the tools of the user
+     */
+    public List<Tool> refreshUserTools(User authUser, long userId, Runnable checkpoint) {
         checkUser(authUser, userId);
 
         // Checks if the user has the tokens for their current tools
         checkToolTokens(authUser, userId, null);
 
-        dockerRepoResource.refreshToolsForUser(userId, null);
+        dockerRepoResource.refreshToolsForUser(userId, null, checkpoint);
         userDAO.clearCache();
         // TODO: Only update the ones that have changed
         authUser = userDAO.findById(authUser.getId());
@@ -508,7 +521,7 @@ public class UserResource implements AuthenticatedResourceInterface {
         checkUser(authUser, userId);
 
         // Refresh all workflows, including full workflows
-        workflowResource.refreshStubWorkflowsForUser(authUser, organization, new HashSet<>());
+        workflowResource.refreshStubWorkflowsForUser(authUser, organization, new HashSet<>(), () -> { });
         userDAO.clearCache();
         // Refresh the user
         authUser = userDAO.findById(authUser.getId());
@@ -524,14 +537,27 @@ public class UserResource implements AuthenticatedResourceInterface {
     @Timed
     @UnitOfWork
     @Path("/{userId}/workflows/refresh")
-    @ApiOperation(value = "Refresh all workflows owned by the authenticated user.", authorizations = { @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = Workflow.class, responseContainer = "List")
+    @ApiOperation(value = "Refresh all workflows owned by the authenticated user.", notes = "Deprecated, refresh in the background with the refreshJobs endpoints instead.",
+        authorizations = { @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = Workflow.class, responseContainer = "List")
+    @Deprecated(since = "1.9.0")
     public List<Workflow> refreshWorkflows(@ApiParam(hidden = true) @Auth User authUser,
             @ApiParam(value = "User ID", required = true) @PathParam("userId") Long userId) {
+        return refreshUserWorkflows(authUser, userId, () -> { });
+    }
 
+    /**
+     * Refreshes all the workflows of a user
+     *
+     * @param authUser   the user that asked for the refresh
+     * @param userId     the user whose workflows are refreshed
+     * @param checkpoint commits what has been written so far, called after each workflow and each version
+     * @return the workflows of the user
+     */
+    public List<Workflow> refreshUserWorkflows(User authUser, long userId, Runnable checkpoint) {
         checkUser(authUser, userId);
 
         // Refresh all workflows, including full workflows
-        workflowResource.refreshStubWorkflowsForUser(authUser, null, new HashSet<>());
+        workflowResource.refreshStubWorkflowsForUser(authUser, null, new HashSet<>(), checkpoint);
         // Refresh the user
         authUser = userDAO.findById(authUser.getId());
         // Update user data
@@ -75,6 +75,7 @@ import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowMode;
 import io.dockstore.webservice.core.WorkflowVersion;
 import io.dockstore.webservice.helpers.AliasHelper;
+import io.dockstore.webservice.helpers.DescriptorContentCache;
 import io.dockstore.webservice.helpers.EntryVersionHelper;
 import io.dockstore.webservice.helpers.FileFormatHelper;
 import io.dockstore.webservice.helpers.GitHubSourceCodeRepo;
@@ -92,7 +93,6 @@ import io.dockstore.webservice.jdbi.LabelDAO;
 import io.dockstore.webservice.jdbi.ServiceEntryDAO;
 import io.dockstore.webservice.jdbi.ToolDAO;
 import io.dockstore.webservice.jdbi.WorkflowDAO;
-import io.dockstore.webservice.languages.LanguageHandlerFactory;
 import io.dockstore.webservice.languages.LanguageHandlerInterface;
 import io.dockstore.webservice.permissions.Permission;
 import io.dockstore.webservice.permissions.PermissionsInterface;
@@ -166,8 +166,8 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
     private final String dockstoreGA4GHBaseUrl;
 
     public WorkflowResource(HttpClient client, SessionFactory sessionFactory, PermissionsInterface permissionsInterface,
-            EntryResource entryResource, DockstoreWebserviceConfiguration configuration) {
-        super(client, sessionFactory, configuration, Workflow.class);
+            EntryResource entryResource, DockstoreWebserviceConfiguration configuration, DescriptorContentCache descriptorContentCache) {
+        super(client, sessionFactory, configuration, descriptorContentCache, Workflow.class);
         this.toolDAO = new ToolDAO(sessionFactory);
         this.labelDAO = new LabelDAO(sessionFactory);
         this.serviceEntryDAO = new ServiceEntryDAO(sessionFactory);
@@ -247,8 +247,9 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
      * @param user             a user to refresh workflows for
      * @param organization     limit the refresh to particular organizations if given
      * @param alreadyProcessed skip particular workflows if already refreshed, previously used for debugging
+     * @param checkpoint       commits what has been written so far, called after each workflow and each version
      */
-    void refreshStubWorkflowsForUser(User user, String organization, Set<Long> alreadyProcessed) {
+    void refreshStubWorkflowsForUser(User user, String organization, Set<Long> alreadyProcessed, Runnable checkpoint) {
 
         List<Token> tokens = checkOnBitbucketToken(user);
 
@@ -271,7 +272,7 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
             try {
                 if (hasToken) {
                     // get workflows from source control for a user and updates db
-                    refreshHelper(sourceCodeRepo, user, organization, alreadyProcessed);
+                    refreshHelper(sourceCodeRepo, user, organization, alreadyProcessed, checkpoint);
                 }
                 // when 3) no data is found for a workflow in the db, we may want to create a warning, note, or label
             } catch (WebApplicationException ex) {
@@ -295,9 +296,10 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
      * @param sourceCodeRepoInterface interface to read data from source control
      * @param user                    the user that made the request to refresh
      * @param organization            if specified, only refresh if workflow belongs to the organization
+     * @param checkpoint              commits what has been written so far, called after each workflow and each version
      */
     private void refreshHelper(final SourceCodeRepoInterface sourceCodeRepoInterface, User user, String organization,
-        Set<Long> alreadyProcessed) {
+        Set<Long> alreadyProcessed, Runnable checkpoint) {
 
         // Mapping of git url to repository name (owner/repo)
         final Map<String, String> workflowGitUrl2Name = sourceCodeRepoInterface.getWorkflowGitUrl2RepositoryId();
@@ -341,8 +343,9 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
                     workflow.getUsers().add(user);
 
                     // Update the existing matching workflows based off of the new information
-                    updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow, user);
+                    updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow, user, checkpoint);
                     alreadyProcessed.add(workflow.getId());
+                    checkpoint.run();
                 }
             } else {
                 // Workflows are not registered for the given git url, add one
@@ -357,8 +360,9 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
                     workflowFromDB.getUsers().add(user);
 
                     // Update newly created template workflow (workflowFromDB) with found data from the repository
-                    updateDBWorkflowWithSourceControlWorkflow(workflowFromDB, newWorkflow, user);
+                    updateDBWorkflowWithSourceControlWorkflow(workflowFromDB, newWorkflow, user, checkpoint);
                     alreadyProcessed.add(workflowFromDB.getId());
+                    checkpoint.run();
                 }
             }
         }
@@ -368,10 +372,23 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
     @Path("/{workflowId}/refresh")
     @Timed
     @UnitOfWork
-    @ApiOperation(nickname = "refresh", value = "Refresh one particular workflow.", notes = "Full refresh", authorizations = {
+    @ApiOperation(nickname = "refresh", value = "Refresh one particular workflow.", notes = "Full refresh. Deprecated, refresh in the background with the refreshJobs endpoints instead.", authorizations = {
         @Authorization(value = JWT_SECURITY_DEFINITION_NAME) }, response = Workflow.class)
+    @Deprecated(since = "1.9.0")
     public Workflow refresh(@ApiParam(hidden = true) @Auth User user,
         @ApiParam(value = "workflow ID", required = true) @PathParam("workflowId") Long workflowId) {
+        return refreshWorkflow(user, workflowId, () -> { });
+    }
+
+    /**
+     * Does a full refresh of a workflow, and of its checker workflow
+     *
+     * @param user       the user that asked for the refresh
+     * @param workflowId the workflow
+     * @param checkpoint commits what has been written so far, called before reading from source control and after each version
+     * @return the refreshed workflow
+     */
+    public Workflow refreshWorkflow(User user, long workflowId, Runnable checkpoint) {
         Workflow workflow = workflowDAO.findById(workflowId);
         checkEntry(workflow);
         checkUser(user, workflow);
@@ -383,6 +400,7 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
 
         // Set up source code interface and ensure token is set up
         final SourceCodeRepoInterface sourceCodeRepo = getSourceCodeRepoInterface(workflow.getGitUrl(), user);
+        checkpoint.run();
 
         // do a full refresh when targeted like this
         // If this point has been reached, then the workflow will be a FULL workflow (and not a STUB)
@@ -407,12 +425,12 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
         final Workflow newWorkflow = sourceCodeRepo
             .getWorkflow(workflow.getOrganization() + '/' + workflow.getRepository(), Optional.of(workflow));
         workflow.getUsers().add(user);
-        updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow, user);
+        updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow, user, checkpoint);
         FileFormatHelper.updateFileFormats(newWorkflow.getWorkflowVersions(), fileFormatDAO);
 
         // Refresh checker workflow
         if (!workflow.isIsChecker() && workflow.getCheckerWorkflow() != null) {
-            refresh(user, workflow.getCheckerWorkflow().getId());
+            refreshWorkflow(user, workflow.getCheckerWorkflow().getId(), checkpoint);
         }
         workflow.getWorkflowVersions().forEach(Version::updateVerified);
         String repositoryId = sourceCodeRepo.getRepositoryId(workflow);
@@ -675,8 +693,10 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
         //update the workflow path in all workflowVersions
         Set<WorkflowVersion> versions = wf.getWorkflowVersions();
         for (WorkflowVersion version : versions) {
-            if (!version.isDirtyBit()) {
+            if (!version.isDirtyBit() && !Objects.equals(version.getWorkflowPath(), workflow.getDefaultWorkflowPath())) {
                 version.setWorkflowPath(workflow.getDefaultWorkflowPath());
+                // the stored DAG and tools table were built from the old primary descriptor
+                descriptorContentCache.invalidate(version);
             }
         }
         PublicStateManager.getInstance().handleIndexUpdate(wf, StateManagerMode.UPDATE);
@@ -1305,6 +1325,7 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
                         throw new CustomWebApplicationException("Please ensure that the workflow path uses the file extension " + correctExtension, HttpStatus.SC_BAD_REQUEST);
                     }
                     existingTag.setDirtyBit(true);
+                    descriptorContentCache.invalidate(existingTag);
                 }
 
                 existingTag.updateByUser(version);
@@ -1330,16 +1351,8 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
         checkOptionalAuthRead(user, workflow);
 
         WorkflowVersion workflowVersion = getWorkflowVersion(workflow, workflowVersionId);
-        SourceFile mainDescriptor = getMainDescriptorFile(workflowVersion);
-
-        if (mainDescriptor != null) {
-            Set<SourceFile> secondaryDescContent = extractDescriptorAndSecondaryFiles(workflowVersion);
-
-            LanguageHandlerInterface lInterface = LanguageHandlerFactory.getInterface(workflow.getFileType());
-            return lInterface.getCleanDAG(workflowVersion.getWorkflowPath(), mainDescriptor.getContent(), secondaryDescContent,
-                    LanguageHandlerInterface.Type.DAG, toolDAO);
-        }
-        return null;
+        // stored when the version was refreshed or saved
+        return descriptorContentCache.getVersionContent(workflow.getFileType(), workflowVersion, LanguageHandlerInterface.Type.DAG);
     }
 
     /**
@@ -1367,27 +1380,7 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
         if (workflowVersion == null) {
             throw new CustomWebApplicationException("workflow version " + workflowVersionId + " does not exist", HttpStatus.SC_BAD_REQUEST);
         }
-        SourceFile mainDescriptor = getMainDescriptorFile(workflowVersion);
-        if (mainDescriptor != null) {
-            Set<SourceFile> secondaryDescContent = extractDescriptorAndSecondaryFiles(workflowVersion);
-            LanguageHandlerInterface lInterface = LanguageHandlerFactory.getInterface(workflow.getFileType());
-            return lInterface.getContent(workflowVersion.getWorkflowPath(), mainDescriptor.getContent(), secondaryDescContent,
-                LanguageHandlerInterface.Type.TOOLS, toolDAO);
-        }
-
-        return null;
-    }
-
-    /**
-     * Populates the return file with the descriptor and secondaryDescContent as a map between file paths and secondary files
-     *
-     * @param workflowVersion source control version to consider
-     * @return secondary file map (string path -> string content)
-     */
-    private Set<SourceFile> extractDescriptorAndSecondaryFiles(WorkflowVersion workflowVersion) {
-        return workflowVersion.getSourceFiles().stream()
-                .filter(sf -> !sf.getPath().equals(workflowVersion.getWorkflowPath()))
-                .collect(Collectors.toSet());
+        return descriptorContentCache.getVersionContent(workflow.getFileType(), workflowVersion, LanguageHandlerInterface.Type.TOOLS);
     }
 
     /**
@@ -1411,25 +1404,6 @@ public class WorkflowResource extends AbstractWorkflowResource<Workflow>
         return workflowVersion;
     }
 
-    /**
-     * This method will find the main descriptor file based on the workflow version passed in the parameter
-     *
-     * @param workflowVersion workflowVersion with collects sourcefiles
-     * @return mainDescriptor
-     */
-    private SourceFile getMainDescriptorFile(WorkflowVersion workflowVersion) {
-
-        SourceFile mainDescriptor = null;
-        for (SourceFile sourceFile : workflowVersion.getSourceFiles()) {
-            if (sourceFile.getPath().equals(workflowVersion.getWorkflowPath())) {
-                mainDescriptor = sourceFile;
-                break;
-            }
-        }
-
-        return mainDescriptor;
-    }
-
     @PUT
     @Timed
     @UnitOfWork
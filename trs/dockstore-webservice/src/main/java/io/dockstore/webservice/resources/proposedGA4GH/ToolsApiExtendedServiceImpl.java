@@ -17,10 +17,7 @@
 package io.dockstore.webservice.resources.proposedGA4GH;
 
 import java.io.IOException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -33,7 +30,6 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 
-import com.google.common.io.Resources;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 import io.dockstore.webservice.core.Entry;
@@ -43,13 +39,16 @@ import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.core.database.TRSCursor;
+import io.dockstore.webservice.core.database.TRSToolFilter;
+import io.dockstore.webservice.helpers.ElasticSearchHelper;
 import io.dockstore.webservice.helpers.PublicStateManager;
+import io.dockstore.webservice.helpers.statelisteners.ElasticListener;
 import io.dockstore.webservice.jdbi.ToolDAO;
 import io.dockstore.webservice.jdbi.WorkflowDAO;
 import io.swagger.api.impl.ToolsApiServiceImpl;
 import io.swagger.api.impl.ToolsImplCommon;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
 import org.apache.http.entity.ContentType;
 import org.apache.http.nio.entity.NStringEntity;
@@ -65,6 +64,7 @@ import org.slf4j.LoggerFactory;
 public class ToolsApiExtendedServiceImpl extends ToolsExtendedApiService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ToolsApiExtendedServiceImpl.class);
+    private static final int REINDEX_PAGE_SIZE = 500;
 
     private static ToolDAO toolDAO = null;
     private static WorkflowDAO workflowDAO = null;
@@ -156,38 +156,49 @@ public class ToolsApiExtendedServiceImpl extends ToolsExtendedApiService {
         return Response.ok(organizations).build();
     }
 
+    /**
+     * Rebuilds the search index without taking search down. A new index is filled in pages of published entries while the
+     * current one keeps serving searches and receiving updates, then the entry alias is moved to the new index.
+     */
     @Override
     public Response toolsIndexGet(SecurityContext securityContext) {
         if (!config.getEsConfiguration().getHostname().isEmpty()) {
-            List<Entry> published = getPublished();
-            try (RestClient restClient = RestClient
-                    .builder(new HttpHost(config.getEsConfiguration().getHostname(), config.getEsConfiguration().getPort(), "http"))
-                    .build()) {
-
-                // Delete index
-                try {
-                    restClient.performRequest("DELETE", "/entry");
-                } catch (Exception e) {
-                    LOG.warn("Could not delete previous elastic search index, not an issue if this is cold start", e);
-                }
-
-                // Get index mapping
-                URL url = Resources.getResource("queries/mapping.json");
-                String text = Resources.toString(url, StandardCharsets.UTF_8);
-                HttpEntity mappingEntity = new NStringEntity(text, ContentType.APPLICATION_JSON);
-
-                // Create index
-                restClient.performRequest("PUT", "/entry", Collections.emptyMap(), mappingEntity);
-
-                // Populate index
-                if (!published.isEmpty()) {
-                    publicStateManager.bulkUpsert(published);
-                }
+            RestClient restClient = ElasticSearchHelper.getRestClient(config.getEsConfiguration());
+            ElasticListener elasticListener = publicStateManager.getElasticListener();
+            String index;
+            try {
+                index = ElasticSearchHelper.createEntryIndex(restClient);
             } catch (IOException e) {
                 LOG.error("Could not create elastic search index", e);
                 throw new CustomWebApplicationException(e.getMessage(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
             }
-            return Response.ok().entity(published.size()).build();
+            int indexed = 0;
+            try {
+                elasticListener.setReindexTarget(index);
+                // page by (gitUrl, id) so that only one page of entries is in the session at a time
+                TRSToolFilter filter = new TRSToolFilter().setChecker(false);
+                TRSCursor cursor = null;
+                List<Entry<?, ?>> page;
+                do {
+                    page = toolDAO.findAllTRSPublished(filter, cursor, REINDEX_PAGE_SIZE);
+                    if (!page.isEmpty()) {
+                        indexed += elasticListener.indexNow(index, new ArrayList<>(page));
+                        cursor = TRSCursor.after(page.get(page.size() - 1));
+                        toolDAO.clearCache();
+                    }
+                } while (page.size() == REINDEX_PAGE_SIZE);
+                ElasticSearchHelper.moveEntryAlias(restClient, index);
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not populate elastic search index " + index + ", the previous index is still in use", e);
+                ElasticSearchHelper.deleteIndex(restClient, index);
+                if (e instanceof CustomWebApplicationException) {
+                    throw (CustomWebApplicationException)e;
+                }
+                throw new CustomWebApplicationException(e.getMessage(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            } finally {
+                elasticListener.setReindexTarget(null);
+            }
+            return Response.ok().entity(indexed).build();
         }
         return Response.ok().entity(0).build();
     }
@@ -195,9 +206,8 @@ public class ToolsApiExtendedServiceImpl extends ToolsExtendedApiService {
     @Override
     public Response toolsIndexSearch(String query, MultivaluedMap<String, String> queryParameters, SecurityContext securityContext) {
         if (!config.getEsConfiguration().getHostname().isEmpty()) {
-            try (RestClient restClient = RestClient
-                    .builder(new HttpHost(config.getEsConfiguration().getHostname(), config.getEsConfiguration().getPort(), "http"))
-                    .build()) {
+            try {
+                RestClient restClient = ElasticSearchHelper.getRestClient(config.getEsConfiguration());
                 HttpEntity entity = query == null ? null : new NStringEntity(query, ContentType.APPLICATION_JSON);
                 Map<String, String> parameters = new HashMap<>();
                 // TODO: note that this is lossy if there are repeated parameters
@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.openapi.api.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes a JSON array one element at a time, converting each item just before it is written.
+ * Only one converted element is held in memory, and the source item can be released (e.g. evicted from the Hibernate session)
+ * as soon as it has been written.
+ *
+ * @param <T> the type of the source items
+ * @param <R> the type of the serialized elements
+ */
+class JsonArrayStreamingOutput<T, R> implements StreamingOutput {
+    private final ObjectMapper objectMapper;
+    private final Iterable<T> items;
+    private final Function<T, R> converter;
+    private final Consumer<T> afterWrite;
+
+    /**
+     * @param objectMapper configured mapper used to write each element
+     * @param items        the source items
+     * @param converter    converts a source item to the element to write, items converted to null are skipped
+     * @param afterWrite   called with each source item once its element has been written
+     */
+    JsonArrayStreamingOutput(ObjectMapper objectMapper, Iterable<T> items, Function<T, R> converter, Consumer<T> afterWrite) {
+        this.objectMapper = objectMapper;
+        this.items = items;
+        this.converter = converter;
+        this.afterWrite = afterWrite;
+    }
+
+    JsonArrayStreamingOutput(ObjectMapper objectMapper, Iterable<T> items, Function<T, R> converter) {
+        this(objectMapper, items, converter, item -> { });
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        // the container owns the output stream
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartArray();
+            for (T item : items) {
+                R element = converter.apply(item);
+                if (element != null) {
+                    objectMapper.writeValue(generator, element);
+                }
+                afterWrite.accept(item);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -16,30 +16,95 @@
 
 package io.openapi.api.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.AbstractIterator;
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceApplication;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.SourceFile;
 import io.dockstore.webservice.core.Tag;
 import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.core.database.PublishedEntryVersion;
+import io.dockstore.webservice.core.database.TRSCursor;
+import io.dockstore.webservice.core.database.TRSToolFilter;
 import io.dockstore.webservice.helpers.EntryVersionHelper;
 import io.dockstore.webservice.helpers.statelisteners.TRSListener;
 import io.dockstore.webservice.jdbi.ToolDAO;
 import io.dockstore.webservice.jdbi.WorkflowDAO;
 import io.dockstore.webservice.resources.AuthenticatedResourceInterface;
-import io.openapi.api.NotFoundException;
 import io.openapi.api.ToolsApiService;
+import io.openapi.model.FileWrapper;
+import io.openapi.model.ToolFile;
+import io.openapi.model.ToolVersion;
+import io.swagger.api.impl.ToolsApiServiceImpl.ParsedRegistryID;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-// TODO: this is copied from v2 beta, make this better
+import static io.dockstore.common.DescriptorLanguage.FileType.CWL_TEST_JSON;
+import static io.dockstore.common.DescriptorLanguage.FileType.DOCKERFILE;
+import static io.dockstore.common.DescriptorLanguage.FileType.DOCKSTORE_CWL;
+import static io.dockstore.common.DescriptorLanguage.FileType.DOCKSTORE_WDL;
+import static io.dockstore.common.DescriptorLanguage.FileType.NEXTFLOW_TEST_PARAMS;
+import static io.dockstore.common.DescriptorLanguage.FileType.WDL_TEST_JSON;
+import static io.swagger.api.impl.ToolsApiServiceImpl.cleanRelativePath;
+import static io.swagger.api.impl.ToolsApiServiceImpl.extractHTTPPrefix;
+import static io.swagger.api.impl.ToolsApiServiceImpl.getLastPageCursor;
+import static io.swagger.api.impl.ToolsApiServiceImpl.matchesFilter;
+import static io.swagger.api.impl.ToolsApiServiceImpl.parseCursor;
+
+/**
+ * GA4GH TRS 2.0.0 implementation. Entry lookups are shared with v2 beta, the conversion to the 2.0.0 models is in ToolsImplCommon.
+ * Lists of tools and versions are streamed, converting and writing one element at a time.
+ */
 public class ToolsApiServiceImpl extends ToolsApiService implements AuthenticatedResourceInterface {
+    private static final String GITHUB_PREFIX = "git@github.com:";
+    private static final String BITBUCKET_PREFIX = "git@bitbucket.org:";
+    private static final String GALAXY = "GALAXY";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    /**
+     * The number of entries of a /tools page loaded at a time while the page is written
+     */
+    private static final int STREAMED_PAGE_SIZE = 100;
     private static final Logger LOG = LoggerFactory.getLogger(ToolsApiServiceImpl.class);
 
     private static ToolDAO toolDAO = null;
@@ -48,6 +113,9 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
     private static EntryVersionHelper<Tool, Tag, ToolDAO> toolHelper;
     private static TRSListener trsListener = null;
     private static EntryVersionHelper<Workflow, WorkflowVersion, WorkflowDAO> workflowHelper;
+    private static ObjectMapper objectMapper = null;
+
+    private final io.swagger.api.impl.ToolsApiServiceImpl betaToolsApiService = new io.swagger.api.impl.ToolsApiServiceImpl();
 
     public static void setToolDAO(ToolDAO toolDAO) {
         ToolsApiServiceImpl.toolDAO = toolDAO;
@@ -67,58 +135,542 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
         ToolsApiServiceImpl.config = config;
     }
 
+    public static void setObjectMapper(ObjectMapper objectMapper) {
+        ToolsApiServiceImpl.objectMapper = objectMapper;
+    }
 
-    @SuppressWarnings("checkstyle:ParameterNumber")
+    @SuppressWarnings({"checkstyle:ParameterNumber", "checkstyle:MethodLength"})
     @Override
     public Response toolsGet(String id, String alias, String toolClass, String registry, String organization, String name, String toolname,
         String description, String author, Boolean checker, String offset, Integer limit, SecurityContext securityContext,
-        ContainerRequestContext value, Optional<User> user) throws NotFoundException {
-        throw new UnsupportedOperationException();
+        ContainerRequestContext value, Optional<User> user) {
+        // the TRS response cache is shared with the earlier versions of TRS, the API path keeps their keys apart
+        final Integer queryHashcode = new HashCodeBuilder().append(id).append(alias).append(toolClass).append(registry)
+            .append(organization).append(name).append(toolname).append(description).append(author).append(checker).append(limit)
+            .append(user.orElseGet(User::new).getId()).append(DockstoreWebserviceApplication.GA4GH_API_PATH_V2_FINAL).build();
+        final Integer hashcode = new HashCodeBuilder().append(queryHashcode).append(offset).build();
+        final Optional<Response.ResponseBuilder> trsResponses = trsListener.getTrsResponse(hashcode);
+        if (trsResponses.isPresent()) {
+            return trsResponses.get().build();
+        }
+
+        final int actualLimit = MoreObjects.firstNonNull(limit, DEFAULT_PAGE_SIZE);
+        // the offset is either a page number or a cursor from a next_page or last_page link
+        final Optional<TRSCursor> cursor = parseCursor(offset);
+        final int offsetInteger = offset == null || cursor.isPresent() ? 0 : Integer.parseInt(offset);
+
+        final TRSToolFilter filter = new TRSToolFilter().setToolClass(toolClass).setRegistry(registry).setOrganization(organization)
+            .setName(name).setToolname(toolname).setDescription(description).setAuthor(author).setChecker(checker);
+        Iterable<Entry<?, ?>> entries = Collections.emptyList();
+        final TRSToolFilter mayInclude;
+        TRSCursor nextPageCursor = null;
+        Optional<TRSCursor> lastPageCursor = Optional.empty();
+        // short circuit id and alias filters, these are a bit weird because they have a max of one result
+        if (id != null || alias != null) {
+            Entry<?, ?> entry = id != null ? betaToolsApiService.getEntry(new ParsedRegistryID(id), user)
+                : toolDAO.getGenericEntryByAlias(alias);
+            final boolean found = entry != null && matchesFilter(entry, filter);
+            if (found && offsetInteger == 0) {
+                entries = Collections.singletonList(entry);
+            }
+            // once found, only a change to that entry matters, otherwise any entry (the empty filter) could turn out to be the missing one
+            mayInclude = found ? null : new TRSToolFilter();
+        } else {
+            // filter, order and page in the database, only the sort keys of the page are read here and its entries are
+            // loaded a few at a time as they are written
+            final TRSCursor pageStart = cursor.orElse(null);
+            final int pageOffset = offsetInteger * actualLimit;
+            nextPageCursor = toolDAO.findTRSPublishedNextPageCursor(filter, pageStart, pageOffset, actualLimit).orElse(null);
+            entries = pageEntries(filter, pageStart, pageOffset, actualLimit);
+            lastPageCursor = getLastPageCursor(toolDAO, filter, actualLimit, !cursor.isPresent() && offsetInteger == 0);
+            // any entry matching the filters can change the membership, order or count of the results
+            mayInclude = filter;
+        }
+
+        final Response.ResponseBuilder responseBuilder = Response.ok().type(MediaType.APPLICATION_JSON);
+        responseBuilder.header("current_offset", offset);
+        responseBuilder.header("current_limit", actualLimit);
+        try {
+            int port = config.getExternalConfig().getPort() == null ? -1 : Integer.parseInt(config.getExternalConfig().getPort());
+            responseBuilder.header("self_link",
+                new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port,
+                    ObjectUtils.firstNonNull(config.getExternalConfig().getBasePath(), "") + value.getUriInfo().getRequestUri().getPath(),
+                    value.getUriInfo().getRequestUri().getQuery(), null).normalize().toURL().toString());
+            // construct links to other pages
+            List<String> filters = new ArrayList<>();
+            handleParameter(id, "id", filters);
+            handleParameter(alias, "alias", filters);
+            handleParameter(toolClass, "toolClass", filters);
+            handleParameter(organization, "organization", filters);
+            handleParameter(name, "name", filters);
+            handleParameter(toolname, "toolname", filters);
+            handleParameter(description, "description", filters);
+            handleParameter(author, "author", filters);
+            handleParameter(registry, "registry", filters);
+            handleParameter(checker == null ? null : String.valueOf(checker), "checker", filters);
+            handleParameter(String.valueOf(actualLimit), "limit", filters);
+
+            final String toolsPath = ObjectUtils.firstNonNull(config.getExternalConfig().getBasePath(), "")
+                + DockstoreWebserviceApplication.GA4GH_API_PATH_V2_FINAL + "/tools";
+            if (nextPageCursor != null) {
+                URI nextPageURI = new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port,
+                    toolsPath, Joiner.on('&').join(filters) + "&offset=" + nextPageCursor.encode(), null).normalize();
+                responseBuilder.header("next_page", nextPageURI.toURL().toString());
+            }
+            URI lastPageURI = new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port,
+                toolsPath, Joiner.on('&').join(filters) + "&offset=" + lastPageCursor.map(TRSCursor::encode).orElse("0"), null).normalize();
+            responseBuilder.header("last_page", lastPageURI.toURL().toString());
+        } catch (URISyntaxException | MalformedURLException e) {
+            throw new CustomWebApplicationException("Could not construct page links", HttpStatus.SC_BAD_REQUEST);
+        }
+
+        // each entry is released from the session once written, so a large page does not stay in memory
+        final List<Long> entryIds = new ArrayList<>();
+        final AtomicInteger weight = new AtomicInteger(0);
+        final StreamingOutput page = new JsonArrayStreamingOutput<>(objectMapper, entries,
+            entry -> ToolsImplCommon.convertEntryToTool(entry, config, false), entry -> {
+                entryIds.add(entry.getId());
+                weight.addAndGet(1 + entry.getWorkflowVersions().size());
+                toolDAO.evict(entry);
+            });
+        // once the page is written, the bytes that were sent are cached rather than the entries or the converted tools
+        final Response.ResponseBuilder cachedResponseBuilder = responseBuilder.clone();
+        responseBuilder.entity((StreamingOutput)output -> {
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            page.write(new TeeOutputStream(output, written));
+            trsListener.loadTRSResponse(hashcode, new TRSListener.CachedTRSResponse(cachedResponseBuilder.entity(written.toByteArray()),
+                queryHashcode, entryIds, mayInclude, weight.get()));
+        });
+        return responseBuilder.build();
+    }
+
+    /**
+     * Reads a page of the /tools listing in smaller pages that follow each other by cursor, so that only the entries of one
+     * of those are loaded at a time. The iteration stops early if the listing ends before the page does.
+     * The session of the request stays open until its response has been written, so the entries can be read while writing.
+     *
+     * @param filter the TRS filters
+     * @param start  the cursor the page starts from, null for a page found by offset
+     * @param offset the number of matching entries skipped before the page
+     * @param limit  the page size
+     * @return the entries of the page, read as they are iterated over
+     */
+    private static Iterable<Entry<?, ?>> pageEntries(TRSToolFilter filter, TRSCursor start, int offset, int limit) {
+        return () -> new AbstractIterator<>() {
+            private Iterator<Entry<?, ?>> loaded = Collections.emptyIterator();
+            private TRSCursor after = start;
+            private int remaining = limit;
+
+            @Override
+            protected Entry<?, ?> computeNext() {
+                if (!loaded.hasNext()) {
+                    if (remaining <= 0) {
+                        return endOfData();
+                    }
+                    final int size = Math.min(remaining, STREAMED_PAGE_SIZE);
+                    final List<Entry<?, ?>> entries = after == null ? toolDAO.findAllTRSPublished(filter, offset, size)
+                        : toolDAO.findAllTRSPublished(filter, after, size);
+                    if (entries.isEmpty()) {
+                        return endOfData();
+                    }
+                    remaining -= entries.size();
+                    after = TRSCursor.after(entries.get(entries.size() - 1));
+                    loaded = entries.iterator();
+                }
+                return loaded.next();
+            }
+        };
+    }
+
+    private void handleParameter(String parameter, String queryName, List<String> filters) {
+        if (parameter != null) {
+            filters.add(queryName + "=" + parameter);
+        }
     }
 
     @Override
     public Response toolsIdGet(String id, SecurityContext securityContext, ContainerRequestContext value, Optional<User> user) {
-        throw new UnsupportedOperationException();
+        Entry<?, ?> entry = betaToolsApiService.getEntry(new ParsedRegistryID(id), user);
+        Optional<Response> error = checkEntry(entry);
+        if (error.isPresent()) {
+            return error.get();
+        }
+        return Response.ok(ToolsImplCommon.convertEntryToTool(entry, config, false)).build();
     }
 
     @Override
     public Response toolsIdVersionsGet(String id, SecurityContext securityContext, ContainerRequestContext value, Optional<User> user) {
-        throw new UnsupportedOperationException();
+        Entry<?, ?> entry = betaToolsApiService.getEntry(new ParsedRegistryID(id), user);
+        Optional<Response> error = checkEntry(entry);
+        if (error.isPresent()) {
+            return error.get();
+        }
+        // only the versions are converted, there is no need to build the whole tool
+        final String toolId = io.swagger.api.impl.ToolsImplCommon.getNewId(entry);
+        final String toolUrl = ToolsImplCommon.getUrlFromId(config, toolId);
+        final List<Version> versions = new ArrayList<>();
+        for (Version version : entry.getWorkflowVersions()) {
+            if (!io.swagger.api.impl.ToolsImplCommon.shouldHideToolVersion(version, false)) {
+                versions.add(version);
+            }
+        }
+        return Response.ok(new JsonArrayStreamingOutput<>(objectMapper, versions,
+            version -> ToolsImplCommon.convertVersionToToolVersion(entry, version, toolId, toolUrl)))
+            .type(MediaType.APPLICATION_JSON).build();
     }
 
     @Override
     public Response toolsIdVersionsVersionIdGet(String id, String versionId, SecurityContext securityContext, ContainerRequestContext value,
         Optional<User> user) {
-        throw new UnsupportedOperationException();
+        final String decodedVersionId = decode(versionId);
+        Entry<?, ?> entry = betaToolsApiService.getEntry(new ParsedRegistryID(id), user);
+        Optional<Response> error = checkEntry(entry);
+        if (error.isPresent()) {
+            return error.get();
+        }
+        final String toolId = io.swagger.api.impl.ToolsImplCommon.getNewId(entry);
+        final String toolUrl = ToolsImplCommon.getUrlFromId(config, toolId);
+        final Optional<ToolVersion> toolVersion = entry.getWorkflowVersions().stream()
+            .filter(version -> version.getName().equals(decodedVersionId))
+            .filter(version -> !io.swagger.api.impl.ToolsImplCommon.shouldHideToolVersion(version, false))
+            .map(version -> ToolsImplCommon.convertVersionToToolVersion(entry, version, toolId, toolUrl))
+            .filter(Objects::nonNull).findFirst();
+        return toolVersion.map(converted -> Response.ok(converted).build()).orElseGet(() -> Response.status(Status.NOT_FOUND).build());
+    }
+
+    /**
+     * Matches the v2 beta responses for entries that cannot be shown
+     *
+     * @param entry the entry that was looked up
+     * @return an error response if the entry is missing or not published
+     */
+    private Optional<Response> checkEntry(Entry<?, ?> entry) {
+        if (entry == null) {
+            return Optional.of(Response.status(Status.NOT_FOUND).build());
+        } else if (!entry.getIsPublished()) {
+            // check whether this is registered
+            return Optional.of(Response.status(Status.UNAUTHORIZED).build());
+        }
+        return Optional.empty();
     }
 
     @Override
     public Response toolsIdVersionsVersionIdTypeDescriptorGet(String type, String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext value, Optional<User> user) {
-        throw new UnsupportedOperationException();
+        final Optional<DescriptorLanguage.FileType> fileType = getFileType(type);
+        if (fileType.isEmpty()) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return getFileByToolVersionID(id, versionId, fileType.get(), null,
+            contextContainsPlainText(value) || StringUtils.containsIgnoreCase(type, "plain"), user);
     }
 
     @Override
     public Response toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(String type, String id, String versionId, String relativePath,
         SecurityContext securityContext, ContainerRequestContext value, Optional<User> user) {
-        throw new UnsupportedOperationException();
+        if (type == null) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        final Optional<DescriptorLanguage.FileType> fileType = getFileType(type);
+        if (fileType.isEmpty()) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return getFileByToolVersionID(id, versionId, fileType.get(), relativePath,
+            contextContainsPlainText(value) || StringUtils.containsIgnoreCase(type, "plain"), user);
+    }
+
+    private boolean contextContainsPlainText(ContainerRequestContext value) {
+        return value.getAcceptableMediaTypes().contains(MediaType.TEXT_PLAIN_TYPE);
+    }
+
+    /**
+     * TRS 2.0.0 calls Galaxy workflows GALAXY (or PLAIN_GALAXY), which Dockstore knows as gxformat2
+     *
+     * @param type a TRS descriptor type
+     * @return the Dockstore file type of its primary descriptor
+     */
+    private static Optional<DescriptorLanguage.FileType> getFileType(String type) {
+        if (StringUtils.containsIgnoreCase(type, GALAXY)) {
+            return Optional.of(DescriptorLanguage.GXFORMAT2.getFileType());
+        }
+        return DescriptorLanguage.getFileType(type);
     }
 
     @Override
     public Response toolsIdVersionsVersionIdTypeTestsGet(String type, String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext value, Optional<User> user) {
-        throw new UnsupportedOperationException();
+        if (type == null) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        final Optional<DescriptorLanguage.FileType> fileType = getFileType(type);
+        if (fileType.isEmpty()) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+
+        // The getFileType version never returns *TEST_JSON filetypes.  Linking CWL_TEST_JSON with DOCKSTORE_CWL and etc until solved.
+        boolean plainTextResponse = contextContainsPlainText(value) || type.toLowerCase().contains("plain");
+        switch (fileType.get()) {
+        case CWL_TEST_JSON:
+        case DOCKSTORE_CWL:
+            return getFileByToolVersionID(id, versionId, CWL_TEST_JSON, null, plainTextResponse, user);
+        case WDL_TEST_JSON:
+        case DOCKSTORE_WDL:
+            return getFileByToolVersionID(id, versionId, WDL_TEST_JSON, null, plainTextResponse, user);
+        case NEXTFLOW:
+        case NEXTFLOW_CONFIG:
+        case NEXTFLOW_TEST_PARAMS:
+            return getFileByToolVersionID(id, versionId, NEXTFLOW_TEST_PARAMS, null, plainTextResponse, user);
+        case DOCKSTORE_GXFORMAT2:
+        case GXFORMAT2_TEST_FILE:
+            return getFileByToolVersionID(id, versionId, DescriptorLanguage.FileType.GXFORMAT2_TEST_FILE, null, plainTextResponse, user);
+        default:
+            return Response.status(Status.BAD_REQUEST).build();
+        }
     }
 
     @Override
     public Response toolsIdVersionsVersionIdContainerfileGet(String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext value, Optional<User> user) {
-        throw new UnsupportedOperationException();
+        // matching behaviour of the descriptor endpoint
+        return getFileByToolVersionID(id, versionId, DOCKERFILE, null, contextContainsPlainText(value), user);
+    }
+
+    private static String decode(String versionId) {
+        try {
+            return URLDecoder.decode(versionId, StandardCharsets.UTF_8.displayName());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param registryId   registry id
+     * @param versionId    git reference
+     * @param type         type of file
+     * @param relativePath if null, return the primary descriptor, if not null, return a specific file
+     * @param unwrap       unwrap the file and present the descriptor sans wrapper model
+     * @return a specific file wrapped in a response
+     */
+    private Response getFileByToolVersionID(String registryId, String versionId, DescriptorLanguage.FileType type, String relativePath,
+        boolean unwrap, Optional<User> user) {
+        final String decodedVersionId = decode(versionId);
+        final ParsedRegistryID parsedID = new ParsedRegistryID(registryId);
+
+        // the common case of a published entry is served from the requested version alone
+        final Optional<PublishedEntryVersion> publishedVersion = betaToolsApiService.getPublishedVersion(parsedID, decodedVersionId);
+        Entry<?, ?> entry = null;
+        final Version<?> version;
+        final String gitUrl;
+        if (publishedVersion.isPresent()) {
+            version = publishedVersion.get().getVersion();
+            gitUrl = publishedVersion.get().getGitUrl();
+        } else {
+            // unpublished entries and hidden versions need the whole entry to check the user's permissions
+            entry = betaToolsApiService.getEntry(parsedID, user);
+
+            // check whether this is registered
+            if (entry == null) {
+                return Response.status(getExtendedStatus(Status.NOT_FOUND, "incorrect id")).build();
+            }
+
+            boolean showHiddenVersions = user.isPresent() && !AuthenticatedResourceInterface.userCannotRead(user.get(), entry);
+            Optional<? extends Version> entryVersion = entry.getWorkflowVersions().stream()
+                .filter(candidate -> candidate.getName().equalsIgnoreCase(decodedVersionId))
+                .filter(candidate -> !io.swagger.api.impl.ToolsImplCommon.shouldHideToolVersion(candidate, showHiddenVersions)).findFirst();
+            if (entryVersion.isEmpty()) {
+                return Response.status(getExtendedStatus(Status.NOT_FOUND, "version not found")).build();
+            }
+            version = entryVersion.get();
+            gitUrl = entry.getGitUrl();
+        }
+
+        String urlBuilt;
+        if (gitUrl.startsWith(GITHUB_PREFIX)) {
+            urlBuilt = extractHTTPPrefix(gitUrl, version.getReference(), GITHUB_PREFIX, "https://raw.githubusercontent.com/");
+        } else if (gitUrl.startsWith(BITBUCKET_PREFIX)) {
+            urlBuilt = extractHTTPPrefix(gitUrl, version.getReference(), BITBUCKET_PREFIX, "https://bitbucket.org/");
+        } else {
+            LOG.error("Found a git url neither from BitBucket or GitHub " + gitUrl);
+            urlBuilt = "https://unimplemented_git_repository/";
+        }
+
+        switch (type) {
+        case WDL_TEST_JSON:
+        case CWL_TEST_JSON:
+        case NEXTFLOW_TEST_PARAMS:
+        case GXFORMAT2_TEST_FILE:
+            List<SourceFile> testSourceFiles = new ArrayList<>();
+            if (entry == null) {
+                testSourceFiles.addAll(version.getSourceFiles().stream().filter(sourceFile -> sourceFile.getType() == type)
+                    .collect(Collectors.toList()));
+            } else {
+                // this only works for test parameters associated with tools
+                try {
+                    testSourceFiles.addAll(toolHelper.getAllSourceFiles(entry.getId(), decodedVersionId, type, user));
+                } catch (CustomWebApplicationException e) {
+                    LOG.warn("intentionally ignoring failure to get test parameters", e);
+                }
+                try {
+                    testSourceFiles.addAll(workflowHelper.getAllSourceFiles(entry.getId(), decodedVersionId, type, user));
+                } catch (CustomWebApplicationException e) {
+                    LOG.warn("intentionally ignoring failure to get source files", e);
+                }
+            }
+
+            List<FileWrapper> toolTestsList = testSourceFiles.stream()
+                .map(file -> ToolsImplCommon.sourceFileToFileWrapper(urlBuilt, file)).collect(Collectors.toList());
+            return Response.status(Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON).entity(
+                unwrap ? toolTestsList.stream().map(FileWrapper::getContent).filter(Objects::nonNull).collect(Collectors.joining("\n"))
+                    : toolTestsList).build();
+        case DOCKERFILE:
+            Optional<SourceFile> potentialDockerfile = version.getSourceFiles().stream()
+                .filter(sourcefile -> sourcefile.getType() == DOCKERFILE).findFirst();
+            if (potentialDockerfile.isPresent()) {
+                FileWrapper dockerfile = ToolsImplCommon
+                    .sourceFileToFileWrapper(urlBuilt + ((Tag)version).getDockerfilePath(), potentialDockerfile.get());
+                List<FileWrapper> containerfilesList = new ArrayList<>();
+                containerfilesList.add(dockerfile);
+                return Response.status(Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
+                    .entity(unwrap ? dockerfile.getContent() : containerfilesList).build();
+            }
+            break;
+        default:
+            String path;
+            // figure out primary descriptors and use them if no relative path is specified
+            if (version instanceof Tag) {
+                if (type == DOCKSTORE_WDL) {
+                    path = ((Tag)version).getWdlPath();
+                } else if (type == DOCKSTORE_CWL) {
+                    path = ((Tag)version).getCwlPath();
+                } else {
+                    return Response.status(Status.NOT_FOUND).build();
+                }
+            } else {
+                path = ((WorkflowVersion)version).getWorkflowPath();
+            }
+            String searchPath = relativePath != null ? cleanRelativePath(relativePath) : path;
+
+            Optional<SourceFile> correctSourceFile = betaToolsApiService.lookForFilePath(version, searchPath);
+            if (correctSourceFile.isPresent()) {
+                SourceFile sourceFile = correctSourceFile.get();
+                // annoyingly, test json and Dockerfiles include a fullpath whereas descriptors are just relative to the main descriptor,
+                // so in this stream we need to standardize relative to the main descriptor
+                final Path workingPath = Paths.get("/", version.getWorkingDirectory());
+                final Path relativize = workingPath.relativize(Paths.get(StringUtils.prependIfMissing(sourceFile.getAbsolutePath(), "/")));
+                String sourceFileUrl = urlBuilt + StringUtils.prependIfMissing(version.getWorkingDirectory(), "/") + StringUtils
+                    .prependIfMissing(relativize.toString(), "/");
+                return Response.status(Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
+                    .entity(unwrap ? sourceFile.getContent() : ToolsImplCommon.sourceFileToFileWrapper(sourceFileUrl, sourceFile)).build();
+            }
+        }
+        Response.StatusType status = getExtendedStatus(Status.NOT_FOUND,
+            "version found, but file not found (bad filename, invalid file, etc.)");
+        return Response.status(status).build();
+    }
+
+    private Response.StatusType getExtendedStatus(Status status, String additionalMessage) {
+        return new Response.StatusType() {
+            @Override
+            public int getStatusCode() {
+                return status.getStatusCode();
+            }
+
+            @Override
+            public Status.Family getFamily() {
+                return status.getFamily();
+            }
+
+            @Override
+            public String getReasonPhrase() {
+                return status.getReasonPhrase() + " : " + additionalMessage;
+            }
+        };
     }
 
     @Override
     public Response toolsIdVersionsVersionIdTypeFilesGet(String type, String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext containerRequestContext, Optional<User> user) {
-        throw new UnsupportedOperationException();
+        Entry<?, ?> entry = betaToolsApiService.getEntry(new ParsedRegistryID(id), user);
+        List<String> primaryDescriptorPaths = new ArrayList<>();
+        if (entry instanceof Workflow) {
+            Optional<WorkflowVersion> first = ((Workflow)entry).getWorkflowVersions().stream()
+                .filter(workflowVersion -> workflowVersion.getName().equals(versionId)).findFirst();
+            if (first.isEmpty()) {
+                return Response.noContent().build();
+            }
+            WorkflowVersion workflowVersion = first.get();
+            // Matching the workflow path in a workflow automatically indicates that the file is a primary descriptor
+            primaryDescriptorPaths.add(workflowVersion.getWorkflowPath());
+            List<ToolFile> toolFiles = getToolFiles(workflowVersion.getSourceFiles(), primaryDescriptorPaths, type,
+                workflowVersion.getWorkingDirectory());
+            return Response.ok().entity(toolFiles).build();
+        } else if (entry instanceof Tool) {
+            Optional<Tag> first = ((Tool)entry).getWorkflowVersions().stream().filter(tag -> tag.getName().equals(versionId)).findFirst();
+            if (first.isEmpty()) {
+                return Response.noContent().build();
+            }
+            Tag tag = first.get();
+            // Matching the CWL path or WDL path in a tool automatically indicates that the file is a primary descriptor
+            primaryDescriptorPaths.add(tag.getCwlPath());
+            primaryDescriptorPaths.add(tag.getWdlPath());
+            List<ToolFile> toolFiles = getToolFiles(tag.getSourceFiles(), primaryDescriptorPaths, type, tag.getWorkingDirectory());
+            return Response.ok().entity(toolFiles).build();
+        } else {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Converts SourceFile.FileType to ToolFile.FileTypeEnum
+     *
+     * @param fileType The SourceFile.FileType
+     * @return The ToolFile.FileTypeEnum
+     */
+    private static ToolFile.FileTypeEnum fileTypeToToolFileFileTypeEnum(DescriptorLanguage.FileType fileType) {
+        switch (fileType) {
+        case NEXTFLOW_TEST_PARAMS:
+        case CWL_TEST_JSON:
+        case GXFORMAT2_TEST_FILE:
+        case DOCKSTORE_SERVICE_TEST_JSON:
+        case WDL_TEST_JSON:
+            return ToolFile.FileTypeEnum.TEST_FILE;
+        case DOCKERFILE:
+            return ToolFile.FileTypeEnum.CONTAINERFILE;
+        case DOCKSTORE_WDL:
+        case DOCKSTORE_CWL:
+        case DOCKSTORE_GXFORMAT2:
+        case DOCKSTORE_SERVICE_YML:
+        case NEXTFLOW:
+            return ToolFile.FileTypeEnum.SECONDARY_DESCRIPTOR;
+        case NEXTFLOW_CONFIG:
+            return ToolFile.FileTypeEnum.PRIMARY_DESCRIPTOR;
+        default:
+            return ToolFile.FileTypeEnum.OTHER;
+        }
+    }
+
+    /**
+     * Converts a list of SourceFile to a list of ToolFile.
+     *
+     * @param sourceFiles    The list of SourceFile to convert
+     * @param mainDescriptor The main descriptor path, used to determine if the file is a primary or secondary descriptor
+     * @return A list of ToolFile for the Tool
+     */
+    private static List<ToolFile> getToolFiles(Set<SourceFile> sourceFiles, List<String> mainDescriptor, String type,
+        String workingDirectory) {
+        // Filters the source files to only show the ones that are possibly relevant to the type (CWL or WDL or NFL or GALAXY)
+        final DescriptorLanguage descriptorLanguage = GALAXY.equalsIgnoreCase(type) ? DescriptorLanguage.GXFORMAT2
+            : DescriptorLanguage.convertShortStringToEnum(type);
+        final Path path = Paths.get("/" + workingDirectory);
+        return sourceFiles.stream().filter(sourceFile -> descriptorLanguage.isRelevantFileType(sourceFile.getType())).map(file -> {
+            ToolFile toolFile = new ToolFile();
+            toolFile.setPath(path.relativize(Paths.get(file.getAbsolutePath())).toString());
+            ToolFile.FileTypeEnum fileTypeEnum = fileTypeToToolFileFileTypeEnum(file.getType());
+            if (fileTypeEnum.equals(ToolFile.FileTypeEnum.SECONDARY_DESCRIPTOR) && mainDescriptor.contains(file.getPath())) {
+                fileTypeEnum = ToolFile.FileTypeEnum.PRIMARY_DESCRIPTOR;
+            }
+            toolFile.setFileType(fileTypeEnum);
+            return toolFile;
+        }).sorted(Comparator.comparing(ToolFile::getPath)).collect(Collectors.toList());
     }
 }
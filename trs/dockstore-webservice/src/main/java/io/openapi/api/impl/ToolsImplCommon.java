@@ -0,0 +1,253 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.openapi.api.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import io.dockstore.webservice.DockstoreWebserviceApplication;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.Image;
+import io.dockstore.webservice.core.Service;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tag;
+import io.dockstore.webservice.core.Version;
+import io.dockstore.webservice.core.Workflow;
+import io.openapi.model.Checksum;
+import io.openapi.model.DescriptorType;
+import io.openapi.model.FileWrapper;
+import io.openapi.model.ImageData;
+import io.openapi.model.ImageType;
+import io.openapi.model.Tool;
+import io.openapi.model.ToolClass;
+import io.openapi.model.ToolVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility methods for converting Dockstore entries to GA4GH TRS v2 final tools and workflows
+ */
+public final class ToolsImplCommon {
+    private static final Logger LOG = LoggerFactory.getLogger(ToolsImplCommon.class);
+
+    private ToolsImplCommon() { }
+
+    /**
+     * Convert our entry to a GA4GH TRS v2 Tool
+     *
+     * @param entry              our data object
+     * @param config             used to build the urls of the tool and its versions
+     * @param showHiddenVersions whether hidden versions should be included
+     * @return standardised data object, null if the entry cannot be converted
+     */
+    public static Tool convertEntryToTool(Entry<?, ?> entry, DockstoreWebserviceConfiguration config, boolean showHiddenVersions) {
+        String newID = io.swagger.api.impl.ToolsImplCommon.getNewId(entry);
+        String url = getUrlFromId(config, newID);
+        if (url == null) {
+            return null;
+        }
+        Tool tool = new Tool();
+        tool.setId(newID);
+        tool.setUrl(url);
+        tool.setAliases(new ArrayList<>(entry.getAliases().keySet()));
+        tool.setToolclass(getToolClass(entry));
+        tool.setDescription(Strings.nullToEmpty(entry.getDescription()));
+        tool.setMetaVersion(entry.getLastUpdated() != null ? entry.getLastUpdated().toString() : new Date(0).toString());
+        String checkerUrl = io.swagger.api.impl.ToolsImplCommon.getCheckerWorkflowPath(config, entry,
+            DockstoreWebserviceApplication.GA4GH_API_PATH_V2_FINAL);
+        tool.setCheckerUrl(Strings.nullToEmpty(checkerUrl));
+        tool.setHasChecker(!Strings.isNullOrEmpty(checkerUrl));
+
+        if (entry instanceof io.dockstore.webservice.core.Tool) {
+            io.dockstore.webservice.core.Tool dockstoreTool = (io.dockstore.webservice.core.Tool)entry;
+            tool.setOrganization(dockstoreTool.getNamespace());
+            tool.setName(io.swagger.api.impl.ToolsImplCommon
+                .constructName(Arrays.asList(dockstoreTool.getName(), dockstoreTool.getToolname())));
+        } else if (entry instanceof Workflow) {
+            Workflow workflow = (Workflow)entry;
+            tool.setOrganization(workflow.getOrganization());
+            tool.setName(io.swagger.api.impl.ToolsImplCommon
+                .constructName(Arrays.asList(workflow.getRepository(), workflow.getWorkflowName())));
+        } else {
+            LOG.error("Unrecognized entry type - neither tool or workflow: " + entry.getId());
+            return null;
+        }
+
+        List<ToolVersion> toolVersions = new ArrayList<>();
+        for (Version version : entry.getWorkflowVersions()) {
+            if (io.swagger.api.impl.ToolsImplCommon.shouldHideToolVersion(version, showHiddenVersions)) {
+                continue;
+            }
+            ToolVersion toolVersion = convertVersionToToolVersion(entry, version, tool.getId(), url);
+            if (toolVersion != null) {
+                toolVersions.add(toolVersion);
+            }
+        }
+        tool.setVersions(toolVersions);
+        return tool;
+    }
+
+    /**
+     * Convert one of our versions to a GA4GH TRS v2 ToolVersion
+     *
+     * @param entry   the entry the version belongs to
+     * @param version our version
+     * @param toolId  the GA4GH id of the entry
+     * @param toolUrl the GA4GH url of the entry
+     * @return the ToolVersion, null if the version has no descriptor that TRS knows about
+     */
+    public static ToolVersion convertVersionToToolVersion(Entry<?, ?> entry, Version<?> version, String toolId, String toolUrl) {
+        ToolVersion toolVersion = new ToolVersion();
+        try {
+            toolVersion.setUrl(io.swagger.api.impl.ToolsImplCommon.getVersionUrl(toolUrl, version));
+        } catch (UnsupportedEncodingException e) {
+            LOG.error("Could not construct URL for our version with id: " + version.getId());
+            return null;
+        }
+        toolVersion.setId(toolId + ":" + version.getName());
+        toolVersion.setName(version.getName());
+        String author = MoreObjects.firstNonNull(Strings.emptyToNull(version.getAuthor()), Strings.nullToEmpty(entry.getAuthor()));
+        toolVersion.setAuthor(author.isEmpty() ? new ArrayList<>() : new ArrayList<>(List.of(author)));
+        toolVersion.setIsProduction(false);
+        toolVersion.setSigned(false);
+        toolVersion.setIncludedApps(new ArrayList<>());
+        toolVersion.setVerified(version.isVerified());
+        String[] verifiedSources = version.getVerifiedSources();
+        toolVersion.setVerifiedSource(verifiedSources == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(verifiedSources)));
+        Set<SourceFile> sourceFiles = version.getSourceFiles();
+        toolVersion.setContainerfile(io.swagger.api.impl.ToolsImplCommon.hasDockerfile(sourceFiles));
+        List<DescriptorType> descriptorTypes = getDescriptorTypes(sourceFiles);
+        // versions without a known descriptor are not shown, matching v2 beta
+        if (descriptorTypes.isEmpty()) {
+            return null;
+        }
+        toolVersion.setDescriptorType(descriptorTypes);
+        toolVersion.setMetaVersion(io.swagger.api.impl.ToolsImplCommon.getMetaVersion(version));
+
+        if (version instanceof Tag) {
+            toolVersion.setImages(getImages((io.dockstore.webservice.core.Tool)entry, (Tag)version));
+        } else {
+            toolVersion.setImages(new ArrayList<>());
+        }
+        return toolVersion;
+    }
+
+    /**
+     * Maps the v2 beta descriptor types of a version, which are worked out from its source files in one place for every
+     * version of the GA4GH API, to their v2 final names. Services have no v2 final descriptor type.
+     */
+    private static List<DescriptorType> getDescriptorTypes(Set<SourceFile> sourceFiles) {
+        List<DescriptorType> descriptorTypes = new ArrayList<>();
+        for (io.swagger.model.DescriptorType betaType : io.swagger.api.impl.ToolsImplCommon.getDescriptorTypes(sourceFiles)) {
+            switch (betaType) {
+            case CWL:
+                descriptorTypes.add(DescriptorType.CWL);
+                break;
+            case WDL:
+                descriptorTypes.add(DescriptorType.WDL);
+                break;
+            case GXFORMAT2:
+                descriptorTypes.add(DescriptorType.GALAXY);
+                break;
+            case NFL:
+                descriptorTypes.add(DescriptorType.NFL);
+                break;
+            default:
+                break;
+            }
+        }
+        return descriptorTypes;
+    }
+
+    /**
+     * Describe the docker images of a tag, with their checksums when we have them
+     */
+    private static List<ImageData> getImages(io.dockstore.webservice.core.Tool tool, Tag tag) {
+        String imageName = io.swagger.api.impl.ToolsImplCommon
+            .constructName(Arrays.asList(tool.getRegistry(), tool.getNamespace(), tool.getName()));
+        List<ImageData> images = new ArrayList<>();
+        if (tag.getImages().isEmpty()) {
+            images.add(createImageData(tool.getRegistry(), imageName, tag, new ArrayList<>()));
+        }
+        for (Image image : tag.getImages()) {
+            List<Checksum> checksums = image.getChecksums() == null ? new ArrayList<>() : image.getChecksums().stream().map(checksum -> {
+                Checksum converted = new Checksum();
+                converted.setType(checksum.getType());
+                converted.setChecksum(checksum.getChecksum());
+                return converted;
+            }).collect(Collectors.toList());
+            images.add(createImageData(tool.getRegistry(), imageName, tag, checksums));
+        }
+        return images;
+    }
+
+    private static ImageData createImageData(String registry, String imageName, Tag tag, List<Checksum> checksums) {
+        ImageData imageData = new ImageData();
+        imageData.setRegistryHost(registry);
+        imageData.setImageName(imageName);
+        imageData.setImageType(ImageType.DOCKER);
+        imageData.setUpdated(tag.getLastBuilt() != null ? tag.getLastBuilt().toString() : null);
+        imageData.setChecksum(checksums);
+        return imageData;
+    }
+
+    private static ToolClass getToolClass(Entry<?, ?> entry) {
+        if (entry instanceof io.dockstore.webservice.core.Tool) {
+            return ToolClassesApiServiceImpl.getCommandLineToolClass();
+        } else if (entry instanceof BioWorkflow) {
+            return ToolClassesApiServiceImpl.getWorkflowClass();
+        } else if (entry instanceof Service) {
+            return ToolClassesApiServiceImpl.getServiceClass();
+        } else {
+            throw new UnsupportedOperationException("encountered unknown entry type in TRS");
+        }
+    }
+
+    /**
+     * This converts a Dockstore SourceFile to a GA4GH FileWrapper
+     *
+     * @param url        url of the file in its source repository
+     * @param sourceFile the Dockstore SourceFile
+     * @return the converted FileWrapper
+     */
+    static FileWrapper sourceFileToFileWrapper(String url, SourceFile sourceFile) {
+        FileWrapper fileWrapper = new FileWrapper();
+        fileWrapper.setContent(sourceFile.getContent());
+        fileWrapper.setUrl(url);
+        fileWrapper.setChecksum(new ArrayList<>());
+        return fileWrapper;
+    }
+
+    /**
+     * Create the GA4GH TRS v2 final /tools/{id} url for a specific tool
+     *
+     * @param config The DockstoreWebserviceConfiguration which is used to get the baseURL
+     * @param toolID The ID of the GA4GH Tool
+     * @return The GA4GH /tools/{id} url
+     */
+    public static String getUrlFromId(DockstoreWebserviceConfiguration config, String toolID) {
+        return io.swagger.api.impl.ToolsImplCommon.getUrlFromId(config, toolID, DockstoreWebserviceApplication.GA4GH_API_PATH_V2_FINAL);
+    }
+}
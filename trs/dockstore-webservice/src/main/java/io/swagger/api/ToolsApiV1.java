@@ -15,8 +15,6 @@
  */
 package io.swagger.api;
 
-import java.util.Optional;
-
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -31,8 +29,7 @@ import io.dockstore.webservice.DockstoreWebserviceApplication;
 import io.dockstore.webservice.resources.ResourceConstants;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.annotations.ApiParam;
-import io.swagger.api.factories.ToolsApiServiceFactory;
-import io.swagger.api.impl.ApiVersionConverter;
+import io.swagger.api.impl.ToolsApiServiceImplV1;
 import io.swagger.model.ToolDescriptor;
 import io.swagger.model.ToolDockerfile;
 import io.swagger.model.ToolTestsV1;
@@ -47,7 +44,7 @@ import org.apache.http.HttpStatus;
 @javax.annotation.Generated(value = "class io.swagger.codegen.languages.JavaJerseyServerCodegen", date = "2016-09-12T21:34:41.980Z")
 @io.swagger.v3.oas.annotations.tags.Tag(name = "GA4GHV1", description = ResourceConstants.GA4GHV1)
 public class ToolsApiV1 {
-    private final ToolsApiService delegate = ToolsApiServiceFactory.getToolsApi();
+    private final ToolsApiServiceImplV1 delegate = new ToolsApiServiceImplV1();
 
     @SuppressWarnings("checkstyle:ParameterNumber")
     @GET
@@ -68,9 +65,7 @@ public class ToolsApiV1 {
         @ApiParam(value = "Start index of paging. Pagination results can be based on numbers or other values chosen by the registry implementor (for example, SHA values). If this exceeds the current result set return an empty set.  If not specified in the request this will start at the beginning of the results.") @QueryParam("offset") String offset,
         @ApiParam(value = "Amount of records to return in a given page.  By default it is 1000.") @QueryParam("limit") Integer limit,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter.convertToVersion(delegate
-            .toolsGet(id, null, registry, organization, name, toolname, description, author, null, offset, limit, securityContext, value,
-                Optional.empty()));
+        return delegate.toolsGet(id, registry, organization, name, toolname, description, author, offset, limit, value);
     }
 
     @GET
@@ -84,7 +79,7 @@ public class ToolsApiV1 {
     public Response toolsIdGet(
         @ApiParam(value = "A unique identifier of the tool, scoped to this registry, for example `123456`", required = true) @PathParam("id") String id,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter.convertToVersion(delegate.toolsIdGet(id, securityContext, value, Optional.empty()));
+        return delegate.toolsIdGet(id);
     }
 
     @GET
@@ -98,7 +93,7 @@ public class ToolsApiV1 {
     public Response toolsIdVersionsGet(
         @ApiParam(value = "A unique identifier of the tool, scoped to this registry, for example `123456`", required = true) @PathParam("id") String id,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter.convertToVersion(delegate.toolsIdVersionsGet(id, securityContext, value, Optional.empty()));
+        return delegate.toolsIdVersionsGet(id);
     }
 
     @GET
@@ -115,8 +110,7 @@ public class ToolsApiV1 {
         @ApiParam(value = "A unique identifier of the tool, scoped to this registry, for example `123456`", required = true) @PathParam("id") String id,
         @ApiParam(value = "An identifier of the tool version for this particular tool registry, for example `v1`", required = true) @PathParam("version_id") String versionId,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter
-            .convertToVersion(delegate.toolsIdVersionsVersionIdContainerfileGet(id, versionId, securityContext, value, Optional.empty()));
+        return delegate.toolsIdVersionsVersionIdDockerfileGet(id, versionId, value);
     }
 
     @GET
@@ -131,8 +125,7 @@ public class ToolsApiV1 {
         @ApiParam(value = "A unique identifier of the tool, scoped to this registry, for example `123456`", required = true) @PathParam("id") String id,
         @ApiParam(value = "An identifier of the tool version, scoped to this registry, for example `v1`", required = true) @PathParam("version_id") String versionId,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter
-            .convertToVersion(delegate.toolsIdVersionsVersionIdGet(id, versionId, securityContext, value, Optional.empty()));
+        return delegate.toolsIdVersionsVersionIdGet(id, versionId);
     }
 
     @GET
@@ -150,8 +143,7 @@ public class ToolsApiV1 {
         @ApiParam(value = "A unique identifier of the tool, scoped to this registry, for example `123456`", required = true) @PathParam("id") String id,
         @ApiParam(value = "An identifier of the tool version for this particular tool registry, for example `v1`", required = true) @PathParam("version_id") String versionId,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter.convertToVersion(
-            delegate.toolsIdVersionsVersionIdTypeDescriptorGet(type, id, versionId, securityContext, value, Optional.empty()));
+        return delegate.toolsIdVersionsVersionIdTypeDescriptorGet(type, id, versionId, value);
     }
 
     @GET
@@ -170,9 +162,7 @@ public class ToolsApiV1 {
         @ApiParam(value = "An identifier of the tool version for this particular tool registry, for example `v1`", required = true) @PathParam("version_id") String versionId,
         @ApiParam(value = "A relative path to the additional file (same directory or subdirectories), for example 'foo.cwl' would return a 'foo.cwl' from the same directory as the main descriptor", required = true) @PathParam("relative_path") String relativePath,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter.convertToVersion(delegate
-            .toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(type, id, versionId, relativePath, securityContext, value,
-                Optional.empty()));
+        return delegate.toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(type, id, versionId, relativePath, value);
     }
 
     @GET
@@ -190,7 +180,6 @@ public class ToolsApiV1 {
         @ApiParam(value = "A unique identifier of the tool, scoped to this registry, for example `123456`", required = true) @PathParam("id") String id,
         @ApiParam(value = "An identifier of the tool version for this particular tool registry, for example `v1`", required = true) @PathParam("version_id") String versionId,
         @Context SecurityContext securityContext, @Context ContainerRequestContext value) throws NotFoundException {
-        return ApiVersionConverter
-            .convertToVersion(delegate.toolsIdVersionsVersionIdTypeTestsGet(type, id, versionId, securityContext, value, Optional.empty()));
+        return delegate.toolsIdVersionsVersionIdTypeTestsGet(type, id, versionId, value);
     }
 }
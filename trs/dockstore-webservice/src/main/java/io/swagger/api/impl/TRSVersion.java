@@ -0,0 +1,48 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.swagger.api.impl;
+
+import io.dockstore.webservice.DockstoreWebserviceApplication;
+
+/**
+ * The versions of the GA4GH TRS that ToolsApiServiceImpl builds responses for.
+ * Both share the entry lookups and the response cache, they differ in their models, their paths and how headers are named.
+ * @since 1.9.0
+ */
+enum TRSVersion {
+    V1(DockstoreWebserviceApplication.GA4GH_API_PATH_V1, '-'),
+    V2_BETA(DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA, '_');
+
+    private final String apiPath;
+    private final char headerSeparator;
+
+    TRSVersion(String apiPath, char headerSeparator) {
+        this.apiPath = apiPath;
+        this.headerSeparator = headerSeparator;
+    }
+
+    String getApiPath() {
+        return apiPath;
+    }
+
+    /**
+     * @param name a header name separated by underscores, e.g. next_page
+     * @return the name of that header in this version, e.g. next-page in V1
+     */
+    String header(String name) {
+        return name.replace('_', headerSeparator);
+    }
+}
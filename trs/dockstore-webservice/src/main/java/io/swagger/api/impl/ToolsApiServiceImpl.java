@@ -26,10 +26,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.ws.rs.WebApplicationException;
@@ -42,10 +47,10 @@ import javax.ws.rs.core.SecurityContext;
 import avro.shaded.com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Splitter;
-import com.google.common.collect.Lists;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.dockstore.common.DescriptorLanguage;
 import io.dockstore.webservice.CustomWebApplicationException;
-import io.dockstore.webservice.DockstoreWebserviceApplication;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 import io.dockstore.webservice.core.BioWorkflow;
 import io.dockstore.webservice.core.Entry;
@@ -57,6 +62,9 @@ import io.dockstore.webservice.core.User;
 import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.core.database.PublishedEntryVersion;
+import io.dockstore.webservice.core.database.TRSCursor;
+import io.dockstore.webservice.core.database.TRSToolFilter;
 import io.dockstore.webservice.helpers.EntryVersionHelper;
 import io.dockstore.webservice.helpers.statelisteners.TRSListener;
 import io.dockstore.webservice.jdbi.ToolDAO;
@@ -66,11 +74,17 @@ import io.swagger.api.ToolsApiService;
 import io.swagger.model.Error;
 import io.swagger.model.ExtendedFileWrapper;
 import io.swagger.model.FileWrapper;
+import io.swagger.model.ToolDescriptor;
+import io.swagger.model.ToolDockerfile;
 import io.swagger.model.ToolFile;
+import io.swagger.model.ToolTestsV1;
+import io.swagger.model.ToolV1;
 import io.swagger.model.ToolVersion;
+import io.swagger.model.ToolVersionV1;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,7 +103,29 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
     private static final String BITBUCKET_PREFIX = "git@bitbucket.org:";
     private static final int SEGMENTS_IN_ID = 3;
     private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final long LAST_PAGE_CURSOR_SECONDS = 60;
+    private static final long MAX_LAST_PAGE_CURSORS = 1000;
+    private static final long MAX_FILE_PATH_INDEXES = 10_000;
+    private static final long FILE_PATH_INDEX_EXPIRY_MINUTES = 10;
     private static final Logger LOG = LoggerFactory.getLogger(ToolsApiServiceImpl.class);
+    /**
+     * The last page cursor of each filter and page size, shared by every version of TRS. Finding it counts every matching entry,
+     * so it is found for the first page of a listing and reused by the pages that follow, rather than found again for each page of a crawl.
+     */
+    private static final Cache<Pair<TRSToolFilter, Integer>, Optional<TRSCursor>> LAST_PAGE_CURSORS = CacheBuilder.newBuilder()
+        .maximumSize(MAX_LAST_PAGE_CURSORS)
+        .expireAfterWrite(LAST_PAGE_CURSOR_SECONDS, TimeUnit.SECONDS)
+        .build();
+
+    /**
+     * The files of recently served versions by every path that a TRS request may use for them, so that a file is found with one
+     * lookup rather than by normalizing the path of every file of the version on each request. Keyed by the version, its last update
+     * and its number of files, so a version whose files changed is indexed again.
+     */
+    private static final Cache<String, Map<String, Long>> FILE_PATH_INDEXES = CacheBuilder.newBuilder()
+        .maximumSize(MAX_FILE_PATH_INDEXES)
+        .expireAfterAccess(FILE_PATH_INDEX_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
 
     private static ToolDAO toolDAO = null;
     private static WorkflowDAO workflowDAO = null;
@@ -120,43 +156,59 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
     public Response toolsIdGet(String id, SecurityContext securityContext, ContainerRequestContext value, Optional<User> user) {
         ParsedRegistryID parsedID = new ParsedRegistryID(id);
         Entry<?, ?> entry = getEntry(parsedID, user);
-        return buildToolResponse(entry, null, false);
+        return buildToolResponse(entry, null, false, TRSVersion.V2_BETA);
     }
 
     @Override
     public Response toolsIdVersionsGet(String id, SecurityContext securityContext, ContainerRequestContext value, Optional<User> user) {
         ParsedRegistryID parsedID = new ParsedRegistryID(id);
         Entry<?, ?> entry = getEntry(parsedID, user);
-        return buildToolResponse(entry, null, true);
+        return buildToolResponse(entry, null, true, TRSVersion.V2_BETA);
     }
 
-    private Response buildToolResponse(Entry<?, ?> container, String version, boolean returnJustVersions) {
+    /**
+     * @param container          the entry
+     * @param version            if not null, respond with just this version
+     * @param returnJustVersions respond with the versions of the tool rather than the tool
+     * @param trsVersion         the version of the GA4GH API to respond with
+     * @return the tool, its versions, or one of its versions
+     */
+    Response buildToolResponse(Entry<?, ?> container, String version, boolean returnJustVersions, TRSVersion trsVersion) {
         Response response;
         if (container == null) {
             response = Response.status(Status.NOT_FOUND).build();
         } else if (!container.getIsPublished()) {
             // check whether this is registered
             response = Response.status(Status.UNAUTHORIZED).build();
+        } else if (trsVersion == TRSVersion.V1) {
+            ToolV1 tool = ToolsImplCommon.convertEntryToToolV1(container, config);
+            assert (tool != null);
+            response = buildToolResponse(tool, tool.getVersions(), ToolVersionV1::getName, version, returnJustVersions);
         } else {
             io.swagger.model.Tool tool = ToolsImplCommon.convertEntryToTool(container, config);
             assert (tool != null);
-            // filter out other versions if we're narrowing to a specific version
-            if (version != null) {
-                tool.getVersions().removeIf(v -> !v.getName().equals(version));
-                if (tool.getVersions().size() != 1) {
-                    response = Response.status(Status.NOT_FOUND).build();
-                } else {
-                    response = Response.ok(tool.getVersions().get(0)).build();
-                }
+            response = buildToolResponse(tool, tool.getVersions(), ToolVersion::getName, version, returnJustVersions);
+        }
+        return response;
+    }
+
+    private static <V> Response buildToolResponse(Object tool, List<V> versions, Function<V, String> getName, String version,
+        boolean returnJustVersions) {
+        // filter out other versions if we're narrowing to a specific version
+        if (version != null) {
+            versions.removeIf(v -> !getName.apply(v).equals(version));
+            if (versions.size() != 1) {
+                return Response.status(Status.NOT_FOUND).build();
             } else {
-                if (returnJustVersions) {
-                    response = Response.ok(tool.getVersions()).build();
-                } else {
-                    response = Response.ok(tool).build();
-                }
+                return Response.ok(versions.get(0)).build();
+            }
+        } else {
+            if (returnJustVersions) {
+                return Response.ok(versions).build();
+            } else {
+                return Response.ok(tool).build();
             }
         }
-        return response;
     }
 
     @Override
@@ -170,7 +222,7 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
             throw new RuntimeException(e);
         }
         Entry entry = getEntry(parsedID, user);
-        return buildToolResponse(entry, newVersionId, false);
+        return buildToolResponse(entry, newVersionId, false, TRSVersion.V2_BETA);
     }
 
     public Entry<?, ?> getEntry(ParsedRegistryID parsedID, Optional<User> user) {
@@ -202,17 +254,27 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
     @Override
     public Response toolsIdVersionsVersionIdTypeDescriptorGet(String type, String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext value, Optional<User> user) {
+        return toolsIdVersionsVersionIdTypeDescriptorGet(type, id, versionId, value, user, TRSVersion.V2_BETA);
+    }
+
+    Response toolsIdVersionsVersionIdTypeDescriptorGet(String type, String id, String versionId, ContainerRequestContext value,
+        Optional<User> user, TRSVersion trsVersion) {
         final Optional<DescriptorLanguage.FileType> fileType = DescriptorLanguage.getFileType(type);
         if (fileType.isEmpty()) {
             return Response.status(Status.NOT_FOUND).build();
         }
         return getFileByToolVersionID(id, versionId, fileType.get(), null,
-            contextContainsPlainText(value) || StringUtils.containsIgnoreCase(type, "plain"), user);
+            contextContainsPlainText(value) || StringUtils.containsIgnoreCase(type, "plain"), user, trsVersion);
     }
 
     @Override
     public Response toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(String type, String id, String versionId, String relativePath,
         SecurityContext securityContext, ContainerRequestContext value, Optional<User> user) {
+        return toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(type, id, versionId, relativePath, value, user, TRSVersion.V2_BETA);
+    }
+
+    Response toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(String type, String id, String versionId, String relativePath,
+        ContainerRequestContext value, Optional<User> user, TRSVersion trsVersion) {
         if (type == null) {
             return Response.status(Status.BAD_REQUEST).build();
         }
@@ -221,7 +283,7 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
             return Response.status(Status.NOT_FOUND).build();
         }
         return getFileByToolVersionID(id, versionId, fileType.get(), relativePath,
-            contextContainsPlainText(value) || StringUtils.containsIgnoreCase(type, "plain"), user);
+            contextContainsPlainText(value) || StringUtils.containsIgnoreCase(type, "plain"), user, trsVersion);
     }
 
     private boolean contextContainsPlainText(ContainerRequestContext value) {
@@ -231,6 +293,11 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
     @Override
     public Response toolsIdVersionsVersionIdTypeTestsGet(String type, String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext value, Optional<User> user) {
+        return toolsIdVersionsVersionIdTypeTestsGet(type, id, versionId, value, user, TRSVersion.V2_BETA);
+    }
+
+    Response toolsIdVersionsVersionIdTypeTestsGet(String type, String id, String versionId, ContainerRequestContext value,
+        Optional<User> user, TRSVersion trsVersion) {
         if (type == null) {
             return Response.status(Status.BAD_REQUEST).build();
         }
@@ -244,14 +311,14 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
         switch (fileType.get()) {
         case CWL_TEST_JSON:
         case DOCKSTORE_CWL:
-            return getFileByToolVersionID(id, versionId, CWL_TEST_JSON, null, plainTextResponse, user);
+            return getFileByToolVersionID(id, versionId, CWL_TEST_JSON, null, plainTextResponse, user, trsVersion);
         case WDL_TEST_JSON:
         case DOCKSTORE_WDL:
-            return getFileByToolVersionID(id, versionId, WDL_TEST_JSON, null, plainTextResponse, user);
+            return getFileByToolVersionID(id, versionId, WDL_TEST_JSON, null, plainTextResponse, user, trsVersion);
         case NEXTFLOW:
         case NEXTFLOW_CONFIG:
         case NEXTFLOW_TEST_PARAMS:
-            return getFileByToolVersionID(id, versionId, NEXTFLOW_TEST_PARAMS, null, plainTextResponse, user);
+            return getFileByToolVersionID(id, versionId, NEXTFLOW_TEST_PARAMS, null, plainTextResponse, user, trsVersion);
         default:
             return Response.status(Status.BAD_REQUEST).build();
         }
@@ -260,139 +327,107 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
     @Override
     public Response toolsIdVersionsVersionIdContainerfileGet(String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext value, Optional<User> user) {
+        return toolsIdVersionsVersionIdContainerfileGet(id, versionId, value, user, TRSVersion.V2_BETA);
+    }
+
+    Response toolsIdVersionsVersionIdContainerfileGet(String id, String versionId, ContainerRequestContext value, Optional<User> user,
+        TRSVersion trsVersion) {
         // matching behaviour of the descriptor endpoint
-        return getFileByToolVersionID(id, versionId, DOCKERFILE, null, contextContainsPlainText(value), user);
+        return getFileByToolVersionID(id, versionId, DOCKERFILE, null, contextContainsPlainText(value), user, trsVersion);
     }
 
-    @SuppressWarnings({"checkstyle:ParameterNumber", "checkstyle:MethodLength"})
+    @SuppressWarnings("checkstyle:ParameterNumber")
     @Override
     public Response toolsGet(String id, String alias, String registry, String organization, String name, String toolname,
         String description, String author, Boolean checker, String offset, Integer limit, SecurityContext securityContext,
         ContainerRequestContext value, Optional<User> user) {
+        return toolsGet(id, alias, registry, organization, name, toolname, description, author, checker, offset, limit, value, user,
+            TRSVersion.V2_BETA);
+    }
 
-        final Integer hashcode = new HashCodeBuilder().append(id).append(alias).append(registry).append(organization).append(name)
-            .append(toolname).append(description).append(author).append(checker).append(offset).append(limit)
-            .append(user.orElseGet(User::new).getId()).build();
+    @SuppressWarnings({"checkstyle:ParameterNumber", "checkstyle:MethodLength"})
+    Response toolsGet(String id, String alias, String registry, String organization, String name, String toolname, String description,
+        String author, Boolean checker, String offset, Integer limit, ContainerRequestContext value, Optional<User> user,
+        TRSVersion trsVersion) {
+
+        final Integer queryHashcode = new HashCodeBuilder().append(id).append(alias).append(registry).append(organization).append(name)
+            .append(toolname).append(description).append(author).append(checker).append(limit).append(user.orElseGet(User::new).getId())
+            .append(trsVersion).build();
+        final Integer hashcode = new HashCodeBuilder().append(queryHashcode).append(offset).build();
         final Optional<Response.ResponseBuilder> trsResponses = trsListener.getTrsResponse(hashcode);
         if (trsResponses.isPresent()) {
             return trsResponses.get().build();
         }
 
-        final List<Entry> all = new ArrayList<>();
-
+        final int actualLimit = MoreObjects.firstNonNull(limit, DEFAULT_PAGE_SIZE);
+        // the offset is either a page number or a cursor from a next_page or last_page link
+        final Optional<TRSCursor> cursor = parseCursor(offset);
+        final int offsetInteger = offset == null || cursor.isPresent() ? 0 : Integer.parseInt(offset);
+
+        final TRSToolFilter filter = new TRSToolFilter().setRegistry(registry).setOrganization(organization).setName(name)
+            .setToolname(toolname).setDescription(description).setAuthor(author).setChecker(checker);
+        List<Object> results = new ArrayList<>();
+        final List<Long> entryIds = new ArrayList<>();
+        int weight = 0;
+        final TRSToolFilter mayInclude;
+        TRSCursor nextPageCursor = null;
+        Optional<TRSCursor> lastPageCursor = Optional.empty();
         // short circuit id and alias filters, these are a bit weird because they have a max of one result
-        if (id != null) {
-            ParsedRegistryID parsedID = new ParsedRegistryID(id);
-            Entry entry = getEntry(parsedID, user);
-            all.add(entry);
-        } else if (alias != null) {
-            all.add(toolDAO.getGenericEntryByAlias(alias));
-        } else {
-            all.addAll(toolDAO.findAllPublished());
-            all.addAll(workflowDAO.findAllPublished());
-            all.sort(Comparator.comparing(Entry::getGitUrl));
-        }
-
-        List<io.swagger.model.Tool> results = new ArrayList<>();
-        for (Entry c : all) {
-            // filters just for tools
-            if (c instanceof Tool) {
-                Tool tool = (Tool)c;
-                // check each criteria. This sucks. Can we do this better with reflection? Or should we pre-convert?
-                if (registry != null && tool.getRegistry() != null) {
-                    if (!tool.getRegistry().contains(registry)) {
-                        continue;
-                    }
-                }
-                if (organization != null && tool.getNamespace() != null) {
-                    if (!tool.getNamespace().contains(organization)) {
-                        continue;
-                    }
-                }
-                if (name != null && tool.getName() != null) {
-                    if (!tool.getName().contains(name)) {
-                        continue;
-                    }
-                }
-                if (toolname != null && tool.getToolname() != null) {
-                    if (!tool.getToolname().contains(toolname)) {
-                        continue;
-                    }
-                }
-                if (checker != null && checker) {
-                    // tools are never checker workflows
-                    continue;
-                }
+        if (id != null || alias != null) {
+            Entry<?, ?> entry;
+            if (id != null) {
+                ParsedRegistryID parsedID = new ParsedRegistryID(id);
+                entry = getEntry(parsedID, user);
+            } else {
+                entry = toolDAO.getGenericEntryByAlias(alias);
             }
-            // filters just for tools
-            if (c instanceof Workflow) {
-                Workflow workflow = (Workflow)c;
-                // check each criteria. This sucks. Can we do this better with reflection? Or should we pre-convert?
-                if (registry != null && workflow.getSourceControl() != null) {
-                    if (!workflow.getSourceControl().toString().contains(registry)) {
-                        continue;
-                    }
-                }
-                if (organization != null && workflow.getOrganization() != null) {
-                    if (!workflow.getOrganization().contains(organization)) {
-                        continue;
-                    }
-                }
-                if (name != null && workflow.getRepository() != null) {
-                    if (!workflow.getRepository().contains(name)) {
-                        continue;
-                    }
-                }
-                if (toolname != null && workflow.getWorkflowName() != null) {
-                    if (!workflow.getWorkflowName().contains(toolname)) {
-                        continue;
-                    }
-                }
-                if (checker != null) {
-                    if (workflow.isIsChecker() != checker) {
-                        continue;
-                    }
+            if (entry != null && matchesFilter(entry, filter)) {
+                Object tool = convertEntryToTool(entry, trsVersion);
+                if (tool != null) {
+                    results.add(tool);
+                    entryIds.add(entry.getId());
+                    weight += 1 + entry.getWorkflowVersions().size();
                 }
             }
-            // common filters between tools and workflows
-            if (description != null && c.getDescription() != null) {
-                if (!c.getDescription().contains(description)) {
-                    continue;
-                }
+            // once found, only a change to that entry matters, otherwise any entry (the empty filter) could turn out to be the missing one
+            mayInclude = entryIds.isEmpty() ? new TRSToolFilter() : null;
+            if (offsetInteger > 0) {
+                results = new ArrayList<>();
             }
-            if (author != null && c.getAuthor() != null) {
-                if (!c.getAuthor().contains(author)) {
-                    continue;
-                }
+        } else {
+            // filter, order and page in the database so that only the requested page of entries is loaded
+            // one more entry than the page size is read to find out whether there is a next page
+            List<Entry<?, ?>> entries = cursor.isPresent() ? toolDAO.findAllTRSPublished(filter, cursor.get(), actualLimit + 1)
+                : toolDAO.findAllTRSPublished(filter, offsetInteger * actualLimit, actualLimit + 1);
+            if (entries.size() > actualLimit) {
+                entries = entries.subList(0, actualLimit);
+                nextPageCursor = TRSCursor.after(entries.get(actualLimit - 1));
             }
-            // if passing, for each container that matches the criteria, convert to standardised format and return
-            io.swagger.model.Tool tool = ToolsImplCommon.convertEntryToTool(c, config);
-            if (tool != null) {
-                results.add(tool);
+            for (Entry<?, ?> entry : entries) {
+                Object tool = convertEntryToTool(entry, trsVersion);
+                if (tool != null) {
+                    results.add(tool);
+                    entryIds.add(entry.getId());
+                    weight += 1 + entry.getWorkflowVersions().size();
+                }
             }
+            lastPageCursor = getLastPageCursor(toolDAO, filter, actualLimit, !cursor.isPresent() && offsetInteger == 0);
+            // any entry matching the filters can change the membership, order or count of the results
+            mayInclude = filter;
         }
 
-        final int actualLimit = MoreObjects.firstNonNull(limit, DEFAULT_PAGE_SIZE);
-
-        List<List<io.swagger.model.Tool>> pagedResults = Lists.partition(results, actualLimit);
-        int offsetInteger = 0;
-        if (offset != null) {
-            offsetInteger = Integer.parseInt(offset);
-        }
-        if (offsetInteger >= pagedResults.size()) {
-            results = new ArrayList<>();
-        } else {
-            results = pagedResults.get(offsetInteger);
-        }
         final Response.ResponseBuilder responseBuilder = Response.ok(results);
-        responseBuilder.header("current_offset", offset);
-        responseBuilder.header("current_limit", actualLimit);
+        responseBuilder.header(trsVersion.header("current_offset"), offset);
+        responseBuilder.header(trsVersion.header("current_limit"), actualLimit);
         try {
             int port = config.getExternalConfig().getPort() == null ? -1 : Integer.parseInt(config.getExternalConfig().getPort());
-            responseBuilder.header("self_link",
-                new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port,
-                    ObjectUtils.firstNonNull(config.getExternalConfig().getBasePath(), "") + value.getUriInfo().getRequestUri().getPath(),
-                    value.getUriInfo().getRequestUri().getQuery(), null).normalize().toURL().toString());
+            // V1 only has the paging headers
+            if (trsVersion != TRSVersion.V1) {
+                responseBuilder.header(trsVersion.header("self_link"),
+                    new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port,
+                        ObjectUtils.firstNonNull(config.getExternalConfig().getBasePath(), "") + value.getUriInfo().getRequestUri()
+                            .getPath(), value.getUriInfo().getRequestUri().getQuery(), null).normalize().toURL().toString());
+            }
             // construct links to other pages
             List<String> filters = new ArrayList<>();
             handleParameter(id, "id", filters);
@@ -404,24 +439,123 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
             handleParameter(registry, "registry", filters);
             handleParameter(String.valueOf(actualLimit), "limit", filters);
 
-            if (offsetInteger + 1 < pagedResults.size()) {
+            final String toolsPath =
+                ObjectUtils.firstNonNull(config.getExternalConfig().getBasePath(), "") + trsVersion.getApiPath() + "/tools";
+            if (nextPageCursor != null) {
                 URI nextPageURI = new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port,
-                    ObjectUtils.firstNonNull(config.getExternalConfig().getBasePath(), "") + DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA
-                        + "/tools", Joiner.on('&').join(filters) + "&offset=" + (offsetInteger + 1), null).normalize();
-                responseBuilder.header("next_page", nextPageURI.toURL().toString());
+                    toolsPath, Joiner.on('&').join(filters) + "&offset=" + nextPageCursor.encode(), null).normalize();
+                responseBuilder.header(trsVersion.header("next_page"), nextPageURI.toURL().toString());
             }
             URI lastPageURI = new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port,
-                ObjectUtils.firstNonNull(config.getExternalConfig().getBasePath(), "") + DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA
-                    + "/tools", Joiner.on('&').join(filters) + "&offset=" + (pagedResults.size() - 1), null).normalize();
-            responseBuilder.header("last_page", lastPageURI.toURL().toString());
+                toolsPath, Joiner.on('&').join(filters) + "&offset=" + lastPageCursor.map(TRSCursor::encode).orElse("0"), null)
+                .normalize();
+            responseBuilder.header(trsVersion.header("last_page"), lastPageURI.toURL().toString());
 
         } catch (URISyntaxException | MalformedURLException e) {
             throw new CustomWebApplicationException("Could not construct page links", HttpStatus.SC_BAD_REQUEST);
         }
-        trsListener.loadTRSResponse(hashcode, responseBuilder);
+        trsListener
+            .loadTRSResponse(hashcode, new TRSListener.CachedTRSResponse(responseBuilder, queryHashcode, entryIds, mayInclude, weight));
         return responseBuilder.build();
     }
 
+    private static Object convertEntryToTool(Entry<?, ?> entry, TRSVersion trsVersion) {
+        if (trsVersion == TRSVersion.V1) {
+            return ToolsImplCommon.convertEntryToToolV1(entry, config);
+        }
+        return ToolsImplCommon.convertEntryToTool(entry, config);
+    }
+
+    /**
+     * Gets the cursor of the last page of a TRS /tools listing
+     *
+     * @param dao       used to count the matching entries
+     * @param filter    the TRS filters
+     * @param limit     the page size
+     * @param firstPage true for the first page of a listing, which always finds the cursor again, later pages reuse it for a minute
+     * @return the cursor, empty if the listing has a single page
+     */
+    public static Optional<TRSCursor> getLastPageCursor(ToolDAO dao, TRSToolFilter filter, int limit, boolean firstPage) {
+        final Pair<TRSToolFilter, Integer> key = Pair.of(filter, limit);
+        if (!firstPage) {
+            Optional<TRSCursor> lastPageCursor = LAST_PAGE_CURSORS.getIfPresent(key);
+            if (lastPageCursor != null) {
+                return lastPageCursor;
+            }
+        }
+        Optional<TRSCursor> lastPageCursor = dao.findTRSPublishedLastPageCursor(filter, dao.countAllTRSPublished(filter), limit);
+        LAST_PAGE_CURSORS.put(key, lastPageCursor);
+        return lastPageCursor;
+    }
+
+    /**
+     * @param offset the offset parameter of the TRS /tools endpoint
+     * @return the cursor if the offset is one, empty for a page number or no offset
+     */
+    public static Optional<TRSCursor> parseCursor(String offset) {
+        if (offset == null || StringUtils.isNumeric(offset)) {
+            return Optional.empty();
+        }
+        return Optional.of(TRSCursor.decode(offset)
+            .orElseThrow(() -> new CustomWebApplicationException("Invalid offset: " + offset, HttpStatus.SC_BAD_REQUEST)));
+    }
+
+    /**
+     * Checks the TRS /tools filters against a single entry, used when an id or alias narrows the results down to one entry.
+     * Mirrors the database query in EntryDAO, a filter is ignored when the entry has no value for that field.
+     *
+     * @param c      the entry
+     * @param filter the TRS filters
+     * @return true if the entry passes every filter
+     */
+    public static boolean matchesFilter(Entry<?, ?> c, TRSToolFilter filter) {
+        if (filter.getToolClass() != null && !filter.getToolClass().equals(getToolClassName(c))) {
+            return false;
+        }
+        if (c instanceof Tool) {
+            Tool tool = (Tool)c;
+            if (!contains(tool.getRegistry(), filter.getRegistry()) || !contains(tool.getNamespace(), filter.getOrganization())
+                || !contains(tool.getName(), filter.getName()) || !contains(tool.getToolname(), filter.getToolname())) {
+                return false;
+            }
+            // tools are never checker workflows
+            if (filter.getChecker() != null && filter.getChecker()) {
+                return false;
+            }
+        }
+        if (c instanceof Workflow) {
+            Workflow workflow = (Workflow)c;
+            String sourceControl = workflow.getSourceControl() == null ? null : workflow.getSourceControl().toString();
+            if (!contains(sourceControl, filter.getRegistry()) || !contains(workflow.getOrganization(), filter.getOrganization())
+                || !contains(workflow.getRepository(), filter.getName()) || !contains(workflow.getWorkflowName(), filter.getToolname())) {
+                return false;
+            }
+            if (filter.getChecker() != null && workflow.isIsChecker() != filter.getChecker()) {
+                return false;
+            }
+        }
+        // common filters between tools and workflows
+        return contains(c.getDescription(), filter.getDescription()) && contains(c.getAuthor(), filter.getAuthor());
+    }
+
+    /**
+     * @param c an entry
+     * @return the name of the GA4GH tool class of the entry
+     */
+    public static String getToolClassName(Entry<?, ?> c) {
+        if (c instanceof Tool) {
+            return ToolClassesApiServiceImpl.getCommandLineToolClass().getName();
+        } else if (c instanceof Service) {
+            return ToolClassesApiServiceImpl.getServiceClass().getName();
+        } else {
+            return ToolClassesApiServiceImpl.getWorkflowClass().getName();
+        }
+    }
+
+    private static boolean contains(String value, String filter) {
+        return filter == null || value == null || value.contains(filter);
+    }
+
     private void handleParameter(String parameter, String queryName, List<String> filters) {
         if (parameter != null) {
             filters.add(queryName + "=" + parameter);
@@ -435,7 +569,7 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
      * @param builtPrefix  the prefix to use to start the extracted prefix
      * @return the prefix to access these files
      */
-    private static String extractHTTPPrefix(String gitUrl, String reference, String githubPrefix, String builtPrefix) {
+    public static String extractHTTPPrefix(String gitUrl, String reference, String githubPrefix, String builtPrefix) {
         StringBuilder urlBuilder = new StringBuilder();
         urlBuilder.append(builtPrefix);
         final String substring = gitUrl.substring(githubPrefix.length(), gitUrl.lastIndexOf(".git"));
@@ -451,145 +585,162 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
      * @param unwrap       unwrap the file and present the descriptor sans wrapper model
      * @return a specific file wrapped in a response
      */
+    @SuppressWarnings("checkstyle:MethodLength")
     private Response getFileByToolVersionID(String registryId, String versionId, DescriptorLanguage.FileType type, String relativePath,
-        boolean unwrap, Optional<User> user) {
+        boolean unwrap, Optional<User> user, TRSVersion trsVersion) {
 
         // if a version is provided, get that version, otherwise return the newest
         ParsedRegistryID parsedID = new ParsedRegistryID(registryId);
+        final String finalVersionId;
         try {
-            versionId = URLDecoder.decode(versionId, StandardCharsets.UTF_8.displayName());
+            finalVersionId = URLDecoder.decode(versionId, StandardCharsets.UTF_8.displayName());
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
-        Entry<?, ?> entry = getEntry(parsedID, user);
-
-        // check whether this is registered
-        if (entry == null) {
-            Response.StatusType status = getExtendedStatus(Status.NOT_FOUND, "incorrect id");
-            return Response.status(status).build();
-        }
 
-        boolean showHiddenVersions = false;
-        if (user.isPresent() && !AuthenticatedResourceInterface
-                .userCannotRead(user.get(), entry)) {
-            showHiddenVersions = true;
-        }
+        // the common case of a published entry is served from the requested version alone
+        final Optional<PublishedEntryVersion> publishedVersion = getPublishedVersion(parsedID, finalVersionId);
+        Entry<?, ?> entry = null;
+        final Version<?> version;
+        final String gitUrl;
+        if (publishedVersion.isPresent()) {
+            version = publishedVersion.get().getVersion();
+            gitUrl = publishedVersion.get().getGitUrl();
+        } else {
+            // unpublished entries and hidden versions need the whole entry to check the user's permissions
+            entry = getEntry(parsedID, user);
 
-        final io.swagger.model.Tool convertedTool = ToolsImplCommon.convertEntryToTool(entry, config, showHiddenVersions);
+            // check whether this is registered
+            if (entry == null) {
+                Response.StatusType status = getExtendedStatus(Status.NOT_FOUND, "incorrect id");
+                return Response.status(status).build();
+            }
 
-        String finalVersionId = versionId;
-        if (convertedTool == null || convertedTool.getVersions() == null) {
-            return Response.status(Status.NOT_FOUND).build();
-        }
-        final Optional<ToolVersion> convertedToolVersion = convertedTool.getVersions().stream()
-            .filter(toolVersion -> toolVersion.getName().equalsIgnoreCase(finalVersionId)).findFirst();
-        Optional<? extends Version> entryVersion;
-        if (entry instanceof Tool) {
-            Tool toolEntry = (Tool)entry;
-            entryVersion = toolEntry.getWorkflowVersions().stream().filter(toolVersion -> toolVersion.getName().equalsIgnoreCase(finalVersionId))
+            final boolean showHiddenVersions = user.isPresent() && !AuthenticatedResourceInterface.userCannotRead(user.get(), entry);
+            Optional<? extends Version> entryVersion = entry.getWorkflowVersions().stream()
+                .filter(entryVersionCandidate -> entryVersionCandidate.getName().equalsIgnoreCase(finalVersionId))
+                .filter(entryVersionCandidate -> !ToolsImplCommon.shouldHideToolVersion(entryVersionCandidate, showHiddenVersions))
                 .findFirst();
-        } else {
-            Workflow workflowEntry = (Workflow)entry;
-            entryVersion = workflowEntry.getWorkflowVersions().stream()
-                .filter(toolVersion -> toolVersion.getName().equalsIgnoreCase(finalVersionId)).findFirst();
-        }
-
-        if (entryVersion.isEmpty()) {
-            Response.StatusType status = getExtendedStatus(Status.NOT_FOUND, "version not found");
-            return Response.status(status).build();
+            if (entryVersion.isEmpty()) {
+                Response.StatusType status = getExtendedStatus(Status.NOT_FOUND, "version not found");
+                return Response.status(status).build();
+            }
+            version = entryVersion.get();
+            gitUrl = entry.getGitUrl();
         }
 
         String urlBuilt;
-        String gitUrl = entry.getGitUrl();
         if (gitUrl.startsWith(GITHUB_PREFIX)) {
-            urlBuilt = extractHTTPPrefix(gitUrl, entryVersion.get().getReference(), GITHUB_PREFIX, "https://raw.githubusercontent.com/");
+            urlBuilt = extractHTTPPrefix(gitUrl, version.getReference(), GITHUB_PREFIX, "https://raw.githubusercontent.com/");
         } else if (gitUrl.startsWith(BITBUCKET_PREFIX)) {
-            urlBuilt = extractHTTPPrefix(gitUrl, entryVersion.get().getReference(), BITBUCKET_PREFIX, "https://bitbucket.org/");
+            urlBuilt = extractHTTPPrefix(gitUrl, version.getReference(), BITBUCKET_PREFIX, "https://bitbucket.org/");
         } else {
             LOG.error("Found a git url neither from BitBucket or GitHub " + gitUrl);
             urlBuilt = "https://unimplemented_git_repository/";
         }
 
-        if (convertedToolVersion.isPresent()) {
-            final ToolVersion toolVersion = convertedToolVersion.get();
-            switch (type) {
-            case WDL_TEST_JSON:
-            case CWL_TEST_JSON:
-            case NEXTFLOW_TEST_PARAMS:
+        switch (type) {
+        case WDL_TEST_JSON:
+        case CWL_TEST_JSON:
+        case NEXTFLOW_TEST_PARAMS:
+            List<SourceFile> testSourceFiles = new ArrayList<>();
+            if (entry == null) {
+                testSourceFiles.addAll(version.getSourceFiles().stream().filter(sourceFile -> sourceFile.getType() == type)
+                    .collect(Collectors.toList()));
+            } else {
                 // this only works for test parameters associated with tools
-                List<SourceFile> testSourceFiles = new ArrayList<>();
                 try {
-                    testSourceFiles.addAll(toolHelper.getAllSourceFiles(entry.getId(), versionId, type, user));
+                    testSourceFiles.addAll(toolHelper.getAllSourceFiles(entry.getId(), finalVersionId, type, user));
                 } catch (CustomWebApplicationException e) {
                     LOG.warn("intentionally ignoring failure to get test parameters", e);
                 }
                 try {
-                    testSourceFiles.addAll(workflowHelper.getAllSourceFiles(entry.getId(), versionId, type, user));
+                    testSourceFiles.addAll(workflowHelper.getAllSourceFiles(entry.getId(), finalVersionId, type, user));
                 } catch (CustomWebApplicationException e) {
                     LOG.warn("intentionally ignoring failure to get source files", e);
                 }
+            }
 
-                List<FileWrapper> toolTestsList = new ArrayList<>();
+            List<FileWrapper> toolTestsList = new ArrayList<>();
 
-                for (SourceFile file : testSourceFiles) {
-                    FileWrapper toolTests = ToolsImplCommon.sourceFileToToolTests(urlBuilt, file);
-                    toolTestsList.add(toolTests);
-                }
-                return Response.status(Response.Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON).entity(
-                    unwrap ? toolTestsList.stream().map(FileWrapper::getContent).filter(Objects::nonNull).collect(Collectors.joining("\n"))
-                        : toolTestsList).build();
-            case DOCKERFILE:
-                Optional<SourceFile> potentialDockerfile = entryVersion.get().getSourceFiles().stream()
-                    .filter(sourcefile -> ((SourceFile)sourcefile).getType() == DOCKERFILE).findFirst();
-                if (potentialDockerfile.isPresent()) {
-                    ExtendedFileWrapper dockerfile = new ExtendedFileWrapper();
-                    dockerfile.setContent(potentialDockerfile.get().getContent());
-                    dockerfile.setUrl(urlBuilt + ((Tag)entryVersion.get()).getDockerfilePath());
-                    dockerfile.setOriginalFile(potentialDockerfile.get());
-                    toolVersion.setContainerfile(true);
+            for (SourceFile file : testSourceFiles) {
+                FileWrapper toolTests = ToolsImplCommon.sourceFileToToolTests(urlBuilt, file);
+                toolTestsList.add(toolTests);
+            }
+            final Object toolTestsEntity;
+            if (unwrap) {
+                toolTestsEntity = toolTestsList.stream().map(FileWrapper::getContent).filter(Objects::nonNull)
+                    .collect(Collectors.joining("\n"));
+            } else if (trsVersion == TRSVersion.V1) {
+                toolTestsEntity = toolTestsList.stream().map(ToolTestsV1::new).collect(Collectors.toList());
+            } else {
+                toolTestsEntity = toolTestsList;
+            }
+            return Response.status(Response.Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
+                .entity(toolTestsEntity).build();
+        case DOCKERFILE:
+            Optional<SourceFile> potentialDockerfile = version.getSourceFiles().stream()
+                .filter(sourcefile -> sourcefile.getType() == DOCKERFILE).findFirst();
+            if (potentialDockerfile.isPresent()) {
+                ExtendedFileWrapper dockerfile = new ExtendedFileWrapper();
+                dockerfile.setContent(potentialDockerfile.get().getContent());
+                dockerfile.setUrl(urlBuilt + ((Tag)version).getDockerfilePath());
+                dockerfile.setOriginalFile(potentialDockerfile.get());
+                final Object dockerfileEntity;
+                if (unwrap) {
+                    dockerfileEntity = dockerfile.getContent();
+                } else if (trsVersion == TRSVersion.V1) {
+                    // V1 has exactly one Dockerfile rather than a list
+                    dockerfileEntity = new ToolDockerfile(dockerfile);
+                } else {
                     List<FileWrapper> containerfilesList = new ArrayList<>();
                     containerfilesList.add(dockerfile);
-                    return Response.status(Response.Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
-                        .entity(unwrap ? dockerfile.getContent() : containerfilesList).build();
-                }
-            default:
-                String path;
-                // figure out primary descriptors and use them if no relative path is specified
-                if (entry instanceof Tool) {
-                    if (type == DOCKSTORE_WDL) {
-                        path = ((Tag)entryVersion.get()).getWdlPath();
-                    } else if (type == DOCKSTORE_CWL) {
-                        path = ((Tag)entryVersion.get()).getCwlPath();
-                    } else {
-                        return Response.status(Status.NOT_FOUND).build();
-                    }
-                } else {
-                    path = ((WorkflowVersion)entryVersion.get()).getWorkflowPath();
+                    dockerfileEntity = containerfilesList;
                 }
-                String searchPath;
-                if (relativePath != null) {
-                    searchPath = cleanRelativePath(relativePath);
+                return Response.status(Response.Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
+                    .entity(dockerfileEntity).build();
+            }
+        default:
+            String path;
+            // figure out primary descriptors and use them if no relative path is specified
+            if (version instanceof Tag) {
+                if (type == DOCKSTORE_WDL) {
+                    path = ((Tag)version).getWdlPath();
+                } else if (type == DOCKSTORE_CWL) {
+                    path = ((Tag)version).getCwlPath();
                 } else {
-                    searchPath = path;
+                    return Response.status(Status.NOT_FOUND).build();
                 }
+            } else {
+                path = ((WorkflowVersion)version).getWorkflowPath();
+            }
+            String searchPath;
+            if (relativePath != null) {
+                searchPath = cleanRelativePath(relativePath);
+            } else {
+                searchPath = path;
+            }
 
-                final Set<SourceFile> sourceFiles = entryVersion.get().getSourceFiles();
-
-                Optional<SourceFile> correctSourceFile = lookForFilePath(sourceFiles, searchPath, entryVersion.get().getWorkingDirectory());
-                if (correctSourceFile.isPresent()) {
-                    SourceFile sourceFile = correctSourceFile.get();
-                    // annoyingly, test json and Dockerfiles include a fullpath whereas descriptors are just relative to the main descriptor,
-                    // so in this stream we need to standardize relative to the main descriptor
-                    final Path workingPath = Paths.get("/", entryVersion.get().getWorkingDirectory());
-                    final Path relativize = workingPath
-                        .relativize(Paths.get(StringUtils.prependIfMissing(sourceFile.getAbsolutePath(), "/")));
-                    String sourceFileUrl =
-                        urlBuilt + StringUtils.prependIfMissing(entryVersion.get().getWorkingDirectory(), "/") + StringUtils
-                            .prependIfMissing(relativize.toString(), "/");
-                    ExtendedFileWrapper toolDescriptor = ToolsImplCommon.sourceFileToToolDescriptor(sourceFileUrl, sourceFile);
-                    return Response.status(Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
-                        .entity(unwrap ? sourceFile.getContent() : toolDescriptor).build();
+            Optional<SourceFile> correctSourceFile = lookForFilePath(version, searchPath);
+            if (correctSourceFile.isPresent()) {
+                SourceFile sourceFile = correctSourceFile.get();
+                // annoyingly, test json and Dockerfiles include a fullpath whereas descriptors are just relative to the main descriptor,
+                // so in this stream we need to standardize relative to the main descriptor
+                final Path workingPath = Paths.get("/", version.getWorkingDirectory());
+                final Path relativize = workingPath
+                    .relativize(Paths.get(StringUtils.prependIfMissing(sourceFile.getAbsolutePath(), "/")));
+                String sourceFileUrl =
+                    urlBuilt + StringUtils.prependIfMissing(version.getWorkingDirectory(), "/") + StringUtils
+                        .prependIfMissing(relativize.toString(), "/");
+                ExtendedFileWrapper toolDescriptor = ToolsImplCommon.sourceFileToToolDescriptor(sourceFileUrl, sourceFile);
+                final Object toolDescriptorEntity;
+                if (unwrap) {
+                    toolDescriptorEntity = sourceFile.getContent();
+                } else {
+                    toolDescriptorEntity = trsVersion == TRSVersion.V1 ? new ToolDescriptor(toolDescriptor) : toolDescriptor;
                 }
+                return Response.status(Status.OK).type(unwrap ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
+                    .entity(toolDescriptorEntity).build();
             }
         }
         Response.StatusType status = getExtendedStatus(Status.NOT_FOUND,
@@ -597,6 +748,31 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
         return Response.status(status).build();
     }
 
+    /**
+     * Looks up one version of a published entry without loading the entry or its other versions
+     *
+     * @param parsedID    the TRS id of the entry
+     * @param versionName the name of the version, matched case-insensitively
+     * @return the version, empty if the entry is not published, or if the version does not exist or is hidden
+     */
+    public Optional<PublishedEntryVersion> getPublishedVersion(ParsedRegistryID parsedID, String versionName) {
+        String entryPath = parsedID.getPath();
+        if (!parsedID.getToolName().isEmpty()) {
+            entryPath += "/" + parsedID.getToolName();
+        }
+        final List<PublishedEntryVersion> versions;
+        if (parsedID.toolType() == ParsedRegistryID.ToolType.TOOL) {
+            versions = toolDAO.findPublishedVersionByPath(entryPath, versionName);
+        } else if (parsedID.toolType() == ParsedRegistryID.ToolType.WORKFLOW) {
+            versions = workflowDAO.findPublishedVersionByPath(entryPath, versionName, BioWorkflow.class);
+        } else {
+            versions = workflowDAO.findPublishedVersionByPath(entryPath, versionName, Service.class);
+        }
+        // an exact match wins over one that only differs in case
+        return versions.stream().filter(publishedVersion -> !ToolsImplCommon.shouldHideToolVersion(publishedVersion.getVersion(), false))
+            .min(Comparator.comparing(publishedVersion -> !publishedVersion.getVersion().getName().equals(versionName)));
+    }
+
     private Response.StatusType getExtendedStatus(Status status, String additionalMessage) {
         return new Response.StatusType() {
             @Override
@@ -616,6 +792,57 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
         };
     }
 
+    /**
+     * Return a matching source file of a version, through an index of the paths of its files that is reused between requests
+     *
+     * @param version    the version to look in
+     * @param searchPath file to look for
+     * @return the file, empty if the version has no file at that path
+     */
+    public Optional<SourceFile> lookForFilePath(Version<?> version, String searchPath) {
+        Set<SourceFile> sourceFiles = version.getSourceFiles();
+        String workingDirectory = version.getWorkingDirectory();
+        if (version.getId() == 0) {
+            // not persisted, nothing identifies it between requests
+            return lookForFilePath(sourceFiles, searchPath, workingDirectory);
+        }
+        String key = version.getId() + "@" + version.getDbUpdateDate() + "/" + sourceFiles.size() + "/" + workingDirectory;
+        Map<String, Long> index = FILE_PATH_INDEXES.getIfPresent(key);
+        if (index == null) {
+            index = indexFilePaths(sourceFiles, workingDirectory);
+            FILE_PATH_INDEXES.put(key, index);
+        }
+        Long fileId = index.get(cleanRelativePath(searchPath).toLowerCase(Locale.ROOT));
+        if (fileId == null) {
+            return Optional.empty();
+        }
+        // the files of a version are loaded with it, the index only tells which one
+        Optional<SourceFile> sourceFile = sourceFiles.stream().filter(file -> file.getId() == fileId).findFirst();
+        if (sourceFile.isEmpty()) {
+            FILE_PATH_INDEXES.invalidate(key);
+            return lookForFilePath(sourceFiles, searchPath, workingDirectory);
+        }
+        return sourceFile;
+    }
+
+    /**
+     * Indexes the files of a version by every path that a TRS request may use for them.
+     * Paths are lower case since they are matched case-insensitively, and the first file in order wins a path, like a scan would.
+     *
+     * @param sourceFiles      the files of a version
+     * @param workingDirectory the working directory of the version
+     * @return a map from lower case path to the id of the file
+     */
+    static Map<String, Long> indexFilePaths(Set<SourceFile> sourceFiles, String workingDirectory) {
+        Map<String, Long> index = new HashMap<>();
+        for (SourceFile sourceFile : sourceFiles) {
+            String calculatedPath = calculatePath(sourceFile, workingDirectory);
+            index.putIfAbsent(calculatedPath.toLowerCase(Locale.ROOT), sourceFile.getId());
+            index.putIfAbsent(StringUtils.removeStart(calculatedPath, workingDirectory + "/").toLowerCase(Locale.ROOT), sourceFile.getId());
+        }
+        return index;
+    }
+
     /**
      * Return a matching source file
      *
@@ -629,13 +856,7 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
         searchPath = cleanRelativePath(searchPath);
 
         for (SourceFile sourceFile : sourceFiles) {
-            String calculatedPath = sourceFile.getAbsolutePath();
-            // annoyingly, test json and Dockerfiles include a fullpath whereas descriptors are just relative to the main descriptor,
-            // so we need to standardize relative to the main descriptor
-            if (SourceFile.TEST_FILE_TYPES.contains(sourceFile.getType())) {
-                calculatedPath = StringUtils.removeStart(cleanRelativePath(sourceFile.getPath()), cleanRelativePath(workingDirectory));
-            }
-            calculatedPath = cleanRelativePath(calculatedPath);
+            String calculatedPath = calculatePath(sourceFile, workingDirectory);
             if (searchPath.equalsIgnoreCase(calculatedPath) || searchPath
                 .equalsIgnoreCase(StringUtils.removeStart(calculatedPath, workingDirectory + "/"))) {
                 return Optional.of(sourceFile);
@@ -644,6 +865,16 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
         return Optional.empty();
     }
 
+    private static String calculatePath(SourceFile sourceFile, String workingDirectory) {
+        String calculatedPath = sourceFile.getAbsolutePath();
+        // annoyingly, test json and Dockerfiles include a fullpath whereas descriptors are just relative to the main descriptor,
+        // so we need to standardize relative to the main descriptor
+        if (SourceFile.TEST_FILE_TYPES.contains(sourceFile.getType())) {
+            calculatedPath = StringUtils.removeStart(cleanRelativePath(sourceFile.getPath()), cleanRelativePath(workingDirectory));
+        }
+        return cleanRelativePath(calculatedPath);
+    }
+
     @Override
     public Response toolsIdVersionsVersionIdTypeFilesGet(String type, String id, String versionId, SecurityContext securityContext,
         ContainerRequestContext containerRequestContext, Optional<User> user) {
@@ -744,7 +975,7 @@ public class ToolsApiServiceImpl extends ToolsApiService implements Authenticate
         }).sorted(Comparator.comparing(ToolFile::getPath)).collect(Collectors.toList());
     }
 
-    private String cleanRelativePath(String relativePath) {
+    public static String cleanRelativePath(String relativePath) {
         String cleanRelativePath = StringUtils.stripStart(relativePath, "./");
         return StringUtils.stripStart(cleanRelativePath, "/");
     }
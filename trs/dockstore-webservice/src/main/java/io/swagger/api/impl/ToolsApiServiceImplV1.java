@@ -0,0 +1,79 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.swagger.api.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+
+/**
+ * Implements the V1 GA4GH TRS. Responses are built in the V1 format directly from our entries using the same lookups
+ * and response cache as the V2 beta implementation, V1 is anonymous only.
+ * @since 1.9.0
+ */
+public class ToolsApiServiceImplV1 {
+    private final ToolsApiServiceImpl trs = new ToolsApiServiceImpl();
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    public Response toolsGet(String id, String registry, String organization, String name, String toolname, String description,
+        String author, String offset, Integer limit, ContainerRequestContext value) {
+        return trs.toolsGet(id, null, registry, organization, name, toolname, description, author, null, offset, limit, value,
+            Optional.empty(), TRSVersion.V1);
+    }
+
+    public Response toolsIdGet(String id) {
+        ToolsApiServiceImpl.ParsedRegistryID parsedID = new ToolsApiServiceImpl.ParsedRegistryID(id);
+        return trs.buildToolResponse(trs.getEntry(parsedID, Optional.empty()), null, false, TRSVersion.V1);
+    }
+
+    public Response toolsIdVersionsGet(String id) {
+        ToolsApiServiceImpl.ParsedRegistryID parsedID = new ToolsApiServiceImpl.ParsedRegistryID(id);
+        return trs.buildToolResponse(trs.getEntry(parsedID, Optional.empty()), null, true, TRSVersion.V1);
+    }
+
+    public Response toolsIdVersionsVersionIdGet(String id, String versionId) {
+        ToolsApiServiceImpl.ParsedRegistryID parsedID = new ToolsApiServiceImpl.ParsedRegistryID(id);
+        String newVersionId;
+        try {
+            newVersionId = URLDecoder.decode(versionId, StandardCharsets.UTF_8.displayName());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return trs.buildToolResponse(trs.getEntry(parsedID, Optional.empty()), newVersionId, false, TRSVersion.V1);
+    }
+
+    public Response toolsIdVersionsVersionIdDockerfileGet(String id, String versionId, ContainerRequestContext value) {
+        return trs.toolsIdVersionsVersionIdContainerfileGet(id, versionId, value, Optional.empty(), TRSVersion.V1);
+    }
+
+    public Response toolsIdVersionsVersionIdTypeDescriptorGet(String type, String id, String versionId, ContainerRequestContext value) {
+        return trs.toolsIdVersionsVersionIdTypeDescriptorGet(type, id, versionId, value, Optional.empty(), TRSVersion.V1);
+    }
+
+    public Response toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(String type, String id, String versionId, String relativePath,
+        ContainerRequestContext value) {
+        return trs.toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(type, id, versionId, relativePath, value, Optional.empty(),
+            TRSVersion.V1);
+    }
+
+    public Response toolsIdVersionsVersionIdTypeTestsGet(String type, String id, String versionId, ContainerRequestContext value) {
+        return trs.toolsIdVersionsVersionIdTypeTestsGet(type, id, versionId, value, Optional.empty(), TRSVersion.V1);
+    }
+}
@@ -47,7 +47,10 @@ import io.swagger.model.DescriptorType;
 import io.swagger.model.ExtendedFileWrapper;
 import io.swagger.model.FileWrapper;
 import io.swagger.model.Tool;
+import io.swagger.model.ToolClass;
+import io.swagger.model.ToolV1;
 import io.swagger.model.ToolVersion;
+import io.swagger.model.ToolVersionV1;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -93,7 +96,6 @@ public final class ToolsImplCommon {
     public static Tool convertEntryToTool(Entry container, DockstoreWebserviceConfiguration config, boolean showHiddenTags) {
         String url;
         String newID = getNewId(container);
-        boolean isDockstoreTool;
         url = getUrlFromId(config, newID);
         if (url == null) {
             return null;
@@ -114,7 +116,6 @@ public final class ToolsImplCommon {
         // tool specific
         io.dockstore.webservice.core.Tool castedContainer = null;
         if (container instanceof io.dockstore.webservice.core.Tool) {
-            isDockstoreTool = true;
             castedContainer = (io.dockstore.webservice.core.Tool)container;
 
             // The name is composed of the repository name and then the optional toolname split with a '/'
@@ -125,7 +126,6 @@ public final class ToolsImplCommon {
             tool.setOrganization(castedContainer.getNamespace());
             inputVersions = castedContainer.getWorkflowVersions();
         } else if (container instanceof Workflow) {
-            isDockstoreTool = false;
             // workflow specific
             Workflow workflow = (Workflow)container;
 
@@ -169,69 +169,184 @@ public final class ToolsImplCommon {
             toolVersion.setId(tool.getId() + ":" + version.getName());
 
             final Set<SourceFile> sourceFiles = version.getSourceFiles();
-            for (SourceFile file : sourceFiles) {
-                switch (file.getType()) {
-                case DOCKSTORE_CWL:
-                    toolVersion.addDescriptorTypeItem(DescriptorType.CWL);
-                    break;
-                case DOCKSTORE_WDL:
-                    toolVersion.addDescriptorTypeItem(DescriptorType.WDL);
-                    break;
-                case DOCKSTORE_GXFORMAT2:
-                    toolVersion.addDescriptorTypeItem(DescriptorType.GXFORMAT2);
-                    break;
-                // DOCKSTORE-2428 - demo how to add new workflow language
-                //                case DOCKSTORE_SWL:
-                //                    toolVersion.addDescriptorTypeItem(DescriptorType.SWL);
-                //                    break;
-                // TODO not sure how to treat service languages
-                case DOCKSTORE_SERVICE_TEST_JSON:
-                case DOCKSTORE_SERVICE_YML:
-                    toolVersion.addDescriptorTypeItem(DescriptorType.SERVICE);
-                    break;
-                case NEXTFLOW:
-                case NEXTFLOW_CONFIG:
-                    toolVersion.addDescriptorTypeItem(DescriptorType.NFL);
-                    break;
-                case DOCKERFILE:
-                    toolVersion.setContainerfile(true);
-                default:
-                    // Unhandled file type is apparently ignored
-                    break;
-                }
+            final EnumSet<DescriptorType> descriptorTypes = getDescriptorTypes(sourceFiles);
+            // ensure that descriptor is non-null before adding to list
+            if (!descriptorTypes.isEmpty()) {
+                toolVersion.setDescriptorType(Lists.newArrayList(descriptorTypes));
+                toolVersion.setContainerfile(hasDockerfile(sourceFiles));
+                toolVersion.setMetaVersion(getMetaVersion(version));
+                tool.getVersions().add(toolVersion);
             }
+        }
+        return tool;
+    }
+
+    /**
+     * Convert our Tool object to the GA4GH V1 Tool format, built directly from the entry rather than converted from the V2 format
+     *
+     * @param container our data object
+     * @param config    the webservice configuration, used to construct urls
+     * @return the V1 Tool, null if the entry is neither a tool nor a workflow
+     */
+    public static ToolV1 convertEntryToToolV1(Entry<?, ?> container, DockstoreWebserviceConfiguration config) {
+        String newID = getNewId(container);
+        String url = getUrlFromId(config, newID, DockstoreWebserviceApplication.GA4GH_API_PATH_V1);
+        if (url == null) {
+            return null;
+        }
+        ToolV1 tool = new ToolV1();
+        tool.setId(newID);
+        tool.setUrl(url);
+        tool.setAuthor(container.getAuthor() == null ? "Unknown author" : container.getAuthor());
+        tool.setMetaVersion(container.getLastUpdated() != null ? container.getLastUpdated().toString() : new Date(0).toString());
+        tool.setToolclass(getToolClass(container));
+        // Signed is currently not supported
+        tool.setSigned(false);
+        tool.setDescription(container.getDescription() != null ? container.getDescription() : "");
+        tool.setContains(new ArrayList<>());
+        if (container instanceof io.dockstore.webservice.core.Tool) {
+            io.dockstore.webservice.core.Tool dockstoreTool = (io.dockstore.webservice.core.Tool)container;
+            tool.setToolname(constructName(Arrays.asList(dockstoreTool.getName(), dockstoreTool.getToolname())));
+            tool.setOrganization(dockstoreTool.getNamespace());
+        } else if (container instanceof Workflow) {
+            Workflow workflow = (Workflow)container;
+            tool.setToolname(constructName(Arrays.asList(workflow.getRepository(), workflow.getWorkflowName())));
+            tool.setOrganization(workflow.getOrganization());
+        } else {
+            LOG.error("Unrecognized container type - neither tool or workflow: " + container.getId());
+            return null;
+        }
 
-            if (toolVersion.getDescriptorType() == null) {
-                toolVersion.setDescriptorType(new ArrayList<>());
+        Set<? extends Version> versions = container.getWorkflowVersions();
+        tool.setVerified(versions.stream().anyMatch(Version::isVerified));
+        tool.setVerifiedSource(getVerifiedSource(versions));
+        for (Version version : versions) {
+            if (shouldHideToolVersion(version, false)) {
+                continue;
             }
-            // ensure that descriptor is non-null before adding to list
-            if (!toolVersion.getDescriptorType().isEmpty()) {
-                // do some clean-up
-                if (isDockstoreTool) {
-                    Tag castedTag = (Tag)version;
-                    toolVersion.setMetaVersion(String.valueOf(castedTag.getLastBuilt() != null ? castedTag.getLastBuilt() : new Date(0)));
-                } else {
-                    io.dockstore.webservice.core.WorkflowVersion castedWorkflowVersion = (io.dockstore.webservice.core.WorkflowVersion)version;
-                    toolVersion.setMetaVersion(String.valueOf(castedWorkflowVersion.getLastModified() != null ? castedWorkflowVersion.getLastModified() : new Date(0)));
-                }
-                final List<DescriptorType> descriptorType = toolVersion.getDescriptorType();
-                if (!descriptorType.isEmpty()) {
-                    EnumSet<DescriptorType> set = EnumSet.copyOf(descriptorType);
-                    toolVersion.setDescriptorType(Lists.newArrayList(set));
-                }
+            ToolVersionV1 toolVersion = convertVersionToToolVersionV1(url, newID, version);
+            if (toolVersion != null) {
                 tool.getVersions().add(toolVersion);
             }
         }
         return tool;
     }
 
+    /**
+     * Convert one of our versions to the GA4GH V1 ToolVersion format
+     *
+     * @param toolUrl the V1 url of the tool
+     * @param toolId  the GA4GH id of the tool
+     * @param version the Dockstore version (Tag or WorkflowVersion)
+     * @return the V1 ToolVersion, null if the version has no descriptor
+     */
+    public static ToolVersionV1 convertVersionToToolVersionV1(String toolUrl, String toolId, Version<?> version) {
+        final Set<SourceFile> sourceFiles = version.getSourceFiles();
+        final EnumSet<DescriptorType> descriptorTypes = getDescriptorTypes(sourceFiles);
+        if (descriptorTypes.isEmpty()) {
+            return null;
+        }
+        ToolVersionV1 toolVersion = new ToolVersionV1();
+        try {
+            toolVersion.setUrl(getVersionUrl(toolUrl, version));
+        } catch (UnsupportedEncodingException e) {
+            LOG.error("Could not construct URL for our version with id: " + version.getId());
+            return null;
+        }
+        toolVersion.setName(version.getName());
+        toolVersion.setId(toolId + ":" + version.getName());
+        toolVersion.setImage(version instanceof Tag ? ((Tag)version).getImageId() : "");
+        toolVersion.setDockerfile(hasDockerfile(sourceFiles));
+        toolVersion.setMetaVersion(getMetaVersion(version));
+        toolVersion.setVerified(version.isVerified());
+        toolVersion.setVerifiedSource(Strings.nullToEmpty(GSON.toJson(version.getVerifiedSources())));
+        // V1 predates the other descriptor languages
+        List<ToolVersionV1.DescriptorTypeEnum> v1DescriptorTypes = new ArrayList<>();
+        if (descriptorTypes.contains(DescriptorType.CWL)) {
+            v1DescriptorTypes.add(ToolVersionV1.DescriptorTypeEnum.CWL);
+        }
+        if (descriptorTypes.contains(DescriptorType.WDL)) {
+            v1DescriptorTypes.add(ToolVersionV1.DescriptorTypeEnum.WDL);
+        }
+        toolVersion.setDescriptorType(v1DescriptorTypes);
+        return toolVersion;
+    }
+
+    /**
+     * @param toolUrl the GA4GH url of the tool, in any version of the GA4GH API
+     * @param version the Dockstore version (Tag or WorkflowVersion)
+     * @return the GA4GH url of the version
+     * @throws UnsupportedEncodingException When URL encoding has failed
+     */
+    public static String getVersionUrl(String toolUrl, Version<?> version) throws UnsupportedEncodingException {
+        return toolUrl + "/versions/" + URLEncoder.encode(version.getName(), StandardCharsets.UTF_8.displayName());
+    }
+
+    /**
+     * Gets the GA4GH descriptor types of a version from its source files
+     *
+     * @param sourceFiles the source files of the version
+     * @return the descriptor types, empty if the version has no descriptor
+     */
+    public static EnumSet<DescriptorType> getDescriptorTypes(Set<SourceFile> sourceFiles) {
+        EnumSet<DescriptorType> descriptorTypes = EnumSet.noneOf(DescriptorType.class);
+        for (SourceFile file : sourceFiles) {
+            switch (file.getType()) {
+            case DOCKSTORE_CWL:
+                descriptorTypes.add(DescriptorType.CWL);
+                break;
+            case DOCKSTORE_WDL:
+                descriptorTypes.add(DescriptorType.WDL);
+                break;
+            case DOCKSTORE_GXFORMAT2:
+                descriptorTypes.add(DescriptorType.GXFORMAT2);
+                break;
+            // DOCKSTORE-2428 - demo how to add new workflow language
+            //                case DOCKSTORE_SWL:
+            //                    descriptorTypes.add(DescriptorType.SWL);
+            //                    break;
+            // TODO not sure how to treat service languages
+            case DOCKSTORE_SERVICE_TEST_JSON:
+            case DOCKSTORE_SERVICE_YML:
+                descriptorTypes.add(DescriptorType.SERVICE);
+                break;
+            case NEXTFLOW:
+            case NEXTFLOW_CONFIG:
+                descriptorTypes.add(DescriptorType.NFL);
+                break;
+            default:
+                // Unhandled file type is apparently ignored
+                break;
+            }
+        }
+        return descriptorTypes;
+    }
+
+    public static boolean hasDockerfile(Set<SourceFile> sourceFiles) {
+        return sourceFiles.stream().anyMatch(file -> file.getType() == DescriptorLanguage.FileType.DOCKERFILE);
+    }
+
+    /**
+     * @param version the Dockstore version (Tag or WorkflowVersion)
+     * @return the GA4GH meta-version, when the tag was last built or the workflow version last modified
+     */
+    public static String getMetaVersion(Version<?> version) {
+        if (version instanceof Tag) {
+            Tag castedTag = (Tag)version;
+            return String.valueOf(castedTag.getLastBuilt() != null ? castedTag.getLastBuilt() : new Date(0));
+        } else {
+            io.dockstore.webservice.core.WorkflowVersion castedWorkflowVersion = (io.dockstore.webservice.core.WorkflowVersion)version;
+            return String.valueOf(castedWorkflowVersion.getLastModified() != null ? castedWorkflowVersion.getLastModified() : new Date(0));
+        }
+    }
+
     /**
      * Whether to hide the ToolVersion in TRS or not
      * @param version   Dockstore version
      * @param showHiddenTags    Whether the user has read access to the Dockstore version or not
      * @return
      */
-    private static boolean shouldHideToolVersion(Version version, boolean showHiddenTags) {
+    public static boolean shouldHideToolVersion(Version version, boolean showHiddenTags) {
         // Hide version if no name
         if (version.getName() == null) {
             return true;
@@ -265,12 +380,24 @@ public final class ToolsImplCommon {
      * @throws URISyntaxException When URI building goes wrong
      */
     public static String baseURL(DockstoreWebserviceConfiguration config) throws URISyntaxException {
+        return baseURL(config, DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA);
+    }
+
+    /**
+     * Get baseURL of a version of the GA4GH API from DockstoreWebServiceConfiguration
+     *
+     * @param config  The DockstoreWebServiceConfiguration
+     * @param apiPath The path of the GA4GH API version (e.g. "/api/ga4gh/v1")
+     * @return The baseURL for GA4GH tools endpoint of that version
+     * @throws URISyntaxException When URI building goes wrong
+     */
+    public static String baseURL(DockstoreWebserviceConfiguration config, String apiPath) throws URISyntaxException {
         int port = config.getExternalConfig().getPort() == null ? -1 : Integer.parseInt(config.getExternalConfig().getPort());
         // basePath should be "/" or "/api/"
         String basePath = MoreObjects.firstNonNull(config.getExternalConfig().getBasePath(), "/");
         // Example without the replace: "/api/" + "/api/ga4gh/v2" + "/tools/" = "/api//api/ga4gh/v2/tools"
         // Example with the replace: "/api/api/ga4gh/v2/tools"
-        String baseURI = basePath + DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA.replaceFirst("/", "") + "/tools/";
+        String baseURI = basePath + apiPath.replaceFirst("/", "") + "/tools/";
         URI uri = new URI(config.getExternalConfig().getScheme(), null, config.getExternalConfig().getHostname(), port, baseURI, null, null);
         return uri.toString();
     }
@@ -282,11 +409,22 @@ public final class ToolsImplCommon {
      * @return          The checker workflow's GA4GH Tool ID
      */
     private static String getCheckerWorkflowPath(DockstoreWebserviceConfiguration config, Entry entry) {
+        return getCheckerWorkflowPath(config, entry, DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA);
+    }
+
+    /**
+     * Gets the checker workflow GA4GH path (test_tool_path) in a version of the GA4GH API if it exists
+     * @param config    The dockstore configuration file in order to find the base GA4GH path
+     * @param entry     The entry to find its checker workflow path (test_tool_path)
+     * @param apiPath   The path of the GA4GH API version (e.g. "/api/ga4gh/v1")
+     * @return          The checker workflow's GA4GH Tool ID
+     */
+    public static String getCheckerWorkflowPath(DockstoreWebserviceConfiguration config, Entry<?, ?> entry, String apiPath) {
         if (entry.getCheckerWorkflow() == null) {
             return null;
         } else {
             String newID = WORKFLOW_PREFIX + "/" + entry.getCheckerWorkflow().getWorkflowPath();
-            return getUrlFromId(config, newID);
+            return getUrlFromId(config, newID, apiPath);
         }
     }
 
@@ -299,6 +437,17 @@ public final class ToolsImplCommon {
      */
     private static Tool setVerified(Tool tool, Set<? extends Version> versions) {
         tool.setVerified(versions.stream().anyMatch(Version::isVerified));
+        tool.setVerifiedSource(getVerifiedSource(versions));
+        return tool;
+    }
+
+    /**
+     * Gets the sources that the verified versions of a Tool were verified by
+     *
+     * @param versions The Dockstore versions (Tags or WorkflowVersions)
+     * @return The verified sources as a JSON array
+     */
+    private static String getVerifiedSource(Set<? extends Version> versions) {
         Set<String> verifiedSources = new TreeSet<>();
         versions.stream().filter(Version::isVerified).forEach(e -> {
             if (e.getVerifiedSources() != null) {
@@ -307,8 +456,7 @@ public final class ToolsImplCommon {
                 verifiedSources.addAll(stringList);
             }
         });
-        tool.setVerifiedSource(Strings.nullToEmpty(GSON.toJson(verifiedSources)));
-        return tool;
+        return Strings.nullToEmpty(GSON.toJson(verifiedSources));
     }
 
     /**
@@ -317,7 +465,7 @@ public final class ToolsImplCommon {
      * @param container The Dockstore Entry (Tool or Workflow)
      * @return The new ID of the Tool
      */
-    private static String getNewId(Entry container) {
+    public static String getNewId(Entry container) {
         if (container instanceof io.dockstore.webservice.core.Tool) {
             return ((io.dockstore.webservice.core.Tool)container).getToolPath();
         } else if (container instanceof Workflow) {
@@ -346,9 +494,7 @@ public final class ToolsImplCommon {
      */
     private static ToolVersion setGeneralToolVersionInfo(String url, ToolVersion toolVersion, Version version)
         throws UnsupportedEncodingException {
-        String globalVersionId;
-        globalVersionId = url + "/versions/" + URLEncoder.encode(version.getName(), StandardCharsets.UTF_8.displayName());
-        toolVersion.setUrl(globalVersionId);
+        toolVersion.setUrl(getVersionUrl(url, version));
         toolVersion.setName(version.getName());
         toolVersion.setVerified(version.isVerified());
         String[] toolVerifiedSources = version.getVerifiedSources();
@@ -386,15 +532,7 @@ public final class ToolsImplCommon {
         tool.setMetaVersion(container.getLastUpdated() != null ? container.getLastUpdated().toString() : new Date(0).toString());
 
         // Set type
-        if (container instanceof io.dockstore.webservice.core.Tool) {
-            tool.setToolclass(ToolClassesApiServiceImpl.getCommandLineToolClass());
-        } else if (container instanceof BioWorkflow) {
-            tool.setToolclass(ToolClassesApiServiceImpl.getWorkflowClass());
-        } else if (container instanceof Service) {
-            tool.setToolclass(ToolClassesApiServiceImpl.getServiceClass());
-        } else {
-            throw new UnsupportedOperationException("encountered unknown entry type in TRS");
-        }
+        tool.setToolclass(getToolClass(container));
 
         // Set signed.  Signed is currently not supported
         tool.setSigned(false);
@@ -404,13 +542,25 @@ public final class ToolsImplCommon {
         return tool;
     }
 
+    private static ToolClass getToolClass(Entry container) {
+        if (container instanceof io.dockstore.webservice.core.Tool) {
+            return ToolClassesApiServiceImpl.getCommandLineToolClass();
+        } else if (container instanceof BioWorkflow) {
+            return ToolClassesApiServiceImpl.getWorkflowClass();
+        } else if (container instanceof Service) {
+            return ToolClassesApiServiceImpl.getServiceClass();
+        } else {
+            throw new UnsupportedOperationException("encountered unknown entry type in TRS");
+        }
+    }
+
     /**
      * Construct the workflow/tool full name
      *
      * @param strings The components that make up the full name (repository name + optional workflow/tool name)
      * @return The full workflow/tool name
      */
-    private static String constructName(List<String> strings) {
+    public static String constructName(List<String> strings) {
         // The name is composed of the repository name and then the optional workflowname split with a '/'
         StringJoiner joiner = new StringJoiner("/");
         for (String string : strings) {
@@ -448,12 +598,23 @@ public final class ToolsImplCommon {
      * @return          The GA4GH /tools/{id} url
      */
     public static String getUrlFromId(DockstoreWebserviceConfiguration config, String toolID) {
+        return getUrlFromId(config, toolID, DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA);
+    }
+
+    /**
+     * Create the GA4GH /tools/{id} url for a specific GA4GH Tool in a version of the GA4GH API
+     * @param config    The DockstoreWebserviceConfiguration which is used to get the baseURL
+     * @param toolID    The ID of the GA4GH Tool
+     * @param apiPath   The path of the GA4GH API version (e.g. "/api/ga4gh/v1")
+     * @return          The GA4GH /tools/{id} url
+     */
+    public static String getUrlFromId(DockstoreWebserviceConfiguration config, String toolID, String apiPath) {
         String url;
         if (toolID == null) {
             return null;
         } else {
             try {
-                String baseURL = baseURL(config);
+                String baseURL = baseURL(config, apiPath);
                 url = getUrl(toolID, baseURL);
                 return url;
             } catch (URISyntaxException | UnsupportedEncodingException e) {
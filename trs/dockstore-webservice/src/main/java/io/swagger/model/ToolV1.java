@@ -60,6 +60,10 @@ public class ToolV1 {
     private List<ToolVersionV1> versions = new ArrayList<ToolVersionV1>();
 
 
+    public ToolV1() {
+        /** default constructor used when building V1 responses directly from entries */
+    }
+
     public ToolV1(Tool tool) {
         try {
             BeanUtils.copyProperties(this, tool);
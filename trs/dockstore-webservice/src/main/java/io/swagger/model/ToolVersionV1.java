@@ -51,6 +51,10 @@ public class ToolVersionV1  {
 
     private String verifiedSource = null;
 
+    public ToolVersionV1() {
+        /** default constructor used when building V1 responses directly from entries */
+    }
+
     public ToolVersionV1(ToolVersion toolVersion) {
         try {
             BeanUtils.copyProperties(this, toolVersion);
@@ -0,0 +1,222 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.VersionContent;
+import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import io.dockstore.webservice.jdbi.VersionContentDAO;
+import io.dockstore.webservice.languages.LanguageHandlerInterface;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DescriptorContentCacheTest {
+
+    private static final long VERSION_ID = 1L;
+    private static final String DESCRIPTOR_PATH = "/Dockstore.cwl";
+    private static final DescriptorLanguage.FileType CWL = DescriptorLanguage.FileType.DOCKSTORE_CWL;
+    private static final String DESCRIPTOR = "cwlVersion: v1.0\nclass: Workflow\ninputs: []\noutputs: []\nsteps: []\n";
+    private static final String DOCKER_DESCRIPTOR = "cwlVersion: v1.0\nclass: Workflow\n"
+        + "hints:\n  - class: DockerRequirement\n    dockerPull: quay.io/dockstore/bwa:1.0\ninputs: []\noutputs: []\n"
+        + "steps:\n  align:\n    run:\n      class: CommandLineTool\n      baseCommand: bwa\n      inputs: []\n      outputs: []\n"
+        + "    in: []\n    out: []\n";
+    private static final String BWA_PATH = "quay.io/dockstore/bwa";
+
+    private SessionFactory sessionFactory;
+    private ToolDAO toolDAO;
+    private VersionContentDAO versionContentDAO;
+    private DescriptorContentCache descriptorContentCache;
+
+    @Before
+    public void setUp() {
+        sessionFactory = Mockito.mock(SessionFactory.class);
+        toolDAO = Mockito.mock(ToolDAO.class);
+        versionContentDAO = Mockito.mock(VersionContentDAO.class);
+        when(versionContentDAO.findByVersionAndType(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString())).thenReturn(Optional.empty());
+        descriptorContentCache = new DescriptorContentCache(sessionFactory, toolDAO, versionContentDAO);
+    }
+
+    @Test
+    public void storedContentIsServedWithoutReadingSourceFiles() {
+        WorkflowVersion version = version(DESCRIPTOR);
+        stored(LanguageHandlerInterface.Type.DAG, "hash", "{\"nodes\":[]}");
+
+        Assert.assertEquals("{\"nodes\":[]}", descriptorContentCache.getVersionContent(CWL, version, LanguageHandlerInterface.Type.DAG));
+        verify(version, never()).getSourceFiles();
+    }
+
+    @Test
+    public void contentThatIsNotStoredIsBuiltWithoutStoringIt() {
+        WorkflowVersion version = version(DESCRIPTOR);
+
+        descriptorContentCache.getVersionContent(CWL, version, LanguageHandlerInterface.Type.TOOLS);
+        verify(version, atLeastOnce()).getSourceFiles();
+        verify(versionContentDAO, never()).save(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+            ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    /**
+     * Tests that a refresh stores the content of a version once, and only builds it again when its descriptors change
+     */
+    @Test
+    public void contentIsRebuiltWhenDescriptorsChange() {
+        descriptorContentCache.storeVersionContents(CWL, version(DESCRIPTOR));
+        ArgumentCaptor<String> hashes = ArgumentCaptor.forClass(String.class);
+        verify(versionContentDAO).save(ArgumentMatchers.eq(VERSION_ID), ArgumentMatchers.eq("DAG"), hashes.capture(),
+            ArgumentMatchers.any(), ArgumentMatchers.any());
+        verify(versionContentDAO).save(ArgumentMatchers.eq(VERSION_ID), ArgumentMatchers.eq("TOOLS"), hashes.capture(),
+            ArgumentMatchers.any(), ArgumentMatchers.any());
+        stored(LanguageHandlerInterface.Type.DAG, hashes.getAllValues().get(0), "dag");
+        stored(LanguageHandlerInterface.Type.TOOLS, hashes.getAllValues().get(1), "tools");
+
+        descriptorContentCache.storeVersionContents(CWL, version(DESCRIPTOR));
+        verify(versionContentDAO, times(2)).save(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+            ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        descriptorContentCache.storeVersionContents(CWL, version(DESCRIPTOR + "doc: changed\n"));
+        verifySaved("DAG", 2);
+        verifySaved("TOOLS", 2);
+    }
+
+    @Test
+    public void versionWithoutPrimaryDescriptorIsDropped() {
+        WorkflowVersion version = version(DESCRIPTOR);
+        version.setWorkflowPath("/missing.cwl");
+
+        descriptorContentCache.storeVersionContents(CWL, version);
+        verify(versionContentDAO).delete(VERSION_ID);
+    }
+
+    /**
+     * Tests that publishing or unpublishing a tool drops the contents that looked it up, in a transaction of its own
+     * when the change is not applied in a unit of work
+     */
+    @Test
+    public void toolPublishInvalidatesContentLinkingToIt() {
+        Transaction transaction = ownTransaction();
+        Tool tool = tool(1L, "bwa");
+
+        descriptorContentCache.bulkUpsert(List.of(tool, new BioWorkflow()));
+        verify(versionContentDAO).deleteLinkedTo(Set.of(BWA_PATH), Set.of(1L));
+        verify(transaction).commit();
+
+        descriptorContentCache.handleIndexUpdate(tool, StateManagerMode.UPDATE);
+        descriptorContentCache.handleIndexUpdate(new BioWorkflow(), StateManagerMode.DELETE);
+        verify(versionContentDAO).deleteLinkedTo(ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        // all that is known of a deleted tool is its id
+        Tool deletedTool = new Tool();
+        deletedTool.setId(2L);
+        descriptorContentCache.handleIndexUpdate(deletedTool, StateManagerMode.DELETE);
+        verify(versionContentDAO).deleteLinkedTo(Set.of(), Set.of(2L));
+    }
+
+    /**
+     * Tests that the tools a content looked up are stored with it, and that a change to one of them drops the content
+     * from memory as well
+     */
+    @Test
+    public void linkedToolsAreRecorded() {
+        ownTransaction();
+        when(toolDAO.findPublishedIdsByPath(ArgumentMatchers.anyCollection())).thenReturn(Map.of(BWA_PATH, Set.of(1L)));
+        WorkflowVersion version = version(DOCKER_DESCRIPTOR);
+
+        descriptorContentCache.storeVersionContents(CWL, version);
+        verify(versionContentDAO, times(2)).save(ArgumentMatchers.eq(VERSION_ID), ArgumentMatchers.anyString(),
+            ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.eq(Map.of(BWA_PATH, Set.of(1L))));
+        String tools = descriptorContentCache.getVersionContent(CWL, version, LanguageHandlerInterface.Type.TOOLS);
+        Assert.assertTrue(tools.contains("dockstore.org/containers/" + BWA_PATH));
+        verify(toolDAO, times(2)).findPublishedIdsByPath(ArgumentMatchers.anyCollection());
+
+        // a tool that is not linked to leaves the content in memory, the linked one drops it
+        descriptorContentCache.handleIndexUpdate(tool(2L, "gatk"), StateManagerMode.DELETE);
+        descriptorContentCache.getVersionContent(CWL, version, LanguageHandlerInterface.Type.TOOLS);
+        verify(toolDAO, times(2)).findPublishedIdsByPath(ArgumentMatchers.anyCollection());
+        Tool deletedTool = new Tool();
+        deletedTool.setId(1L);
+        descriptorContentCache.handleIndexUpdate(deletedTool, StateManagerMode.DELETE);
+        descriptorContentCache.getVersionContent(CWL, version, LanguageHandlerInterface.Type.TOOLS);
+        verify(toolDAO, times(3)).findPublishedIdsByPath(ArgumentMatchers.anyCollection());
+    }
+
+    private Transaction ownTransaction() {
+        Session session = Mockito.mock(Session.class);
+        Transaction transaction = Mockito.mock(Transaction.class);
+        when(sessionFactory.openSession()).thenReturn(session);
+        when(session.getSessionFactory()).thenReturn(sessionFactory);
+        when(session.beginTransaction()).thenReturn(transaction);
+        return transaction;
+    }
+
+    private static Tool tool(long id, String name) {
+        Tool tool = new Tool();
+        tool.setId(id);
+        tool.setRegistry("quay.io");
+        tool.setNamespace("dockstore");
+        tool.setName(name);
+        return tool;
+    }
+
+    private void verifySaved(String type, int count) {
+        verify(versionContentDAO, times(count)).save(ArgumentMatchers.eq(VERSION_ID), ArgumentMatchers.eq(type),
+            ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    private void stored(LanguageHandlerInterface.Type type, String contentHash, String content) {
+        VersionContent versionContent = Mockito.mock(VersionContent.class);
+        when(versionContent.getContentHash()).thenReturn(contentHash);
+        when(versionContent.getContent()).thenReturn(content);
+        when(versionContentDAO.findByVersionAndType(VERSION_ID, type.name())).thenReturn(Optional.of(versionContent));
+    }
+
+    private static WorkflowVersion version(String descriptor) {
+        WorkflowVersion version = Mockito.spy(new WorkflowVersion());
+        doReturn(VERSION_ID).when(version).getId();
+        version.setName("master");
+        version.setWorkflowPath(DESCRIPTOR_PATH);
+        SourceFile sourceFile = new SourceFile();
+        sourceFile.setType(DescriptorLanguage.FileType.DOCKSTORE_CWL);
+        sourceFile.setPath(DESCRIPTOR_PATH);
+        sourceFile.setAbsolutePath(DESCRIPTOR_PATH);
+        sourceFile.setContent(descriptor);
+        version.addSourceFile(sourceFile);
+        return version;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.EntryStateChange;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.helpers.statelisteners.StateListenerInterface;
+import io.dockstore.webservice.jdbi.EntryStateChangeDAO;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EntryStateChangeDispatcherTest {
+
+    private EntryStateChangeDAO stateChangeDAO;
+    private Session session;
+    private StateListenerInterface listeners;
+    private EntryStateChangeDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        stateChangeDAO = Mockito.mock(EntryStateChangeDAO.class);
+        session = Mockito.mock(Session.class);
+        SessionFactory sessionFactory = Mockito.mock(SessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        listeners = Mockito.mock(StateListenerInterface.class);
+        dispatcher = new EntryStateChangeDispatcher(stateChangeDAO, sessionFactory, listeners);
+    }
+
+    @Test
+    public void changesAreMergedPerEntryAndRemoved() {
+        Tool tool = addTool(1L, true);
+        EntryStateChange publish = change(1L, Tool.class, 1L, StateManagerMode.PUBLISH);
+        EntryStateChange update = change(2L, Tool.class, 1L, StateManagerMode.UPDATE);
+        // the workflow is no longer in the database
+        EntryStateChange delete = change(3L, BioWorkflow.class, 2L, StateManagerMode.DELETE);
+        when(stateChangeDAO.findOldest(ArgumentMatchers.anyInt())).thenReturn(Arrays.asList(publish, update, delete));
+
+        Assert.assertEquals(3, dispatcher.dispatchBatch());
+
+        verify(listeners).bulkUpsert(List.of(tool));
+        verify(listeners).handleIndexUpdate(ArgumentMatchers.argThat(entry -> entry instanceof BioWorkflow && entry.getId() == 2L),
+            ArgumentMatchers.eq(StateManagerMode.DELETE));
+        verify(stateChangeDAO).delete(List.of(1L, 2L, 3L));
+        Assert.assertEquals(0, publish.getAttempts());
+    }
+
+    @Test
+    public void failedChangesAreKeptForLater() {
+        Tool failing = addTool(1L, true);
+        Tool working = addTool(2L, true);
+        doThrow(new RuntimeException("listener is down")).when(listeners).handleIndexUpdate(failing, StateManagerMode.UPDATE);
+        EntryStateChange failedChange = change(1L, Tool.class, 1L, StateManagerMode.UPDATE);
+        EntryStateChange workingChange = change(2L, Tool.class, 2L, StateManagerMode.UPDATE);
+        when(stateChangeDAO.findOldest(ArgumentMatchers.anyInt())).thenReturn(Arrays.asList(failedChange, workingChange));
+
+        long before = System.currentTimeMillis();
+        Assert.assertEquals(2, dispatcher.dispatchBatch());
+
+        verify(listeners).handleIndexUpdate(working, StateManagerMode.UPDATE);
+        verify(stateChangeDAO).delete(List.of(2L));
+        Assert.assertEquals(1, failedChange.getAttempts());
+        Assert.assertTrue(failedChange.getNextAttemptAt().getTime() > before);
+        Assert.assertNull(workingChange.getNextAttemptAt());
+    }
+
+    @Test
+    public void failedBulkUpsertKeepsPublishedChanges() {
+        addTool(1L, true);
+        addTool(2L, false);
+        doThrow(new RuntimeException("index is down")).when(listeners).bulkUpsert(ArgumentMatchers.anyList());
+        EntryStateChange publish = change(1L, Tool.class, 1L, StateManagerMode.PUBLISH);
+        EntryStateChange unpublish = change(2L, Tool.class, 2L, StateManagerMode.DELETE);
+        when(stateChangeDAO.findOldest(ArgumentMatchers.anyInt())).thenReturn(Arrays.asList(publish, unpublish));
+
+        dispatcher.dispatchBatch();
+
+        verify(stateChangeDAO).delete(List.of(2L));
+        Assert.assertEquals(1, publish.getAttempts());
+        Assert.assertEquals(0, unpublish.getAttempts());
+    }
+
+    @Test
+    public void retryDelayDoublesUpToAnHour() {
+        long now = System.currentTimeMillis();
+        long first = EntryStateChangeDispatcher.getNextAttempt(0).getTime() - now;
+        long second = EntryStateChangeDispatcher.getNextAttempt(1).getTime() - now;
+        long last = EntryStateChangeDispatcher.getNextAttempt(Integer.MAX_VALUE).getTime() - now;
+        Assert.assertTrue(first >= TimeUnit.MINUTES.toMillis(1) && first < TimeUnit.MINUTES.toMillis(2));
+        Assert.assertTrue(second >= TimeUnit.MINUTES.toMillis(2) && second < TimeUnit.MINUTES.toMillis(3));
+        Assert.assertTrue(last >= TimeUnit.HOURS.toMillis(1) && last < TimeUnit.HOURS.toMillis(1) + TimeUnit.MINUTES.toMillis(1));
+    }
+
+    private Tool addTool(long id, boolean published) {
+        Tool tool = new Tool();
+        tool.setId(id);
+        tool.setIsPublished(published);
+        when(session.get(Tool.class.getName(), id)).thenReturn(tool);
+        return tool;
+    }
+
+    private static EntryStateChange change(long id, Class<?> entryType, long entryId, StateManagerMode mode) {
+        EntryStateChange change = Mockito.spy(new EntryStateChange(entryType.getName(), entryId, mode));
+        doReturn(id).when(change).getId();
+        return change;
+    }
+}
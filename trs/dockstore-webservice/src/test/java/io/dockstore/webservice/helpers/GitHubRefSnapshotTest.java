@@ -0,0 +1,183 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GitHubRefSnapshotTest {
+
+    private static final int LARGE_FILE_BYTES = 2 * 1024 * 1024;
+
+    @Test
+    public void readsFilesDirectoriesAndLinks() throws IOException {
+        GitHubRefSnapshot snapshot = GitHubRefSnapshot.read(new ByteArrayInputStream(tarball(false)), Long.MAX_VALUE).orElseThrow();
+
+        Assert.assertEquals("class: Workflow", snapshot.readFile("/workflows/main.cwl"));
+        Assert.assertEquals("class: CommandLineTool", snapshot.readFile("workflows/tools/tool.cwl"));
+        Assert.assertEquals(Arrays.asList("main.cwl", "tools"), snapshot.listFiles("workflows"));
+        // links are followed, whether they point at a file or a directory
+        Assert.assertEquals("class: Workflow", snapshot.readFile("main.cwl"));
+        Assert.assertEquals("class: CommandLineTool", snapshot.readFile("linked/tool.cwl"));
+        Assert.assertNull(snapshot.readFile("missing.cwl"));
+        Assert.assertNull("links out of the repository are not followed", snapshot.readFile("escape"));
+        Assert.assertFalse(snapshot.isOmitted("main.cwl"));
+    }
+
+    @Test
+    public void largeFilesAreListedButOmitted() throws IOException {
+        GitHubRefSnapshot snapshot = GitHubRefSnapshot.read(new ByteArrayInputStream(tarball(true)), Long.MAX_VALUE).orElseThrow();
+
+        Assert.assertTrue("too large to keep, read from the contents API instead", snapshot.isOmitted("data/large.txt"));
+        Assert.assertNull(snapshot.readFile("data/large.txt"));
+        Assert.assertEquals(List.of("large.txt"), snapshot.listFiles("data"));
+        Assert.assertTrue(snapshot.getContentBytes() < LARGE_FILE_BYTES);
+    }
+
+    @Test
+    public void tarballOverTheLimitHasNoSnapshot() throws IOException {
+        byte[] tarball = tarball(true);
+        Assert.assertTrue(GitHubRefSnapshot.read(new ByteArrayInputStream(tarball), tarball.length).isPresent());
+        // the limit is checked while a large entry is read, not only between entries
+        Assert.assertFalse(GitHubRefSnapshot.read(new ByteArrayInputStream(tarball), tarball.length / 2).isPresent());
+    }
+
+    @Test
+    public void refIsSnapshottedOnceSeveralFilesAreRead() throws ExecutionException {
+        AtomicInteger fetches = new AtomicInteger();
+        GitHubRefSnapshots snapshots = new GitHubRefSnapshots((repositoryId, reference) -> {
+            fetches.incrementAndGet();
+            return readTarball();
+        });
+
+        for (int i = 1; i < GitHubRefSnapshots.SNAPSHOT_AFTER_READS; i++) {
+            Assert.assertNull("the first reads go to the contents API", snapshots.get("dockstore/repo", "master", false));
+        }
+        Assert.assertNotNull(snapshots.get("dockstore/repo", "master", false));
+        Assert.assertNotNull(snapshots.get("dockstore/repo", "master", false));
+        Assert.assertEquals(1, fetches.get());
+
+        // reading ahead snapshots right away
+        Assert.assertNotNull(snapshots.get("dockstore/repo", "develop", true));
+        Assert.assertEquals(2, fetches.get());
+    }
+
+    /**
+     * Tests that reading ahead stops once what was read ahead and not read yet would not fit, and resumes once it is read
+     */
+    @Test
+    public void readAheadIsBoundedByWhatIsNotReadYet() throws ExecutionException {
+        AtomicInteger fetches = new AtomicInteger();
+        // room for one download in flight, and for a few bytes of snapshots read ahead
+        GitHubRefSnapshots snapshots = new GitHubRefSnapshots((repositoryId, reference) -> {
+            fetches.incrementAndGet();
+            return readTarball();
+        }, GitHubRefSnapshot.MAX_CONTENT_BYTES + 1);
+
+        Assert.assertNotNull(snapshots.get("dockstore/repo", "1.0", true));
+        Assert.assertNull("1.0 is not read yet", snapshots.get("dockstore/repo", "2.0", true));
+        Assert.assertEquals(1, fetches.get());
+
+        Assert.assertNotNull(snapshots.get("dockstore/repo", "1.0", false));
+        Assert.assertNotNull(snapshots.get("dockstore/repo", "2.0", true));
+        Assert.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void refThatCannotBeSnapshottedIsNotFetchedAgain() throws ExecutionException {
+        AtomicInteger fetches = new AtomicInteger();
+        GitHubRefSnapshots snapshots = new GitHubRefSnapshots((repositoryId, reference) -> {
+            fetches.incrementAndGet();
+            return Optional.empty();
+        });
+
+        Assert.assertNull(snapshots.get("dockstore/repo", "master", true));
+        Assert.assertNull(snapshots.get("dockstore/repo", "master", false));
+        Assert.assertNull(snapshots.get("dockstore/repo", "master", true));
+        Assert.assertEquals(1, fetches.get());
+    }
+
+    private static Optional<GitHubRefSnapshot> readTarball() {
+        try {
+            return GitHubRefSnapshot.read(new ByteArrayInputStream(tarball(false)), Long.MAX_VALUE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param withLargeFile true to add a file over the size of files kept in a snapshot, it is random so it does not compress
+     * @return a tarball laid out like the ones GitHub serves, under a directory named after the repository and commit
+     */
+    private static byte[] tarball(boolean withLargeFile) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(out))) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            addDirectory(tar, "dockstore-repo-abc123/");
+            addDirectory(tar, "dockstore-repo-abc123/workflows/");
+            addFile(tar, "dockstore-repo-abc123/workflows/main.cwl", "class: Workflow".getBytes(StandardCharsets.UTF_8));
+            addDirectory(tar, "dockstore-repo-abc123/workflows/tools/");
+            addFile(tar, "dockstore-repo-abc123/workflows/tools/tool.cwl", "class: CommandLineTool".getBytes(StandardCharsets.UTF_8));
+            addLink(tar, "dockstore-repo-abc123/main.cwl", "workflows/main.cwl");
+            addLink(tar, "dockstore-repo-abc123/linked", "workflows/tools");
+            addLink(tar, "dockstore-repo-abc123/escape", "../outside");
+            if (withLargeFile) {
+                byte[] large = new byte[LARGE_FILE_BYTES];
+                new Random(0).nextBytes(large);
+                addDirectory(tar, "dockstore-repo-abc123/data/");
+                addFile(tar, "dockstore-repo-abc123/data/large.txt", large);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void addDirectory(TarArchiveOutputStream tar, String name) throws IOException {
+        tar.putArchiveEntry(new TarArchiveEntry(name));
+        tar.closeArchiveEntry();
+    }
+
+    private static void addFile(TarArchiveOutputStream tar, String name, byte[] content) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+
+    private static void addLink(TarArchiveOutputStream tar, String name, String target) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name, TarArchiveEntry.LF_SYMLINK);
+        entry.setLinkName(target);
+        tar.putArchiveEntry(entry);
+        tar.closeArchiveEntry();
+    }
+}
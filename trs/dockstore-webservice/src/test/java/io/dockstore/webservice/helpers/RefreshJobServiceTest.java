@@ -0,0 +1,185 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.core.RefreshJob;
+import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.jdbi.RefreshJobDAO;
+import io.dockstore.webservice.jdbi.UserDAO;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RefreshJobServiceTest {
+
+    private static final long USER_ID = 1L;
+    private static final long OTHER_USER_ID = 2L;
+
+    private RefreshJobDAO refreshJobDAO;
+    private UserDAO userDAO;
+    private Session session;
+    private RefreshJobService refreshJobService;
+    private User user;
+
+    @Before
+    public void setUp() {
+        refreshJobDAO = Mockito.mock(RefreshJobDAO.class);
+        session = Mockito.mock(Session.class);
+        SessionFactory sessionFactory = Mockito.mock(SessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        userDAO = Mockito.mock(UserDAO.class);
+        refreshJobService = new RefreshJobService(refreshJobDAO, userDAO, sessionFactory);
+        user = new User();
+        user.setId(USER_ID);
+    }
+
+    @Test
+    public void submittedJobIsQueued() {
+        RefreshJob created = job(10L, USER_ID, RefreshJob.Type.WORKFLOW, 5L, RefreshJob.Status.QUEUED, null);
+        when(refreshJobDAO.findQueuedByTarget(RefreshJob.Type.WORKFLOW, 5L)).thenReturn(Optional.empty());
+        when(refreshJobDAO.create(ArgumentMatchers.any(RefreshJob.class))).thenReturn(10L);
+        when(refreshJobDAO.findById(10L)).thenReturn(created);
+
+        Assert.assertSame(created, refreshJobService.submit(user, RefreshJob.Type.WORKFLOW, 5L));
+        verify(refreshJobDAO).create(ArgumentMatchers.argThat(job -> job.getUserId() == USER_ID
+            && job.getType() == RefreshJob.Type.WORKFLOW && job.getTargetId() == 5L));
+        // the job is started once the transaction commits
+        verify(session).addEventListeners(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void refreshOfAQueuedTargetIsMerged() {
+        RefreshJob queued = job(10L, OTHER_USER_ID, RefreshJob.Type.TOOL, 5L, RefreshJob.Status.QUEUED, null);
+        when(refreshJobDAO.findQueuedByTarget(RefreshJob.Type.TOOL, 5L)).thenReturn(Optional.of(queued));
+
+        Assert.assertSame(queued, refreshJobService.submit(user, RefreshJob.Type.TOOL, 5L));
+        verify(refreshJobDAO, never()).create(ArgumentMatchers.any(RefreshJob.class));
+    }
+
+    @Test
+    public void userWithTooManyQueuedJobsIsRefused() {
+        when(refreshJobDAO.findQueuedByTarget(RefreshJob.Type.WORKFLOW, 5L)).thenReturn(Optional.empty());
+        when(refreshJobDAO.countQueuedByUser(USER_ID)).thenReturn((long)RefreshJobService.MAX_QUEUED_JOBS_PER_USER);
+
+        try {
+            refreshJobService.submit(user, RefreshJob.Type.WORKFLOW, 5L);
+            Assert.fail("the job should have been refused");
+        } catch (CustomWebApplicationException e) {
+            Assert.assertEquals(429, e.getResponse().getStatus());
+        }
+        verify(refreshJobDAO, never()).create(ArgumentMatchers.any(RefreshJob.class));
+    }
+
+    @Test
+    public void claimedJobsRespectPerUserAndPerTargetLimits() {
+        Timestamp recently = Timestamp.from(Instant.now().minus(Duration.ofMinutes(5)));
+        RefreshJob running = job(1L, USER_ID, RefreshJob.Type.WORKFLOW, 5L, RefreshJob.Status.RUNNING, recently);
+        RefreshJob sameTarget = job(2L, OTHER_USER_ID, RefreshJob.Type.WORKFLOW, 5L, RefreshJob.Status.QUEUED, null);
+        RefreshJob secondOfUser = job(3L, USER_ID, RefreshJob.Type.WORKFLOW, 6L, RefreshJob.Status.QUEUED, null);
+        RefreshJob thirdOfUser = job(4L, USER_ID, RefreshJob.Type.WORKFLOW, 7L, RefreshJob.Status.QUEUED, null);
+        RefreshJob otherUser = job(5L, OTHER_USER_ID, RefreshJob.Type.TOOL, 5L, RefreshJob.Status.QUEUED, null);
+        when(refreshJobDAO.findRunning()).thenReturn(Collections.singletonList(running));
+        when(refreshJobDAO.findQueued(ArgumentMatchers.anyInt())).thenReturn(Arrays.asList(sameTarget, secondOfUser, thirdOfUser, otherUser));
+
+        List<Long> claimed = refreshJobService.claimJobs(4);
+
+        Assert.assertEquals(Arrays.asList(3L, 5L), claimed);
+        Assert.assertEquals(RefreshJob.Status.RUNNING, secondOfUser.getStatus());
+        Assert.assertNotNull(secondOfUser.getStartedAt());
+        Assert.assertEquals("the workflow is already being refreshed", RefreshJob.Status.QUEUED, sameTarget.getStatus());
+        Assert.assertEquals("the user already has two jobs running", RefreshJob.Status.QUEUED, thirdOfUser.getStatus());
+    }
+
+    @Test
+    public void claimStopsAtTheLimit() {
+        RefreshJob first = job(1L, USER_ID, RefreshJob.Type.WORKFLOW, 5L, RefreshJob.Status.QUEUED, null);
+        RefreshJob second = job(2L, OTHER_USER_ID, RefreshJob.Type.WORKFLOW, 6L, RefreshJob.Status.QUEUED, null);
+        when(refreshJobDAO.findRunning()).thenReturn(Collections.emptyList());
+        when(refreshJobDAO.findQueued(ArgumentMatchers.anyInt())).thenReturn(Arrays.asList(first, second));
+
+        Assert.assertEquals(Collections.singletonList(1L), refreshJobService.claimJobs(1));
+        Assert.assertEquals(RefreshJob.Status.QUEUED, second.getStatus());
+    }
+
+    @Test
+    public void staleRunningJobsAreFailedAndFreeTheirSlots() {
+        Timestamp longAgo = Timestamp.from(Instant.now().minus(Duration.ofHours(3)));
+        RefreshJob stale = job(1L, USER_ID, RefreshJob.Type.WORKFLOW, 5L, RefreshJob.Status.RUNNING, longAgo);
+        RefreshJob neverStarted = job(2L, USER_ID, RefreshJob.Type.WORKFLOW, 6L, RefreshJob.Status.RUNNING, null);
+        RefreshJob sameTarget = job(3L, USER_ID, RefreshJob.Type.WORKFLOW, 5L, RefreshJob.Status.QUEUED, null);
+        when(refreshJobDAO.findRunning()).thenReturn(Arrays.asList(stale, neverStarted));
+        when(refreshJobDAO.findQueued(ArgumentMatchers.anyInt())).thenReturn(Collections.singletonList(sameTarget));
+
+        Assert.assertEquals(Collections.singletonList(3L), refreshJobService.claimJobs(1));
+        Assert.assertEquals(RefreshJob.Status.FAILED, stale.getStatus());
+        Assert.assertNotNull(stale.getFinishedAt());
+        Assert.assertNotNull(stale.getMessage());
+        Assert.assertEquals(RefreshJob.Status.FAILED, neverStarted.getStatus());
+    }
+
+    /**
+     * Tests that a job commits each time its refresh checkpoints, and is marked as succeeded in the last transaction
+     */
+    @Test
+    public void jobCommitsAtEachCheckpoint() {
+        RefreshJob running = job(1L, USER_ID, RefreshJob.Type.WORKFLOW, 5L, RefreshJob.Status.RUNNING, null);
+        when(refreshJobDAO.findById(1L)).thenReturn(running);
+        when(userDAO.findById(USER_ID)).thenReturn(user);
+        Transaction transaction = Mockito.mock(Transaction.class);
+        when(session.getTransaction()).thenReturn(transaction);
+        refreshJobService.setHandler(RefreshJob.Type.WORKFLOW, (refreshUser, targetId, checkpoint) -> {
+            Assert.assertSame(user, refreshUser);
+            Assert.assertEquals(5L, targetId);
+            checkpoint.run();
+            checkpoint.run();
+        });
+
+        refreshJobService.runJob(1L);
+        verify(transaction, times(2)).commit();
+        verify(session, times(2)).beginTransaction();
+        Assert.assertEquals(RefreshJob.Status.SUCCEEDED, running.getStatus());
+        Assert.assertNotNull(running.getFinishedAt());
+    }
+
+    private static RefreshJob job(long id, long userId, RefreshJob.Type type, long targetId, RefreshJob.Status status, Timestamp startedAt) {
+        RefreshJob job = Mockito.spy(new RefreshJob(userId, type, targetId));
+        doReturn(id).when(job).getId();
+        job.setStatus(status);
+        job.setStartedAt(startedAt);
+        return job;
+    }
+}
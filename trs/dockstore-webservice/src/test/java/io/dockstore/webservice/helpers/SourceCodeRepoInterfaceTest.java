@@ -0,0 +1,205 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.languages.CWLHandler;
+import io.dockstore.webservice.languages.WDLHandler;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SourceCodeRepoInterfaceTest {
+
+    private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+
+    private static final String REPOSITORY = "dockstore/imports";
+    private static final String BRANCH = "master";
+    private static final int MAX_CONCURRENT_READS = 8;
+
+    private final SourceCodeRepoInterface sourceCodeRepo = Mockito.mock(SourceCodeRepoInterface.class,
+        Mockito.withSettings().useConstructor().defaultAnswer(Mockito.CALLS_REAL_METHODS));
+
+    @Test
+    public void versionWhoseRefHasNotMovedIsKept() {
+        BioWorkflow workflow = workflow();
+        WorkflowVersion existingVersion = version(COMMIT, SourceCodeRepoInterface.PARSER_VERSION);
+        existingVersion.setValid(true);
+
+        Assert.assertTrue(sourceCodeRepo.isUnchanged(existingVersion, version(COMMIT, null), workflow));
+        Assert.assertFalse("the ref moved", sourceCodeRepo.isUnchanged(existingVersion, version("fedcba", null), workflow));
+        Assert.assertFalse("the version is new", sourceCodeRepo.isUnchanged(null, version(COMMIT, null), workflow));
+
+        existingVersion.setValid(false);
+        Assert.assertFalse("invalid versions are read again", sourceCodeRepo.isUnchanged(existingVersion, version(COMMIT, null), workflow));
+    }
+
+    @Test
+    public void versionReadByAnOlderParserIsReadAgain() {
+        BioWorkflow workflow = workflow();
+        WorkflowVersion olderVersion = version(COMMIT, SourceCodeRepoInterface.PARSER_VERSION - 1);
+        olderVersion.setValid(true);
+        WorkflowVersion unknownVersion = version(COMMIT, null);
+        unknownVersion.setValid(true);
+
+        Assert.assertFalse(sourceCodeRepo.isUnchanged(olderVersion, version(COMMIT, null), workflow));
+        Assert.assertFalse(sourceCodeRepo.isUnchanged(unknownVersion, version(COMMIT, null), workflow));
+    }
+
+    private static BioWorkflow workflow() {
+        BioWorkflow workflow = new BioWorkflow();
+        workflow.setDescriptorType(DescriptorLanguage.CWL);
+        return workflow;
+    }
+
+    private static WorkflowVersion version(String commit, Integer parserVersion) {
+        WorkflowVersion version = new WorkflowVersion();
+        version.setName("master");
+        version.setWorkflowPath("/Dockstore.cwl");
+        version.setCommitID(commit);
+        version.setParserVersion(parserVersion);
+        return version;
+    }
+
+    @Test
+    public void cwlImportsAreReadALevelAtATime() {
+        Map<String, String> files = new HashMap<>();
+        files.put("/a.cwl", "class: Workflow\nsteps:\n  b:\n    run: tools/b.cwl\n  c:\n    run: c.cwl\n");
+        files.put("/tools/b.cwl", "class: CommandLineTool\n");
+        // imports the descriptor and the file that imports it
+        files.put("/c.cwl", "class: Workflow\nsteps:\n  root:\n    run: Dockstore.cwl\n  a:\n    run: a.cwl\n");
+        List<String> reads = serveFiles(files);
+        String descriptor = "class: Workflow\nsteps:\n  a:\n    run: a.cwl\n  b:\n    run: {import: tools/b.cwl}\n";
+        WorkflowVersion version = importingVersion();
+
+        Map<String, SourceFile> imports = new CWLHandler()
+            .processImports(REPOSITORY, descriptor, version, sourceCodeRepo, "/Dockstore.cwl");
+
+        Assert.assertEquals(files.keySet(), imports.keySet());
+        Assert.assertEquals("tools/b.cwl", imports.get("/tools/b.cwl").getPath());
+        Assert.assertEquals("each file is read once", files.size(), reads.size());
+        Assert.assertEquals(List.of(Set.of("/a.cwl", "/tools/b.cwl"), Set.of("/c.cwl")),
+            readLevels(DescriptorLanguage.FileType.DOCKSTORE_CWL, version, 2));
+    }
+
+    @Test
+    public void wdlImportsAreReadALevelAtATime() {
+        Map<String, String> files = new HashMap<>();
+        files.put("/lib/a.wdl", "import \"b.wdl\" as b\nimport \"../tasks/c.wdl\" as c\n");
+        files.put("/lib/b.wdl", "task b {}\n");
+        // imports the descriptor
+        files.put("/tasks/c.wdl", "import \"../main.wdl\" as main\ntask c {}\n");
+        List<String> reads = serveFiles(files);
+        String descriptor = "import \"lib/a.wdl\" as a\nimport \"lib/b.wdl\" as b\nimport \"https://example.com/remote.wdl\" as remote\n";
+        WorkflowVersion version = importingVersion();
+
+        Map<String, SourceFile> imports = new WDLHandler().processImports(REPOSITORY, descriptor, version, sourceCodeRepo, "/main.wdl");
+
+        Assert.assertEquals(files.keySet(), imports.keySet());
+        Assert.assertEquals("each file is read once", files.size(), reads.size());
+        Assert.assertEquals(List.of(Set.of("/lib/a.wdl", "/lib/b.wdl"), Set.of("/tasks/c.wdl")),
+            readLevels(DescriptorLanguage.FileType.DOCKSTORE_WDL, version, 2));
+    }
+
+    @Test
+    public void concurrentReadsAreBoundedPerInstance() throws Exception {
+        AtomicInteger reading = new AtomicInteger();
+        AtomicInteger mostReading = new AtomicInteger();
+        CountDownLatch readsStarted = new CountDownLatch(MAX_CONCURRENT_READS);
+        CountDownLatch finishReads = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            mostReading.accumulateAndGet(reading.incrementAndGet(), Math::max);
+            readsStarted.countDown();
+            finishReads.await();
+            reading.decrementAndGet();
+            return "content of " + invocation.getArgument(1);
+        }).when(sourceCodeRepo).readFile(ArgumentMatchers.eq(REPOSITORY), ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < MAX_CONCURRENT_READS * 3; i++) {
+            paths.add("/file" + i + ".cwl");
+        }
+
+        CompletableFuture<Map<String, String>> contents = CompletableFuture.supplyAsync(() -> sourceCodeRepo
+            .readGitRepositoryFiles(REPOSITORY, DescriptorLanguage.FileType.DOCKSTORE_CWL, importingVersion(), paths));
+        Assert.assertTrue(readsStarted.await(10, TimeUnit.SECONDS));
+        // give reads past the limit a chance to start
+        Thread.sleep(200);
+        Assert.assertEquals(MAX_CONCURRENT_READS, reading.get());
+        finishReads.countDown();
+
+        Assert.assertEquals(paths.size(), contents.get(10, TimeUnit.SECONDS).size());
+        Assert.assertEquals("content of /file0.cwl", contents.get().get("/file0.cwl"));
+        Assert.assertEquals(MAX_CONCURRENT_READS, mostReading.get());
+    }
+
+    private static WorkflowVersion importingVersion() {
+        WorkflowVersion version = version(COMMIT, null);
+        version.setReference(BRANCH);
+        return version;
+    }
+
+    /**
+     * Serves files from a map, a file that is not in the map cannot be read
+     *
+     * @return the files read so far
+     */
+    private List<String> serveFiles(Map<String, String> files) {
+        List<String> reads = new ArrayList<>();
+        doAnswer(invocation -> {
+            String fileName = invocation.getArgument(1);
+            synchronized (reads) {
+                reads.add(fileName);
+            }
+            return files.get(fileName);
+        }).when(sourceCodeRepo).readFile(ArgumentMatchers.eq(REPOSITORY), ArgumentMatchers.anyString(), ArgumentMatchers.eq(BRANCH));
+        return reads;
+    }
+
+    /**
+     * @return the paths of the files read together, level by level
+     */
+    @SuppressWarnings("unchecked")
+    private List<Set<String>> readLevels(DescriptorLanguage.FileType fileType, WorkflowVersion version, int levels) {
+        ArgumentCaptor<Collection<String>> paths = ArgumentCaptor.forClass(Collection.class);
+        verify(sourceCodeRepo, times(levels)).readGitRepositoryFiles(ArgumentMatchers.eq(REPOSITORY), ArgumentMatchers.eq(fileType),
+            ArgumentMatchers.eq(version), paths.capture());
+        List<Set<String>> readLevels = new ArrayList<>();
+        paths.getAllValues().forEach(level -> readLevels.add(new HashSet<>(level)));
+        return readLevels;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
@@ -46,6 +47,7 @@ import org.junit.contrib.java.lang.system.SystemOutRule;
 import static io.dockstore.common.DescriptorLanguage.FileType.DOCKSTORE_CWL;
 
 public class PublicStateManagerIT {
+    private static final long FLUSH_TIMEOUT_SECONDS = 60;
     private static PublicStateManager manager;
 
     @Rule
@@ -105,12 +107,14 @@ public class PublicStateManagerIT {
     }
 
     @Test
-    public void addAnEntry() throws IOException {
+    public void addAnEntry() throws IOException, InterruptedException {
         Tool tool = getFakeTool(false);
         manager.handleIndexUpdate(tool, StateManagerMode.UPDATE);
 
         manager.bulkUpsert(Collections.singletonList(tool));
 
+        // the updates are sent in the background, the log only tells how they went once they are sent
+        Assert.assertTrue(manager.getElasticListener().getBulkIndexer().flush(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
         //TODO: should extend this by checking that elastic search holds the content we expect
         Assert.assertFalse(systemOutRule.getLog().contains("Connection refused"));
     }
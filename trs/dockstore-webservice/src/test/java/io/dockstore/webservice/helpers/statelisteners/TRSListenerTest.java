@@ -0,0 +1,117 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers.statelisteners;
+
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.database.TRSToolFilter;
+import io.dockstore.webservice.helpers.StateManagerMode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TRSListenerTest {
+
+    private static final int FIRST_QUERY = 1;
+    private static final int SECOND_QUERY = 2;
+
+    private final TRSListener trsListener = new TRSListener();
+
+    @Test
+    public void responseIsDroppedWithAnIncludedEntry() {
+        Tool included = tool(1L, "bwa");
+        load(FIRST_QUERY, 0, null, included.getId());
+
+        trsListener.handleIndexUpdate(tool(2L, "bwa"), StateManagerMode.UPDATE);
+        Assert.assertTrue(isCached(FIRST_QUERY, 0));
+        trsListener.handleIndexUpdate(included, StateManagerMode.UPDATE);
+        Assert.assertFalse(isCached(FIRST_QUERY, 0));
+    }
+
+    /**
+     * Tests that every page of a query is dropped when an entry passing its filters changes, and only then
+     */
+    @Test
+    public void queriesAreDroppedByEntriesPassingTheirFilters() {
+        TRSToolFilter bwa = new TRSToolFilter().setName("bwa");
+        load(FIRST_QUERY, 0, bwa);
+        load(FIRST_QUERY, 1, bwa);
+        load(SECOND_QUERY, 0, new TRSToolFilter().setName("gatk"));
+
+        trsListener.handleIndexUpdate(tool(1L, "samtools"), StateManagerMode.UPDATE);
+        Assert.assertTrue(isCached(FIRST_QUERY, 0));
+        Assert.assertTrue(isCached(SECOND_QUERY, 0));
+
+        trsListener.bulkUpsert(List.of(tool(1L, "bwa-mem")));
+        Assert.assertFalse(isCached(FIRST_QUERY, 0));
+        Assert.assertFalse(isCached(FIRST_QUERY, 1));
+        Assert.assertTrue(isCached(SECOND_QUERY, 0));
+    }
+
+    @Test
+    public void filtersOfAToolClassOnlyMatchThatClass() {
+        load(FIRST_QUERY, 0, new TRSToolFilter().setToolClass("Workflow"));
+        load(SECOND_QUERY, 0, new TRSToolFilter().setToolClass("CommandLineTool"));
+
+        trsListener.handleIndexUpdate(tool(1L, "bwa"), StateManagerMode.UPDATE);
+        Assert.assertTrue(isCached(FIRST_QUERY, 0));
+        Assert.assertFalse(isCached(SECOND_QUERY, 0));
+
+        BioWorkflow workflow = new BioWorkflow();
+        workflow.setId(2L);
+        trsListener.handleIndexUpdate(workflow, StateManagerMode.UPDATE);
+        Assert.assertFalse(isCached(FIRST_QUERY, 0));
+    }
+
+    /**
+     * Tests that a query is still found through its filter after one of its pages is dropped, and a new one is loaded
+     */
+    @Test
+    public void queriesStayRegisteredWhilePagesAreCached() {
+        TRSToolFilter any = new TRSToolFilter();
+        Tool included = tool(1L, "bwa");
+        load(FIRST_QUERY, 0, any, included.getId());
+        trsListener.handleIndexUpdate(included, StateManagerMode.UPDATE);
+        load(FIRST_QUERY, 1, any);
+
+        trsListener.handleIndexUpdate(tool(2L, "gatk"), StateManagerMode.UPDATE);
+        Assert.assertFalse(isCached(FIRST_QUERY, 1));
+    }
+
+    private void load(int query, int page, TRSToolFilter mayInclude, Long... entryIds) {
+        trsListener.loadTRSResponse(key(query, page),
+            new TRSListener.CachedTRSResponse(Response.ok(), query, List.of(entryIds), mayInclude, 1));
+    }
+
+    private boolean isCached(int query, int page) {
+        return trsListener.getTrsResponse(key(query, page)).isPresent();
+    }
+
+    private static int key(int query, int page) {
+        return query * 100 + page;
+    }
+
+    private static Tool tool(long id, String name) {
+        Tool tool = new Tool();
+        tool.setId(id);
+        tool.setName(name);
+        return tool;
+    }
+}
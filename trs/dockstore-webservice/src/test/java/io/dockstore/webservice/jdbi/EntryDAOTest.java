@@ -0,0 +1,280 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.jdbi;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.Service;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.database.TRSCursor;
+import io.dockstore.webservice.core.database.TRSToolFilter;
+import org.hibernate.MultiIdentifierLoadAccess;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the TRS /tools queries of the entry DAOs. The session runs the native queries against a list of published entries,
+ * following the cursor, order and window of each query, so that paging can be checked end to end. Filters are checked on the SQL.
+ */
+public class EntryDAOTest {
+
+    private static final String SHARED_GIT_URL = "git@github.com:test_org/shared.git";
+    private static final int PAGE_SIZE = 2;
+
+    private final List<Entry<?, ?>> published = new ArrayList<>();
+    private final List<String> executedSql = new ArrayList<>();
+    private final Map<String, Object> parameters = new HashMap<>();
+    private ToolDAO toolDAO;
+
+    @Before
+    public void setUp() {
+        Session session = Mockito.mock(Session.class);
+        when(session.createNativeQuery(ArgumentMatchers.anyString())).thenAnswer(invocation -> nativeQuery(invocation.getArgument(0)));
+        when(session.byMultipleIds(ArgumentMatchers.any(Class.class))).thenAnswer(invocation -> loader(invocation.getArgument(0)));
+        SessionFactory sessionFactory = Mockito.mock(SessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        toolDAO = new ToolDAO(sessionFactory);
+
+        // inserted out of order, three entries share a gitUrl and one has none
+        published.add(entry(new Tool(), 7L, "git@github.com:test_org/zebra.git"));
+        published.add(entry(new BioWorkflow(), 5L, SHARED_GIT_URL));
+        published.add(entry(new Tool(), 3L, SHARED_GIT_URL));
+        published.add(entry(new Service(), 4L, SHARED_GIT_URL));
+        published.add(entry(new Tool(), 6L, null));
+        published.add(entry(new BioWorkflow(), 2L, "git@github.com:test_org/alpha.git"));
+        published.add(entry(new Tool(), 1L, "git@github.com:test_org/middle.git"));
+    }
+
+    @Test
+    public void entriesAreOrderedByGitUrlThenId() {
+        List<Long> ids = ids(toolDAO.findAllTRSPublished(new TRSToolFilter(), 0, Integer.MAX_VALUE));
+        Assert.assertEquals(List.of(6L, 2L, 1L, 3L, 4L, 5L, 7L), ids);
+        Assert.assertEquals(7L, toolDAO.countAllTRSPublished(new TRSToolFilter()));
+    }
+
+    @Test
+    public void offsetPagesSkipWholePages() {
+        Assert.assertEquals(List.of(1L, 3L), ids(toolDAO.findAllTRSPublished(new TRSToolFilter(), PAGE_SIZE, PAGE_SIZE)));
+        Assert.assertEquals(List.of(7L), ids(toolDAO.findAllTRSPublished(new TRSToolFilter(), 3 * PAGE_SIZE, PAGE_SIZE)));
+        Assert.assertEquals(List.of(), ids(toolDAO.findAllTRSPublished(new TRSToolFilter(), 4 * PAGE_SIZE, PAGE_SIZE)));
+    }
+
+    /**
+     * Tests that following cursors visits every entry once, in order, including where a page boundary falls between entries
+     * with the same gitUrl
+     */
+    @Test
+    public void cursorsCrossEntriesWithEqualGitUrls() {
+        final TRSToolFilter filter = new TRSToolFilter();
+        List<Long> visited = new ArrayList<>();
+        List<Entry<?, ?>> page = toolDAO.findAllTRSPublished(filter, 0, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            visited.addAll(ids(page));
+            page = toolDAO.findAllTRSPublished(filter, TRSCursor.after(page.get(page.size() - 1)), PAGE_SIZE);
+        }
+        Assert.assertEquals(List.of(6L, 2L, 1L, 3L, 4L, 5L, 7L), visited);
+
+        // a page starting within the entries sharing a gitUrl
+        List<Entry<?, ?>> withinShared = toolDAO.findAllTRSPublished(filter, new TRSCursor(SHARED_GIT_URL, 3L), PAGE_SIZE);
+        Assert.assertEquals(List.of(4L, 5L), ids(withinShared));
+        // the entry without a gitUrl sorts first, as an empty one
+        Assert.assertEquals(List.of(2L, 1L), ids(toolDAO.findAllTRSPublished(filter, new TRSCursor("", 6L), PAGE_SIZE)));
+    }
+
+    @Test
+    public void nextPageCursorIsTheLastEntryOfThePage() {
+        final TRSToolFilter filter = new TRSToolFilter();
+        assertCursor(SHARED_GIT_URL, 3L, toolDAO.findTRSPublishedNextPageCursor(filter, null, PAGE_SIZE, PAGE_SIZE));
+        assertCursor(SHARED_GIT_URL, 4L, toolDAO.findTRSPublishedNextPageCursor(filter, new TRSCursor(SHARED_GIT_URL, 3L), 0, 1));
+        // a full last page and a short one have no next page
+        Assert.assertEquals(Optional.empty(), toolDAO.findTRSPublishedNextPageCursor(filter, new TRSCursor(SHARED_GIT_URL, 4L), 0,
+            PAGE_SIZE));
+        Assert.assertEquals(Optional.empty(), toolDAO.findTRSPublishedNextPageCursor(filter, null, 3 * PAGE_SIZE, PAGE_SIZE));
+    }
+
+    @Test
+    public void lastPageCursorLeavesTheRemainderOnTheLastPage() {
+        final TRSToolFilter filter = new TRSToolFilter();
+        // seven entries in pages of two, the last page holds the seventh entry alone
+        TRSCursor lastPage = toolDAO.findTRSPublishedLastPageCursor(filter, published.size(), PAGE_SIZE).orElseThrow();
+        Assert.assertEquals(List.of(7L), ids(toolDAO.findAllTRSPublished(filter, lastPage, PAGE_SIZE)));
+        // in pages of seven or more everything is on the first page
+        Assert.assertEquals(Optional.empty(), toolDAO.findTRSPublishedLastPageCursor(filter, published.size(), published.size()));
+
+        // without the seventh entry the last page is full
+        published.removeIf(entry -> entry.getId() == 7L);
+        lastPage = toolDAO.findTRSPublishedLastPageCursor(filter, published.size(), PAGE_SIZE).orElseThrow();
+        Assert.assertEquals(List.of(4L, 5L), ids(toolDAO.findAllTRSPublished(filter, lastPage, PAGE_SIZE)));
+    }
+
+    /**
+     * Tests that each filter is a substring match on the matching column of each table, letting null columns through
+     */
+    @Test
+    public void filtersMatchTheColumnsOfEachTable() {
+        assertFilter(new TRSToolFilter().setRegistry("quay.io"), "registry", "sourcecontrol", "registry", "%quay.io%");
+        assertFilter(new TRSToolFilter().setOrganization("test_org"), "namespace", "organization", "organization", "%test\\_org%");
+        assertFilter(new TRSToolFilter().setName("bwa"), "name", "repository", "name", "%bwa%");
+        assertFilter(new TRSToolFilter().setToolname("100%"), "toolname", "workflowname", "toolname", "%100\\%%");
+        assertFilter(new TRSToolFilter().setDescription("aligner"), "description", "description", "description", "%aligner%");
+        assertFilter(new TRSToolFilter().setAuthor("jane"), "author", "author", "author", "%jane%");
+    }
+
+    @Test
+    public void toolClassAndCheckerFiltersPickTheTables() {
+        toolDAO.countAllTRSPublished(new TRSToolFilter().setToolClass("CommandLineTool"));
+        Assert.assertEquals(List.of("tool"), tables(lastSql()));
+        toolDAO.countAllTRSPublished(new TRSToolFilter().setToolClass("Service"));
+        Assert.assertEquals(List.of("service"), tables(lastSql()));
+
+        // tools and services are never checkers
+        toolDAO.countAllTRSPublished(new TRSToolFilter().setChecker(true));
+        Assert.assertEquals(List.of("workflow"), tables(lastSql()));
+        Assert.assertTrue(lastSql().contains("ischecker = :checker"));
+        Assert.assertEquals(true, parameters.get("checker"));
+        toolDAO.countAllTRSPublished(new TRSToolFilter().setChecker(false));
+        Assert.assertEquals(List.of("tool", "service", "workflow"), tables(lastSql()));
+        Assert.assertEquals(false, parameters.get("checker"));
+
+        // no table can match
+        Assert.assertEquals(List.of(), toolDAO.findAllTRSPublished(new TRSToolFilter().setToolClass("CommandLineTool").setChecker(true),
+            0, PAGE_SIZE));
+        Assert.assertTrue(lastSql().contains("WHERE FALSE"));
+    }
+
+    private void assertFilter(TRSToolFilter filter, String toolColumn, String workflowColumn, String parameter, String pattern) {
+        toolDAO.findAllTRSPublished(filter, 0, PAGE_SIZE);
+        String sql = lastSql();
+        String[] selects = sql.split(" UNION ALL ");
+        Assert.assertEquals(List.of("tool", "service", "workflow"), tables(sql));
+        Assert.assertTrue(selects[0].contains(containsCondition(toolColumn, parameter)));
+        Assert.assertTrue(selects[1].contains(containsCondition(workflowColumn, parameter)));
+        Assert.assertTrue(selects[2].contains(containsCondition(workflowColumn, parameter)));
+        Assert.assertEquals(pattern, parameters.get(parameter));
+    }
+
+    private static String containsCondition(String column, String parameter) {
+        return "(" + column + " IS NULL OR " + column + " LIKE :" + parameter + ")";
+    }
+
+    private static void assertCursor(String gitUrl, long id, Optional<TRSCursor> cursor) {
+        Assert.assertTrue(cursor.isPresent());
+        Assert.assertEquals(gitUrl, cursor.get().getGitUrl());
+        Assert.assertEquals(id, cursor.get().getId());
+    }
+
+    private String lastSql() {
+        return executedSql.get(executedSql.size() - 1);
+    }
+
+    private static List<String> tables(String sql) {
+        return Stream.of(sql.split(" UNION ALL ")).map(select -> select.replaceAll("(?s).* FROM (\\w+) WHERE.*", "$1"))
+            .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Entry<?, ?>> entries) {
+        return entries.stream().map(Entry::getId).collect(Collectors.toList());
+    }
+
+    private static Entry<?, ?> entry(Entry<?, ?> entry, long id, String gitUrl) {
+        entry.setId(id);
+        entry.setGitUrl(gitUrl);
+        return entry;
+    }
+
+    private static String type(Entry<?, ?> entry) {
+        if (entry instanceof Tool) {
+            return "tool";
+        }
+        return entry instanceof Service ? "service" : "workflow";
+    }
+
+    /**
+     * A query that runs against the published entries, with the cursor, order and window of the SQL it was created for
+     */
+    private NativeQuery<?> nativeQuery(String sql) {
+        executedSql.add(sql);
+        parameters.clear();
+        final int[] window = {0, Integer.MAX_VALUE};
+        return Mockito.mock(NativeQuery.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+            case "setParameter":
+                parameters.put(invocation.getArgument(0), invocation.getArgument(1));
+                return invocation.getMock();
+            case "setFirstResult":
+                window[0] = invocation.getArgument(0);
+                return invocation.getMock();
+            case "setMaxResults":
+                window[1] = invocation.getArgument(0);
+                return invocation.getMock();
+            case "list":
+            case "getResultList":
+                return rows(sql, window[0], window[1]);
+            case "getSingleResult":
+                return BigInteger.valueOf(matching(sql).count());
+            default:
+                return Mockito.RETURNS_DEFAULTS.answer(invocation);
+            }
+        });
+    }
+
+    private Stream<Entry<?, ?>> matching(String sql) {
+        if (sql.contains("WHERE FALSE")) {
+            return Stream.empty();
+        }
+        Comparator<Entry<?, ?>> order = Comparator.<Entry<?, ?>, String>comparing(Entry::getGitUrl).thenComparingLong(Entry::getId);
+        Stream<Entry<?, ?>> entries = published.stream();
+        if (parameters.containsKey("afterGitUrl")) {
+            Entry<?, ?> after = entry(new Tool(), (long)parameters.get("afterId"), (String)parameters.get("afterGitUrl"));
+            entries = entries.filter(entry -> order.compare(entry, after) > 0);
+        }
+        return entries.sorted(sql.contains(" DESC") ? order.reversed() : order);
+    }
+
+    private List<Object[]> rows(String sql, int firstResult, int maxResults) {
+        return matching(sql).skip(firstResult).limit(maxResults).map(entry -> sql.startsWith("SELECT type, id")
+            ? new Object[] {type(entry), BigInteger.valueOf(entry.getId())}
+            : new Object[] {entry.getGitUrl(), BigInteger.valueOf(entry.getId())}).collect(Collectors.toList());
+    }
+
+    private MultiIdentifierLoadAccess<?> loader(Class<?> entityClass) {
+        return Mockito.mock(MultiIdentifierLoadAccess.class, invocation -> {
+            List<?> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> published.stream().filter(entry -> entityClass.isInstance(entry) && id.equals(entry.getId()))
+                .findFirst().orElse(null)).filter(Objects::nonNull).collect(Collectors.toList());
+        });
+    }
+}
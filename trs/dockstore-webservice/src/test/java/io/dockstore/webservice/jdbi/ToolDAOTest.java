@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.jdbi;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.dockstore.webservice.core.database.ToolPath;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ToolDAOTest {
+
+    private static final int NAMES = 2500;
+
+    /**
+     * Tests that the published tools at many paths are looked up a bounded number of names at a time
+     */
+    @Test
+    public void publishedPathsAreFoundInBatches() {
+        Query query = Mockito.mock(Query.class, Mockito.RETURNS_SELF);
+        when(query.list()).thenReturn(List.of(new ToolPath(1L, "quay.io", "test_org", "name0", null)), List.of());
+        Session session = Mockito.mock(Session.class);
+        when(session.getNamedQuery(ArgumentMatchers.anyString())).thenReturn(query);
+        SessionFactory sessionFactory = Mockito.mock(SessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        ToolDAO toolDAO = new ToolDAO(sessionFactory);
+
+        List<String> paths = IntStream.range(0, NAMES).mapToObj(i -> "quay.io/test_org/name" + i).collect(Collectors.toList());
+        Assert.assertEquals(Set.of("quay.io/test_org/name0"), toolDAO.findPublishedPaths(paths));
+
+        ArgumentCaptor<Collection> names = ArgumentCaptor.forClass(Collection.class);
+        verify(query, times(3)).setParameterList(ArgumentMatchers.eq("names"), names.capture());
+        List<Integer> sizes = names.getAllValues().stream().map(Collection::size).collect(Collectors.toList());
+        Assert.assertEquals(List.of(1000, 1000, 500), sizes);
+        Set<Object> queried = new HashSet<>();
+        names.getAllValues().forEach(queried::addAll);
+        Assert.assertEquals(IntStream.range(0, NAMES).mapToObj(i -> "name" + i).collect(Collectors.toSet()), queried);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.jdbi;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VersionContentDAOTest {
+
+    private static final long VERSION_ID = 1L;
+
+    private Session session;
+    private NativeQuery query;
+    private VersionContentDAO versionContentDAO;
+
+    @Before
+    public void setUp() {
+        session = Mockito.mock(Session.class);
+        query = Mockito.mock(NativeQuery.class, Mockito.RETURNS_SELF);
+        when(session.createNativeQuery(Mockito.anyString())).thenReturn(query);
+        SessionFactory sessionFactory = Mockito.mock(SessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        versionContentDAO = new VersionContentDAO(sessionFactory);
+    }
+
+    /**
+     * Tests that a save replaces what is stored for the version, and that a null content is typed
+     */
+    @Test
+    public void saveIsAnUpsert() {
+        versionContentDAO.save(VERSION_ID, "DAG", "hash", null, Map.of());
+
+        String sql = executedSql().get(0);
+        Assert.assertTrue(sql.startsWith("INSERT INTO version_content (versionid, type, contenthash, content, dbupdatedate)"));
+        Assert.assertTrue(sql.contains("ON CONFLICT (versionid, type) DO UPDATE SET contenthash = EXCLUDED.contenthash"));
+        // the upsert and the drop of the old links
+        verify(query, times(2)).setParameter("versionId", VERSION_ID);
+        verify(query, times(2)).setParameter("type", "DAG");
+        verify(query).setParameter("contentHash", "hash");
+        verify(query).setParameter("content", null, StringType.INSTANCE);
+        // the links of the old content are dropped, there are none to add
+        Assert.assertEquals(List.of("DELETE FROM version_content_tool WHERE versionid = :versionId AND type = :type"),
+            executedSql().subList(1, executedSql().size()));
+        verify(query, times(2)).executeUpdate();
+    }
+
+    /**
+     * Tests that the tools a content links to are stored with it, a path without a published tool with a null id
+     */
+    @Test
+    public void saveStoresTheLinkedTools() {
+        Map<String, Set<Long>> linkedTools = new LinkedHashMap<>();
+        linkedTools.put("quay.io/dockstore/bwa", Set.of(2L));
+        linkedTools.put("quay.io/dockstore/gatk", Set.of());
+        versionContentDAO.save(VERSION_ID, "TOOLS", "hash", "[]", linkedTools);
+
+        Assert.assertEquals("INSERT INTO version_content_tool (versionid, type, toolpath, toolid) "
+            + "VALUES (:versionId, :type, :toolPath0, :toolId0), (:versionId, :type, :toolPath1, :toolId1)", executedSql().get(2));
+        verify(query).setParameter("toolPath0", "quay.io/dockstore/bwa");
+        verify(query).setParameter("toolId0", 2L, LongType.INSTANCE);
+        verify(query).setParameter("toolPath1", "quay.io/dockstore/gatk");
+        verify(query).setParameter("toolId1", null, LongType.INSTANCE);
+        verify(query, times(3)).executeUpdate();
+    }
+
+    @Test
+    public void deleteDropsTheVersion() {
+        versionContentDAO.delete(VERSION_ID);
+        Assert.assertEquals(List.of("DELETE FROM version_content WHERE versionid = :versionId"), executedSql());
+        verify(query).setParameter("versionId", VERSION_ID);
+        verify(query).executeUpdate();
+
+        versionContentDAO.delete(VERSION_ID, "TOOLS");
+        verify(query).setParameter("type", "TOOLS");
+    }
+
+    /**
+     * Tests that contents are found through their links, by tool path and by tool id
+     */
+    @Test
+    public void deleteLinkedToUsesTheLinks() {
+        versionContentDAO.deleteLinkedTo(Set.of("quay.io/dockstore/bwa"), Set.of(2L));
+
+        List<String> sql = executedSql();
+        Assert.assertEquals(2, sql.size());
+        Assert.assertTrue(sql.get(0).contains("USING version_content_tool link"));
+        Assert.assertTrue(sql.get(0).endsWith("link.toolpath IN (:toolPaths)"));
+        Assert.assertTrue(sql.get(1).endsWith("link.toolid IN (:toolIds)"));
+        verify(query).setParameterList("toolPaths", Set.of("quay.io/dockstore/bwa"));
+        verify(query).setParameterList("toolIds", Set.of(2L));
+
+        versionContentDAO.deleteLinkedTo(Set.of(), Set.of());
+        verify(query, times(2)).executeUpdate();
+    }
+
+    private List<String> executedSql() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(session, Mockito.atLeastOnce()).createNativeQuery(sql.capture());
+        return sql.getAllValues();
+    }
+}
@@ -2,6 +2,7 @@ package io.dockstore.webservice.languages;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Set;
 
 import io.dockstore.webservice.core.FileFormat;
@@ -29,4 +30,33 @@ public class CWLHandlerTest {
         Set<FileFormat> outputs = cwlHandler.getFileFormats(FileUtils.readFileToString(new File(filePath), StandardCharsets.UTF_8), "outputs");
         Assert.assertTrue(outputs.stream().anyMatch(input -> input.getValue().equals("http://edamontology.org/format_1964")));
     }
+
+    /**
+     * Tests that a descriptor is parsed once and that its parse is shared by everything that reads it
+     * @throws Exception
+     */
+    @Test
+    public void parseOnce() throws Exception {
+        String filePath = ResourceHelpers.resourceFilePath("metadata_example4.cwl");
+        String content = FileUtils.readFileToString(new File(filePath), StandardCharsets.UTF_8);
+        Map<String, Object> mapping = CWLHandler.parseCwl(content);
+        Assert.assertSame(mapping, CWLHandler.parseCwl(FileUtils.readFileToString(new File(filePath), StandardCharsets.UTF_8)));
+        Assert.assertNotSame(mapping, CWLHandler.parseCwl(content + "\n"));
+        Assert.assertEquals(mapping, CWLHandler.parseCwl(content + "\n"));
+    }
+
+    /**
+     * Tests that a parse is weighted by its tree rather than by its content, and that nodes shared by YAML aliases count once
+     */
+    @Test
+    public void estimateParseSize() {
+        String aliased = "cwlVersion: v1.0\nclass: Workflow\nhints: &hints\n  - class: DockerRequirement\n    dockerPull: ubuntu\n"
+            + "inputs: {}\noutputs: {}\nsteps:\n  first:\n    hints: *hints\n  second:\n    hints: *hints\n";
+        String copied = "cwlVersion: v1.0\nclass: Workflow\nhints:\n  - class: DockerRequirement\n    dockerPull: ubuntu\n"
+            + "inputs: {}\noutputs: {}\nsteps:\n  first:\n    hints:\n      - class: DockerRequirement\n        dockerPull: ubuntu\n"
+            + "  second:\n    hints:\n      - class: DockerRequirement\n        dockerPull: ubuntu\n";
+        int aliasedBytes = CWLHandler.estimateBytes(CWLHandler.parseCwl(aliased));
+        Assert.assertTrue("the tree takes more than its text", aliasedBytes > aliased.length());
+        Assert.assertTrue(aliasedBytes < CWLHandler.estimateBytes(CWLHandler.parseCwl(copied)));
+    }
 }
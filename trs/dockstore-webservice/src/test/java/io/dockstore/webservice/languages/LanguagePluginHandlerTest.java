@@ -0,0 +1,226 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.languages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.common.VersionTypeValidation;
+import io.dockstore.language.MinimalLanguageInterface;
+import io.dockstore.language.RecommendedLanguageInterface;
+import io.dockstore.webservice.core.SourceFile;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the deadlines of language plugin calls, with a plugin that sleeps or gets stuck on the descriptors it is given
+ */
+public class LanguagePluginHandlerTest {
+
+    private static final int PLUGIN_THREADS = 4;
+    private static final long SHORT_TIMEOUT_MILLIS = 200;
+    private static final long LONG_TIMEOUT_MILLIS = 10_000;
+    private static final String DESCRIPTOR_PATH = "/Dockstore.slow";
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(PLUGIN_THREADS + 1);
+
+    @After
+    public void tearDown() throws Exception {
+        SlowPlugin.release();
+        callers.shutdownNow();
+        // calls left running by a test would hold plugin threads in the next one
+        awaitAbandonedCalls();
+    }
+
+    /**
+     * Tests that a call that runs past its deadline fails, and that the same call is not tried again for a while
+     */
+    @Test
+    public void timedOutCallIsNotRetried() {
+        LanguagePluginHandler handler = new LanguagePluginHandler(SlowPlugin.class, SHORT_TIMEOUT_MILLIS, LONG_TIMEOUT_MILLIS);
+        int callsBefore = SlowPlugin.CALLS.get();
+
+        assertTimesOut(handler, "sleep 10000 once", 400);
+        assertTimesOut(handler, "sleep 10000 once", 400);
+        Assert.assertEquals("the plugin is not called again", callsBefore + 1, SlowPlugin.CALLS.get());
+    }
+
+    /**
+     * Tests that a call waiting for a plugin thread gets its whole deadline once it has one
+     */
+    @Test
+    public void queuedCallGetsItsWholeDeadline() throws Exception {
+        LanguagePluginHandler handler = new LanguagePluginHandler(SlowPlugin.class, 1000, LONG_TIMEOUT_MILLIS);
+        List<CompletableFuture<VersionTypeValidation>> validations = new ArrayList<>();
+        // one more than there are plugin threads, the last waits 700 ms for a thread then runs for 700 ms
+        for (int i = 0; i <= PLUGIN_THREADS; i++) {
+            validations.add(validateLater(handler, "sleep 700 call " + i));
+        }
+
+        for (CompletableFuture<VersionTypeValidation> validation : validations) {
+            Assert.assertTrue(validation.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).isValid());
+        }
+    }
+
+    /**
+     * Tests that calls that ignore being interrupted are counted until they return, that other calls fail without waiting
+     * once they hold every plugin thread, and that calls which could not get a thread are not remembered as failed
+     */
+    @Test
+    public void pluginThatIgnoresInterruptsIsReported() throws Exception {
+        LanguagePluginHandler stuckHandler = new LanguagePluginHandler(SlowPlugin.class, SHORT_TIMEOUT_MILLIS, LONG_TIMEOUT_MILLIS);
+        LanguagePluginHandler handler = new LanguagePluginHandler(SlowPlugin.class, LONG_TIMEOUT_MILLIS, SHORT_TIMEOUT_MILLIS);
+        for (int i = 0; i < PLUGIN_THREADS - 1; i++) {
+            assertTimesOut(stuckHandler, "stuck call " + i, 400);
+        }
+        Assert.assertEquals(PLUGIN_THREADS - 1, LanguagePluginHandler.getAbandonedCalls());
+
+        // the last plugin thread is busy, so the next call cannot get a thread in time
+        CompletableFuture<VersionTypeValidation> busy = validateLater(handler, "sleep 1000");
+        Thread.sleep(SHORT_TIMEOUT_MILLIS / 2);
+        assertTimesOut(handler, "sleep 0", 503);
+        Assert.assertTrue(busy.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).isValid());
+
+        // every plugin thread is stuck, calls fail at once
+        assertTimesOut(stuckHandler, "stuck call " + PLUGIN_THREADS, 400);
+        Assert.assertEquals(PLUGIN_THREADS, LanguagePluginHandler.getAbandonedCalls());
+        long start = System.nanoTime();
+        assertTimesOut(handler, "sleep 0", 503);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SHORT_TIMEOUT_MILLIS);
+
+        SlowPlugin.release();
+        awaitAbandonedCalls();
+        Assert.assertEquals("the stuck calls returned", 0, LanguagePluginHandler.getAbandonedCalls());
+        Assert.assertTrue("the call is not remembered as failed", validate(handler, "sleep 0").isValid());
+    }
+
+    private static void awaitAbandonedCalls() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LONG_TIMEOUT_MILLIS;
+        while (LanguagePluginHandler.getAbandonedCalls() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private CompletableFuture<VersionTypeValidation> validateLater(LanguagePluginHandler handler, String content) {
+        return CompletableFuture.supplyAsync(() -> validate(handler, content), callers);
+    }
+
+    private static VersionTypeValidation validate(LanguagePluginHandler handler, String content) {
+        SourceFile descriptor = new SourceFile();
+        descriptor.setType(DescriptorLanguage.FileType.DOCKSTORE_CWL);
+        descriptor.setPath(DESCRIPTOR_PATH);
+        descriptor.setAbsolutePath(DESCRIPTOR_PATH);
+        descriptor.setContent(content);
+        return handler.validateWorkflowSet(Set.of(descriptor), DESCRIPTOR_PATH);
+    }
+
+    private static void assertTimesOut(LanguagePluginHandler handler, String content, int status) {
+        try {
+            validate(handler, content);
+            Assert.fail("the call should have timed out");
+        } catch (LanguagePluginTimeoutException e) {
+            Assert.assertEquals(status, e.getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Sleeps for the number of milliseconds in a descriptor of the form "sleep 100 ...".
+     * Gets stuck on a descriptor starting with "stuck" until released, whether it is interrupted or not.
+     */
+    public static class SlowPlugin implements RecommendedLanguageInterface {
+        static final AtomicInteger CALLS = new AtomicInteger(0);
+        private static volatile CountDownLatch stuck = new CountDownLatch(1);
+
+        static synchronized void release() {
+            stuck.countDown();
+            stuck = new CountDownLatch(1);
+        }
+
+        @Override
+        public VersionTypeValidation validateWorkflowSet(String initialPath, String contents,
+            Map<String, Pair<String, GenericFileType>> indexedFiles) {
+            CALLS.incrementAndGet();
+            String[] words = contents.split(" ");
+            if ("stuck".equals(words[0])) {
+                CountDownLatch released = stuck;
+                boolean interrupted = false;
+                while (released.getCount() > 0) {
+                    try {
+                        released.await();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                try {
+                    Thread.sleep(Long.parseLong(words[1]));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            return new VersionTypeValidation(true, Collections.emptyMap());
+        }
+
+        @Override
+        public VersionTypeValidation validateTestParameterSet(Map<String, Pair<String, GenericFileType>> indexedFiles) {
+            return new VersionTypeValidation(true, Collections.emptyMap());
+        }
+
+        @Override
+        public String launchInstructions(String trsID) {
+            return null;
+        }
+
+        @Override
+        public DescriptorLanguage getDescriptorLanguage() {
+            return DescriptorLanguage.CWL;
+        }
+
+        @Override
+        public Pattern initialPathPattern() {
+            return Pattern.compile(".*\\.slow");
+        }
+
+        @Override
+        public Map<String, Pair<String, GenericFileType>> indexWorkflowFiles(String initialPath, String contents,
+            MinimalLanguageInterface.FileReader reader) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public MinimalLanguageInterface.WorkflowMetadata parseWorkflowForMetadata(String initialPath, String contents,
+            Map<String, Pair<String, GenericFileType>> indexedFiles) {
+            return new MinimalLanguageInterface.WorkflowMetadata();
+        }
+    }
+}
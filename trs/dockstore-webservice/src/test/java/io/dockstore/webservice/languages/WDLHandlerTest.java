@@ -4,13 +4,16 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import com.google.gson.Gson;
 import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.common.ParsedWdl;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.core.BioWorkflow;
 import io.dockstore.webservice.core.DescriptionSource;
@@ -132,16 +135,46 @@ public class WDLHandlerTest {
         final Map<String, SourceFile> sourceFileMap = wdlHandler
                 .processImports("whatever", content, null, new GatkSvClinicalSourceCodeRepoInterface(), MAIN_WDL);
 
-        // wdlHandler.getContent ultimately invokes toolDAO.findAllByPath from LanguageHandlerEntry.getURLFromEntry for look
-        // up; just have it return null
+        // wdlHandler.getContent ultimately invokes toolDAO.findPublishedPaths from LanguageHandlerInterface.getURLsFromEntries
+        // for look up; just have it find nothing
         final ToolDAO toolDAO = Mockito.mock(ToolDAO.class);
-        when(toolDAO.findAllByPath(Mockito.anyString(), Mockito.anyBoolean())).thenReturn(null);
+        when(toolDAO.findPublishedPaths(Mockito.anyCollection())).thenReturn(Collections.emptySet());
 
         final String toolsStr = wdlHandler
                 .getContent(MAIN_WDL, content, new HashSet<SourceFile>(sourceFileMap.values()), LanguageHandlerInterface.Type.TOOLS, toolDAO);
         final Gson gson = new Gson();
         final Object[] tools = gson.fromJson(toolsStr, Object[].class);
         Assert.assertEquals("There should be 227 tools", 227, tools.length);
+        // all the docker images are looked up at once, the talkowski/sv-vcf-qc images look like Docker Hub images
+        Mockito.verify(toolDAO, Mockito.times(1)).findPublishedPaths(Mockito.anyCollection());
+    }
+
+    @Test
+    public void testParseIsReused() throws Exception {
+        final WDLHandler wdlHandler = new WDLHandler();
+        final String content = getGatkSvMainDescriptorContent();
+        final Map<String, SourceFile> sourceFileMap = wdlHandler
+                .processImports("whatever", content, null, new GatkSvClinicalSourceCodeRepoInterface(), MAIN_WDL);
+        final Map<String, String> secondaryFiles = sourceFileMap.values().stream()
+                .collect(Collectors.toMap(SourceFile::getAbsolutePath, SourceFile::getContent));
+
+        // the metadata, validation and DAG of a version share one parse
+        final ParsedWdl parsedWdl = WDLHandler.parse(content, MAIN_WDL, secondaryFiles);
+        Assert.assertSame(parsedWdl, WDLHandler.parse(content, MAIN_WDL, new HashMap<>(secondaryFiles)));
+        // but an import that changed is parsed again
+        secondaryFiles.put("/Structs.wdl", secondaryFiles.getOrDefault("/Structs.wdl", "") + "\n");
+        Assert.assertNotSame(parsedWdl, WDLHandler.parse(content, MAIN_WDL, secondaryFiles));
+    }
+
+    /**
+     * Tests that parsed documents are weighted by the size of the document and of its imports
+     */
+    @Test
+    public void testParseIsWeighedWithItsImports() throws Exception {
+        final String content = getGatkSvMainDescriptorContent();
+        final int documentBytes = WDLHandler.estimateBytes(content, Collections.emptyMap());
+        Assert.assertTrue(documentBytes > content.length());
+        Assert.assertTrue(documentBytes < WDLHandler.estimateBytes(content, Map.of("/Structs.wdl", "version 1.0\n")));
     }
 
     private String getGatkSvMainDescriptorContent() throws IOException {
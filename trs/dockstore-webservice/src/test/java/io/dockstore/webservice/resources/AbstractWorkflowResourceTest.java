@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.resources;
+
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.Service;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.helpers.DescriptorContentCache;
+import org.apache.http.client.HttpClient;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the refresh of workflows, through the service resource as the simplest concrete workflow resource
+ */
+public class AbstractWorkflowResourceTest {
+
+    private static final String DESCRIPTOR_PATH = "/Dockstore.cwl";
+
+    private DescriptorContentCache descriptorContentCache;
+    private ServiceResource serviceResource;
+
+    @Before
+    public void setUp() {
+        SessionFactory sessionFactory = Mockito.mock(SessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(Mockito.mock(Session.class));
+        descriptorContentCache = Mockito.mock(DescriptorContentCache.class);
+        serviceResource = new ServiceResource(Mockito.mock(HttpClient.class), sessionFactory,
+            Mockito.mock(DockstoreWebserviceConfiguration.class), descriptorContentCache);
+    }
+
+    /**
+     * Tests that a refresh stores the DAG and tools table of the versions it changes, and only of those
+     */
+    @Test
+    public void refreshStoresContentOfChangedVersions() {
+        BioWorkflow workflow = new BioWorkflow();
+        workflow.setDescriptorType(DescriptorLanguage.CWL);
+        WorkflowVersion changed = version("changed", "old");
+        WorkflowVersion frozen = version("frozen", "old");
+        frozen.setFrozen(true);
+        WorkflowVersion unchanged = version("unchanged", "old");
+        workflow.addWorkflowVersion(changed);
+        workflow.addWorkflowVersion(frozen);
+        workflow.addWorkflowVersion(unchanged);
+
+        BioWorkflow newWorkflow = new BioWorkflow();
+        newWorkflow.setGitUrl("");
+        newWorkflow.addWorkflowVersion(version("changed", "new"));
+        newWorkflow.addWorkflowVersion(version("frozen", "new"));
+        WorkflowVersion unchangedRef = version("unchanged", "old");
+        unchangedRef.setUnchanged(true);
+        newWorkflow.addWorkflowVersion(unchangedRef);
+
+        serviceResource.updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow, new User());
+        verify(descriptorContentCache).storeVersionContents(DescriptorLanguage.FileType.DOCKSTORE_CWL, changed);
+        verify(descriptorContentCache).storeVersionContents(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    /**
+     * Tests that a refresh done by a job commits after each version it changes
+     */
+    @Test
+    public void refreshCheckpointsAfterEachChangedVersion() {
+        BioWorkflow workflow = new BioWorkflow();
+        workflow.setDescriptorType(DescriptorLanguage.CWL);
+        workflow.addWorkflowVersion(version("first", "old"));
+        workflow.addWorkflowVersion(version("second", "old"));
+        BioWorkflow newWorkflow = new BioWorkflow();
+        newWorkflow.setGitUrl("");
+        newWorkflow.addWorkflowVersion(version("first", "new"));
+        newWorkflow.addWorkflowVersion(version("second", "new"));
+        Runnable checkpoint = Mockito.mock(Runnable.class);
+
+        serviceResource.updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow, new User(), checkpoint);
+        verify(checkpoint, times(2)).run();
+    }
+
+    @Test
+    public void serviceContentIsNotStored() {
+        Workflow service = new Service();
+        service.setDescriptorType(DescriptorLanguage.SERVICE);
+        service.addWorkflowVersion(version("changed", "old"));
+        Workflow newService = new Service();
+        newService.setGitUrl("");
+        newService.addWorkflowVersion(version("changed", "new"));
+
+        serviceResource.updateDBWorkflowWithSourceControlWorkflow(service, newService, new User());
+        verify(descriptorContentCache, never()).storeVersionContents(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    private static WorkflowVersion version(String name, String content) {
+        WorkflowVersion version = new WorkflowVersion();
+        version.setName(name);
+        version.setReference(name);
+        version.setWorkflowPath(DESCRIPTOR_PATH);
+        SourceFile sourceFile = new SourceFile();
+        sourceFile.setType(DescriptorLanguage.FileType.DOCKSTORE_CWL);
+        sourceFile.setPath(DESCRIPTOR_PATH);
+        sourceFile.setAbsolutePath(DESCRIPTOR_PATH);
+        sourceFile.setContent(content);
+        version.addSourceFile(sourceFile);
+        return version;
+    }
+}
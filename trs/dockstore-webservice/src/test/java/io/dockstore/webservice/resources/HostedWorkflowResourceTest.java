@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.resources;
+
+import java.util.Optional;
+import java.util.Set;
+
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.BioWorkflow;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.core.Version;
+import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.helpers.DescriptorContentCache;
+import io.dockstore.webservice.permissions.PermissionsInterface;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HostedWorkflowResourceTest {
+
+    private static final long WORKFLOW_ID = 1L;
+    private static final String DESCRIPTOR_PATH = "/Dockstore.cwl";
+
+    /**
+     * Tests that saving a hosted version stores its DAG and tools table
+     */
+    @Test
+    public void savedVersionContentIsStored() {
+        BioWorkflow workflow = new BioWorkflow();
+        workflow.setDescriptorType(DescriptorLanguage.CWL);
+        WorkflowVersion version = new WorkflowVersion();
+        version.setName("1");
+        version.setReferenceType(Version.ReferenceType.BRANCH);
+        version.setWorkflowPath(DESCRIPTOR_PATH);
+        SourceFile descriptor = new SourceFile();
+        descriptor.setType(DescriptorLanguage.FileType.DOCKSTORE_CWL);
+        descriptor.setPath(DESCRIPTOR_PATH);
+        descriptor.setAbsolutePath(DESCRIPTOR_PATH);
+        descriptor.setContent("cwlVersion: v1.0\nclass: Workflow\ninputs: []\noutputs: []\nsteps: []\n");
+        version.addSourceFile(descriptor);
+
+        // the saved version and workflow are found by id, the same objects stand in for what is persisted
+        Session session = Mockito.mock(Session.class);
+        when(session.get(WorkflowVersion.class, 0L)).thenReturn(version);
+        when(session.get(Workflow.class, WORKFLOW_ID)).thenReturn(workflow);
+        SessionFactory sessionFactory = Mockito.mock(SessionFactory.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        DescriptorContentCache descriptorContentCache = Mockito.mock(DescriptorContentCache.class);
+        HostedWorkflowResource hostedWorkflowResource = new HostedWorkflowResource(sessionFactory, Mockito.mock(PermissionsInterface.class),
+            new DockstoreWebserviceConfiguration.LimitConfig(), descriptorContentCache);
+
+        Workflow saved = hostedWorkflowResource.saveVersion(new User(), WORKFLOW_ID, workflow, version, Set.of(descriptor),
+            Optional.of(descriptor));
+        Assert.assertTrue(saved.getWorkflowVersions().contains(version));
+        verify(descriptorContentCache).storeVersionContents(DescriptorLanguage.FileType.DOCKSTORE_CWL, version);
+        verify(descriptorContentCache).storeVersionContents(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+}
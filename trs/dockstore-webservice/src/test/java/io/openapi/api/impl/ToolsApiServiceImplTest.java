@@ -0,0 +1,248 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.openapi.api.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.common.Registry;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tag;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.database.TRSCursor;
+import io.dockstore.webservice.helpers.StateManagerMode;
+import io.dockstore.webservice.helpers.statelisteners.TRSListener;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import io.dockstore.webservice.jdbi.WorkflowDAO;
+import io.openapi.model.ToolClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the TRS 2.0.0 /tools, /tools/{id}, /tools/{id}/versions and /toolClasses endpoints against a mocked database
+ */
+public class ToolsApiServiceImplTest {
+
+    private static final String FIRST_ID = "quay.io/test_org/first";
+    private static final String SECOND_ID = "quay.io/test_org/second";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ToolDAO toolDAO;
+    private TRSListener trsListener;
+    private ContainerRequestContext requestContext;
+    private ToolsApiServiceImpl toolsApiService;
+    private Tool first;
+    private Tool second;
+
+    @Before
+    public void setUp() {
+        toolDAO = Mockito.mock(ToolDAO.class);
+        WorkflowDAO workflowDAO = Mockito.mock(WorkflowDAO.class);
+        DockstoreWebserviceConfiguration config = new DockstoreWebserviceConfiguration();
+        config.getExternalConfig().setHostname("localhost");
+        config.getExternalConfig().setPort("8080");
+        config.getExternalConfig().setScheme("http");
+        trsListener = new TRSListener();
+        ToolsApiServiceImpl.setToolDAO(toolDAO);
+        ToolsApiServiceImpl.setWorkflowDAO(workflowDAO);
+        ToolsApiServiceImpl.setConfig(config);
+        ToolsApiServiceImpl.setTrsListener(trsListener);
+        ToolsApiServiceImpl.setObjectMapper(objectMapper);
+        // entries are looked up by id through v2 beta
+        io.swagger.api.impl.ToolsApiServiceImpl.setToolDAO(toolDAO);
+        io.swagger.api.impl.ToolsApiServiceImpl.setWorkflowDAO(workflowDAO);
+        io.swagger.api.impl.ToolsApiServiceImpl.setConfig(config);
+
+        UriInfo uriInfo = Mockito.mock(UriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(URI.create("http://localhost:8080/ga4gh/trs/v2/tools?limit=2"));
+        requestContext = Mockito.mock(ContainerRequestContext.class);
+        when(requestContext.getUriInfo()).thenReturn(uriInfo);
+        toolsApiService = new ToolsApiServiceImpl();
+
+        first = tool(1L, "first", "1.0", "2.0");
+        second = tool(2L, "second", "1.0");
+    }
+
+    /**
+     * Tests that a page of /tools is read in pages that follow each other by cursor, with each entry released once written,
+     * and that the written page is then served from the TRS response cache until an entry in it changes
+     */
+    @Test
+    public void toolsArePagedStreamedAndCached() throws IOException {
+        final TRSCursor nextPage = new TRSCursor(second.getGitUrl(), second.getId());
+        when(toolDAO.findTRSPublishedNextPageCursor(ArgumentMatchers.any(), ArgumentMatchers.isNull(), ArgumentMatchers.eq(0),
+            ArgumentMatchers.eq(2))).thenReturn(Optional.of(nextPage));
+        // the first read comes up short, the rest of the page is read from the cursor of the last entry read
+        when(toolDAO.findAllTRSPublished(ArgumentMatchers.any(), ArgumentMatchers.eq(0), ArgumentMatchers.eq(2)))
+            .thenReturn(new ArrayList<>(List.of(first)));
+        when(toolDAO.findAllTRSPublished(ArgumentMatchers.any(), ArgumentMatchers.<TRSCursor>argThat(cursor -> cursor.getId() == 1L),
+            ArgumentMatchers.eq(1))).thenReturn(new ArrayList<>(List.of(second)));
+
+        Response response = listTools();
+        Assert.assertTrue(response.getHeaderString("next_page").endsWith("offset=" + nextPage.encode()));
+        Assert.assertTrue(response.getHeaderString("last_page").endsWith("offset=0"));
+        Assert.assertEquals("2", response.getHeaderString("current_limit"));
+        JsonNode tools = objectMapper.readTree(write(response));
+        Assert.assertEquals(2, tools.size());
+        Assert.assertEquals(FIRST_ID, tools.get(0).get("id").asText());
+        Assert.assertEquals(2, tools.get(0).get("versions").size());
+        Assert.assertEquals(SECOND_ID, tools.get(1).get("id").asText());
+        verify(toolDAO).evict(first);
+        verify(toolDAO).evict(second);
+
+        // served from the cache, as the bytes that were written
+        Response cached = listTools();
+        Assert.assertEquals(tools, objectMapper.readTree((byte[])cached.getEntity()));
+        Assert.assertEquals(response.getHeaderString("next_page"), cached.getHeaderString("next_page"));
+        verify(toolDAO, times(1)).findAllTRSPublished(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+
+        // a change to an entry of the page drops the cached page
+        trsListener.handleIndexUpdate(second, StateManagerMode.UPDATE);
+        write(listTools());
+        verify(toolDAO, times(2)).findAllTRSPublished(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    public void toolsPageFromCursorIsReadFromTheCursor() throws IOException {
+        final TRSCursor pageStart = new TRSCursor(first.getGitUrl(), first.getId());
+        when(toolDAO.findAllTRSPublished(ArgumentMatchers.any(), ArgumentMatchers.<TRSCursor>argThat(cursor -> cursor.getId() == 1L),
+            ArgumentMatchers.eq(2))).thenReturn(new ArrayList<>(List.of(second)));
+
+        Response response = toolsApiService.toolsGet(null, null, null, null, null, null, null, null, null, null, pageStart.encode(), 2,
+            null, requestContext, Optional.empty());
+        Assert.assertNull("the listing ends on this page", response.getHeaderString("next_page"));
+        JsonNode tools = objectMapper.readTree(write(response));
+        Assert.assertEquals(1, tools.size());
+        Assert.assertEquals(SECOND_ID, tools.get(0).get("id").asText());
+        verify(toolDAO, never()).findAllTRSPublished(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    public void toolsByIdAreFiltered() throws IOException {
+        when(toolDAO.findByPath(FIRST_ID, true)).thenReturn(first);
+
+        Response found = toolsApiService.toolsGet(FIRST_ID, null, null, null, null, null, null, null, null, null, null, null, null,
+            requestContext, Optional.empty());
+        Assert.assertEquals(1, objectMapper.readTree(write(found)).size());
+
+        Response filteredOut = toolsApiService.toolsGet(FIRST_ID, null, "Workflow", null, null, null, null, null, null, null, null, null,
+            null, requestContext, Optional.empty());
+        Assert.assertEquals(0, objectMapper.readTree(write(filteredOut)).size());
+    }
+
+    @Test
+    public void toolIsFoundById() {
+        when(toolDAO.findByPath(FIRST_ID, true)).thenReturn(first);
+
+        Response response = toolsApiService.toolsIdGet(FIRST_ID, null, requestContext, Optional.empty());
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        io.openapi.model.Tool tool = (io.openapi.model.Tool)response.getEntity();
+        Assert.assertEquals(FIRST_ID, tool.getId());
+        Assert.assertEquals("CommandLineTool", tool.getToolclass().getName());
+        Assert.assertEquals(2, tool.getVersions().size());
+
+        Response missing = toolsApiService.toolsIdGet(SECOND_ID, null, requestContext, Optional.empty());
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), missing.getStatus());
+    }
+
+    /**
+     * Tests that versions are streamed, leaving out hidden versions
+     */
+    @Test
+    public void versionsAreListed() throws IOException {
+        Tag hidden = tag("hidden");
+        hidden.setHidden(true);
+        first.addWorkflowVersion(hidden);
+        when(toolDAO.findByPath(FIRST_ID, true)).thenReturn(first);
+
+        JsonNode versions = objectMapper.readTree(write(toolsApiService.toolsIdVersionsGet(FIRST_ID, null, requestContext,
+            Optional.empty())));
+        Assert.assertEquals(2, versions.size());
+        Assert.assertEquals(FIRST_ID + ":1.0", versions.get(0).get("id").asText());
+        Assert.assertEquals("CWL", versions.get(0).get("descriptor_type").get(0).asText());
+        Assert.assertEquals(FIRST_ID + ":2.0", versions.get(1).get("id").asText());
+    }
+
+    @Test
+    public void toolClassesAreListed() {
+        Response response = new ToolClassesApiServiceImpl().toolClassesGet(null, requestContext, Optional.empty());
+        List<String> names = new ArrayList<>();
+        ((List<?>)response.getEntity()).forEach(toolClass -> names.add(((ToolClass)toolClass).getName()));
+        Assert.assertEquals(List.of("CommandLineTool", "Workflow", "Service"), names);
+    }
+
+    private Response listTools() {
+        return toolsApiService.toolsGet(null, null, null, null, null, null, null, null, null, null, null, 2, null, requestContext,
+            Optional.empty());
+    }
+
+    private static byte[] write(Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput)response.getEntity()).write(output);
+        return output.toByteArray();
+    }
+
+    private static Tool tool(long id, String name, String... tagNames) {
+        Tool tool = new Tool();
+        tool.setId(id);
+        tool.setRegistry(Registry.QUAY_IO.toString());
+        tool.setNamespace("test_org");
+        tool.setName(name);
+        tool.setGitUrl("git@github.com:test_org/" + name + ".git");
+        tool.setIsPublished(true);
+        for (String tagName : tagNames) {
+            tool.addWorkflowVersion(tag(tagName));
+        }
+        return tool;
+    }
+
+    private static Tag tag(String name) {
+        Tag tag = new Tag();
+        tag.setName(name);
+        tag.setReference(name);
+        tag.setCwlPath("/Dockstore.cwl");
+        tag.setValid(true);
+        SourceFile sourceFile = new SourceFile();
+        sourceFile.setType(DescriptorLanguage.FileType.DOCKSTORE_CWL);
+        sourceFile.setPath("/Dockstore.cwl");
+        sourceFile.setAbsolutePath("/Dockstore.cwl");
+        sourceFile.setContent("cwlVersion: v1.0\nclass: CommandLineTool\n");
+        tag.addSourceFile(sourceFile);
+        return tag;
+    }
+}
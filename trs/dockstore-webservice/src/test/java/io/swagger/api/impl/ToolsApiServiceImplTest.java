@@ -0,0 +1,185 @@
+/*
+ *    Copyright 2020 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.swagger.api.impl;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import io.dockstore.common.DescriptorLanguage;
+import io.dockstore.common.Registry;
+import io.dockstore.webservice.DockstoreWebserviceApplication;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tag;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.database.PublishedEntryVersion;
+import io.dockstore.webservice.helpers.statelisteners.TRSListener;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import io.dockstore.webservice.jdbi.WorkflowDAO;
+import io.swagger.model.FileWrapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that TRS files are served from the requested version of a published entry
+ */
+public class ToolsApiServiceImplTest {
+
+    private static final String TOOL_ID = "quay.io/test_org/first";
+    private static final String GIT_URL = "git@github.com:test_org/first.git";
+
+    private ToolDAO toolDAO;
+    private ContainerRequestContext requestContext;
+    private ToolsApiServiceImpl toolsApiService;
+
+    @Before
+    public void setUp() {
+        toolDAO = Mockito.mock(ToolDAO.class);
+        ToolsApiServiceImpl.setToolDAO(toolDAO);
+        ToolsApiServiceImpl.setWorkflowDAO(Mockito.mock(WorkflowDAO.class));
+        DockstoreWebserviceConfiguration config = new DockstoreWebserviceConfiguration();
+        config.getExternalConfig().setHostname("localhost");
+        config.getExternalConfig().setPort("8080");
+        config.getExternalConfig().setScheme("http");
+        ToolsApiServiceImpl.setConfig(config);
+        ToolsApiServiceImpl.setTrsListener(new TRSListener());
+        UriInfo uriInfo = Mockito.mock(UriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(URI.create("http://localhost:8080/api/ga4gh/v1/tools?limit=1"));
+        requestContext = Mockito.mock(ContainerRequestContext.class);
+        when(requestContext.getUriInfo()).thenReturn(uriInfo);
+        toolsApiService = new ToolsApiServiceImpl();
+    }
+
+    @Test
+    public void filesAreServedFromTheRequestedVersion() {
+        Tag version = persistedTag("2.0", 2L, 20L);
+        version.addSourceFile(sourceFile("/secondary.cwl", 21L, "secondary"));
+        when(toolDAO.findPublishedVersionByPath(TOOL_ID, "2.0")).thenReturn(List.of(new PublishedEntryVersion(1L, GIT_URL, version)));
+
+        Response descriptor = toolsApiService.toolsIdVersionsVersionIdTypeDescriptorGet("CWL", TOOL_ID, "2.0", requestContext,
+            Optional.empty(), TRSVersion.V2_BETA);
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), descriptor.getStatus());
+        Assert.assertEquals("2.0", ((FileWrapper)descriptor.getEntity()).getContent());
+
+        Response secondary = toolsApiService.toolsIdVersionsVersionIdTypeDescriptorRelativePathGet("CWL", TOOL_ID, "2.0", "SECONDARY.cwl",
+            requestContext, Optional.empty(), TRSVersion.V2_BETA);
+        Assert.assertEquals("secondary", ((FileWrapper)secondary.getEntity()).getContent());
+
+        Response missing = toolsApiService.toolsIdVersionsVersionIdTypeDescriptorRelativePathGet("CWL", TOOL_ID, "2.0", "missing.cwl",
+            requestContext, Optional.empty(), TRSVersion.V2_BETA);
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), missing.getStatus());
+        verify(toolDAO, never()).findByPath(ArgumentMatchers.anyString(), ArgumentMatchers.anyBoolean());
+    }
+
+    /**
+     * Tests that V1 /tools responses carry the headers that converting a V2 beta response used to leave, under the same names
+     */
+    @Test
+    public void v1ToolsHeadersMatchConvertedV2Headers() {
+        Tool tool = new Tool();
+        tool.setId(1L);
+        tool.setRegistry(Registry.QUAY_IO.toString());
+        tool.setNamespace("test_org");
+        tool.setName("first");
+        tool.setGitUrl(GIT_URL);
+        tool.setIsPublished(true);
+        tool.addWorkflowVersion(persistedTag("1.0", 5L, 50L));
+        // two entries for a page of one, so that there is a next page
+        when(toolDAO.findAllTRSPublished(ArgumentMatchers.any(), ArgumentMatchers.eq(0), ArgumentMatchers.eq(2)))
+            .thenAnswer(invocation -> new ArrayList<>(List.of(tool, tool)));
+
+        Response v2 = toolsApiService.toolsGet(null, null, null, null, null, null, null, null, null, null, 1, requestContext,
+            Optional.empty(), TRSVersion.V2_BETA);
+        Response converted = ApiVersionConverter.getResponse(v2.getEntity(), v2.getHeaders());
+        Response v1 = toolsApiService.toolsGet(null, null, null, null, null, null, null, null, null, null, 1, requestContext,
+            Optional.empty(), TRSVersion.V1);
+
+        Assert.assertEquals(converted.getHeaders().keySet(), v1.getHeaders().keySet());
+        Assert.assertNull(v1.getHeaderString("self-link"));
+        Assert.assertEquals(converted.getHeaderString("current-limit"), v1.getHeaderString("current-limit"));
+        // page links now point at the V1 path rather than at V2 beta
+        for (String link : List.of("next-page", "last-page")) {
+            Assert.assertEquals(converted.getHeaderString(link).replace(DockstoreWebserviceApplication.GA4GH_API_PATH_V2_BETA,
+                DockstoreWebserviceApplication.GA4GH_API_PATH_V1), v1.getHeaderString(link));
+        }
+    }
+
+    /**
+     * Tests that the index of a version's file paths is reused, and that a file it no longer knows is still found by a scan
+     */
+    @Test
+    public void filePathIndexFallsBackToScan() {
+        Tag version = persistedTag("1.0", 3L, 30L);
+        SourceFile descriptor = version.getSourceFiles().iterator().next();
+        Assert.assertEquals(Optional.of(descriptor), toolsApiService.lookForFilePath(version, "/Dockstore.cwl"));
+
+        descriptor.setId(31L);
+        Assert.assertEquals(Optional.of(descriptor), toolsApiService.lookForFilePath(version, "/Dockstore.cwl"));
+        Assert.assertEquals(Optional.empty(), toolsApiService.lookForFilePath(version, "/missing.cwl"));
+    }
+
+    @Test
+    public void filePathsAreIndexedInLowerCase() {
+        Tag version = persistedTag("1.0", 4L, 40L);
+        version.addSourceFile(sourceFile("/Nested/Tool.cwl", 41L, "nested"));
+
+        Map<String, Long> index = ToolsApiServiceImpl.indexFilePaths(version.getSourceFiles(), version.getWorkingDirectory());
+        Assert.assertEquals(Long.valueOf(40L), index.get("dockstore.cwl"));
+        Assert.assertEquals(Long.valueOf(41L), index.get("nested/tool.cwl"));
+        Assert.assertNull(index.get("Nested/Tool.cwl"));
+    }
+
+    /**
+     * Creates a tag that looks persisted, with its primary descriptor holding the name of the tag
+     */
+    private static Tag persistedTag(String name, long id, long descriptorId) {
+        Tag tag = new Tag();
+        tag.setName(name);
+        tag.setReference(name);
+        tag.setCwlPath("/Dockstore.cwl");
+        tag.setValid(true);
+        tag.addSourceFile(sourceFile("/Dockstore.cwl", descriptorId, name));
+        Tag persisted = Mockito.spy(tag);
+        doReturn(id).when(persisted).getId();
+        return persisted;
+    }
+
+    private static SourceFile sourceFile(String path, long id, String content) {
+        SourceFile sourceFile = new SourceFile();
+        sourceFile.setId(id);
+        sourceFile.setType(DescriptorLanguage.FileType.DOCKSTORE_CWL);
+        sourceFile.setPath(path);
+        sourceFile.setAbsolutePath(path);
+        sourceFile.setContent(content);
+        return sourceFile;
+    }
+}